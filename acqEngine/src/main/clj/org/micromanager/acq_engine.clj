@@ -477,13 +477,14 @@
 
 (defn send-tagged-image
   "Send out image to output queue, but avoid hanging if we stop while blocking
-  on the output queue"
+  on the output queue. The sink aborts the queue when its thread exits, which
+  wakes us up at once; a stop is noticed within 100 ms."
   [out-queue tagged-image]
   (loop []
-    (when (@state :stop)
+    (when (or (@state :stop) (.isAborted out-queue))
       (log "canceling image output due to engine stop")
       (throw (EOFException. "(Aborted)")))
-    (when (not (.offer out-queue tagged-image 1000 (TimeUnit/MILLISECONDS)))
+    (when (not (.offer out-queue tagged-image 100 (TimeUnit/MILLISECONDS)))
       (recur))))
 
 (defn produce-burst-images
@@ -793,17 +794,9 @@
       (finally
         (when cleanup?
           (cleanup))
-        (if (:stop @state)
-          ; In the case where we canceled the acquisition via stop, it is
-          ; possible that the out-queue is full. But we have already given up
-          ; on sending images in that case, so it can't do any further harm to
-          ; drain the queue.
-          (if (.offer out-queue TaggedImageQueue/POISON)
-            nil
-            (do
-              (.clear out-queue)
-              (.put out-queue TaggedImageQueue/POISON)))
-          (.put out-queue TaggedImageQueue/POISON))
+        ; Images already queued are still stored if we were stopped; the
+        ; sink discards them itself if it had to give up.
+        (.endOfStream out-queue)
         (log "acquisition thread exiting"))))
 
 ;; generic metadata
@@ -976,7 +969,7 @@
   (def last-acq this)
   (def last-state (.state this)) ; for debugging
     (reset! (.state this) {:stop false :pause false :finished false})
-    (let [out-queue (LinkedBlockingQueue. 10) ; Q: Why 10?
+    (let [out-queue (TaggedImageQueue/createHandoffQueue)
           acq-thread (Thread. #(binding [state (.state this)]
                                  (run-acquisition settings out-queue cleanup? position-list autofocus-device))
                               "AcquisitionEngine2010 Thread (Clojure)")]
@@ -46,6 +46,7 @@ import edu.ucsf.valelab.gaussianfit.data.RowData;
 import edu.ucsf.valelab.gaussianfit.data.SpotData;
 import edu.ucsf.valelab.gaussianfit.datasetdisplay.ImageRenderer;
 import edu.ucsf.valelab.gaussianfit.datasetdisplay.ParticlePairLister;
+import edu.ucsf.valelab.gaussianfit.datasetdisplay.TiledRenderer;
 import edu.ucsf.valelab.gaussianfit.datasetdisplay.TrackPlotter;
 import edu.ucsf.valelab.gaussianfit.datasettransformations.CoordinateMapper;
 import edu.ucsf.valelab.gaussianfit.datasettransformations.DriftCorrector;
@@ -198,6 +199,8 @@ public class DataCollectionForm extends JFrame {
    private int jitterMaxSpots_ = 40000;
    private int jitterMaxFrames_ = 500;
    private String dir_ = "";
+   // renderer of the last rendered dataset, keeps the tiles it rendered
+   private volatile TiledRenderer renderer_;
    public static ZCalibrator zc_ = new ZCalibrator();
    private static Studio studio_;
 
@@ -1158,6 +1161,8 @@ public class DataCollectionForm extends JFrame {
       int rows[] = mainTable_.getSelectedRowsSorted();
       if (rows.length > 0) {
          mainTableModel_.removeRows(rows);
+         // let go of the rendered tiles, they may belong to a removed dataset
+         renderer_ = null;
       } else {
          JOptionPane.showMessageDialog(this, "No dataset selected");
       }
@@ -1445,18 +1450,23 @@ public class DataCollectionForm extends JFrame {
                   }
                   ttmp += mag + "x";
                   final String title = ttmp;
+                  TiledRenderer renderer = renderer_;
+                  if (renderer == null || !renderer.isFor(rowData, sf)) {
+                     renderer = new TiledRenderer(rowData, sf);
+                     renderer_ = renderer;
+                  }
                   ImagePlus sp;
                   if (rowData.hasZ_) {
-                     ImageStack is = ImageRenderer.renderData3D(rowData,
-                           visualizationModel_.getSelectedIndex(), mag, null, sf);
+                     ImageStack is = renderer.render3D(
+                           visualizationModel_.getSelectedIndex(), mag, null);
                      sp = new ImagePlus(title, is);
                      DisplayUtils.AutoStretch(sp);
                      DisplayUtils.SetCalibration(sp, (rowData.pixelSizeNm_ / mag));
                      sp.show();
 
                   } else {
-                     ImageProcessor ip = ImageRenderer.renderData(rowData,
-                           visualizationModel_.getSelectedIndex(), mag, null, sf);
+                     ImageProcessor ip = ImageRenderer.renderData(renderer,
+                           visualizationModel_.getSelectedIndex(), mag, null);
                      sp = new ImagePlus(title, ip);
 
                      GaussCanvas gs = new GaussCanvas(sp, mainTableModel_.getRow(row),
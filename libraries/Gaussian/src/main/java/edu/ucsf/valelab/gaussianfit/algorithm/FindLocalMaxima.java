@@ -38,9 +38,20 @@ import ij.plugin.filter.GaussianBlur;
 import ij.process.ImageProcessor;
 import java.awt.Polygon;
 import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.micromanager.internal.utils.ParallelStripes;
 
 
 /**
+ * A pixel is a local maximum when no pixel in the 2n by 2n box from (x - n, y - n)
+ * to (x + n - 1, y + n - 1) is brighter, and no pixel of the same intensity lies
+ * to its right or below it.  Rather than comparing every pixel to its whole box,
+ * the box maxima are computed with separable running maxima (van Herk / Gil-Werman),
+ * which cost a few comparisons per pixel, independent of n.  Pixel values are
+ * compared as returned by ImageProcessor.get(), so results are identical to a
+ * direct comparison.
+ *
  * @author nico
  */
 public class FindLocalMaxima {
@@ -48,11 +59,63 @@ public class FindLocalMaxima {
    private static final GaussianBlur FILTER = new GaussianBlur();
    private static final ImageCalculator IMAGECALCULATOR = new ImageCalculator();
 
+   // Bands of rows are at least this large, so that the overhead of forking
+   // a task stays small compared to the work
+   static final int MIN_STRIPE_PIXELS = 1 << 14;
+   // sigmas and accuracy of the difference of Gaussians prefilter
+   private static final double SIGMA_SMALL = 0.4;
+   private static final double SIGMA_LARGE = 2.0;
+   private static final double BLUR_ACCURACY = 0.01;
+
    public enum FilterType {
       NONE,
       GAUSSIAN1_5
    }
 
+   /**
+    * Growable list of maxima, stored as primitive coordinates.
+    */
+   public static final class MaximaList {
+      private int[] x_;
+      private int[] y_;
+      private int size_ = 0;
+
+      public MaximaList() {
+         this(16);
+      }
+
+      MaximaList(int capacity) {
+         x_ = new int[Math.max(1, capacity)];
+         y_ = new int[x_.length];
+      }
+
+      void add(int x, int y) {
+         if (size_ == x_.length) {
+            x_ = Arrays.copyOf(x_, 2 * size_);
+            y_ = Arrays.copyOf(y_, 2 * size_);
+         }
+         x_[size_] = x;
+         y_[size_] = y;
+         size_++;
+      }
+
+      public int size() {
+         return size_;
+      }
+
+      public int getX(int i) {
+         return x_[i];
+      }
+
+      public int getY(int i) {
+         return y_[i];
+      }
+
+      public Polygon toPolygon() {
+         return new Polygon(Arrays.copyOf(x_, size_), Arrays.copyOf(y_, size_), size_);
+      }
+   }
+
    /**
     * Static utility function to find local maxima in an Image
     *
@@ -63,8 +126,6 @@ public class FindLocalMaxima {
     * @return Polygon with maxima
     */
    public static Polygon FindMax(ImagePlus iPlus, int n, int threshold, FilterType filterType) {
-      Polygon maxima = new Polygon();
-
       ImageProcessor iProc = iPlus.getProcessor();
       Rectangle roi = iProc.getRoi();
       // HACK: need to figure out the underlying cause, but make it workable for now
@@ -75,128 +136,433 @@ public class FindLocalMaxima {
          roi.width = iProc.getWidth();
       }
 
-      // Prefilter if needed
+      return findMaxima(iProc, roi, n, threshold, filterType,
+            ForkJoinPool.commonPool()).toPolygon();
+   }
+
+   /**
+    * Finds local maxima in the roi of an image.  Maxima are ordered by x, then y.
+    *
+    * @param iProc      - image in which to look for local maxima
+    * @param roi        - part of the image to search
+    * @param n          - minimum distance to other local maximum
+    * @param threshold  - value below which a maximum will be rejected
+    * @param filterType - Prefilter the image.  Either none or Gaussian1_5
+    * @param pool       - pool to search bands of rows on; null to search on the
+    *                   calling thread
+    * @return the maxima
+    * @throws IllegalArgumentException if n is negative
+    */
+   public static MaximaList findMaxima(ImageProcessor iProc, Rectangle roi, int n,
+         int threshold, FilterType filterType, ForkJoinPool pool) {
+      if (n < 0) {
+         throw new IllegalArgumentException("Negative maximum distance: " + n);
+      }
+      int[] values;
+      Rectangle area;
       switch (filterType) {
          case GAUSSIAN1_5:
-            // TODO: if there is an ROI, we only need to filter_ in the ROI
-            ImageProcessor iProcG1 = iProc.duplicate();
-            ImageProcessor iProcG5 = iProc.duplicate();
-            FILTER.blurGaussian(iProcG1, 0.4, 0.4, 0.01);
-            FILTER.blurGaussian(iProcG5, 2.0, 2.0, 0.01);
-            ImagePlus p1 = new ImagePlus("G1", iProcG1);
-            ImagePlus p5 = new ImagePlus("G5", iProcG5);
-            IMAGECALCULATOR.run("subtract", p1, p5);
-            iProc = p1.getProcessor();
-
+            values = differenceOfGaussians(iProc, pool);
+            if (values == null) {
+               values = toValues(imageJDifferenceOfGaussians(iProc), roi);
+               area = roi;
+            } else {
+               area = new Rectangle(0, 0, iProc.getWidth(), iProc.getHeight());
+            }
+            break;
+         default:
+            values = toValues(iProc, roi);
+            area = roi;
             break;
       }
+      return findMaxima(values, area, roi, n, threshold, pool);
+   }
 
-      for (int x = roi.x + n; x < roi.width + roi.x - n - 1; x++) {
-         for (int y = roi.y + n; y < roi.height + roi.y - n - 1; y++) {
-            // Is this a local maximum?
-            boolean failed = false;
-            for (int mx = x - n; mx < x + n && !failed; mx++) {
-               for (int my = y - n; my < y + n && !failed; my++) {
-                  if (iProc.get(mx, my) > iProc.get(x, y)) {
-                     failed = true;
-                  } else if (iProc.get(mx, my) == iProc.get(x, y)) {
-                     // special handling of pixels of equal intensity
-                     if (mx > x || my > y) {
-                        // avoid excluding x,y itself, when there are multiple 
-                        // pixel of same intensity in the box, take the first one
-                        failed = true;
-                     }
-                  }
-               }
+   /**
+    * Prefilter the way this was done before there was a fused version, using ImageJ.
+    */
+   private static ImageProcessor imageJDifferenceOfGaussians(ImageProcessor iProc) {
+      ImageProcessor iProcG1 = iProc.duplicate();
+      ImageProcessor iProcG5 = iProc.duplicate();
+      FILTER.blurGaussian(iProcG1, SIGMA_SMALL, SIGMA_SMALL, BLUR_ACCURACY);
+      FILTER.blurGaussian(iProcG5, SIGMA_LARGE, SIGMA_LARGE, BLUR_ACCURACY);
+      ImagePlus p1 = new ImagePlus("G1", iProcG1);
+      ImagePlus p5 = new ImagePlus("G5", iProcG5);
+      IMAGECALCULATOR.run("subtract", p1, p5);
+      return p1.getProcessor();
+   }
+
+   /**
+    * @return the pixels in the area, as returned by ImageProcessor.get()
+    */
+   private static int[] toValues(ImageProcessor iProc, Rectangle area) {
+      int width = iProc.getWidth();
+      int[] values = new int[area.width * area.height];
+      Object pixels = iProc.getPixels();
+      for (int y = 0; y < area.height; y++) {
+         int src = (area.y + y) * width + area.x;
+         int dest = y * area.width;
+         if (pixels instanceof byte[]) {
+            byte[] bytes = (byte[]) pixels;
+            for (int x = 0; x < area.width; x++) {
+               values[dest + x] = bytes[src + x] & 0xff;
             }
-            if (!failed) {
-               int cornerAverage = (iProc.get(x - n, y - n) + iProc.get(x - n, y + n) +
-                     iProc.get(x + n, y - n) + iProc.get(x + n, y + n)) / 4;
-               if (iProc.get(x, y) - threshold > cornerAverage) {
-                  maxima.addPoint(x, y);
-               }
+         } else if (pixels instanceof short[]) {
+            short[] shorts = (short[]) pixels;
+            for (int x = 0; x < area.width; x++) {
+               values[dest + x] = shorts[src + x] & 0xffff;
+            }
+         } else if (pixels instanceof float[]) {
+            float[] floats = (float[]) pixels;
+            for (int x = 0; x < area.width; x++) {
+               values[dest + x] = Float.floatToIntBits(floats[src + x]);
+            }
+         } else if (pixels instanceof int[]) {
+            System.arraycopy((int[]) pixels, src, values, dest, area.width);
+         } else {
+            for (int x = 0; x < area.width; x++) {
+               values[dest + x] = iProc.get(area.x + x, area.y + y);
             }
          }
       }
-      
-      
-            
- /*      
-     
-      // divide the image up in blocks of size n and find local maxima
-      int n2 = 2*n + 1;
-      // calculate borders once
-      int xRealEnd = roi.x + roi.width;
-      int xEnd = xRealEnd - n;
-      int yRealEnd = roi.y + roi.height;
-      int yEnd = yRealEnd - n;
-      for (int i=roi.x; i <= xEnd - n - 1; i+=n2) {
-         for (int j=roi.y; j <= yEnd - n - 1; j+=n2) {
-            int mi = i;
-            int mj = j;
-            for (int i2=i; i2 < i + n2 && i2 < xRealEnd; i2++) {
-               for (int j2=j; j2 < j + n2 && j2 < yRealEnd; j2++) {
-                  // revert getPixel to get after debugging
-                  if (iProc.getPixel(i2, j2) > iProc.getPixel(mi, mj)) {
-                     mi = i2;
-                     mj = j2;
-                  }
-               }
+      return values;
+   }
+
+   /**
+    * Finds local maxima in values, which hold the pixels of area.  The roi should
+    * be inside the area.
+    */
+   static MaximaList findMaxima(final int[] values, final Rectangle area,
+         final Rectangle roi, final int n, final int threshold, ForkJoinPool pool) {
+      // first and last (exclusive) candidates, in area coordinates
+      final int xFrom = roi.x - area.x + n;
+      final int xTo = roi.x - area.x + roi.width - n - 1;
+      final int yFrom = roi.y - area.y + n;
+      final int yTo = roi.y - area.y + roi.height - n - 1;
+      if (xTo <= xFrom || yTo <= yFrom) {
+         return new MaximaList();
+      }
+      final int nrColumns = xTo - xFrom;
+      final int bandRows = Math.max(1, MIN_STRIPE_PIXELS / nrColumns);
+      final int nrBands = (yTo - yFrom + bandRows - 1) / bandRows;
+      final MaximaList[] bandMaxima = new MaximaList[nrBands];
+      ParallelStripes.run(pool, nrBands, 1, new ParallelStripes.RangeKernel() {
+         @Override
+         public void apply(int from, int to) {
+            for (int band = from; band < to; band++) {
+               int y0 = yFrom + band * bandRows;
+               int y1 = Math.min(yTo, y0 + bandRows);
+               bandMaxima[band] = findMaximaInBand(values, area.width, xFrom, xTo,
+                     y0, y1, n, threshold);
             }
-            // is the candidate really a local maximum?
-            // check surroundings (except for the pixels that we already checked)
-            boolean stop = false;
-            // columns in block to the left
-            if (mi - n < i && i>0) {
-               for (int i2=mi-n; i2<i; i2++) {
-                  for (int j2=mj-n; j2<=mj+n; j2++) {
-                     if (iProc.getPixel(i2, j2) > iProc.getPixel(mi, mj)) {
-                        stop = true;
-                     }
-                  }
-               }
+         }
+      });
+
+      // Bands list maxima by row; order them by column like the brute force
+      // search always did (stable counting sort on x)
+      int[] offsets = new int[nrColumns + 1];
+      int total = 0;
+      for (MaximaList list : bandMaxima) {
+         for (int i = 0; i < list.size(); i++) {
+            offsets[list.getX(i) - xFrom + 1]++;
+         }
+         total += list.size();
+      }
+      for (int i = 0; i < nrColumns; i++) {
+         offsets[i + 1] += offsets[i];
+      }
+      int[] xs = new int[total];
+      int[] ys = new int[total];
+      for (MaximaList list : bandMaxima) {
+         for (int i = 0; i < list.size(); i++) {
+            int slot = offsets[list.getX(i) - xFrom]++;
+            xs[slot] = list.getX(i) + area.x;
+            ys[slot] = list.getY(i) + area.y;
+         }
+      }
+      MaximaList maxima = new MaximaList(total);
+      for (int i = 0; i < total; i++) {
+         maxima.add(xs[i], ys[i]);
+      }
+      return maxima;
+   }
+
+   /**
+    * Finds the maxima with y0 <= y < y1 and xFrom <= x < xTo.
+    */
+   private static MaximaList findMaximaInBand(int[] values, int width,
+         int xFrom, int xTo, int y0, int y1, int n, int threshold) {
+      final int nrRows = y1 - y0;
+      final int nrColumns = xTo - xFrom;
+      // columns of which the running maxima along y are needed
+      final int c0 = xFrom - n;
+      final int c1 = xTo + n - 1;
+      final int stride = c1 - c0;
+
+      // maximum of the box from (x - n, y - n) to (x + n - 1, y + n - 1),
+      // which is empty for n = 0: then every pixel is a candidate
+      int[] column = null;
+      int[] box = null;
+      if (n > 0) {
+         column = maxOverRows(values, width, c0, c1, y0, nrRows, -n, 2 * n);
+         box = maxOverColumns(column, stride, nrRows, xFrom - c0, nrColumns, -n, 2 * n);
+      }
+      // Pixels of the same intensity to the right of (x, y), or below it,
+      // also disqualify the pixel.  Those lie in the two rectangles
+      // (x + 1, y - n) to (x + n - 1, y + n - 1), and (x - n, y + 1) to
+      // (x, y + n - 1), which are empty for n < 2.
+      int[] right = null;
+      int[] below = null;
+      if (n >= 2) {
+         right = maxOverColumns(column, stride, nrRows, xFrom - c0, nrColumns, 1, n - 1);
+         int[] lowerColumn = maxOverRows(values, width, c0, c1, y0, nrRows, 1, n - 1);
+         below = maxOverColumns(lowerColumn, stride, nrRows, xFrom - c0, nrColumns,
+               -n, n + 1);
+      }
+
+      MaximaList maxima = new MaximaList();
+      for (int row = 0; row < nrRows; row++) {
+         int y = y0 + row;
+         for (int col = 0; col < nrColumns; col++) {
+            int x = xFrom + col;
+            int value = values[y * width + x];
+            int i = row * nrColumns + col;
+            if (box != null && box[i] > value) {
+               continue;
             }
-            // columns in block to the right
-            if (!stop && mi + n >= i + n2 ) {
-               for (int i2=i+n2; i2<=mi+n; i2++) {
-                   for (int j2=mj-n; j2<=mj+n; j2++) {
-                     if (iProc.getPixel(i2, j2) > iProc.getPixel(mi, mj)) {
-                        stop = true;
-                     }
-                  }
-               }
+            if (right != null && (right[i] >= value || below[i] >= value)) {
+               continue;
             }
-            // rows on top of the block
-            if (!stop && mj - n < j && j > 0) {
-               for (int j2 = mj - n; j2 < j; j2++) {
-                  for (int i2 = mi - n; i2 <= mi + n; i2++) {
-                     if (iProc.getPixel(i2, j2) > iProc.getPixel(mi, mj))
-                        stop = true;
-                  }
+            int cornerAverage = (values[(y - n) * width + x - n]
+                  + values[(y + n) * width + x - n]
+                  + values[(y - n) * width + x + n]
+                  + values[(y + n) * width + x + n]) / 4;
+            if (value - threshold > cornerAverage) {
+               maxima.add(x, y);
+            }
+         }
+      }
+      return maxima;
+   }
+
+   /**
+    * Running maximum along y: result[row * (c1 - c0) + (x - c0)] is the maximum of
+    * values[y * width + x] for y0 + row + lo <= y < y0 + row + lo + len.
+    * len must be at least 1.
+    */
+   private static int[] maxOverRows(int[] values, int width, int c0, int c1, int y0,
+         int nrRows, int lo, int len) {
+      final int stride = c1 - c0;
+      final int lines = nrRows + len - 1;
+      final int first = y0 + lo;
+      // forward (prefix) and backward (suffix) maxima within blocks of len rows
+      int[] prefix = new int[lines * stride];
+      int[] suffix = new int[lines * stride];
+      for (int block = 0; block < lines; block += len) {
+         int end = Math.min(block + len, lines);
+         System.arraycopy(values, (first + block) * width + c0, prefix, block * stride, stride);
+         for (int j = block + 1; j < end; j++) {
+            int src = (first + j) * width + c0;
+            int dest = j * stride;
+            for (int c = 0; c < stride; c++) {
+               prefix[dest + c] = Math.max(prefix[dest - stride + c], values[src + c]);
+            }
+         }
+         System.arraycopy(values, (first + end - 1) * width + c0, suffix,
+               (end - 1) * stride, stride);
+         for (int j = end - 2; j >= block; j--) {
+            int src = (first + j) * width + c0;
+            int dest = j * stride;
+            for (int c = 0; c < stride; c++) {
+               suffix[dest + c] = Math.max(suffix[dest + stride + c], values[src + c]);
+            }
+         }
+      }
+      int[] result = new int[nrRows * stride];
+      for (int row = 0; row < nrRows; row++) {
+         int a = row * stride;
+         int b = (row + len - 1) * stride;
+         for (int c = 0; c < stride; c++) {
+            result[a + c] = Math.max(suffix[a + c], prefix[b + c]);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Running maximum along x: result[row * count + i] is the maximum of
+    * values[row * stride + x] for from + i + lo <= x < from + i + lo + len.
+    * len must be at least 1.
+    */
+   private static int[] maxOverColumns(int[] values, int stride, int nrRows, int from,
+         int count, int lo, int len) {
+      final int length = count + len - 1;
+      int[] prefix = new int[length];
+      int[] suffix = new int[length];
+      int[] result = new int[nrRows * count];
+      for (int row = 0; row < nrRows; row++) {
+         int first = row * stride + from + lo;
+         for (int block = 0; block < length; block += len) {
+            int end = Math.min(block + len, length);
+            prefix[block] = values[first + block];
+            for (int j = block + 1; j < end; j++) {
+               prefix[j] = Math.max(prefix[j - 1], values[first + j]);
+            }
+            suffix[end - 1] = values[first + end - 1];
+            for (int j = end - 2; j >= block; j--) {
+               suffix[j] = Math.max(suffix[j + 1], values[first + j]);
+            }
+         }
+         int dest = row * count;
+         for (int i = 0; i < count; i++) {
+            result[dest + i] = Math.max(suffix[i], prefix[i + len - 1]);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Difference of the image blurred with sigma 0.4 and the image blurred with
+    * sigma 2, computed in one go without intermediate ImageProcessors.  Uses
+    * the kernels and the order of operations of ImageJ's GaussianBlur, and the
+    * rounding and clipping of the ImageProcessor type, so that the result is
+    * identical to blurring with ImageJ and subtracting with the ImageCalculator.
+    *
+    * @return the pixels of the filtered image, as ImageProcessor.get() would
+    * return them, or null for image types that are not supported
+    */
+   private static int[] differenceOfGaussians(ImageProcessor iProc, ForkJoinPool pool) {
+      final Object pixels = iProc.getPixels();
+      final int width = iProc.getWidth();
+      final int height = iProc.getHeight();
+      final float[] image = new float[width * height];
+      final int maxValue;
+      if (pixels instanceof byte[]) {
+         byte[] bytes = (byte[]) pixels;
+         for (int i = 0; i < image.length; i++) {
+            image[i] = bytes[i] & 0xff;
+         }
+         maxValue = 255;
+      } else if (pixels instanceof short[]) {
+         short[] shorts = (short[]) pixels;
+         for (int i = 0; i < image.length; i++) {
+            image[i] = shorts[i] & 0xffff;
+         }
+         maxValue = 65535;
+      } else if (pixels instanceof float[]) {
+         System.arraycopy((float[]) pixels, 0, image, 0, image.length);
+         maxValue = 0;
+      } else {
+         return null;
+      }
+
+      final float[][] smallX = FILTER.makeGaussianKernel(SIGMA_SMALL, BLUR_ACCURACY, width);
+      final float[][] largeX = FILTER.makeGaussianKernel(SIGMA_LARGE, BLUR_ACCURACY, width);
+      final float[][] smallY = FILTER.makeGaussianKernel(SIGMA_SMALL, BLUR_ACCURACY, height);
+      final float[][] largeY = FILTER.makeGaussianKernel(SIGMA_LARGE, BLUR_ACCURACY, height);
+      final float[] small = new float[width * height];
+      final float[] large = new float[width * height];
+      final int[] result = new int[width * height];
+      final int minRows = Math.max(1, MIN_STRIPE_PIXELS / width);
+
+      // blur along x
+      ParallelStripes.run(pool, height, minRows, new ParallelStripes.RangeKernel() {
+         @Override
+         public void apply(int from, int to) {
+            for (int y = from; y < to; y++) {
+               int offset = y * width;
+               for (int x = 0; x < width; x++) {
+                  small[offset + x] = convolve(image, offset, 1, width, smallX, x);
+                  large[offset + x] = convolve(image, offset, 1, width, largeX, x);
                }
             }
-            // rows below the block
-            if (!stop && mj + n >= j + n2) {
-               for (int j2 = j + n2; j2 <= mj + n; j2++) {
-                  for (int i2 = mi - n; i2 <= mi + n; i2++) {
-                     if (iProc.getPixel(i2, j2) > iProc.getPixel(mi, mj))
-                        stop = true;
+         }
+      });
+
+      // blur along y, round as ImageJ does for the image type, and subtract
+      ParallelStripes.run(pool, height, minRows, new ParallelStripes.RangeKernel() {
+         @Override
+         public void apply(int from, int to) {
+            for (int y = from; y < to; y++) {
+               for (int x = 0; x < width; x++) {
+                  float s = convolve(small, x, width, height, smallY, y);
+                  float l = convolve(large, x, width, height, largeY, y);
+                  if (maxValue == 0) {
+                     result[y * width + x] = Float.floatToIntBits(s - l);
+                  } else {
+                     result[y * width + x] = Math.max(0, round(s, maxValue) - round(l, maxValue));
                   }
                }
             }
-            if (!stop && (threshold == 0 || 
-                    (iProc.getPixel(mi, mj) - 
-                      ( (iProc.getPixel(mi - n , mj - n) + iProc.getPixel(mi -n, mj + n) +
-                       iProc.getPixel(mi + n, mj  - n) + iProc.getPixel(mi + n, mj + n)) / 4) ) 
-                    > threshold))
-               maxima.addPoint(mi, mj);
          }
-      }
-*/
+      });
+      return result;
+   }
 
-      return maxima;
+   private static int round(float value, int maxValue) {
+      float v = value + 0.5f;
+      if (v < 0f) {
+         v = 0f;
+      }
+      if (v > maxValue) {
+         v = maxValue;
+      }
+      return (int) v;
    }
 
+   /**
+    * Value at position i of a line convolved with a kernel made by
+    * GaussianBlur.makeGaussianKernel, with the edge handling and the order of
+    * floating point operations of GaussianBlur.
+    *
+    * @param line   - pixels
+    * @param offset - index of the first point of the line
+    * @param inc    - distance between points of the line
+    * @param length - number of points in the line
+    * @param kernel - kernel, and running sums of the kernel
+    * @param i      - position in the line
+    */
+   private static float convolve(float[] line, int offset, int inc, int length,
+         float[][] kernel, int i) {
+      final float[] kern = kernel[0];
+      final float[] kernSum = kernel[1];
+      final int kRadius = kern.length;
+      final int firstPart = kRadius < length ? kRadius : length;
+      final int iEndInside = length - kRadius < length ? length - kRadius : length;
+      float result = line[offset + i * inc] * kern[0];
+      if (i >= firstPart && i < iEndInside) {
+         for (int k = 1; k < kRadius; k++) {
+            result += kern[k] * (line[offset + (i - k) * inc] + line[offset + (i + k) * inc]);
+         }
+         return result;
+      }
+      final float first = line[offset];
+      final float last = line[offset + (length - 1) * inc];
+      if (i < firstPart) {
+         result += kernSum[i] * first;
+         if (i + kRadius > length) {
+            result += kernSum[length - i - 1] * last;
+         }
+      } else {
+         if (i < kRadius) {
+            result += kernSum[i] * first;
+         }
+         if (i + kRadius >= length) {
+            result += kernSum[length - i - 1] * last;
+         }
+      }
+      for (int k = 1; k < kRadius; k++) {
+         float v = 0;
+         if (i - k >= 0) {
+            v += line[offset + (i - k) * inc];
+         }
+         if (i + k < length) {
+            v += line[offset + (i + k) * inc];
+         }
+         result += kern[k] * v;
+      }
+      return result;
+   }
 
    // Filters local maxima list using the ImageJ findMaxima Threshold algorithm
    public static Polygon noiseFilter(ImageProcessor iProc, Polygon inputPoints, int threshold) {
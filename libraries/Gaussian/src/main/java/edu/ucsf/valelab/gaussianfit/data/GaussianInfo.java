@@ -35,17 +35,14 @@ package edu.ucsf.valelab.gaussianfit.data;
 import ij.ImagePlus;
 import ij.process.ImageProcessor;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * @author nico
  */
 public class GaussianInfo {
 
-   protected static final Object GFSLOCK = new Object();
    protected ImagePlus siPlus_;
    protected ImageProcessor siProc_;
-   protected BlockingQueue<SpotData> sourceList_;
    protected List<SpotData> resultList_;
 
    // half the size (in pixels) of the square used for Gaussian fitting
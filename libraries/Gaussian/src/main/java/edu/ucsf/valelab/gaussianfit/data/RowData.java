@@ -65,6 +65,7 @@ public class RowData {
       private int nrPositions_ = 1;
       private long maxNrSpots_;
       private List<SpotData> spotList_;
+      private SpotTable spotTable_;
       private ArrayList<Double> timePoints_;
       private boolean isTrack_;
       private Coordinates coordinate_ = Coordinates.NM;
@@ -153,6 +154,20 @@ public class RowData {
 
       public Builder setSpotList(List<SpotData> spotList) {
          spotList_ = spotList;
+         spotTable_ = null;
+         return this;
+      }
+
+      /**
+       * Uses the table as storage for the spots, instead of a list of
+       * SpotData.  Replaces a spot list that was set before.
+       *
+       * @param spotTable spots of the row
+       * @return this builder
+       */
+      public Builder setSpotTable(SpotTable spotTable) {
+         spotTable_ = spotTable;
+         spotList_ = null;
          return this;
       }
 
@@ -188,7 +203,11 @@ public class RowData {
 
    }
 
+   // For rows backed by a SpotTable, this is a read-only view of the table
+   // that creates SpotData on demand
    public final List<SpotData> spotList_;
+   private SpotTable spotTable_;
+   private final boolean isTableBacked_;
    private Map<Integer, List<SpotData>> frameIndexSpotList_;
    private Map<ImageIndex, List<SpotData>> indexedSpotList_;
    public final ArrayList<Double> timePoints_;
@@ -237,7 +256,14 @@ public class RowData {
       nrSlices_ = b.nrSlices_;
       nrPositions_ = b.nrPositions_;
       maxNrSpots_ = b.maxNrSpots_;
-      spotList_ = new ArrayList<SpotData>(b.spotList_);
+      if (b.spotTable_ != null) {
+         spotTable_ = b.spotTable_;
+         spotList_ = spotTable_.asSpotList();
+         isTableBacked_ = true;
+      } else {
+         spotList_ = new ArrayList<SpotData>(b.spotList_);
+         isTableBacked_ = false;
+      }
       if (b.timePoints_ != null) {
          timePoints_ = new ArrayList<Double>(b.timePoints_);
       } else {
@@ -293,9 +319,14 @@ public class RowData {
             setShape(shape_).setHalfSize(halfSize_).setNrChannels(nrChannels_).
             setNrFrames(nrFrames_).setNrSlices(nrSlices_).
             setNrPositions(nrPositions_).setMaxNrSpots(maxNrSpots_).
-            setSpotList(spotList_).setTimePoints(timePoints_).
+            setTimePoints(timePoints_).
             setIsTrack(isTrack_).setCoordinate(coordinate_).setHasZ(hasZ_).
             setMinZ(minZ_).setMaxZ(maxZ_);
+      if (isTableBacked_) {
+         builder.setSpotTable(spotTable_);
+      } else {
+         builder.setSpotList(spotList_);
+      }
       return builder;
    }
 
@@ -339,7 +370,37 @@ public class RowData {
    }
 
 
+   /**
+    * Returns the spots in columnar form, so that they can be iterated without
+    * creating objects.  For rows that were built from a list of SpotData, the
+    * table is a copy of the list made when this is first called.
+    *
+    * @return table with the spots of this row
+    */
+   public synchronized SpotTable getSpotTable() {
+      if (spotTable_ == null) {
+         spotTable_ = SpotTable.fromSpotList(spotList_);
+      }
+      return spotTable_;
+   }
+
+   public boolean isTableBacked() {
+      return isTableBacked_;
+   }
+
    public List<SpotData> get(int frame, int slice, int channel, int position) {
+      if (isTableBacked_) {
+         // only create the spots of this image
+         int[] rows = spotTable_.getRows(frame, slice, channel, position);
+         if (rows == null) {
+            return null;
+         }
+         List<SpotData> spots = new ArrayList<SpotData>(rows.length);
+         for (int row : rows) {
+            spots.add(spotTable_.getSpot(row));
+         }
+         return spots;
+      }
       ImageIndex ii = new ImageIndex(frame, slice, channel, position);
       if (indexedSpotList_ == null) {
          index();
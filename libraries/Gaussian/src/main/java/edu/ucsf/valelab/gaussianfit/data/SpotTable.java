@@ -0,0 +1,629 @@
+/*
+Copyright (c) 2026, agent
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+ */
+
+package edu.ucsf.valelab.gaussianfit.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Columnar storage of localizations: every property of the spots is kept in
+ * its own primitive column, so that a spot costs a few dozen bytes instead of
+ * a SpotData object with boxed values and a HashMap.  Columns can be kept on
+ * the heap, or in a memory-mapped temporary file so that very large data sets
+ * do not need to fit in the heap.
+ * <p>
+ * Tables are immutable once built.  Spots are addressed by row number, and
+ * can be iterated without creating objects, by frame, channel, or image
+ * using the indexes.  The additional key/values of SpotData become extra
+ * columns, in which spots that do not have the key hold NaN.
+ * <p>
+ * The ImageProcessor, nrLinks_ and originalFrame_ of SpotData are not stored.
+ *
+ * @author agent
+ */
+public final class SpotTable {
+
+   // int columns
+   private static final int FRAME = 0;
+   private static final int SLICE = 1;
+   private static final int CHANNEL = 2;
+   private static final int POSITION = 3;
+   private static final int NR = 4;
+   private static final int X = 5;
+   private static final int Y = 6;
+   private static final int NR_INT_COLUMNS = 7;
+
+   // double columns
+   private static final int INTENSITY = 0;
+   private static final int BACKGROUND = 1;
+   private static final int XCENTER = 2;
+   private static final int YCENTER = 3;
+   private static final int ZCENTER = 4;
+   private static final int XORI = 5;
+   private static final int YORI = 6;
+   private static final int ZORI = 7;
+   private static final int WIDTH = 8;
+   private static final int A = 9;
+   private static final int THETA = 10;
+   private static final int SIGMA = 11;
+   private static final int NR_DOUBLE_COLUMNS = 12;
+
+   private final int size_;
+   private final IntBuffer[] ints_;
+   private final DoubleBuffer[] doubles_;
+   private final Map<String, DoubleBuffer> values_;
+   private final File file_;
+
+   private volatile Index frameIndex_;
+   private volatile Index channelIndex_;
+   private volatile Map<ImageIndex, int[]> imageIndex_;
+
+   /**
+    * Accumulates spots for a table.
+    */
+   public static class Builder {
+
+      private int size_ = 0;
+      private int[][] ints_ = new int[NR_INT_COLUMNS][16];
+      private double[][] doubles_ = new double[NR_DOUBLE_COLUMNS][16];
+      private final Map<String, double[]> values_ = new LinkedHashMap<String, double[]>();
+      private boolean mapped_ = false;
+
+      public Builder() {
+      }
+
+      /**
+       * Starts with all spots of the given table, for instance to modify
+       * some of their values.  The new table will be mapped if this one is.
+       *
+       * @param table table to copy
+       */
+      public Builder(SpotTable table) {
+         ensureCapacity(table.size_);
+         for (int c = 0; c < NR_INT_COLUMNS; c++) {
+            table.ints_[c].duplicate().get(ints_[c], 0, table.size_);
+         }
+         for (int c = 0; c < NR_DOUBLE_COLUMNS; c++) {
+            table.doubles_[c].duplicate().get(doubles_[c], 0, table.size_);
+         }
+         for (Map.Entry<String, DoubleBuffer> entry : table.values_.entrySet()) {
+            double[] column = new double[ints_[0].length];
+            Arrays.fill(column, Double.NaN);
+            entry.getValue().duplicate().get(column, 0, table.size_);
+            values_.put(entry.getKey(), column);
+         }
+         size_ = table.size_;
+         mapped_ = table.isMapped();
+      }
+
+      /**
+       * @param mapped whether to keep the columns of the table in a
+       *               memory-mapped temporary file rather than on the heap
+       * @return this builder
+       */
+      public Builder setMapped(boolean mapped) {
+         mapped_ = mapped;
+         return this;
+      }
+
+      public int size() {
+         return size_;
+      }
+
+      private void ensureCapacity(int capacity) {
+         if (capacity <= ints_[0].length) {
+            return;
+         }
+         int newCapacity = Math.max(capacity, ints_[0].length * 2);
+         for (int c = 0; c < NR_INT_COLUMNS; c++) {
+            ints_[c] = Arrays.copyOf(ints_[c], newCapacity);
+         }
+         for (int c = 0; c < NR_DOUBLE_COLUMNS; c++) {
+            doubles_[c] = Arrays.copyOf(doubles_[c], newCapacity);
+         }
+         for (Map.Entry<String, double[]> entry : values_.entrySet()) {
+            double[] column = Arrays.copyOf(entry.getValue(), newCapacity);
+            Arrays.fill(column, entry.getValue().length, newCapacity, Double.NaN);
+            entry.setValue(column);
+         }
+      }
+
+      /**
+       * Adds a spot.
+       *
+       * @param spot spot to add, its values are copied
+       * @return row of the spot in the table
+       */
+      public int addSpot(SpotData spot) {
+         ensureCapacity(size_ + 1);
+         int row = size_++;
+         ints_[FRAME][row] = spot.getFrame();
+         ints_[SLICE][row] = spot.getSlice();
+         ints_[CHANNEL][row] = spot.getChannel();
+         ints_[POSITION][row] = spot.getPosition();
+         ints_[NR][row] = spot.getNr();
+         ints_[X][row] = spot.getX();
+         ints_[Y][row] = spot.getY();
+         doubles_[INTENSITY][row] = spot.getIntensity();
+         doubles_[BACKGROUND][row] = spot.getBackground();
+         doubles_[XCENTER][row] = spot.getXCenter();
+         doubles_[YCENTER][row] = spot.getYCenter();
+         doubles_[ZCENTER][row] = spot.getZCenter();
+         doubles_[XORI][row] = spot.getXOri();
+         doubles_[YORI][row] = spot.geYOri();
+         doubles_[ZORI][row] = spot.getZOri();
+         doubles_[WIDTH][row] = spot.getWidth();
+         doubles_[A][row] = spot.getA();
+         doubles_[THETA][row] = spot.getTheta();
+         doubles_[SIGMA][row] = spot.getSigma();
+         for (String key : spot.getKeys()) {
+            setValue(key, row, spot.getValue(key));
+         }
+         return row;
+      }
+
+      /**
+       * Adds all spots of the list.
+       *
+       * @param spots spots to add, their values are copied
+       * @return this builder
+       */
+      public Builder addSpots(List<SpotData> spots) {
+         ensureCapacity(size_ + spots.size());
+         for (SpotData spot : spots) {
+            addSpot(spot);
+         }
+         return this;
+      }
+
+      /**
+       * Sets an additional value of a spot that was added before.
+       *
+       * @param key   name of the value, see SpotData.Keys
+       * @param row   row of the spot
+       * @param value value
+       */
+      public void setValue(String key, int row, double value) {
+         double[] column = values_.get(key);
+         if (column == null) {
+            column = new double[ints_[0].length];
+            Arrays.fill(column, Double.NaN);
+            values_.put(key, column);
+         }
+         column[row] = value;
+      }
+
+      public void setXCenter(int row, double xCenter) {
+         doubles_[XCENTER][row] = xCenter;
+      }
+
+      public void setYCenter(int row, double yCenter) {
+         doubles_[YCENTER][row] = yCenter;
+      }
+
+      public void setZCenter(int row, double zCenter) {
+         doubles_[ZCENTER][row] = zCenter;
+      }
+
+      public void setPosition(int row, int position) {
+         ints_[POSITION][row] = position;
+      }
+
+      /**
+       * @return a table with all spots added so far
+       * @throws IOException when the columns should be mapped, and the file
+       *                     to map them could not be created
+       */
+      public SpotTable build() throws IOException {
+         if (mapped_) {
+            return buildMapped();
+         }
+         IntBuffer[] ints = new IntBuffer[NR_INT_COLUMNS];
+         for (int c = 0; c < NR_INT_COLUMNS; c++) {
+            ints[c] = IntBuffer.wrap(Arrays.copyOf(ints_[c], size_));
+         }
+         DoubleBuffer[] doubles = new DoubleBuffer[NR_DOUBLE_COLUMNS];
+         for (int c = 0; c < NR_DOUBLE_COLUMNS; c++) {
+            doubles[c] = DoubleBuffer.wrap(Arrays.copyOf(doubles_[c], size_));
+         }
+         Map<String, DoubleBuffer> values = new LinkedHashMap<String, DoubleBuffer>();
+         for (Map.Entry<String, double[]> entry : values_.entrySet()) {
+            values.put(entry.getKey(),
+                  DoubleBuffer.wrap(Arrays.copyOf(entry.getValue(), size_)));
+         }
+         return new SpotTable(size_, ints, doubles, values, null);
+      }
+
+      private SpotTable buildMapped() throws IOException {
+         // a single mapping can not be larger than 2 GB, so map each column
+         // by itself
+         if ((long) size_ * 8 > Integer.MAX_VALUE) {
+            throw new IOException("Too many spots (" + size_ + ") to map");
+         }
+         File file = File.createTempFile("SpotTable", ".columns");
+         file.deleteOnExit();
+         RandomAccessFile raf = new RandomAccessFile(file, "rw");
+         try {
+            FileChannel channel = raf.getChannel();
+            long offset = 0;
+            IntBuffer[] ints = new IntBuffer[NR_INT_COLUMNS];
+            for (int c = 0; c < NR_INT_COLUMNS; c++) {
+               ByteBuffer bytes = map(channel, offset, (long) size_ * 4);
+               offset += (long) size_ * 4;
+               ints[c] = bytes.asIntBuffer();
+               ints[c].put(ints_[c], 0, size_);
+               ints[c] = (IntBuffer) ints[c].flip();
+            }
+            DoubleBuffer[] doubles = new DoubleBuffer[NR_DOUBLE_COLUMNS];
+            for (int c = 0; c < NR_DOUBLE_COLUMNS; c++) {
+               doubles[c] = mapDoubles(channel, offset, doubles_[c]);
+               offset += (long) size_ * 8;
+            }
+            Map<String, DoubleBuffer> values = new LinkedHashMap<String, DoubleBuffer>();
+            for (Map.Entry<String, double[]> entry : values_.entrySet()) {
+               values.put(entry.getKey(), mapDoubles(channel, offset, entry.getValue()));
+               offset += (long) size_ * 8;
+            }
+            // the mappings stay valid after the channel is closed
+            return new SpotTable(size_, ints, doubles, values, file);
+         } finally {
+            raf.close();
+         }
+      }
+
+      private ByteBuffer map(FileChannel channel, long offset, long length)
+            throws IOException {
+         return channel.map(FileChannel.MapMode.READ_WRITE, offset, length)
+               .order(ByteOrder.nativeOrder());
+      }
+
+      private DoubleBuffer mapDoubles(FileChannel channel, long offset,
+            double[] column) throws IOException {
+         DoubleBuffer buffer = map(channel, offset, (long) size_ * 8).asDoubleBuffer();
+         buffer.put(column, 0, size_);
+         return (DoubleBuffer) buffer.flip();
+      }
+   }
+
+   private SpotTable(int size, IntBuffer[] ints, DoubleBuffer[] doubles,
+         Map<String, DoubleBuffer> values, File file) {
+      size_ = size;
+      ints_ = ints;
+      doubles_ = doubles;
+      values_ = values;
+      file_ = file;
+   }
+
+   /**
+    * Copies a list of spots into a table on the heap.
+    *
+    * @param spots spots to copy
+    * @return table with the values of these spots
+    */
+   public static SpotTable fromSpotList(List<SpotData> spots) {
+      try {
+         return new Builder().addSpots(spots).build();
+      } catch (IOException ex) {
+         // only mapped tables do IO
+         throw new IllegalStateException(ex);
+      }
+   }
+
+   public int size() {
+      return size_;
+   }
+
+   /**
+    * @return whether the columns are kept in a memory-mapped file
+    */
+   public boolean isMapped() {
+      return file_ != null;
+   }
+
+   public int getFrame(int row) {
+      return ints_[FRAME].get(row);
+   }
+
+   public int getSlice(int row) {
+      return ints_[SLICE].get(row);
+   }
+
+   public int getChannel(int row) {
+      return ints_[CHANNEL].get(row);
+   }
+
+   public int getPosition(int row) {
+      return ints_[POSITION].get(row);
+   }
+
+   public int getNr(int row) {
+      return ints_[NR].get(row);
+   }
+
+   public int getX(int row) {
+      return ints_[X].get(row);
+   }
+
+   public int getY(int row) {
+      return ints_[Y].get(row);
+   }
+
+   public double getIntensity(int row) {
+      return doubles_[INTENSITY].get(row);
+   }
+
+   public double getBackground(int row) {
+      return doubles_[BACKGROUND].get(row);
+   }
+
+   public double getXCenter(int row) {
+      return doubles_[XCENTER].get(row);
+   }
+
+   public double getYCenter(int row) {
+      return doubles_[YCENTER].get(row);
+   }
+
+   public double getZCenter(int row) {
+      return doubles_[ZCENTER].get(row);
+   }
+
+   public double getXOri(int row) {
+      return doubles_[XORI].get(row);
+   }
+
+   public double getYOri(int row) {
+      return doubles_[YORI].get(row);
+   }
+
+   public double getZOri(int row) {
+      return doubles_[ZORI].get(row);
+   }
+
+   public double getWidth(int row) {
+      return doubles_[WIDTH].get(row);
+   }
+
+   public double getA(int row) {
+      return doubles_[A].get(row);
+   }
+
+   public double getTheta(int row) {
+      return doubles_[THETA].get(row);
+   }
+
+   public double getSigma(int row) {
+      return doubles_[SIGMA].get(row);
+   }
+
+   /**
+    * @return names of the additional values, see SpotData.Keys
+    */
+   public Set<String> getKeys() {
+      return Collections.unmodifiableSet(values_.keySet());
+   }
+
+   public boolean hasValue(String key, int row) {
+      DoubleBuffer column = values_.get(key);
+      return column != null && !Double.isNaN(column.get(row));
+   }
+
+   /**
+    * @return the additional value, or NaN when the spot does not have it
+    */
+   public double getValue(String key, int row) {
+      DoubleBuffer column = values_.get(key);
+      return column == null ? Double.NaN : column.get(row);
+   }
+
+   /**
+    * Creates a SpotData object with the values of a row.  Meant for code
+    * that still works on SpotData; avoid it in loops over large tables.
+    *
+    * @param row row of the spot
+    * @return new SpotData with the values of the spot
+    */
+   public SpotData getSpot(int row) {
+      SpotData spot = new SpotData(null, getChannel(row), getSlice(row),
+            getFrame(row), getPosition(row), getNr(row), getX(row), getY(row));
+      spot.setData(getIntensity(row), getBackground(row), getXCenter(row),
+            getYCenter(row), getZCenter(row), getWidth(row), getA(row),
+            getTheta(row), getSigma(row));
+      // setData does not set z
+      spot.setZCenter(getZCenter(row));
+      spot.setOriginalPosition(getXOri(row), getYOri(row), getZOri(row));
+      for (Map.Entry<String, DoubleBuffer> entry : values_.entrySet()) {
+         double value = entry.getValue().get(row);
+         if (!Double.isNaN(value)) {
+            spot.addKeyValue(entry.getKey(), value);
+         }
+      }
+      return spot;
+   }
+
+   /**
+    * Returns a read-only list that creates a new SpotData every time an
+    * element is requested.  Changes to these SpotData are not stored.
+    *
+    * @return list view of the spots in the table
+    */
+   public List<SpotData> asSpotList() {
+      return new AbstractList<SpotData>() {
+         @Override
+         public SpotData get(int index) {
+            if (index < 0 || index >= size_) {
+               throw new IndexOutOfBoundsException("Row " + index
+                     + " is not in a table of " + size_ + " spots");
+            }
+            return getSpot(index);
+         }
+
+         @Override
+         public int size() {
+            return size_;
+         }
+      };
+   }
+
+   /**
+    * @param frame frame (1-based)
+    * @return rows of all spots in this frame, in table order
+    */
+   public int[] getRowsInFrame(int frame) {
+      Index index = frameIndex_;
+      if (index == null) {
+         index = new Index(ints_[FRAME], size_);
+         frameIndex_ = index;
+      }
+      return index.getRows(frame);
+   }
+
+   /**
+    * @param channel channel
+    * @return rows of all spots in this channel, in table order
+    */
+   public int[] getRowsInChannel(int channel) {
+      Index index = channelIndex_;
+      if (index == null) {
+         index = new Index(ints_[CHANNEL], size_);
+         channelIndex_ = index;
+      }
+      return index.getRows(channel);
+   }
+
+   /**
+    * @return rows of all spots in the given image, in table order, or null
+    * if there are none
+    */
+   public int[] getRows(int frame, int slice, int channel, int position) {
+      Map<ImageIndex, int[]> index = imageIndex_;
+      if (index == null) {
+         index = buildImageIndex();
+         imageIndex_ = index;
+      }
+      return index.get(new ImageIndex(frame, slice, channel, position));
+   }
+
+   private Map<ImageIndex, int[]> buildImageIndex() {
+      // first count the spots in each image, then fill in their rows
+      Map<ImageIndex, int[]> counts = new HashMap<ImageIndex, int[]>();
+      for (int row = 0; row < size_; row++) {
+         ImageIndex key = new ImageIndex(getFrame(row), getSlice(row),
+               getChannel(row), getPosition(row));
+         int[] count = counts.get(key);
+         if (count == null) {
+            count = new int[1];
+            counts.put(key, count);
+         }
+         count[0]++;
+      }
+      Map<ImageIndex, int[]> index = new HashMap<ImageIndex, int[]>(counts.size() * 2);
+      for (Map.Entry<ImageIndex, int[]> entry : counts.entrySet()) {
+         index.put(entry.getKey(), new int[entry.getValue()[0]]);
+         entry.getValue()[0] = 0;
+      }
+      for (int row = 0; row < size_; row++) {
+         ImageIndex key = new ImageIndex(getFrame(row), getSlice(row),
+               getChannel(row), getPosition(row));
+         int[] fill = counts.get(key);
+         index.get(key)[fill[0]++] = row;
+      }
+      return index;
+   }
+
+   /**
+    * Deletes the file of a memory-mapped table.  The table can not be used
+    * afterwards.  The file is deleted on exit otherwise.
+    */
+   public void dispose() {
+      if (file_ != null) {
+         file_.delete();
+      }
+   }
+
+   /**
+    * Rows grouped by the value of an int column, stored as one array of rows
+    * sorted by value and the offset in that array of each value.
+    */
+   private static final class Index {
+
+      private final int min_;
+      private final int[] offsets_;
+      private final int[] rows_;
+
+      Index(IntBuffer column, int size) {
+         int min = Integer.MAX_VALUE;
+         int max = Integer.MIN_VALUE;
+         for (int row = 0; row < size; row++) {
+            min = Math.min(min, column.get(row));
+            max = Math.max(max, column.get(row));
+         }
+         if (size == 0) {
+            min = 0;
+            max = -1;
+         }
+         min_ = min;
+         offsets_ = new int[max - min + 2];
+         for (int row = 0; row < size; row++) {
+            offsets_[column.get(row) - min + 1]++;
+         }
+         for (int i = 1; i < offsets_.length; i++) {
+            offsets_[i] += offsets_[i - 1];
+         }
+         int[] fill = Arrays.copyOf(offsets_, offsets_.length);
+         rows_ = new int[size];
+         for (int row = 0; row < size; row++) {
+            rows_[fill[column.get(row) - min]++] = row;
+         }
+      }
+
+      int[] getRows(int value) {
+         int i = value - min_;
+         if (i < 0 || i >= offsets_.length - 1) {
+            return new int[0];
+         }
+         return Arrays.copyOfRange(rows_, offsets_[i], offsets_[i + 1]);
+      }
+   }
+}
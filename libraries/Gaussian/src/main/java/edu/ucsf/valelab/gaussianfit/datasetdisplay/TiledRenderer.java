@@ -0,0 +1,665 @@
+/*
+ * Renders localization microscopy data in tiles
+
+
+Copyright (c) 2026, agent
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+1. Redistributions of source code must retain the above copyright notice, this
+   list of conditions and the following disclaimer.
+2. Redistributions in binary form must reproduce the above copyright notice,
+   this list of conditions and the following disclaimer in the documentation
+   and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+(INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+The views and conclusions contained in the software and documentation are those
+of the authors and should not be interpreted as representing official policies,
+either expressed or implied, of the FreeBSD Project.
+ */
+
+package edu.ucsf.valelab.gaussianfit.datasetdisplay;
+
+import edu.ucsf.valelab.gaussianfit.data.RowData;
+import edu.ucsf.valelab.gaussianfit.data.SpotTable;
+import edu.ucsf.valelab.gaussianfit.datasettransformations.SpotDataFilter;
+import ij.ImageStack;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import org.micromanager.internal.utils.ParallelStripes;
+
+/**
+ * Renders a dataset in the same ways as ImageRenderer, but in square tiles
+ * that are rendered in parallel and cached.
+ *
+ * The localizations that pass the filter are sorted once into bins of
+ * BIN_PIXELS by BIN_PIXELS camera pixels, so that a tile only looks at the
+ * localizations in and around it.  Gaussians that are at least
+ * KERNEL_MIN_SIGMA rendered pixels wide are drawn with kernels that are
+ * computed once per width (rounded to 1/SIGMA_STEPS pixel) and sub-pixel
+ * position (rounded to 1/SUBPIXEL_STEPS pixel).  Rendered tiles are kept
+ * per render method and magnification, so that rendering the same dataset
+ * again, at a magnification that was used before, or rendering another part
+ * of it, only renders tiles that were not rendered before.  The same holds
+ * for the z slices of render3D.
+ *
+ * Unlike ImageRenderer, Gaussians that are partly inside the rendered
+ * rectangle are drawn.
+ *
+ * @author agent
+ */
+public class TiledRenderer {
+
+   // side of a rendered tile, in rendered pixels
+   static final int TILE_SIZE = 256;
+   // side of a bin of localizations, in camera pixels
+   static final int BIN_PIXELS = 16;
+   // resolution of the kernels, per rendered pixel
+   static final int SUBPIXEL_STEPS = 64;
+   static final int SIGMA_STEPS = 32;
+   // narrower Gaussians (in rendered pixels) change too much with their
+   // sub-pixel position for a kernel, and are computed for each spot, which
+   // is cheap, as they cover at most 4 by 4 pixels
+   static final double KERNEL_MIN_SIGMA = 1.0;
+   // least recently used tiles are dropped when the cache grows beyond this
+   static final long MAX_CACHED_BYTES = 128L << 20;
+   // method of the tiles of render3D, next to the methods of render
+   private static final int SLICES = 3;
+
+   /**
+    * Gaussian with a given width, sampled at each sub-pixel offset of its
+    * center.  As the Gaussian is separable, only one axis is stored.
+    */
+   private static final class Kernel {
+      final int halfWidth_;
+      // [sub-pixel offset][pixel], pixel 0 is halfWidth pixels left of the center
+      final double[][] values_;
+      // sums of the values for each sub-pixel offset
+      final double[] sums_;
+
+      Kernel(int halfWidth, double sigma) {
+         halfWidth_ = halfWidth;
+         values_ = new double[SUBPIXEL_STEPS][2 * halfWidth];
+         sums_ = new double[SUBPIXEL_STEPS];
+         for (int step = 0; step < SUBPIXEL_STEPS; step++) {
+            double offset = (step + 0.5) / SUBPIXEL_STEPS;
+            for (int i = 0; i < 2 * halfWidth; i++) {
+               double d = i - halfWidth - offset;
+               values_[step][i] = Math.exp(-d * d / (2 * sigma * sigma));
+               sums_[step] += values_[step][i];
+            }
+         }
+      }
+   }
+
+   private static final class TileKey {
+      final int method_;
+      final double magnification_;
+      final int tileX_;
+      final int tileY_;
+
+      TileKey(int method, double magnification, int tileX, int tileY) {
+         method_ = method;
+         magnification_ = magnification;
+         tileX_ = tileX;
+         tileY_ = tileY;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (!(o instanceof TileKey)) {
+            return false;
+         }
+         TileKey other = (TileKey) o;
+         return method_ == other.method_
+               && Double.compare(magnification_, other.magnification_) == 0
+               && tileX_ == other.tileX_ && tileY_ == other.tileY_;
+      }
+
+      @Override
+      public int hashCode() {
+         long bits = Double.doubleToLongBits(magnification_);
+         int hash = method_;
+         hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+         hash = 31 * hash + tileX_;
+         return 31 * hash + tileY_;
+      }
+   }
+
+   private final RowData rowData_;
+   private final SpotDataFilter filter_;
+   private final ForkJoinPool pool_;
+   private final int width_;
+   private final int height_;
+   private final float pixelSizeNm_;
+   private final boolean hasZ_;
+   private final double minZ_;
+   private final double maxZ_;
+
+   private final double binNm_;
+   private final int binsX_;
+   private final int binsY_;
+   // localizations of bin b are at binStart_[b] .. binStart_[b + 1] - 1
+   private final int[] binStart_;
+   private final double[] xNm_;
+   private final double[] yNm_;
+   private final double[] sigmaNm_;
+   private final double[] zNm_;
+   private final double maxSigmaNm_;
+
+   private final Map<Long, Kernel> kernels_ = new ConcurrentHashMap<Long, Kernel>();
+   private final LinkedHashMap<TileKey, Object> tiles_ =
+         new LinkedHashMap<TileKey, Object>(16, 0.75f, true);
+   private long cachedBytes_ = 0;
+
+   /**
+    * Creates a renderer that renders on the common pool.
+    *
+    * @param rowData - dataset to be rendered
+    * @param sf      - only localizations accepted by this filter are rendered
+    */
+   public TiledRenderer(RowData rowData, SpotDataFilter sf) {
+      this(rowData, sf, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * @param rowData - dataset to be rendered
+    * @param sf      - only localizations accepted by this filter are rendered
+    * @param pool    - pool to render tiles on; null to render on the calling
+    *                thread
+    */
+   public TiledRenderer(RowData rowData, SpotDataFilter sf, ForkJoinPool pool) {
+      this(rowData, rowData.getSpotTable(), rowData.width_, rowData.height_,
+            rowData.pixelSizeNm_, rowData.hasZ_, rowData.minZ_, rowData.maxZ_,
+            sf, pool);
+   }
+
+   TiledRenderer(RowData rowData, SpotTable table, int width, int height,
+         float pixelSizeNm, boolean hasZ, double minZ, double maxZ,
+         SpotDataFilter sf, ForkJoinPool pool) {
+      rowData_ = rowData;
+      filter_ = sf;
+      pool_ = pool;
+      width_ = width;
+      height_ = height;
+      pixelSizeNm_ = pixelSizeNm;
+      hasZ_ = hasZ;
+      minZ_ = minZ;
+      maxZ_ = maxZ;
+
+      binNm_ = BIN_PIXELS * (double) pixelSizeNm;
+      binsX_ = Math.max(1, (width + BIN_PIXELS - 1) / BIN_PIXELS);
+      binsY_ = Math.max(1, (height + BIN_PIXELS - 1) / BIN_PIXELS);
+
+      // counting sort of the accepted rows by bin
+      int[] rowBins = new int[table.size()];
+      binStart_ = new int[binsX_ * binsY_ + 1];
+      int nrAccepted = 0;
+      for (int row = 0; row < table.size(); row++) {
+         if (sf == null || sf.filter(table, row)) {
+            int bin = bin(table.getXCenter(row), binsX_)
+                  + binsX_ * bin(table.getYCenter(row), binsY_);
+            rowBins[row] = bin;
+            binStart_[bin + 1]++;
+            nrAccepted++;
+         } else {
+            rowBins[row] = -1;
+         }
+      }
+      for (int bin = 0; bin < binsX_ * binsY_; bin++) {
+         binStart_[bin + 1] += binStart_[bin];
+      }
+      int[] next = new int[binsX_ * binsY_];
+      System.arraycopy(binStart_, 0, next, 0, next.length);
+      xNm_ = new double[nrAccepted];
+      yNm_ = new double[nrAccepted];
+      sigmaNm_ = new double[nrAccepted];
+      zNm_ = new double[hasZ ? nrAccepted : 0];
+      double maxSigma = 0.0;
+      for (int row = 0; row < table.size(); row++) {
+         if (rowBins[row] >= 0) {
+            int i = next[rowBins[row]]++;
+            xNm_[i] = table.getXCenter(row);
+            yNm_[i] = table.getYCenter(row);
+            sigmaNm_[i] = table.getSigma(row);
+            if (hasZ) {
+               zNm_[i] = table.getZCenter(row);
+            }
+            if (sigmaNm_[i] > maxSigma) {
+               maxSigma = sigmaNm_[i];
+            }
+         }
+      }
+      maxSigmaNm_ = maxSigma;
+   }
+
+   private int bin(double nm, int nrBins) {
+      int bin = (int) Math.floor(nm / binNm_);
+      return bin < 0 ? 0 : (bin >= nrBins ? nrBins - 1 : bin);
+   }
+
+   /**
+    * @param rowData - dataset
+    * @param sf      - filter
+    * @return true if this renderer renders this dataset with an equal filter
+    */
+   public boolean isFor(RowData rowData, SpotDataFilter sf) {
+      return rowData_ == rowData
+            && (filter_ == null ? sf == null : filter_.equals(sf));
+   }
+
+   /**
+    * @return number of localizations that passed the filter
+    */
+   public int getNrSpots() {
+      return xNm_.length;
+   }
+
+   public synchronized void clearCache() {
+      tiles_.clear();
+      cachedBytes_ = 0;
+   }
+
+   /**
+    * Renders the dataset, see ImageRenderer.renderData.
+    *
+    * @param method        - 0 = 2D scatter, 1 = Gaussians, 2 = Normalized Gaussian
+    * @param magnification - factor x original size
+    * @param rect          - roi in the magnified image that should be rendered,
+    *                      null for the whole image
+    * @return rendered image, or null for an unknown method
+    */
+   public ImageProcessor render(final int method, final double magnification,
+         Rectangle rect) {
+      if (method < 0 || method > 2) {
+         return null;
+      }
+      final int fullWidth = (int) (width_ * magnification);
+      final int fullHeight = (int) (height_ * magnification);
+      if (rect == null) {
+         rect = new Rectangle(0, 0, fullWidth, fullHeight);
+      }
+      final boolean color = method == 0 && hasZ_;
+      final int width = rect.width;
+      final int height = rect.height;
+      Object pixels;
+      if (color) {
+         pixels = new short[3][width * height];
+      } else if (method == 0) {
+         pixels = new short[width * height];
+      } else {
+         pixels = new float[width * height];
+      }
+      copyTiles(method, magnification, rect, pixels);
+
+      ImageProcessor ip;
+      if (color) {
+         ip = toColor((short[][]) pixels, width, height);
+      } else if (method == 0) {
+         ip = new ShortProcessor(width, height, (short[]) pixels, null);
+      } else {
+         ip = new FloatProcessor(width, height, (float[]) pixels, null);
+      }
+      ip.resetMinAndMax();
+      return ip;
+   }
+
+   /**
+    * Renders the dataset in slices along z, see ImageRenderer.renderData3D.
+    * Only the scatter plot (method 0) is supported.  The slices are rendered
+    * and cached in tiles, as by render().
+    *
+    * @param method        - 0 = 2D scatter
+    * @param magnification - factor x original size
+    * @param rect          - roi in the magnified image that should be rendered,
+    *                      null for the whole image
+    * @return stack with the rendered slices
+    */
+   public ImageStack render3D(final int method, final double magnification,
+         Rectangle rect) {
+      final int fullWidth = (int) (width_ * magnification);
+      final int fullHeight = (int) (height_ * magnification);
+      if (rect == null) {
+         rect = new Rectangle(0, 0, fullWidth, fullHeight);
+      }
+      final int width = rect.width;
+      final int height = rect.height;
+      ImageStack is = new ImageStack(width, height);
+      if (method != 0 || !hasZ_) {
+         return is;
+      }
+      short[][] pixels = new short[nrSlices(magnification)][width * height];
+      copyTiles(SLICES, magnification, rect, pixels);
+      for (short[] slice : pixels) {
+         is.addSlice(new ShortProcessor(width, height, slice, null));
+      }
+      return is;
+   }
+
+   /**
+    * @return number of slices rendered by render3D
+    */
+   private int nrSlices(double magnification) {
+      double renderedPixelInNm = pixelSizeNm_ / magnification;
+      return (int) (1000.0 * (maxZ_ - minZ_) / (2 * renderedPixelInNm));
+   }
+
+   /**
+    * Copies the part of the tiles of the given method that lies in rect into
+    * pixels (a short[], float[], or short[][] with one array per color or
+    * slice), rendering the tiles that are not cached.
+    */
+   private void copyTiles(final int method, final double magnification,
+         Rectangle rect, Object pixels) {
+      final int fullWidth = (int) (width_ * magnification);
+      final int fullHeight = (int) (height_ * magnification);
+      Rectangle visible = rect.intersection(new Rectangle(0, 0, fullWidth, fullHeight));
+
+      // find the tiles we need, and render the ones that are not cached
+      final List<TileKey> keys = new ArrayList<TileKey>();
+      final List<Object> tiles = new ArrayList<Object>();
+      final List<Integer> missing = new ArrayList<Integer>();
+      if (!visible.isEmpty()) {
+         for (int ty = visible.y / TILE_SIZE;
+               ty <= (visible.y + visible.height - 1) / TILE_SIZE; ty++) {
+            for (int tx = visible.x / TILE_SIZE;
+                  tx <= (visible.x + visible.width - 1) / TILE_SIZE; tx++) {
+               TileKey key = new TileKey(method, magnification, tx, ty);
+               Object tile = getCachedTile(key);
+               if (tile == null) {
+                  missing.add(keys.size());
+               }
+               keys.add(key);
+               tiles.add(tile);
+            }
+         }
+      }
+      final Object[] rendered = new Object[missing.size()];
+      run(missing.size(), new ParallelStripes.RangeKernel() {
+         @Override
+         public void apply(int from, int to) {
+            for (int i = from; i < to; i++) {
+               TileKey key = keys.get(missing.get(i));
+               rendered[i] = renderTile(method, magnification, key.tileX_,
+                     key.tileY_, fullWidth, fullHeight);
+            }
+         }
+      });
+      for (int i = 0; i < rendered.length; i++) {
+         tiles.set(missing.get(i), rendered[i]);
+         cacheTile(keys.get(missing.get(i)), rendered[i]);
+      }
+
+      // copy the tiles into the image
+      for (int t = 0; t < keys.size(); t++) {
+         TileKey key = keys.get(t);
+         int x0 = key.tileX_ * TILE_SIZE;
+         int y0 = key.tileY_ * TILE_SIZE;
+         int tileWidth = Math.min(TILE_SIZE, fullWidth - x0);
+         int tileHeight = Math.min(TILE_SIZE, fullHeight - y0);
+         Rectangle part = visible.intersection(
+               new Rectangle(x0, y0, tileWidth, tileHeight));
+         for (int y = part.y; y < part.y + part.height; y++) {
+            int src = (y - y0) * tileWidth + part.x - x0;
+            int dest = (y - rect.y) * rect.width + part.x - rect.x;
+            if (pixels instanceof short[][]) {
+               short[][] planes = (short[][]) pixels;
+               for (int c = 0; c < planes.length; c++) {
+                  System.arraycopy(((short[][]) tiles.get(t))[c], src,
+                        planes[c], dest, part.width);
+               }
+            } else {
+               System.arraycopy(tiles.get(t), src, pixels, dest, part.width);
+            }
+         }
+      }
+   }
+
+   /**
+    * @return bins that may hold localizations drawn in pixels x0..x1-1,
+    * y0..y1-1, or within margin pixels of those, as {first x, last x,
+    * first y, last y}
+    */
+   private int[] binRange(int x0, int x1, int y0, int y1, int margin, double factor) {
+      // one extra bin on each side absorbs rounding
+      return new int[] {
+         Math.max(0, (int) Math.floor((x0 - margin) / factor / binNm_) - 1),
+         Math.min(binsX_ - 1, (int) Math.floor((x1 + margin) / factor / binNm_) + 1),
+         Math.max(0, (int) Math.floor((y0 - margin) / factor / binNm_) - 1),
+         Math.min(binsY_ - 1, (int) Math.floor((y1 + margin) / factor / binNm_) + 1)
+      };
+   }
+
+   private Object renderTile(int method, double magnification, int tileX, int tileY,
+         int fullWidth, int fullHeight) {
+      final int x0 = tileX * TILE_SIZE;
+      final int y0 = tileY * TILE_SIZE;
+      final int x1 = Math.min(x0 + TILE_SIZE, fullWidth);
+      final int y1 = Math.min(y0 + TILE_SIZE, fullHeight);
+      final int tileWidth = x1 - x0;
+      final double factor = magnification / pixelSizeNm_;
+      final double renderedPixelInNm = pixelSizeNm_ / magnification;
+
+      if (method == SLICES) {
+         int[] bins = binRange(x0, x1, y0, y1, 0, factor);
+         int nrZs = nrSlices(magnification);
+         short[][] pixels = new short[nrZs][tileWidth * (y1 - y0)];
+         for (int by = bins[2]; by <= bins[3]; by++) {
+            for (int i = binStart_[by * binsX_ + bins[0]];
+                  i < binStart_[by * binsX_ + bins[1] + 1]; i++) {
+               int x = (int) (factor * xNm_[i]);
+               int y = (int) (factor * yNm_[i]);
+               int z = (int) (factor * (zNm_[i] - minZ_) * 500.0);
+               if (x >= x0 && x < x1 && y >= y0 && y < y1 && z >= 0 && z < nrZs) {
+                  int index = (y - y0) * tileWidth + x - x0;
+                  if (pixels[z][index] != -1) {
+                     pixels[z][index] += 1;
+                  }
+               }
+            }
+         }
+         return pixels;
+      }
+
+      if (method == 0) {
+         int[] bins = binRange(x0, x1, y0, y1, 0, factor);
+         int[][] lut = hasZ_ ? ImageRenderer.readZLut() : null;
+         double spread = maxZ_ - minZ_;
+         short[] pixels = hasZ_ ? null : new short[tileWidth * (y1 - y0)];
+         short[][] colorPixels = hasZ_ ? new short[3][tileWidth * (y1 - y0)] : null;
+         for (int by = bins[2]; by <= bins[3]; by++) {
+            for (int i = binStart_[by * binsX_ + bins[0]];
+                  i < binStart_[by * binsX_ + bins[1] + 1]; i++) {
+               int x = (int) (factor * xNm_[i]);
+               int y = (int) (factor * yNm_[i]);
+               if (x < x0 || x >= x1 || y < y0 || y >= y1) {
+                  continue;
+               }
+               int index = (y - y0) * tileWidth + x - x0;
+               if (!hasZ_) {
+                  if (pixels[index] != -1) {
+                     pixels[index] += 1;
+                  }
+               } else {
+                  int zIndex = (int) (256 * (zNm_[i] - minZ_) / spread);
+                  zIndex = Math.max(0, Math.min(255, zIndex));
+                  for (int c = 0; c < 3; c++) {
+                     colorPixels[c][index] += lut[zIndex] != null
+                           ? lut[zIndex][c] : zIndex;
+                  }
+               }
+            }
+         }
+         return hasZ_ ? colorPixels : pixels;
+      }
+
+      // Gaussians, cover 2 * sigma
+      final boolean normalize = method == 2;
+      float[] pixels = new float[tileWidth * (y1 - y0)];
+      double[] narrowX = new double[4];
+      double[] narrowY = new double[4];
+      int margin = Math.max(2, (int) (2 * maxSigmaNm_ / renderedPixelInNm)) + 1;
+      int[] bins = binRange(x0, x1, y0, y1, margin, factor);
+      for (int by = bins[2]; by <= bins[3]; by++) {
+         for (int i = binStart_[by * binsX_ + bins[0]];
+               i < binStart_[by * binsX_ + bins[1] + 1]; i++) {
+            double sigma = sigmaNm_[i] / renderedPixelInNm;
+            int halfWidth = (int) (2 * sigmaNm_[i] / renderedPixelInNm);
+            if (halfWidth == 0) {
+               halfWidth = 2;
+            }
+            double xd = factor * xNm_[i];
+            double yd = factor * yNm_[i];
+            int xc = (int) xd;
+            int yc = (int) yd;
+            // only draw Gaussians that fit in the image
+            if (xc <= halfWidth || xc >= fullWidth - halfWidth
+                  || yc <= halfWidth || yc >= fullHeight - halfWidth) {
+               continue;
+            }
+            int xStart = Math.max(x0, xc - halfWidth);
+            int xEnd = Math.min(x1, xc + halfWidth);
+            int yStart = Math.max(y0, yc - halfWidth);
+            int yEnd = Math.min(y1, yc + halfWidth);
+            if (xStart >= xEnd || yStart >= yEnd) {
+               continue;
+            }
+            double[] kx;
+            double[] ky;
+            double sumX = 0.0;
+            double sumY = 0.0;
+            if (sigma < KERNEL_MIN_SIGMA) {
+               kx = narrowX;
+               ky = narrowY;
+               for (int k = 0; k < 2 * halfWidth; k++) {
+                  double dx = xc - halfWidth + k - xd;
+                  double dy = yc - halfWidth + k - yd;
+                  kx[k] = Math.exp(-dx * dx / (2 * sigma * sigma));
+                  ky[k] = Math.exp(-dy * dy / (2 * sigma * sigma));
+                  sumX += kx[k];
+                  sumY += ky[k];
+               }
+            } else {
+               Kernel kernel = getKernel(halfWidth, sigma);
+               int stepX = subPixelStep(xd - xc);
+               int stepY = subPixelStep(yd - yc);
+               kx = kernel.values_[stepX];
+               ky = kernel.values_[stepY];
+               sumX = kernel.sums_[stepX];
+               sumY = kernel.sums_[stepY];
+            }
+            double scale = normalize ? 1.0 / (sumX * sumY) : 1.0;
+            for (int y = yStart; y < yEnd; y++) {
+               double wy = scale * ky[y - yc + halfWidth];
+               int offset = (y - y0) * tileWidth - x0;
+               for (int x = xStart; x < xEnd; x++) {
+                  pixels[offset + x] += (float) (wy * kx[x - xc + halfWidth]);
+               }
+            }
+         }
+      }
+      return pixels;
+   }
+
+   private static int subPixelStep(double fraction) {
+      int step = (int) (fraction * SUBPIXEL_STEPS);
+      return step < 0 ? 0 : (step >= SUBPIXEL_STEPS ? SUBPIXEL_STEPS - 1 : step);
+   }
+
+   private Kernel getKernel(int halfWidth, double sigma) {
+      int sigmaStep = Math.max(1, (int) Math.round(sigma * SIGMA_STEPS));
+      Long key = ((long) halfWidth << 32) | sigmaStep;
+      Kernel kernel = kernels_.get(key);
+      if (kernel == null) {
+         kernel = new Kernel(halfWidth, sigmaStep / (double) SIGMA_STEPS);
+         kernels_.put(key, kernel);
+      }
+      return kernel;
+   }
+
+   /**
+    * Combines red, green and blue counts into a color image, scaled by the
+    * largest count.
+    */
+   private static ColorProcessor toColor(short[][] pixels, int width, int height) {
+      int max = 1;
+      for (int c = 0; c < 3; c++) {
+         for (short value : pixels[c]) {
+            max = Math.max(max, value & 0xffff);
+         }
+      }
+      byte[][] colorPixels = new byte[3][width * height];
+      for (int c = 0; c < 3; c++) {
+         for (int p = 0; p < width * height; p++) {
+            colorPixels[c][p] = (byte) (255.0 * (pixels[c][p] & 0xffff) / max);
+         }
+      }
+      ColorProcessor cp = new ColorProcessor(width, height);
+      cp.setRGB(colorPixels[0], colorPixels[1], colorPixels[2]);
+      return cp;
+   }
+
+   private synchronized Object getCachedTile(TileKey key) {
+      return tiles_.get(key);
+   }
+
+   private synchronized void cacheTile(TileKey key, Object tile) {
+      long bytes = tileBytes(tile);
+      if (bytes > MAX_CACHED_BYTES) {
+         return;
+      }
+      Object old = tiles_.put(key, tile);
+      if (old != null) {
+         cachedBytes_ -= tileBytes(old);
+      }
+      cachedBytes_ += bytes;
+      Iterator<Object> it = tiles_.values().iterator();
+      while (cachedBytes_ > MAX_CACHED_BYTES && it.hasNext()) {
+         cachedBytes_ -= tileBytes(it.next());
+         it.remove();
+      }
+   }
+
+   private static long tileBytes(Object tile) {
+      if (tile instanceof short[][]) {
+         long bytes = 0;
+         for (short[] plane : (short[][]) tile) {
+            bytes += 2L * plane.length;
+         }
+         return bytes;
+      }
+      if (tile instanceof short[]) {
+         return 2L * ((short[]) tile).length;
+      }
+      return 4L * ((float[]) tile).length;
+   }
+
+   /**
+    * Runs the kernel over count tiles, one tile per task.
+    */
+   private void run(int count, ParallelStripes.RangeKernel kernel) {
+      ParallelStripes.run(pool_, count, 1, kernel);
+   }
+}
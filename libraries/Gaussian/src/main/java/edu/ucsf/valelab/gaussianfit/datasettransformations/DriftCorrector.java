@@ -35,10 +35,12 @@ import edu.ucsf.valelab.gaussianfit.DataCollectionForm;
 import edu.ucsf.valelab.gaussianfit.algorithm.JitterDetector;
 import edu.ucsf.valelab.gaussianfit.data.RowData;
 import edu.ucsf.valelab.gaussianfit.data.SpotData;
+import edu.ucsf.valelab.gaussianfit.data.SpotTable;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -86,6 +88,8 @@ public class DriftCorrector {
          @Override
          public void run() {
 
+            final SpotTable table = rowData.getSpotTable();
+
             int mag = (int) (rowData.pixelSizeNm_ / 40.0);
             while (mag % 2 != 0) {
                mag += 1;
@@ -145,15 +149,15 @@ public class DriftCorrector {
                double factor = (double) mag / rowData.pixelSizeNm_;
 
                // make 2D scattergrams of all pixelData
-               for (SpotData spot : rowData.spotList_) {
+               for (int row = 0; row < table.size(); row++) {
                   int j;
                   if (useSlices) {
-                     j = (spot.getSlice() - 1) / framesToCombine;
+                     j = (table.getSlice(row) - 1) / framesToCombine;
                   } else {
-                     j = (spot.getFrame() - 1) / framesToCombine;
+                     j = (table.getFrame(row) - 1) / framesToCombine;
                   }
-                  int x = (int) (factor * spot.getXCenter());
-                  int y = (int) (factor * spot.getYCenter());
+                  int x = (int) (factor * table.getXCenter(row));
+                  int y = (int) (factor * table.getYCenter(row));
                   int index = (y * width) + x;
                   if (index < size && index > 0) {
                      if (pixels[j][index] != -1) {
@@ -200,16 +204,16 @@ public class DriftCorrector {
                ipRef.setPixels(pixelsRef);
 
                // take the first image as reference
-               for (SpotData spot : rowData.spotList_) {
+               for (int row = 0; row < table.size(); row++) {
                   int j;
                   if (useSlices) {
-                     j = (spot.getSlice() - 1) / framesToCombine;
+                     j = (table.getSlice(row) - 1) / framesToCombine;
                   } else {
-                     j = (spot.getFrame() - 1) / framesToCombine;
+                     j = (table.getFrame(row) - 1) / framesToCombine;
                   }
                   if (j == 0) {
-                     int x = (int) (factor * spot.getXCenter());
-                     int y = (int) (factor * spot.getYCenter());
+                     int x = (int) (factor * table.getXCenter(row));
+                     int y = (int) (factor * table.getYCenter(row));
                      int index = (y * width) + x;
                      if (index < size && index > 0) {
                         if (pixelsRef[index] != -1) {
@@ -236,16 +240,16 @@ public class DriftCorrector {
                      ipTest.set(p, 0);
                   }
 
-                  for (SpotData spot : rowData.spotList_) {
+                  for (int row = 0; row < table.size(); row++) {
                      int j;
                      if (useSlices) {
-                        j = (spot.getSlice() - 1) / framesToCombine;
+                        j = (table.getSlice(row) - 1) / framesToCombine;
                      } else {
-                        j = (spot.getFrame() - 1) / framesToCombine;
+                        j = (table.getFrame(row) - 1) / framesToCombine;
                      }
                      if (j == i) {
-                        int x = (int) (factor * spot.getXCenter());
-                        int y = (int) (factor * spot.getYCenter());
+                        int x = (int) (factor * table.getXCenter(row));
+                        int y = (int) (factor * table.getYCenter(row));
                         int index = (y * width) + x;
                         if (index < size && index > 0) {
                            if (pixelsTest[index] != -1) {
@@ -322,20 +326,16 @@ public class DriftCorrector {
                ij.IJ.showStatus("Assembling jitter corrected dataset...");
                ij.IJ.showProgress(1);
 
-               List<SpotData> correctedData = new ArrayList<SpotData>();
-               Iterator it = rowData.spotList_.iterator();
+               SpotTable.Builder correctedData = new SpotTable.Builder(table);
 
                int testNr = 0;
                StageMovementData smd = stagePosMA.get(0);
-               int counter = 0;
-               while (it.hasNext()) {
-                  counter++;
-                  SpotData gs = (SpotData) it.next();
+               for (int row = 0; row < table.size(); row++) {
                   int test;
                   if (useSlices) {
-                     test = gs.getSlice();
+                     test = table.getSlice(row);
                   } else {
-                     test = gs.getFrame();
+                     test = table.getFrame(row);
                   }
                   if (test != testNr) {
                      testNr = test - 1;
@@ -353,26 +353,20 @@ public class DriftCorrector {
                      }
                   }
                   if (found) {
-                     Point2D.Double point = new Point2D.Double(gs.getXCenter() - smd.pos_.x,
-                           gs.getYCenter() - smd.pos_.y);
-                     SpotData gsn = new SpotData(gs);
-                     gsn.setXCenter(point.x);
-                     gsn.setYCenter(point.y);
-                     correctedData.add(gsn);
-                  } else {
-                     correctedData.add(gs);
+                     correctedData.setXCenter(row, table.getXCenter(row) - smd.pos_.x);
+                     correctedData.setYCenter(row, table.getYCenter(row) - smd.pos_.y);
                   }
-
-
                }
 
                // Add transformed data to data overview window
                builder = rowData.copy();
                builder.setName(rowData.getName() + "-Jitter-Correct").
-                     setSpotList(correctedData);
+                     setSpotTable(correctedData.build());
                DataCollectionForm.getInstance().addSpotData(builder);
 
                ij.IJ.showStatus("Finished jitter correction");
+            } catch (IOException ioe) {
+               ij.IJ.error("Failed to store jitter corrected data: " + ioe.getMessage());
             } catch (OutOfMemoryError oom) {
                System.gc();
                ij.IJ.error("Out of Memory");
@@ -30,6 +30,7 @@ either expressed or implied, of the FreeBSD Project.
 package edu.ucsf.valelab.gaussianfit.datasettransformations;
 
 import edu.ucsf.valelab.gaussianfit.data.SpotData;
+import edu.ucsf.valelab.gaussianfit.data.SpotTable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -60,6 +61,18 @@ public class SpotDataFilter {
          minimum_ = min;
          maximum_ = max;
       }
+
+      @Override
+      public boolean equals(Object o) {
+         return o instanceof Extremes && ((Extremes) o).minimum_ == minimum_
+               && ((Extremes) o).maximum_ == maximum_;
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * Double.valueOf(minimum_).hashCode()
+               + Double.valueOf(maximum_).hashCode();
+      }
    }
 
    private final Map<String, Extremes> itemFilter_ = new HashMap<String, Extremes>();
@@ -126,5 +139,63 @@ public class SpotDataFilter {
       return true;
    }
 
+   /**
+    * Indicates whether or not a spot of a table is acceptable.  Same as
+    * filter(SpotData), without creating the SpotData.
+    *
+    * @param table - spot table
+    * @param row   - row of the spot in the table
+    * @return true if spot is acceptable
+    */
+   public boolean filter(SpotTable table, int row) {
+      if (useSigma_) {
+         double sigma = table.getValue(SpotData.Keys.INTEGRALSIGMA, row);
+         if (!Double.isNaN(sigma) && (sigma < sigmaMin_ || sigma > sigmaMax_)) {
+            return false;
+         }
+      }
+      if (useIntensity_) {
+         double intensity = table.getValue(SpotData.Keys.APERTUREINTENSITY, row);
+         if (!Double.isNaN(intensity)
+               && (intensity < intensityMin_ || intensity > intensityMax_)) {
+            return false;
+         }
+      }
+      for (Map.Entry<String, Extremes> entry : itemFilter_.entrySet()) {
+         double value = table.getValue(entry.getKey(), row);
+         if (!Double.isNaN(value) && (value < entry.getValue().minimum_
+               || value > entry.getValue().maximum_)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Filters are equal when they accept the same spots, so that what was
+    * rendered with one filter can be reused for another.
+    */
+   @Override
+   public boolean equals(Object o) {
+      if (!(o instanceof SpotDataFilter)) {
+         return false;
+      }
+      SpotDataFilter other = (SpotDataFilter) o;
+      return useSigma_ == other.useSigma_
+            && (!useSigma_ || (sigmaMin_ == other.sigmaMin_
+                  && sigmaMax_ == other.sigmaMax_))
+            && useIntensity_ == other.useIntensity_
+            && (!useIntensity_ || (intensityMin_ == other.intensityMin_
+                  && intensityMax_ == other.intensityMax_))
+            && itemFilter_.equals(other.itemFilter_);
+   }
+
+   @Override
+   public int hashCode() {
+      int hash = useSigma_ ? 1 : 0;
+      hash = 31 * hash + (useIntensity_ ? 1 : 0);
+      return 31 * hash + itemFilter_.hashCode();
+   }
 
 }
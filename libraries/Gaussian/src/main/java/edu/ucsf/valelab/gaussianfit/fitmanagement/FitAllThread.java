@@ -57,10 +57,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.micromanager.Studio;
 import org.micromanager.data.Coords;
 import org.micromanager.data.Coords.CoordsBuilder;
@@ -72,9 +74,17 @@ import org.micromanager.display.DisplayWindow;
  */
 public class FitAllThread extends GaussianInfo implements Runnable {
 
+   // Spots are handed to the fitting threads in batches of this size, so
+   // that the threads rarely contend for the queue
+   private static final int BATCH_SIZE = 64;
+   // to avoid running out of memory, stop finding spots when this many
+   // are waiting to be fitted
+   private static final int MAX_QUEUED_SPOTS = 100000;
+
    double[] params0_;
    double[] steps_ = new double[5];
    GaussianFitStackThread[] gfsThreads_;
+   private BlockingQueue<List<SpotData>> batches_;
    private volatile Thread t_ = null;
    private static boolean running_ = false;
    private final FindLocalMaxima.FilterType preFilterType_;
@@ -140,8 +150,9 @@ public class FitAllThread extends GaussianInfo implements Runnable {
    @Override
    public void run() {
 
-      // List with spot positions found through the Find Maxima command
-      sourceList_ = new LinkedBlockingQueue<SpotData>();
+      // Batches of spot positions found through the Find Maxima command
+      batches_ = new LinkedBlockingQueue<List<SpotData>>(
+            MAX_QUEUED_SPOTS / BATCH_SIZE);
       resultList_ = Collections.synchronizedList(new ArrayList<SpotData>());
 
       // take the active ImageJ image
@@ -309,7 +320,8 @@ public class FitAllThread extends GaussianInfo implements Runnable {
       gfsThreads_ = new GaussianFitStackThread[nrThreads_];
       Future<?>[] futures = new Future<?>[nrThreads_];
       for (int i = 0; i < nrThreads_; i++) {
-         gfsThreads_[i] = new GaussianFitStackThread(sourceList_, resultList_, siPlus);
+         gfsThreads_[i] = new GaussianFitStackThread(batches_, siPlus,
+               DataCollectionForm.zc_);
          gfsThreads_[i].copy(this);
          futures[i] = threadPool_.submit(gfsThreads_[i]);
       }
@@ -328,6 +340,8 @@ public class FitAllThread extends GaussianInfo implements Runnable {
       }
       int nrImages = nrChannels * siPlus.getNSlices() * siPlus.getNFrames();
       int imageCount = 0;
+      List<SpotData> batch = new ArrayList<SpotData>(BATCH_SIZE);
+      boolean fittersFailed = false;
       try {
          for (int c = 1; c <= siPlus.getNChannels(); c++) {
             if (!running_) {
@@ -342,17 +356,6 @@ public class FitAllThread extends GaussianInfo implements Runnable {
                      if (!running_) {
                         break;
                      }
-                     // to avoid making a gigantic sourceList and running out of memory
-                     // sleep a bit when the sourcesize gets too big
-                     // once we have very fast multi-core computers, this constant can be increased
-                     if (sourceList_.size() > 100000) {
-                        try {
-                           Thread.sleep(1000);
-                        } catch (InterruptedException ex) {
-                           // not sure what to do
-                        }
-                     }
-
                      imageCount++;
                      ij.IJ.showStatus("Processing image " + imageCount);
 
@@ -413,11 +416,10 @@ public class FitAllThread extends GaussianInfo implements Runnable {
 
                            SpotData thisSpot = new SpotData(sp, channel, z, f,
                                  position, j, sC[j][0], sC[j][1]);
-                           try {
-                              sourceList_.put(thisSpot);
-                           } catch (InterruptedException iex) {
-                              Thread.currentThread().interrupt();
-                              throw new RuntimeException("Unexpected interruption");
+                           batch.add(thisSpot);
+                           if (batch.size() >= BATCH_SIZE) {
+                              queueBatch(batch, futures);
+                              batch = new ArrayList<SpotData>(BATCH_SIZE);
                            }
                         }
                      }
@@ -425,28 +427,36 @@ public class FitAllThread extends GaussianInfo implements Runnable {
                }
             }
          }
+         if (!batch.isEmpty()) {
+            queueBatch(batch, futures);
+         }
          // start ProgresBar thread
-         ProgressThread pt = new ProgressThread(sourceList_);
+         ProgressThread pt = new ProgressThread(batches_);
          pt.init();
 
 
       } catch (OutOfMemoryError ome) {
          ij.IJ.error("Out Of Memory");
+      } catch (ExecutionException ee) {
+         fittersFailed = true;
+         ReportingUtils.showError(ee.getCause() != null ? ee.getCause() : ee,
+               "Spot fitting stopped unexpectedly");
       }
 
       // Send working threads signal that we are done:
-      SpotData lastSpot = new SpotData(null, -1, 1, -1, -1, -1, -1, -1);
-      try {
-         sourceList_.put(lastSpot);
-      } catch (InterruptedException iex) {
-         Thread.currentThread().interrupt();
-         throw new RuntimeException("Unexpected interruption");
+      if (!fittersFailed) {
+         try {
+            queueBatch(GaussianFitStackThread.END_OF_SPOTS, futures);
+         } catch (ExecutionException ee) {
+            ReportingUtils.logError(ee, "Fitting threads exited early");
+         }
       }
 
-      // wait for worker threads to finish
+      // wait for worker threads to finish, and merge their results
       for (int i = 0; i < nrThreads_; i++) {
          try {
             futures[i].get();
+            resultList_.addAll(gfsThreads_[i].getResults());
             gfsThreads_[i] = null;
          } catch (ExecutionException | InterruptedException ie) {
          }
@@ -454,10 +464,47 @@ public class FitAllThread extends GaussianInfo implements Runnable {
 
       siPlus.setPosition(shownChannel, shownSlice, shownFrame);
 
-      sourceList_.clear();
+      batches_.clear();
       return nrSpots;
    }
 
+   /**
+    * Hands a batch to the fitting threads.  Blocks while the queue is full,
+    * unless fitting is stopped, in which case the batch is dropped.
+    *
+    * @throws ExecutionException if all fitting threads have exited, so that
+    *     nobody will take the batch; its cause is the exception of the
+    *     thread that failed, if there was one
+    */
+   private void queueBatch(List<SpotData> batch, Future<?>[] workers)
+         throws ExecutionException {
+      try {
+         do {
+            if (batches_.offer(batch, 1, TimeUnit.SECONDS)) {
+               return;
+            }
+            if (allDone(workers)) {
+               for (Future<?> worker : workers) {
+                  worker.get();
+               }
+               throw new ExecutionException("All fitting threads exited", null);
+            }
+         } while (running_);
+      } catch (InterruptedException iex) {
+         Thread.currentThread().interrupt();
+         throw new RuntimeException("Unexpected interruption");
+      }
+   }
+
+   private static boolean allDone(Future<?>[] workers) {
+      for (Future<?> worker : workers) {
+         if (!worker.isDone()) {
+            return false;
+         }
+      }
+      return true;
+   }
+
 
    private class SpotSortComparator implements Comparator {
 
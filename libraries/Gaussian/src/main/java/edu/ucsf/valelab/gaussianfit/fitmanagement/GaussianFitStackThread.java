@@ -32,7 +32,6 @@ either expressed or implied, of the FreeBSD Project.
 package edu.ucsf.valelab.gaussianfit.fitmanagement;
 
 
-import edu.ucsf.valelab.gaussianfit.DataCollectionForm;
 import edu.ucsf.valelab.gaussianfit.algorithm.GaussianFit;
 import edu.ucsf.valelab.gaussianfit.data.GaussianInfo;
 import edu.ucsf.valelab.gaussianfit.data.SpotData;
@@ -40,23 +39,41 @@ import edu.ucsf.valelab.gaussianfit.fitting.ZCalibrator;
 import edu.ucsf.valelab.gaussianfit.utils.ReportingUtils;
 import ij.ImagePlus;
 import ij.process.ImageProcessor;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 
 /**
+ * Fits the spots of batches taken from a shared queue.  Each thread has its
+ * own fitter and its own list of results, so that the threads only meet when
+ * taking a batch.  Results can be collected with getResults() once the
+ * thread is done.
+ *
  * @author nico
  */
 public class GaussianFitStackThread extends GaussianInfo implements Runnable {
 
-   Thread t_;
-   boolean stopNow_ = false;
+   /**
+    * Put on the queue after the last batch.  Threads put it back when they
+    * take it, so that all of them see it.
+    */
+   public static final List<SpotData> END_OF_SPOTS =
+         Collections.unmodifiableList(new ArrayList<SpotData>());
 
-   public GaussianFitStackThread(BlockingQueue<SpotData> sourceList,
-         List<SpotData> resultList, ImagePlus siPlus) {
+   Thread t_;
+   volatile boolean stopNow_ = false;
+   private final BlockingQueue<List<SpotData>> batches_;
+   private final ZCalibrator zc_;
+   private final List<SpotData> results_ = new ArrayList<SpotData>();
+   private int nrFitted_ = 0;
+
+   public GaussianFitStackThread(BlockingQueue<List<SpotData>> batches,
+         ImagePlus siPlus, ZCalibrator zc) {
       siPlus_ = siPlus;
-      sourceList_ = sourceList;
-      resultList_ = resultList;
+      batches_ = batches;
+      zc_ = zc;
    }
 
    public void listDone() {
@@ -79,53 +96,71 @@ public class GaussianFitStackThread extends GaussianInfo implements Runnable {
       }
    }
 
+   /**
+    * @return spots that were fitted and passed the filters; only complete
+    * after the thread finished
+    */
+   public List<SpotData> getResults() {
+      return results_;
+   }
+
+   /**
+    * @return number of spots that were fitted, including rejected ones
+    */
+   public int getNrFitted() {
+      return nrFitted_;
+   }
+
    @Override
    public void run() {
       GaussianFit gs_ = new GaussianFit(super.getShape(), super.getFitMode(),
             super.getUseFixedWidth(), super.getFixedWidthNm() / super.getPixelSize() / 2);
-      ZCalibrator zc = DataCollectionForm.zc_;
 
       while (!stopNow_) {
-         SpotData spot;
-         synchronized (GFSLOCK) {
-            try {
-               spot = sourceList_.take();
-               // Look for signal that we are done, add back to queue if found
-               if (spot.getFrame() == -1) {
-                  sourceList_.add(spot);
-                  return;
-               }
-            } catch (InterruptedException iExp) {
-               ij.IJ.log("Thread interruped  " + Thread.currentThread().getName());
-               return;
-            }
+         List<SpotData> batch;
+         try {
+            batch = batches_.take();
+         } catch (InterruptedException iExp) {
+            ij.IJ.log("Thread interruped  " + Thread.currentThread().getName());
+            return;
+         }
+         // Look for signal that we are done, add back to queue if found
+         if (batch == END_OF_SPOTS) {
+            batches_.offer(batch);
+            return;
          }
 
-         try {
-            // Note: the implementation will try to return a cached version of the ImageProcessor
-            ImageProcessor ip = spot.getSpotProcessor(siPlus_, super.getHalfBoxSize());
-            GaussianFit.Data fitResult = gs_.dogaussianfit(ip, maxIterations_);
-            // Note that the copy constructor will not copy pixel data, so we loose 
-            // those when spot goes out of scope
-            SpotData spotData = SpotDataConverter.convert(spot, fitResult, this, zc);
-
-            if (fitResult.getParms().length > 1 &&
-                  (!useWidthFilter_ ||
-                        (spotData.getWidth() > widthMin_ && spotData.getWidth() < widthMax_))
-                  && (!useNrPhotonsFilter_ ||
-                  (spotData.getIntensity() > nrPhotonsMin_
-                        && spotData.getIntensity() < nrPhotonsMax_))) {
-               resultList_.add(spotData);
+         for (SpotData spot : batch) {
+            if (stopNow_) {
+               return;
             }
+            try {
+               // Note: the implementation will try to return a cached version of the ImageProcessor
+               ImageProcessor ip = spot.getSpotProcessor(siPlus_, super.getHalfBoxSize());
+               GaussianFit.Data fitResult = gs_.dogaussianfit(ip, maxIterations_);
+               nrFitted_++;
+               // Note that the copy constructor will not copy pixel data, so we loose 
+               // those when spot goes out of scope
+               SpotData spotData = SpotDataConverter.convert(spot, fitResult, this, zc_);
+
+               if (fitResult.getParms().length > 1 &&
+                     (!useWidthFilter_ ||
+                           (spotData.getWidth() > widthMin_ && spotData.getWidth() < widthMax_))
+                     && (!useNrPhotonsFilter_ ||
+                     (spotData.getIntensity() > nrPhotonsMin_
+                           && spotData.getIntensity() < nrPhotonsMax_))) {
+                  results_.add(spotData);
+               }
 
 
-         } catch (Exception ex) {
-            ReportingUtils.logError(ex);
-            ReportingUtils.logError("Thread run out of memory  " +
-                  Thread.currentThread().getName());
-            ReportingUtils.showError("Fitter out of memory.\n" +
-                  "Out of memory error");
-            return;
+            } catch (Exception ex) {
+               ReportingUtils.logError(ex);
+               ReportingUtils.logError("Thread run out of memory  " +
+                     Thread.currentThread().getName());
+               ReportingUtils.showError("Fitter out of memory.\n" +
+                     "Out of memory error");
+               return;
+            }
          }
       }
    }
@@ -0,0 +1,120 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:           FFTPlan.java
+//PROJECT:        Micro-Manager
+//SUBSYSTEM:      ImageProcessing library
+//-----------------------------------------------------------------------------
+//
+//AUTHOR:         agent, 2026
+//
+//COPYRIGHT:      agent, 2026
+//
+//LICENSE:        This file is distributed under the BSD license.
+//                License text is included with the source distribution.
+//
+//                This file is distributed in the hope that it will be useful,
+//                but WITHOUT ANY WARRANTY; without even the implied warranty
+//                of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//                IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//                CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//                INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.imageprocessing;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Radix-2 complex FFT of a single length.  The twiddle factors and the
+ * bit reversal permutation are computed once per length, and plans are
+ * cached, so that repeated transforms of the same size only do the
+ * butterflies.  Plans are immutable and can be shared between threads.
+ */
+final class FFTPlan {
+
+   private static final ConcurrentHashMap<Integer, FFTPlan> PLANS =
+         new ConcurrentHashMap<>();
+
+   private final int n_;
+   private final double[] cos_;
+   private final double[] sin_;
+   private final int[] bitReversed_;
+
+   private FFTPlan(int n) {
+      n_ = n;
+      cos_ = new double[n / 2];
+      sin_ = new double[n / 2];
+      for (int i = 0; i < n / 2; i++) {
+         cos_[i] = Math.cos(2.0 * Math.PI * i / n);
+         sin_[i] = Math.sin(2.0 * Math.PI * i / n);
+      }
+      bitReversed_ = new int[n];
+      int bits = Integer.numberOfTrailingZeros(n);
+      for (int i = 0; i < n; i++) {
+         bitReversed_[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+      }
+   }
+
+   /**
+    * @param n length of the transform, a power of two
+    * @return the (cached) plan for transforms of this length
+    */
+   static FFTPlan get(int n) {
+      if (n < 1 || Integer.bitCount(n) != 1) {
+         throw new IllegalArgumentException("FFT length " + n
+               + " is not a power of two");
+      }
+      return PLANS.computeIfAbsent(n, FFTPlan::new);
+   }
+
+   /**
+    * @return the smallest power of two that is at least n
+    */
+   static int nextPowerOf2(int n) {
+      return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+   }
+
+   int length() {
+      return n_;
+   }
+
+   /**
+    * Transforms in place.  The inverse transform is not scaled.
+    *
+    * @param re real parts, of the plan's length
+    * @param im imaginary parts, of the plan's length
+    * @param inverse whether to do the inverse transform
+    */
+   void transform(double[] re, double[] im, boolean inverse) {
+      final int n = n_;
+      for (int i = 0; i < n; i++) {
+         int j = bitReversed_[i];
+         if (j > i) {
+            double t = re[i];
+            re[i] = re[j];
+            re[j] = t;
+            t = im[i];
+            im[i] = im[j];
+            im[j] = t;
+         }
+      }
+      final double sign = inverse ? 1.0 : -1.0;
+      for (int size = 2; size <= n; size <<= 1) {
+         int half = size >> 1;
+         int step = n / size;
+         for (int start = 0; start < n; start += size) {
+            for (int k = 0; k < half; k++) {
+               double wr = cos_[k * step];
+               double wi = sign * sin_[k * step];
+               int a = start + k;
+               int b = a + half;
+               double tr = re[b] * wr - im[b] * wi;
+               double ti = re[b] * wi + im[b] * wr;
+               re[b] = re[a] - tr;
+               im[b] = im[a] - ti;
+               re[a] += tr;
+               im[a] += ti;
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,308 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:           PhaseCorrelator.java
+//PROJECT:        Micro-Manager
+//SUBSYSTEM:      ImageProcessing library
+//-----------------------------------------------------------------------------
+//
+//AUTHOR:         agent, 2026
+//
+//COPYRIGHT:      agent, 2026
+//
+//LICENSE:        This file is distributed under the BSD license.
+//                License text is included with the source distribution.
+//
+//                This file is distributed in the hope that it will be useful,
+//                but WITHOUT ANY WARRANTY; without even the implied warranty
+//                of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//                IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//                CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//                INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.imageprocessing;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import org.micromanager.internal.utils.ParallelStripes;
+
+/**
+ * Measures the translation between two images of the same size by phase
+ * correlation: the normalized cross-power spectrum of the two images is
+ * transformed back, and the position of its peak is the shift.  The peak is
+ * located with sub-pixel precision by fitting a parabola through the peak
+ * and its neighbours along each axis.  This costs O(N log N) for N pixels,
+ * independent of the range of shifts that is searched.
+ *
+ * Images are multiplied by a Hann window (after subtracting their mean),
+ * so that their edges do not correlate, and zero padded to power of two
+ * sizes.  Rows and columns of the transforms are processed in parallel.
+ * The plans of the transforms are cached per size, so creating a correlator
+ * for a size that was used before is cheap.  A correlator keeps work buffers
+ * and is therefore not thread-safe.
+ *
+ * @author agent
+ */
+public final class PhaseCorrelator {
+
+   // Stripes are at least this large, so that the overhead of forking a
+   // task stays small compared to the work
+   static final int MIN_STRIPE_PIXELS = 1 << 14;
+
+   private final int width_;
+   private final int height_;
+   private final int fftWidth_;
+   private final int fftHeight_;
+   private final FFTPlan rowPlan_;
+   private final FFTPlan columnPlan_;
+   private final ForkJoinPool pool_;
+   private final double[] windowX_;
+   private final double[] windowY_;
+
+   private final double[] refRe_;
+   private final double[] refIm_;
+   private final double[] re_;
+   private final double[] im_;
+
+   private int maxShift_ = Integer.MAX_VALUE;
+   private double peakValue_ = 0.0;
+
+   /**
+    * Creates a correlator that runs its transforms on the common pool.
+    *
+    * @param width width of the images that will be correlated
+    * @param height height of the images that will be correlated
+    */
+   public PhaseCorrelator(int width, int height) {
+      this(width, height, ForkJoinPool.commonPool());
+   }
+
+   /**
+    * @param width width of the images that will be correlated
+    * @param height height of the images that will be correlated
+    * @param pool pool to run the transforms on; null to run them on the
+    * calling thread
+    */
+   public PhaseCorrelator(int width, int height, ForkJoinPool pool) {
+      if (width < 1 || height < 1) {
+         throw new IllegalArgumentException("Can not correlate images of "
+               + width + " by " + height + " pixels");
+      }
+      width_ = width;
+      height_ = height;
+      fftWidth_ = FFTPlan.nextPowerOf2(width);
+      fftHeight_ = FFTPlan.nextPowerOf2(height);
+      rowPlan_ = FFTPlan.get(fftWidth_);
+      columnPlan_ = FFTPlan.get(fftHeight_);
+      pool_ = pool;
+      windowX_ = hann(width);
+      windowY_ = hann(height);
+      int size = fftWidth_ * fftHeight_;
+      refRe_ = new double[size];
+      refIm_ = new double[size];
+      re_ = new double[size];
+      im_ = new double[size];
+   }
+
+   private static double[] hann(int n) {
+      double[] window = new double[n];
+      for (int i = 0; i < n; i++) {
+         window[i] = n == 1 ? 1.0 : 0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / (n - 1));
+      }
+      return window;
+   }
+
+   public int getWidth() {
+      return width_;
+   }
+
+   public int getHeight() {
+      return height_;
+   }
+
+   /**
+    * Limits the search for the peak to shifts of at most maxShift pixels
+    * along each axis.  Shifts are always less than half the padded size.
+    *
+    * @param maxShift largest shift (in pixels) to look for
+    */
+   public void setMaxShift(int maxShift) {
+      maxShift_ = Math.max(0, maxShift);
+   }
+
+   /**
+    * @return the height of the correlation peak found by the last call to
+    * correlate(), 1.0 for a perfect match
+    */
+   public double getPeakValue() {
+      return peakValue_;
+   }
+
+   /**
+    * Returns the value of the correlation surface computed by the last call
+    * to correlate(), at a whole pixel shift.
+    *
+    * @param dx shift along x in pixels
+    * @param dy shift along y in pixels
+    * @return correlation at this shift
+    */
+   public double getCorrelation(int dx, int dy) {
+      int x = Math.floorMod(dx, fftWidth_);
+      int y = Math.floorMod(dy, fftHeight_);
+      return re_[y * fftWidth_ + x];
+   }
+
+   /**
+    * Measures by how much the content of image is shifted relative to
+    * reference, that is, image(x, y) is closest to
+    * reference(x - dx, y - dy).
+    *
+    * @param reference width * height pixels of the reference image
+    * @param image width * height pixels of the shifted image
+    * @return the shift (dx, dy) in pixels
+    */
+   public Point2D.Double correlate(float[] reference, float[] image) {
+      load(reference, refRe_, refIm_);
+      load(image, re_, im_);
+      transform(refRe_, refIm_, false);
+      transform(re_, im_, false);
+
+      // normalized cross-power spectrum conj(F_ref) * F_image / |...|
+      final double[] refRe = refRe_;
+      final double[] refIm = refIm_;
+      final double[] re = re_;
+      final double[] im = im_;
+      run(fftWidth_ * fftHeight_, (from, to) -> {
+         for (int i = from; i < to; i++) {
+            double r = refRe[i] * re[i] + refIm[i] * im[i];
+            double c = refRe[i] * im[i] - refIm[i] * re[i];
+            double magnitude = Math.sqrt(r * r + c * c);
+            if (magnitude > 1e-12) {
+               re[i] = r / magnitude;
+               im[i] = c / magnitude;
+            } else {
+               re[i] = 0.0;
+               im[i] = 0.0;
+            }
+         }
+      });
+      transform(re_, im_, true);
+      final double scale = 1.0 / (fftWidth_ * fftHeight_);
+      run(fftWidth_ * fftHeight_, (from, to) -> {
+         for (int i = from; i < to; i++) {
+            re[i] *= scale;
+         }
+      });
+      return findPeak();
+   }
+
+   /**
+    * Copies the image, minus its mean and windowed, into the top left of
+    * the padded buffers.
+    */
+   private void load(float[] pixels, double[] re, double[] im) {
+      if (pixels.length != width_ * height_) {
+         throw new IllegalArgumentException("Image has " + pixels.length
+               + " pixels instead of " + (width_ * height_));
+      }
+      double sum = 0.0;
+      for (float pixel : pixels) {
+         sum += pixel;
+      }
+      final double mean = sum / pixels.length;
+      Arrays.fill(re, 0.0);
+      Arrays.fill(im, 0.0);
+      for (int y = 0; y < height_; y++) {
+         int src = y * width_;
+         int dest = y * fftWidth_;
+         for (int x = 0; x < width_; x++) {
+            re[dest + x] = (pixels[src + x] - mean) * windowX_[x] * windowY_[y];
+         }
+      }
+   }
+
+   private Point2D.Double findPeak() {
+      int limitX = Math.min(maxShift_, fftWidth_ / 2 - 1);
+      int limitY = Math.min(maxShift_, fftHeight_ / 2 - 1);
+      int peakX = 0;
+      int peakY = 0;
+      double peak = Double.NEGATIVE_INFINITY;
+      for (int dy = -limitY; dy <= limitY; dy++) {
+         for (int dx = -limitX; dx <= limitX; dx++) {
+            double value = getCorrelation(dx, dy);
+            if (value > peak) {
+               peak = value;
+               peakX = dx;
+               peakY = dy;
+            }
+         }
+      }
+      peakValue_ = peak;
+      double subX = peakX + parabolicOffset(getCorrelation(peakX - 1, peakY),
+            peak, getCorrelation(peakX + 1, peakY));
+      double subY = peakY + parabolicOffset(getCorrelation(peakX, peakY - 1),
+            peak, getCorrelation(peakX, peakY + 1));
+      return new Point2D.Double(subX, subY);
+   }
+
+   /**
+    * @return position of the vertex of the parabola through (-1, left),
+    * (0, center) and (1, right), relative to the center
+    */
+   static double parabolicOffset(double left, double center, double right) {
+      double curvature = left - 2.0 * center + right;
+      if (curvature >= 0.0) {
+         return 0.0;
+      }
+      double offset = 0.5 * (left - right) / curvature;
+      return Math.max(-0.5, Math.min(0.5, offset));
+   }
+
+   /**
+    * 2D transform in place: all rows, then all columns.
+    */
+   private void transform(final double[] re, final double[] im,
+         final boolean inverse) {
+      final int fftWidth = fftWidth_;
+      final int fftHeight = fftHeight_;
+      run(fftHeight, fftWidth, (from, to) -> {
+         double[] lineRe = new double[fftWidth];
+         double[] lineIm = new double[fftWidth];
+         for (int y = from; y < to; y++) {
+            System.arraycopy(re, y * fftWidth, lineRe, 0, fftWidth);
+            System.arraycopy(im, y * fftWidth, lineIm, 0, fftWidth);
+            rowPlan_.transform(lineRe, lineIm, inverse);
+            System.arraycopy(lineRe, 0, re, y * fftWidth, fftWidth);
+            System.arraycopy(lineIm, 0, im, y * fftWidth, fftWidth);
+         }
+      });
+      run(fftWidth, fftHeight, (from, to) -> {
+         double[] lineRe = new double[fftHeight];
+         double[] lineIm = new double[fftHeight];
+         for (int x = from; x < to; x++) {
+            for (int y = 0; y < fftHeight; y++) {
+               lineRe[y] = re[y * fftWidth + x];
+               lineIm[y] = im[y * fftWidth + x];
+            }
+            columnPlan_.transform(lineRe, lineIm, inverse);
+            for (int y = 0; y < fftHeight; y++) {
+               re[y * fftWidth + x] = lineRe[y];
+               im[y * fftWidth + x] = lineIm[y];
+            }
+         }
+      });
+   }
+
+   private void run(int numPixels, ParallelStripes.RangeKernel kernel) {
+      run(numPixels, 1, kernel);
+   }
+
+   /**
+    * Runs the kernel over count items of itemPixels pixels each, in stripes
+    * of at least MIN_STRIPE_PIXELS pixels.
+    */
+   private void run(int count, int itemPixels,
+         ParallelStripes.RangeKernel kernel) {
+      ParallelStripes.run(pool_, count, MIN_STRIPE_PIXELS / itemPixels, kernel);
+   }
+}
@@ -0,0 +1,112 @@
+package org.micromanager.imageprocessing;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PhaseCorrelatorTest {
+
+   /**
+    * Image with a few Gaussian spots, shifted by (dx, dy).
+    */
+   private static float[] spots(int width, int height, double dx, double dy) {
+      Random random = new Random(42);
+      float[] pixels = new float[width * height];
+      for (int n = 0; n < 12; n++) {
+         double cx = 10 + random.nextDouble() * (width - 20) + dx;
+         double cy = 10 + random.nextDouble() * (height - 20) + dy;
+         double amplitude = 500 + random.nextDouble() * 1000;
+         for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+               double r2 = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+               pixels[y * width + x] += (float) (amplitude * Math.exp(-r2 / 8.0));
+            }
+         }
+      }
+      for (int i = 0; i < pixels.length; i++) {
+         pixels[i] += 100;
+      }
+      return pixels;
+   }
+
+   @Test
+   public void testFFTPlanMatchesDFT() {
+      int n = 16;
+      Random random = new Random(1);
+      double[] re = new double[n];
+      double[] im = new double[n];
+      for (int i = 0; i < n; i++) {
+         re[i] = random.nextDouble();
+         im[i] = random.nextDouble();
+      }
+      double[] fftRe = re.clone();
+      double[] fftIm = im.clone();
+      FFTPlan.get(n).transform(fftRe, fftIm, false);
+      for (int k = 0; k < n; k++) {
+         double sumRe = 0.0;
+         double sumIm = 0.0;
+         for (int t = 0; t < n; t++) {
+            double angle = -2.0 * Math.PI * k * t / n;
+            sumRe += re[t] * Math.cos(angle) - im[t] * Math.sin(angle);
+            sumIm += re[t] * Math.sin(angle) + im[t] * Math.cos(angle);
+         }
+         Assert.assertEquals(sumRe, fftRe[k], 1e-9);
+         Assert.assertEquals(sumIm, fftIm[k], 1e-9);
+      }
+      FFTPlan.get(n).transform(fftRe, fftIm, true);
+      for (int i = 0; i < n; i++) {
+         Assert.assertEquals(re[i], fftRe[i] / n, 1e-9);
+         Assert.assertEquals(im[i], fftIm[i] / n, 1e-9);
+      }
+   }
+
+   @Test
+   public void testPlansAreCached() {
+      Assert.assertSame(FFTPlan.get(64), FFTPlan.get(64));
+      Assert.assertEquals(128, FFTPlan.nextPowerOf2(100));
+      Assert.assertEquals(64, FFTPlan.nextPowerOf2(64));
+   }
+
+   @Test
+   public void testWholePixelShift() {
+      int width = 100;
+      int height = 80;
+      PhaseCorrelator correlator = new PhaseCorrelator(width, height, null);
+      Point2D.Double shift = correlator.correlate(spots(width, height, 0, 0),
+            spots(width, height, 7, -4));
+      Assert.assertEquals(7.0, shift.x, 0.1);
+      Assert.assertEquals(-4.0, shift.y, 0.1);
+   }
+
+   @Test
+   public void testSubPixelShift() {
+      int width = 128;
+      int height = 128;
+      PhaseCorrelator correlator = new PhaseCorrelator(width, height);
+      Point2D.Double shift = correlator.correlate(spots(width, height, 0, 0),
+            spots(width, height, -3.3, 2.6));
+      Assert.assertEquals(-3.3, shift.x, 0.25);
+      Assert.assertEquals(2.6, shift.y, 0.25);
+   }
+
+   @Test
+   public void testMaxShift() {
+      int width = 64;
+      int height = 64;
+      PhaseCorrelator correlator = new PhaseCorrelator(width, height, null);
+      correlator.setMaxShift(3);
+      Point2D.Double shift = correlator.correlate(spots(width, height, 0, 0),
+            spots(width, height, 10, 0));
+      Assert.assertTrue(Math.abs(shift.x) <= 3.5);
+      Assert.assertTrue(Math.abs(shift.y) <= 3.5);
+   }
+
+   @Test
+   public void testParabolicOffset() {
+      Assert.assertEquals(0.0, PhaseCorrelator.parabolicOffset(1, 2, 1), 1e-12);
+      // samples of -(x - 0.25)^2
+      Assert.assertEquals(0.25, PhaseCorrelator.parabolicOffset(
+            -1.5625, -0.0625, -0.5625), 1e-12);
+   }
+}
@@ -1,7 +1,8 @@
 package org.micromanager.acquisition.internal;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.TimeUnit;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 import mmcorej.TaggedImage;
@@ -10,19 +11,24 @@ import org.micromanager.data.Pipeline;
 import org.micromanager.data.PipelineErrorException;
 import org.micromanager.data.internal.DefaultImage;
 import org.micromanager.events.EventManager;
+import org.micromanager.internal.utils.ImageHandoffQueue;
 import org.micromanager.internal.utils.ReportingUtils;
 
 /**
  * This object spawns a new thread that receives images from the acquisition
  * engine and runs them through a Pipeline to the Datastore. It's also
  * responsible for posting the AcquisitionEndedEvent, which it recognizes when
- * it receives the TaggedImageQueue.POISON object.
+ * the ImageHandoffQueue signals the end of the stream (or, for other queues,
+ * when it receives the TaggedImageQueue.POISON object).
+ * Images are taken from the queue in batches, so that bursts of images are
+ * converted and inserted without waking the thread for each one.
  * Functionally this is just glue code between the old acquisition engine and
  * the 2.0 API.
  *
  * @author arthur, modified by Chris Weisiger
  */
 public final class DefaultTaggedImageSink {
+   private static final int MAX_BATCH_SIZE = 256;
 
    private final BlockingQueue<TaggedImage> imageProducingQueue_;
    private final Datastore store_;
@@ -55,17 +61,25 @@ public final class DefaultTaggedImageSink {
          public void run() {
             long t1 = System.currentTimeMillis();
             int imageCount = 0;
+            List<TaggedImage> batch = new ArrayList<TaggedImage>(MAX_BATCH_SIZE);
+            List<DefaultImage> images = new ArrayList<DefaultImage>(MAX_BATCH_SIZE);
             try {
-               while (true) {
-                  TaggedImage tagged = imageProducingQueue_.poll(1, TimeUnit.SECONDS);
-                  if (tagged != null) {
-                     if (TaggedImageQueue.isPoison(tagged)) {
-                        // Acquisition has ended. Clean up under "finally"                        
-                        break;
+               boolean ended = false;
+               while (!ended && takeBatch(batch)) {
+                  try {
+                     for (TaggedImage tagged : batch) {
+                        if (TaggedImageQueue.isPoison(tagged)) {
+                           // Acquisition has ended. Clean up under "finally"
+                           ended = true;
+                           break;
+                        }
+                        images.add(new DefaultImage(tagged));
                      }
-                     try {
+                     // Drop our references to the tagged images, so that
+                     // their memory can be reclaimed as we go
+                     batch.clear();
+                     for (DefaultImage image : images) {
                         ++imageCount;
-                        DefaultImage image = new DefaultImage(tagged);
                         try {
                            pipeline_.insertImage(image);
                         } catch (PipelineErrorException e) {
@@ -76,30 +90,67 @@ public final class DefaultTaggedImageSink {
                                  "There was an error in processing images.");
                            pipeline_.clearExceptions();
                         }
-                     } catch (OutOfMemoryError e) {
-                        handleOutOfMemory(e, sinkFullCallback);
-                        break;
                      }
+                     images.clear();
+                  } catch (OutOfMemoryError e) {
+                     batch.clear();
+                     images.clear();
+                     handleOutOfMemory(e, sinkFullCallback);
+                     break;
                   }
                }
             } catch (Exception ex2) {
                ReportingUtils.logError(ex2);
             } finally {
+               // Whatever made us stop, no more images will be taken; wake
+               // up the producer if it is waiting for space
+               abortQueue();
                pipeline_.halt();
                studioEvents_.post(
                      new DefaultAcquisitionEndedEvent(store_, engine_));
             }
             long t2 = System.currentTimeMillis();
             ReportingUtils.logMessage(imageCount + " images stored in " + (t2 - t1) + " ms.");
+            if (imageProducingQueue_ instanceof ImageHandoffQueue) {
+               ReportingUtils.logMessage("Acquisition image queue: "
+                     + imageProducingQueue_);
+            }
          }
       };
       savingThread.start();
    }
 
+   /**
+    * Wait for images and move them to batch.
+    *
+    * @return false if no more images will arrive
+    */
+   @SuppressWarnings("unchecked")
+   private boolean takeBatch(List<TaggedImage> batch)
+         throws InterruptedException {
+      if (imageProducingQueue_ instanceof ImageHandoffQueue) {
+         return ((ImageHandoffQueue<TaggedImage>) imageProducingQueue_)
+               .awaitBatch(batch, MAX_BATCH_SIZE);
+      }
+      // Other queues end with TaggedImageQueue.POISON
+      batch.add(imageProducingQueue_.take());
+      imageProducingQueue_.drainTo(batch, MAX_BATCH_SIZE - 1);
+      return true;
+   }
+
+   @SuppressWarnings("unchecked")
+   private void abortQueue() {
+      if (imageProducingQueue_ instanceof ImageHandoffQueue) {
+         ((ImageHandoffQueue<TaggedImage>) imageProducingQueue_).abort();
+      }
+   }
+
    // Never called from EDT
    private void handleOutOfMemory(final OutOfMemoryError e,
                                   Runnable sinkFullCallback) {
       ReportingUtils.logError(e);
+      // Release the queued images before anything else
+      abortQueue();
       if (sinkFullCallback != null) {
          sinkFullCallback.run();
       }
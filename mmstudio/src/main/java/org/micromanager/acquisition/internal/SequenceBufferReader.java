@@ -0,0 +1,199 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     mmstudio
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.acquisition.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import mmcorej.CMMCore;
+import mmcorej.TaggedImage;
+import mmcorej.org.json.JSONObject;
+
+/**
+ * Reads images from the Core's sequence buffer in bulk.
+ *
+ * <p>Consumers that take images one at a time with
+ * getRemainingImageCount()/popNextTaggedImage() and sleep in between pay for
+ * a JNI round trip and a sleep for every frame. This class instead waits for
+ * images and then pops all of those available at the time of the call. It
+ * also finds the newest image of each camera channel for live mode.
+ *
+ * <p>The Core does not signal the arrival of images, so waiting for them is
+ * done by parking the calling thread for exponentially increasing intervals
+ * (from {@link #MIN_PARK_NS} up to {@link #MAX_PARK_NS}), which keeps the
+ * latency low during fast streaming without spinning while frames are
+ * sparse. {@link #wakeUp()} makes a waiting thread return early, e.g. when
+ * the acquisition is canceled.
+ *
+ * <p>A reader should only be used by one thread at a time.
+ */
+public final class SequenceBufferReader {
+   static final long MIN_PARK_NS = 20_000;
+   static final long MAX_PARK_NS = 2_000_000;
+
+   private final SequenceBuffer buffer_;
+   private volatile Thread waiter_;
+   private volatile boolean wakeUpRequested_ = false;
+
+   // The calls used to take images from the sequence buffer; separate from
+   // the Core so that they can be replaced in tests
+   interface SequenceBuffer {
+      int getRemainingImageCount();
+
+      TaggedImage popNextTaggedImage() throws Exception;
+
+      TaggedImage getNBeforeLastTaggedImage(long n) throws Exception;
+   }
+
+   public SequenceBufferReader(final CMMCore core) {
+      this(new SequenceBuffer() {
+         @Override
+         public int getRemainingImageCount() {
+            return core.getRemainingImageCount();
+         }
+
+         @Override
+         public TaggedImage popNextTaggedImage() throws Exception {
+            return core.popNextTaggedImage();
+         }
+
+         @Override
+         public TaggedImage getNBeforeLastTaggedImage(long n) throws Exception {
+            return core.getNBeforeLastTaggedImage(n);
+         }
+      });
+   }
+
+   SequenceBufferReader(SequenceBuffer buffer) {
+      buffer_ = buffer;
+   }
+
+   /**
+    * Wait until images are available, then pop all of them (up to
+    * maxImages).
+    *
+    * @param timeoutMs maximum time to wait
+    * @return number of images added to out; 0 on timeout or after wakeUp()
+    * @throws InterruptedException if interrupted while waiting
+    * @throws Exception            if the Core fails to provide an image
+    */
+   public int awaitTaggedImages(List<? super TaggedImage> out, int maxImages,
+                                long timeoutMs) throws Exception {
+      if (!awaitAvailable(timeoutMs)) {
+         return 0;
+      }
+      int available = Math.min(maxImages, buffer_.getRemainingImageCount());
+      for (int i = 0; i < available; ++i) {
+         out.add(buffer_.popNextTaggedImage());
+      }
+      return available;
+   }
+
+   /**
+    * Get the newest image of each camera channel, without removing anything
+    * from the sequence buffer (as needed for live mode).
+    *
+    * <p>Up to maxScan of the most recent images are examined, since with
+    * several cameras one of them may be generating images faster than the
+    * others. An image's channel is its camera channel index when there are
+    * several camera channels, and its position in the scan otherwise.
+    *
+    * @param camera label of the (possibly multi-channel) camera in use
+    * @return newest image of each channel, indexed by channel; channels for
+    *     which no image was found are null
+    */
+   public List<TaggedImage> getNewestTaggedImages(String camera,
+         int numCameraChannels, int maxScan) {
+      List<TaggedImage> result = new ArrayList<>(numCameraChannels);
+      for (int c = 0; c < numCameraChannels; ++c) {
+         result.add(null);
+      }
+      String channelIndexTag = camera + "-CameraChannelIndex";
+      int found = 0;
+      for (int n = 0; n < maxScan && found < numCameraChannels; ++n) {
+         TaggedImage tagged;
+         try {
+            tagged = buffer_.getNBeforeLastTaggedImage(n);
+         } catch (Exception e) {
+            // No image in the sequence buffer.
+            continue;
+         }
+         int channel = n;
+         JSONObject tags = tagged.tags;
+         if (numCameraChannels > 1 && tags != null
+               && tags.has(channelIndexTag)) {
+            channel = tags.optInt(channelIndexTag, n);
+         }
+         if (channel < 0 || channel >= numCameraChannels
+               || result.get(channel) != null) {
+            // Already have a more recent image of this channel.
+            continue;
+         }
+         result.set(channel, tagged);
+         found++;
+      }
+      return result;
+   }
+
+   /**
+    * Make a thread waiting in this reader return early. If no thread is
+    * waiting, the next call that has to wait for images returns at once.
+    */
+   public void wakeUp() {
+      wakeUpRequested_ = true;
+      Thread waiter = waiter_;
+      if (waiter != null) {
+         LockSupport.unpark(waiter);
+      }
+   }
+
+   private boolean awaitAvailable(long timeoutMs) throws InterruptedException {
+      if (buffer_.getRemainingImageCount() > 0) {
+         return true;
+      }
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+      long parkNs = MIN_PARK_NS;
+      waiter_ = Thread.currentThread();
+      try {
+         while (true) {
+            if (wakeUpRequested_) {
+               wakeUpRequested_ = false;
+               return false;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+               return false;
+            }
+            LockSupport.parkNanos(this, Math.min(parkNs, remaining));
+            if (Thread.interrupted()) {
+               throw new InterruptedException();
+            }
+            if (buffer_.getRemainingImageCount() > 0) {
+               return true;
+            }
+            parkNs = Math.min(2 * parkNs, MAX_PARK_NS);
+         }
+      } finally {
+         waiter_ = null;
+      }
+   }
+}
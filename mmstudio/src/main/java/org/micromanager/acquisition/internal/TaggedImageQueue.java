@@ -2,6 +2,7 @@ package org.micromanager.acquisition.internal;
 
 import java.util.concurrent.LinkedBlockingQueue;
 import mmcorej.TaggedImage;
+import org.micromanager.internal.utils.ImageHandoffQueue;
 
 /**
  * @author arthur
@@ -10,7 +11,44 @@ public final class TaggedImageQueue extends LinkedBlockingQueue<TaggedImage> {
    // Poison in the sense of an end-of-stream object. (See http://bit.ly/c1Vgju)
    public static TaggedImage POISON = new TaggedImage(null, null);
 
+   /**
+    * Capacity of the queue between the acquisition engine and the
+    * DefaultTaggedImageSink, in MB. Can be changed with the system property
+    * org.micromanager.acquisition.handoffMB.
+    */
+   public static final long DEFAULT_HANDOFF_CAPACITY_MB = 256;
+
    public static boolean isPoison(TaggedImage image) {
       return ((image.pix == null) && (image.tags == null));
    }
+
+   /**
+    * Create the queue through which the acquisition engine hands images to
+    * the DefaultTaggedImageSink. The producer ends the stream with
+    * ImageHandoffQueue.endOfStream() rather than with POISON.
+    */
+   public static ImageHandoffQueue<TaggedImage> createHandoffQueue() {
+      long capacityMB = Long.getLong("org.micromanager.acquisition.handoffMB",
+            DEFAULT_HANDOFF_CAPACITY_MB);
+      return new ImageHandoffQueue<TaggedImage>(
+            Math.max(1, capacityMB) * 1024 * 1024,
+            TaggedImageQueue::getPixelBytes);
+   }
+
+   /**
+    * @return size of the pixel data of a TaggedImage in bytes
+    */
+   public static long getPixelBytes(TaggedImage image) {
+      Object pix = image.pix;
+      if (pix instanceof byte[]) {
+         return ((byte[]) pix).length;
+      } else if (pix instanceof short[]) {
+         return 2L * ((short[]) pix).length;
+      } else if (pix instanceof int[]) {
+         return 4L * ((int[]) pix).length;
+      } else if (pix instanceof float[]) {
+         return 4L * ((float[]) pix).length;
+      }
+      return 0;
+   }
 }
@@ -21,6 +21,7 @@
 package org.micromanager.data;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -155,4 +156,15 @@ public interface Pipeline {
     * Return the list of Processors used by this Pipeline.
     */
    List<Processor> getProcessors();
+
+   /**
+    * Return timing statistics for each Processor in this Pipeline, in the
+    * same order as getProcessors(). Use these to find out which Processor
+    * limits the rate at which images can be processed.
+    *
+    * @return list of statistics, one per Processor
+    */
+   default List<ProcessorStatistics> getStatistics() {
+      return Collections.emptyList();
+   }
 }
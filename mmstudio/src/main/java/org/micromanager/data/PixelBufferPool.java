@@ -0,0 +1,95 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data;
+
+/**
+ * Recycles pixel arrays that Processors need only for a short while, so
+ * that a Pipeline does not need to allocate new arrays for every frame. Each
+ * Pipeline owns one pool, available through
+ * {@link ProcessorContext#getPixelBufferPool()}.
+ *
+ * <p>Processors may take arrays for their output images and for temporary
+ * results from the pool. Only arrays that the Processor took from the pool
+ * itself and never used in an output image (i.e., temporary results) may be
+ * handed back with {@link #recycle(Object)}. The pixels of input images must
+ * never be recycled, even when the input is not passed on: earlier stages
+ * (e.g. one saving to disk), live displays or a Datastore may still hold the
+ * same array.
+ *
+ * <p>Arrays are not cleared before they are handed out; callers must
+ * overwrite all elements. All methods are thread-safe.
+ */
+public interface PixelBufferPool {
+   /**
+    * A pool that always allocates new arrays and never takes any back. Used
+    * by ProcessorContexts that do not belong to a Pipeline with its own pool.
+    */
+   PixelBufferPool NON_RECYCLING = new PixelBufferPool() {
+      @Override
+      public byte[] getBytes(int length) {
+         return new byte[length];
+      }
+
+      @Override
+      public short[] getShorts(int length) {
+         return new short[length];
+      }
+
+      @Override
+      public float[] getFloats(int length) {
+         return new float[length];
+      }
+
+      @Override
+      public boolean recycle(Object pixels) {
+         return false;
+      }
+   };
+
+   /**
+    * @param length number of elements needed
+    * @return a recycled or newly allocated array of exactly this length
+    */
+   byte[] getBytes(int length);
+
+   /**
+    * @param length number of elements needed
+    * @return a recycled or newly allocated array of exactly this length
+    */
+   short[] getShorts(int length);
+
+   /**
+    * @param length number of elements needed
+    * @return a recycled or newly allocated array of exactly this length
+    */
+   float[] getFloats(int length);
+
+   /**
+    * Return an array to the pool. The caller must not use the array
+    * afterwards, and must not have used it in an Image. Arrays that were not
+    * handed out by this pool, or that have already been returned, are
+    * ignored.
+    *
+    * @param pixels temporary array previously taken from this pool
+    * @return true if the array was taken back
+    */
+   boolean recycle(Object pixels);
+}
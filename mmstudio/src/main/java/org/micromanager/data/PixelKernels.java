@@ -0,0 +1,340 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data;
+
+/**
+ * Primitive operations on raw pixel arrays, as returned by
+ * {@link Image#getRawPixels()}, for Processors that want to avoid the
+ * per-frame allocations of going through ImageJ ImageProcessors.
+ *
+ * <p>Pixels are stored row by row. Gray images use one array element per
+ * pixel (byte[] or short[], interpreted as unsigned); for byte[] images the
+ * number of elements per pixel can be given (4 for RGB32 images), so that
+ * geometric operations move whole pixels. Results are written into arrays
+ * provided by the caller, typically taken from the Pipeline's
+ * {@link PixelBufferPool}; unless noted, the destination must not be the
+ * same array as the source.
+ */
+public final class PixelKernels {
+   private PixelKernels() {
+   }
+
+   /**
+    * @param rotation clockwise rotation in degrees (0, 90, 180 or 270)
+    * @return width of the image after {@link #transform}
+    */
+   public static int transformedWidth(int width, int height, int rotation) {
+      checkRotation(rotation);
+      return rotation == 90 || rotation == 270 ? height : width;
+   }
+
+   /**
+    * @param rotation clockwise rotation in degrees (0, 90, 180 or 270)
+    * @return height of the image after {@link #transform}
+    */
+   public static int transformedHeight(int width, int height, int rotation) {
+      checkRotation(rotation);
+      return rotation == 90 || rotation == 270 ? width : height;
+   }
+
+   /**
+    * Mirror (left to right) and then rotate an image, in a single pass.
+    *
+    * @param src       source pixels
+    * @param width     source width
+    * @param height    source height
+    * @param pixelSize number of array elements per pixel (1, or 4 for RGB32)
+    * @param mirror    whether to flip the image horizontally
+    * @param rotation  clockwise rotation in degrees (0, 90, 180 or 270)
+    * @param dst       destination, of the same length as src
+    */
+   public static void transform(byte[] src, int width, int height,
+                                int pixelSize, boolean mirror, int rotation,
+                                byte[] dst) {
+      checkRotation(rotation);
+      if (!mirror && rotation == 0) {
+         System.arraycopy(src, 0, dst, 0, width * height * pixelSize);
+         return;
+      }
+      int step = destinationStep(width, height, mirror, rotation);
+      for (int y = 0; y < height; ++y) {
+         int d = firstDestination(width, height, y, mirror, rotation);
+         int s = y * width;
+         if (pixelSize == 1) {
+            for (int x = 0; x < width; ++x, ++s, d += step) {
+               dst[d] = src[s];
+            }
+         } else {
+            for (int x = 0; x < width; ++x, ++s, d += step) {
+               System.arraycopy(src, s * pixelSize, dst, d * pixelSize,
+                     pixelSize);
+            }
+         }
+      }
+   }
+
+   /**
+    * Mirror (left to right) and then rotate an image, in a single pass.
+    *
+    * @param src      source pixels
+    * @param width    source width
+    * @param height   source height
+    * @param mirror   whether to flip the image horizontally
+    * @param rotation clockwise rotation in degrees (0, 90, 180 or 270)
+    * @param dst      destination, of the same length as src
+    */
+   public static void transform(short[] src, int width, int height,
+                                boolean mirror, int rotation, short[] dst) {
+      checkRotation(rotation);
+      if (!mirror && rotation == 0) {
+         System.arraycopy(src, 0, dst, 0, width * height);
+         return;
+      }
+      int step = destinationStep(width, height, mirror, rotation);
+      for (int y = 0; y < height; ++y) {
+         int d = firstDestination(width, height, y, mirror, rotation);
+         int s = y * width;
+         for (int x = 0; x < width; ++x, ++s, d += step) {
+            dst[d] = src[s];
+         }
+      }
+   }
+
+   // Destination index (in pixels) of source pixel (0, y). A source pixel
+   // at (mx, y), after mirroring, goes to base + mx * stride.
+   private static int firstDestination(int width, int height, int y,
+                                       boolean mirror, int rotation) {
+      int base;
+      int stride;
+      switch (rotation) {
+         case 90:
+            base = height - 1 - y;
+            stride = height;
+            break;
+         case 180:
+            base = (height - 1 - y) * width + width - 1;
+            stride = -1;
+            break;
+         case 270:
+            base = (width - 1) * height + y;
+            stride = -height;
+            break;
+         default:
+            base = y * width;
+            stride = 1;
+            break;
+      }
+      return mirror ? base + (width - 1) * stride : base;
+   }
+
+   private static int destinationStep(int width, int height, boolean mirror,
+                                      int rotation) {
+      int stride;
+      switch (rotation) {
+         case 90:
+            stride = height;
+            break;
+         case 180:
+            stride = -1;
+            break;
+         case 270:
+            stride = -height;
+            break;
+         default:
+            stride = 1;
+            break;
+      }
+      return mirror ? -stride : stride;
+   }
+
+   private static void checkRotation(int rotation) {
+      if (rotation != 0 && rotation != 90 && rotation != 180
+            && rotation != 270) {
+         throw new IllegalArgumentException("Invalid rotation " + rotation
+               + "; must be 0, 90, 180 or 270 degrees");
+      }
+   }
+
+   /**
+    * Copy a rectangular region of an image.
+    *
+    * @param src       source pixels
+    * @param srcWidth  width of the source image
+    * @param pixelSize number of array elements per pixel (1, or 4 for RGB32)
+    * @param x         left edge of the region
+    * @param y         top edge of the region
+    * @param width     width of the region
+    * @param height    height of the region
+    * @param dst       destination, holding at least width * height pixels
+    */
+   public static void crop(byte[] src, int srcWidth, int pixelSize, int x,
+                           int y, int width, int height, byte[] dst) {
+      for (int row = 0; row < height; ++row) {
+         System.arraycopy(src, ((y + row) * srcWidth + x) * pixelSize,
+               dst, row * width * pixelSize, width * pixelSize);
+      }
+   }
+
+   /**
+    * Copy a rectangular region of an image.
+    *
+    * @param src      source pixels
+    * @param srcWidth width of the source image
+    * @param x        left edge of the region
+    * @param y        top edge of the region
+    * @param width    width of the region
+    * @param height   height of the region
+    * @param dst      destination, holding at least width * height pixels
+    */
+   public static void crop(short[] src, int srcWidth, int x, int y,
+                           int width, int height, short[] dst) {
+      for (int row = 0; row < height; ++row) {
+         System.arraycopy(src, (y + row) * srcWidth + x,
+               dst, row * width, width);
+      }
+   }
+
+   /**
+    * Compute max(0, a - b) for each pixel. dst may be the same array as a.
+    */
+   public static void subtractSaturating(byte[] a, byte[] b, byte[] dst) {
+      for (int i = 0; i < dst.length; ++i) {
+         dst[i] = (byte) Math.max(0, (a[i] & 0xff) - (b[i] & 0xff));
+      }
+   }
+
+   /**
+    * Compute max(0, a - b) for each pixel. dst may be the same array as a.
+    */
+   public static void subtractSaturating(short[] a, short[] b, short[] dst) {
+      for (int i = 0; i < dst.length; ++i) {
+         dst[i] = (short) Math.max(0, (a[i] & 0xffff) - (b[i] & 0xffff));
+      }
+   }
+
+   /**
+    * Compute the ratio of two images, in floating point:
+    * factor * (num - numBackground - numOffset)
+    * / (den - denBackground - denOffset), where the background images (if
+    * given) are subtracted first, without going below zero. Division by
+    * zero results in positive infinity (as in ImageJ).
+    *
+    * @param numBackground background image of the numerator, or null
+    * @param denBackground background image of the denominator, or null
+    * @param dst           destination, of the same length as num
+    */
+   public static void ratio(byte[] num, byte[] numBackground, int numOffset,
+                            byte[] den, byte[] denBackground, int denOffset,
+                            double factor, float[] dst) {
+      for (int i = 0; i < dst.length; ++i) {
+         int n = num[i] & 0xff;
+         if (numBackground != null) {
+            n = Math.max(0, n - (numBackground[i] & 0xff));
+         }
+         int d = den[i] & 0xff;
+         if (denBackground != null) {
+            d = Math.max(0, d - (denBackground[i] & 0xff));
+         }
+         dst[i] = divide(n - numOffset, d - denOffset, factor);
+      }
+   }
+
+   /**
+    * Compute the ratio of two images, in floating point:
+    * factor * (num - numBackground - numOffset)
+    * / (den - denBackground - denOffset), where the background images (if
+    * given) are subtracted first, without going below zero. Division by
+    * zero results in positive infinity (as in ImageJ).
+    *
+    * @param numBackground background image of the numerator, or null
+    * @param denBackground background image of the denominator, or null
+    * @param dst           destination, of the same length as num
+    */
+   public static void ratio(short[] num, short[] numBackground, int numOffset,
+                            short[] den, short[] denBackground, int denOffset,
+                            double factor, float[] dst) {
+      for (int i = 0; i < dst.length; ++i) {
+         int n = num[i] & 0xffff;
+         if (numBackground != null) {
+            n = Math.max(0, n - (numBackground[i] & 0xffff));
+         }
+         int d = den[i] & 0xffff;
+         if (denBackground != null) {
+            d = Math.max(0, d - (denBackground[i] & 0xffff));
+         }
+         dst[i] = divide(n - numOffset, d - denOffset, factor);
+      }
+   }
+
+   private static float divide(int n, int d, double factor) {
+      float quotient = d == 0 ? Float.POSITIVE_INFINITY : (float) n / (float) d;
+      return (float) (quotient * factor);
+   }
+
+   /**
+    * Convert floating point pixels to 16 bits by rounding, clamping them to
+    * 0 - 65535.
+    *
+    * @return the largest value written
+    */
+   public static int toShorts(float[] src, short[] dst) {
+      int max = 0;
+      for (int i = 0; i < src.length; ++i) {
+         float value = src[i];
+         if (value < 0.0f) {
+            value = 0.0f;
+         }
+         if (value > 65535.0f) {
+            value = 65535.0f;
+         }
+         int rounded = (int) (value + 0.5f);
+         dst[i] = (short) rounded;
+         max = Math.max(max, rounded);
+      }
+      return max;
+   }
+
+   /**
+    * Convert floating point pixels to 8 bits, scaling the range of finite
+    * values to 0 - 255 (as ImageJ does when converting to 8 bits).
+    *
+    * @return the largest value written
+    */
+   public static int toBytesScaled(float[] src, byte[] dst) {
+      float min = Float.MAX_VALUE;
+      float max = -Float.MAX_VALUE;
+      for (float value : src) {
+         if (!Float.isInfinite(value) && !Float.isNaN(value)) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+         }
+      }
+      float scale = max > min ? 255.0f / (max - min) : 0.0f;
+      int result = 0;
+      for (int i = 0; i < src.length; ++i) {
+         float scaled = (src[i] - min) * scale + 0.5f;
+         int value = scaled >= 255.0f ? 255 : (scaled > 0.0f ? (int) scaled : 0);
+         dst[i] = (byte) value;
+         result = Math.max(result, value);
+      }
+      return result;
+   }
+}
@@ -54,6 +54,21 @@ public interface Processor {
     */
    void processImage(Image image, ProcessorContext context);
 
+   /**
+    * Declare whether this Processor treats every Image independently, i.e.,
+    * keeps no state between calls to processImage() that affects its
+    * output, and can safely run processImage() on several threads at
+    * once. Asynchronous Pipelines may then process several Images with this
+    * Processor in parallel. The Images output for each input Image are
+    * still passed on in the order in which the inputs arrived.
+    * The default implementation returns false.
+    *
+    * @return true if processImage() may be called concurrently
+    */
+   default boolean isStateless() {
+      return false;
+   }
+
    /**
     * Clean up when processing is finished. At this time no more images are
     * going to be sent to the processImage method. The ProcessorContext is
@@ -41,4 +41,17 @@ public interface ProcessorContext {
     * @return the SummaryMetadata of the Datastore of processed images.
     */
    SummaryMetadata getSummaryMetadata();
+
+   /**
+    * Access the pool of pixel arrays shared by the Processors of the
+    * Pipeline, from which output (and temporary) pixel arrays can be taken
+    * instead of allocating them for every image.
+    * The default implementation returns {@link PixelBufferPool#NON_RECYCLING},
+    * which allocates a new array for every request.
+    *
+    * @return the PixelBufferPool of the Pipeline
+    */
+   default PixelBufferPool getPixelBufferPool() {
+      return PixelBufferPool.NON_RECYCLING;
+   }
 }
@@ -0,0 +1,85 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data;
+
+/**
+ * Timing statistics of one Processor in a Pipeline, as returned by
+ * {@link Pipeline#getStatistics()}. The statistics are updated while the
+ * Pipeline runs; each method returns the current value.
+ *
+ * <p>Times are in milliseconds. Averages are exponentially smoothed over
+ * roughly the last second; quantiles are computed over the most recent
+ * images. When an acquisition falls behind, the processor with the largest
+ * processing time (and the stage before it, with the largest output wait)
+ * is usually the bottleneck.
+ */
+public interface ProcessorStatistics {
+   /**
+    * @return the Processor these statistics are about
+    */
+   Processor getProcessor();
+
+   /**
+    * @return number of images that have been passed to processImage()
+    */
+   long getImagesProcessed();
+
+   /**
+    * @return number of images the Processor has output
+    */
+   long getImagesOutput();
+
+   /**
+    * @return average time images waited in the queue before processing
+    *     started
+    */
+   double getAverageQueueWaitMs();
+
+   /**
+    * @return average time spent in processImage(), not counting the time
+    *     spent handing output images to the next stage
+    */
+   double getAverageProcessingTimeMs();
+
+   /**
+    * Return a quantile of the recent processing times.
+    *
+    * @param q quantile, between 0.0 and 1.0 (e.g. 0.5 for the median)
+    * @return processing time in ms
+    */
+   double getProcessingTimeQuantileMs(double q);
+
+   /**
+    * @return average time spent handing output images to the next stage (or
+    *     the Datastore), i.e. waiting for downstream to accept them
+    */
+   double getAverageOutputWaitMs();
+
+   /**
+    * @return average number of images output per input image
+    */
+   double getAverageFanOut();
+
+   /**
+    * @return number of images currently waiting to be processed
+    */
+   int getQueueDepth();
+}
@@ -124,6 +124,9 @@ public final class BufferTools {
          byte[] arr = bb.array();
          return Arrays.copyOf(arr, arr.length);
       } else if (rawPixels instanceof ByteBuffer) {
+         if (!rawPixels.hasArray()) {
+            return bytesFromBuffer((ByteBuffer) rawPixels);
+         }
          byte[] arr = ((ByteBuffer) rawPixels).array();
          return Arrays.copyOf(arr, arr.length);
       } else {
@@ -178,6 +181,25 @@ public final class BufferTools {
       }
    }
 
+   /**
+    * Creates a new buffer sharing the content of the given one, with
+    * independent position and limit. Byte order is preserved.
+    *
+    * @param buffer ByteBuffer, ShortBuffer, or IntBuffer
+    * @return Duplicate of the buffer
+    */
+   public static Buffer duplicate(Buffer buffer) {
+      if (buffer instanceof ByteBuffer) {
+         ByteBuffer bb = (ByteBuffer) buffer;
+         return bb.duplicate().order(bb.order());
+      } else if (buffer instanceof ShortBuffer) {
+         return ((ShortBuffer) buffer).duplicate();
+      } else if (buffer instanceof IntBuffer) {
+         return ((IntBuffer) buffer).duplicate();
+      }
+      throw new UnsupportedOperationException("Unsupported buffer type");
+   }
+
    /**
     * Wraps a primitive array of either byte[] or short[] into a ByteBuffer.
     *
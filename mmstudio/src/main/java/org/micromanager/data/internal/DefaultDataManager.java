@@ -48,6 +48,7 @@ import org.micromanager.data.SummaryMetadata;
 import org.micromanager.data.internal.multipagetiff.MultipageTiffReader;
 import org.micromanager.data.internal.multipagetiff.StorageMultipageTiff;
 import org.micromanager.data.internal.pipeline.DefaultPipeline;
+import org.micromanager.data.internal.pipeline.StageSettings;
 import org.micromanager.internal.MMStudio;
 import org.micromanager.internal.UserCancelledException;
 import org.micromanager.internal.utils.FileDialogs;
@@ -347,10 +348,15 @@ public final class DefaultDataManager implements DataManager {
    public Pipeline createPipeline(List<ProcessorFactory> factories,
                                   Datastore store, boolean isSynchronous) {
       ArrayList<Processor> processors = new ArrayList<>();
+      ArrayList<StageSettings> stageSettings = new ArrayList<>();
+      StageSettings settings = DefaultPipeline.getShouldRunProcessorsInParallel()
+            ? StageSettings.PARALLEL : StageSettings.DEFAULT;
       for (ProcessorFactory factory : factories) {
          processors.add(factory.createProcessor());
+         stageSettings.add(settings);
       }
-      return new DefaultPipeline(processors, store, isSynchronous);
+      return new DefaultPipeline(processors, store, isSynchronous,
+            stageSettings);
    }
 
    @Override
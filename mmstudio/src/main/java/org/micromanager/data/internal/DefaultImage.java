@@ -25,7 +25,6 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ShortBuffer;
@@ -57,7 +56,9 @@ import org.micromanager.internal.utils.imageanalysis.ImageUtils;
 public final class DefaultImage implements Image {
    private DefaultMetadata metadata_;
    private Coords coords_;
-   private Buffer rawPixels_;
+   // Replaced once by an array-backed buffer when pixels that are not on the
+   // heap (e.g. in a memory-mapped file) are first asked for as an array
+   private volatile Buffer rawPixels_;
 
    // Width of the image, in pixels
    int pixelWidth_;
@@ -96,12 +97,11 @@ public final class DefaultImage implements Image {
     */
    public DefaultImage(TaggedImage tagged, Coords coords, Metadata metadata)
          throws IllegalArgumentException {
-      String json = tagged.tags.toString();
       JsonElement je;
       try {
-         je = new JsonParser().parse(json);
+         je = TaggedImageTags.toGson(tagged.tags);
       } catch (Exception unlikely) {
-         throw new IllegalArgumentException("Failed to parse JSON created from TaggedImage tags",
+         throw new IllegalArgumentException("Failed to convert TaggedImage tags",
                unlikely);
       }
 
@@ -183,7 +183,8 @@ public final class DefaultImage implements Image {
     *
     * <p>Input pixels will be used directly (i.e., they are not copied).
     *
-    * @param pixels   Image pixels.  Should be a Java array of bytes or shorts (not null).
+    * @param pixels   Image pixels.  Should be a Java array of bytes or shorts,
+    *                 or a ByteBuffer or ShortBuffer (not null).
     * @param coords   Coords to be used for this new image (can be null).
     * @param metadata Metadata to be used this new image (can be null).
     * @throws IllegalArgumentException
@@ -197,9 +198,9 @@ public final class DefaultImage implements Image {
       coords_ = coords == null ? Coordinates.builder().build() : coords;
 
       int bpc;
-      if (pixels instanceof byte[]) {
+      if (pixels instanceof byte[] || pixels instanceof ByteBuffer) {
          bpc = 1;
-      } else if (pixels instanceof short[]) {
+      } else if (pixels instanceof short[] || pixels instanceof ShortBuffer) {
          bpc = 2;
       } else if (pixels instanceof int[] && bytesPerPixel == 4
             && numComponents == 3) {
@@ -208,7 +209,12 @@ public final class DefaultImage implements Image {
          throw new UnsupportedOperationException("Unsupported pixel data type");
       }
 
-      rawPixels_ = BufferTools.wrapArray(pixels, bpc);
+      if (pixels instanceof Buffer) {
+         // E.g. a read-only slice of a memory-mapped file
+         rawPixels_ = (Buffer) pixels;
+      } else {
+         rawPixels_ = BufferTools.wrapArray(pixels, bpc);
+      }
 
       if (rawPixels_ == null || rawPixels_.capacity() < width * height) {
          throw new IllegalArgumentException("Invalid pixel data " + pixels);
@@ -230,13 +236,19 @@ public final class DefaultImage implements Image {
       metadata_ = (DefaultMetadata) metadata;
       coords_ = coords;
 
-      int bytesPerComponent = 0;
-      if (source.getRawPixels() instanceof byte[]) {
-         bytesPerComponent = 1;
-      } else if (source.getRawPixels() instanceof short[]) {
-         bytesPerComponent = 2;
+      if (source instanceof DefaultImage
+            && !((DefaultImage) source).getPixelBuffer().hasArray()) {
+         // Share (rather than copy) buffers that are not backed by an array
+         rawPixels_ = BufferTools.duplicate(((DefaultImage) source).getPixelBuffer());
+      } else {
+         int bytesPerComponent = 0;
+         if (source.getRawPixels() instanceof byte[]) {
+            bytesPerComponent = 1;
+         } else if (source.getRawPixels() instanceof short[]) {
+            bytesPerComponent = 2;
+         }
+         rawPixels_ = BufferTools.wrapArray(source.getRawPixels(), bytesPerComponent);
       }
-      rawPixels_ = BufferTools.wrapArray(source.getRawPixels(), bytesPerComponent);
 
       if (rawPixels_.capacity() == 0) {
          throw new IllegalArgumentException("Pixel data has length 0.");
@@ -289,10 +301,21 @@ public final class DefaultImage implements Image {
     */
    @Override
    public Object getRawPixels() {
-      if (rawPixels_.hasArray()) {
-         return rawPixels_.array();
+      Buffer pixels = rawPixels_;
+      if (!pixels.hasArray()) {
+         // Copy the pixels only once; later calls return the same array, as
+         // they do for images that were created from an array
+         synchronized (this) {
+            pixels = rawPixels_;
+            if (!pixels.hasArray()) {
+               Object array = BufferTools.arrayFromBuffer(pixels);
+               pixels = BufferTools.wrapArray(array,
+                     array instanceof short[] ? 2 : 1);
+               rawPixels_ = pixels;
+            }
+         }
       }
-      return BufferTools.arrayFromBuffer(rawPixels_);
+      return pixels.array();
    }
 
    @Override
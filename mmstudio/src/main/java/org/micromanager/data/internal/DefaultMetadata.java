@@ -42,9 +42,11 @@ import static org.micromanager.data.internal.PropertyKey.Z_POSITION_UM;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.util.UUID;
+import java.util.function.Supplier;
 import org.micromanager.PropertyMap;
 import org.micromanager.PropertyMaps;
 import org.micromanager.data.Metadata;
+import org.micromanager.internal.utils.ReportingUtils;
 
 /**
  * This class holds the metadata for ImagePlanes. It is intended to be
@@ -207,7 +209,9 @@ public final class DefaultMetadata implements Metadata {
    }
 
 
-   private final PropertyMap pmap_;
+   // Null until decoded when created through createLazily()
+   private volatile PropertyMap pmap_;
+   private Supplier<PropertyMap> decoder_;
 
    public DefaultMetadata(PropertyMap pmap) {
       pmap_ = pmap;
@@ -238,19 +242,60 @@ public final class DefaultMetadata implements Metadata {
       getFileName();
    }
 
+   private DefaultMetadata(Supplier<PropertyMap> decoder) {
+      decoder_ = decoder;
+   }
+
+   /**
+    * Create a Metadata whose content is decoded only when it is first
+    * accessed. This allows e.g. the raw JSON of images read from disk to be
+    * kept around without paying the cost of parsing it when only the pixels
+    * are needed.
+    *
+    * <p>The decoder is called at most once. If it fails, or produces a
+    * PropertyMap with invalid value types, the error is logged and the
+    * Metadata will be empty.
+    *
+    * @param decoder Produces the PropertyMap backing this Metadata
+    * @return Lazily decoded Metadata
+    */
+   public static DefaultMetadata createLazily(Supplier<PropertyMap> decoder) {
+      return new DefaultMetadata(decoder);
+   }
+
+   private PropertyMap pmap() {
+      PropertyMap pmap = pmap_;
+      if (pmap != null) {
+         return pmap;
+      }
+      synchronized (this) {
+         if (pmap_ == null) {
+            try {
+               // Run the format checks of the eager constructor
+               pmap_ = new DefaultMetadata(decoder_.get()).pmap_;
+            } catch (RuntimeException e) {
+               ReportingUtils.logError(e, "Failed to decode image metadata");
+               pmap_ = PropertyMaps.emptyPropertyMap();
+            }
+            decoder_ = null;
+         }
+         return pmap_;
+      }
+   }
+
    @Override
    public Builder copyBuilderPreservingUUID() {
-      return new Builder(pmap_);
+      return new Builder(pmap());
    }
 
    @Override
    public Builder copyBuilderWithNewUUID() {
-      return new Builder(pmap_).generateUUID();
+      return new Builder(pmap()).generateUUID();
    }
 
    @Override
    public Builder copyBuilderRemovingUUID() {
-      return new Builder(pmap_).uuid(null);
+      return new Builder(pmap()).uuid(null);
    }
 
    @Override
@@ -265,53 +310,53 @@ public final class DefaultMetadata implements Metadata {
    }
 
    public PropertyMap toPropertyMap() {
-      return pmap_;
+      return pmap();
    }
 
    @Override
    public UUID getUUID() {
-      return pmap_.getUUID(PropertyKey.UUID.key(), null);
+      return pmap().getUUID(PropertyKey.UUID.key(), null);
    }
 
    @Override
    public Integer getBitDepth() {
-      return pmap_.containsKey(BIT_DEPTH.key())
-            ? pmap_.getInteger(BIT_DEPTH.key(), 0) : null;
+      return pmap().containsKey(BIT_DEPTH.key())
+            ? pmap().getInteger(BIT_DEPTH.key(), 0) : null;
    }
 
    @Override
    public Double getExposureMs() {
-      return pmap_.containsKey(EXPOSURE_MS.key())
-            ? pmap_.getDouble(EXPOSURE_MS.key(), Double.NaN) : null;
+      return pmap().containsKey(EXPOSURE_MS.key())
+            ? pmap().getDouble(EXPOSURE_MS.key(), Double.NaN) : null;
    }
 
    @Override
    @Deprecated
    public Double getElapsedTimeMs() {
-      return pmap_.containsKey(ELAPSED_TIME_MS.key())
-            ? pmap_.getDouble(ELAPSED_TIME_MS.key(), Double.NaN) : null;
+      return pmap().containsKey(ELAPSED_TIME_MS.key())
+            ? pmap().getDouble(ELAPSED_TIME_MS.key(), Double.NaN) : null;
    }
 
    @Override
    public double getElapsedTimeMs(double exposureMs) {
-      return pmap_.getDouble(ELAPSED_TIME_MS.key(), exposureMs);
+      return pmap().getDouble(ELAPSED_TIME_MS.key(), exposureMs);
    }
 
    @Override
    public boolean hasElapsedTimeMs() {
-      return pmap_.containsKey(ELAPSED_TIME_MS.key());
+      return pmap().containsKey(ELAPSED_TIME_MS.key());
    }
 
    @Override
    public Integer getBinning() {
-      return pmap_.containsKey(BINNING.key())
-            ? pmap_.getInteger(BINNING.key(), 0) : null;
+      return pmap().containsKey(BINNING.key())
+            ? pmap().getInteger(BINNING.key(), 0) : null;
    }
 
    @Override
    public Long getImageNumber() {
-      return pmap_.containsKey(IMAGE_NUMBER.key())
-            ? pmap_.getLong(IMAGE_NUMBER.key(), 0L) : null;
+      return pmap().containsKey(IMAGE_NUMBER.key())
+            ? pmap().getLong(IMAGE_NUMBER.key(), 0L) : null;
    }
 
    /**
@@ -321,82 +366,82 @@ public final class DefaultMetadata implements Metadata {
    @Override
    @Deprecated
    public String getPositionName() {
-      return pmap_.getString(POSITION_NAME.key(), null);
+      return pmap().getString(POSITION_NAME.key(), null);
    }
 
    @Override
    public String getPositionName(String defaultPosName) {
-      return pmap_.getString(POSITION_NAME.key(), defaultPosName);
+      return pmap().getString(POSITION_NAME.key(), defaultPosName);
    }
 
    @Override
    public boolean hasPositionName() {
-      return pmap_.containsKey(POSITION_NAME.key());
+      return pmap().containsKey(POSITION_NAME.key());
    }
 
    @Override
    public Double getXPositionUm() {
-      return pmap_.containsKey(X_POSITION_UM.key())
-            ? pmap_.getDouble(X_POSITION_UM.key(), Double.NaN) : null;
+      return pmap().containsKey(X_POSITION_UM.key())
+            ? pmap().getDouble(X_POSITION_UM.key(), Double.NaN) : null;
    }
 
    @Override
    public Double getYPositionUm() {
-      return pmap_.containsKey(Y_POSITION_UM.key())
-            ? pmap_.getDouble(Y_POSITION_UM.key(), Double.NaN) : null;
+      return pmap().containsKey(Y_POSITION_UM.key())
+            ? pmap().getDouble(Y_POSITION_UM.key(), Double.NaN) : null;
    }
 
    @Override
    public Double getZPositionUm() {
-      return pmap_.containsKey(Z_POSITION_UM.key())
-            ? pmap_.getDouble(Z_POSITION_UM.key(), Double.NaN) : null;
+      return pmap().containsKey(Z_POSITION_UM.key())
+            ? pmap().getDouble(Z_POSITION_UM.key(), Double.NaN) : null;
    }
 
    @Override
    public Double getPixelSizeUm() {
-      return pmap_.containsKey(PIXEL_SIZE_UM.key())
-            ? pmap_.getDouble(PIXEL_SIZE_UM.key(), Double.NaN) : null;
+      return pmap().containsKey(PIXEL_SIZE_UM.key())
+            ? pmap().getDouble(PIXEL_SIZE_UM.key(), Double.NaN) : null;
    }
 
    @Override
    public AffineTransform getPixelSizeAffine() {
-      return pmap_.getAffineTransform(PIXEL_SIZE_AFFINE.key(), null);
+      return pmap().getAffineTransform(PIXEL_SIZE_AFFINE.key(), null);
    }
 
    @Override
    public String getCamera() {
-      return pmap_.getString(CAMERA.key(), null);
+      return pmap().getString(CAMERA.key(), null);
    }
 
    @Override
    public String getReceivedTime() {
-      return pmap_.getString(RECEIVED_TIME.key(), null);
+      return pmap().getString(RECEIVED_TIME.key(), null);
    }
 
    @Override
    public Rectangle getROI() {
-      return pmap_.getRectangle(ROI.key(), null);
+      return pmap().getRectangle(ROI.key(), null);
    }
 
    @Override
    public Double getPixelAspect() {
-      return pmap_.containsKey(PIXEL_ASPECT.key())
-            ? pmap_.getDouble(PIXEL_ASPECT.key(), Double.NaN) : null;
+      return pmap().containsKey(PIXEL_ASPECT.key())
+            ? pmap().getDouble(PIXEL_ASPECT.key(), Double.NaN) : null;
    }
 
    @Override
    public PropertyMap getScopeData() {
-      return pmap_.getPropertyMap(SCOPE_DATA.key(), PropertyMaps.emptyPropertyMap());
+      return pmap().getPropertyMap(SCOPE_DATA.key(), PropertyMaps.emptyPropertyMap());
    }
 
    @Override
    public PropertyMap getUserData() {
-      return pmap_.getPropertyMap(USER_DATA.key(), PropertyMaps.emptyPropertyMap());
+      return pmap().getPropertyMap(USER_DATA.key(), PropertyMaps.emptyPropertyMap());
    }
 
    @Override
    public String getFileName() {
-      return pmap_.getString(FILE_NAME.key(), null);
+      return pmap().getString(FILE_NAME.key(), null);
    }
 
    @Override
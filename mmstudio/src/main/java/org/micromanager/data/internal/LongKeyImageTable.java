@@ -0,0 +1,189 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.micromanager.data.Image;
+
+/**
+ * Hash table from primitive long keys to images, with lock-free reads.
+ *
+ * <p>Open addressing with linear probing. Writes (put and remove) must be
+ * serialized by the caller; reads may run concurrently with a write and with
+ * each other, and never block. A slot's key is written before its value, and
+ * readers check the value first, so a reader that sees a value also sees its
+ * key. Removed entries leave a marker behind until the next resize, which
+ * copies the live entries into a new table and publishes it at once.
+ */
+final class LongKeyImageTable {
+   private static final Object REMOVED = new Object();
+   private static final int INITIAL_CAPACITY = 64;
+
+   private static final class Table {
+      final AtomicLongArray keys_;
+      final AtomicReferenceArray<Object> values_;
+      final int mask_;
+
+      Table(int capacity) {
+         keys_ = new AtomicLongArray(capacity);
+         values_ = new AtomicReferenceArray<Object>(capacity);
+         mask_ = capacity - 1;
+      }
+
+      int capacity() {
+         return mask_ + 1;
+      }
+   }
+
+   private volatile Table table_ = new Table(INITIAL_CAPACITY);
+   private volatile int size_ = 0;
+   // Slots holding an entry or a REMOVED marker; only accessed by writers
+   private int usedSlots_ = 0;
+
+   private static int firstSlot(long key, int mask) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32)) & mask;
+   }
+
+   Image get(long key) {
+      Table table = table_;
+      for (int i = firstSlot(key, table.mask_); ; i = (i + 1) & table.mask_) {
+         Object value = table.values_.get(i);
+         if (value == null) {
+            return null;
+         }
+         if (table.keys_.get(i) == key) {
+            return value == REMOVED ? null : (Image) value;
+         }
+      }
+   }
+
+   /**
+    * Insert or replace an entry. Not to be called concurrently with put() or
+    * remove().
+    *
+    * @return the image previously stored under key, or null
+    */
+   Image put(long key, Image image) {
+      if (image == null) {
+         throw new NullPointerException("Null image");
+      }
+      Table table = table_;
+      int slot = findSlot(table, key);
+      Object previous = table.values_.get(slot);
+      if (previous == null) {
+         if (2 * (usedSlots_ + 1) > table.capacity()) {
+            table = resize(2 * (size_ + 1));
+            slot = findSlot(table, key);
+         }
+         usedSlots_++;
+         table.keys_.set(slot, key);
+      }
+      table.values_.set(slot, image);
+      if (previous == null || previous == REMOVED) {
+         size_ = size_ + 1;
+         return null;
+      }
+      return (Image) previous;
+   }
+
+   /**
+    * Remove an entry. Not to be called concurrently with put() or remove().
+    *
+    * @return the removed image, or null if there was none
+    */
+   Image remove(long key) {
+      Table table = table_;
+      int slot = findSlot(table, key);
+      Object previous = table.values_.get(slot);
+      if (previous == null || previous == REMOVED) {
+         return null;
+      }
+      table.values_.set(slot, REMOVED);
+      size_ = size_ - 1;
+      return (Image) previous;
+   }
+
+   int size() {
+      return size_;
+   }
+
+   /**
+    * Remove all entries. Not to be called concurrently with put() or
+    * remove().
+    */
+   void clear() {
+      usedSlots_ = 0;
+      size_ = 0;
+      table_ = new Table(INITIAL_CAPACITY);
+   }
+
+   /**
+    * Return the images in the table at the time of the call. Entries added or
+    * removed concurrently may or may not be included.
+    */
+   List<Image> values() {
+      Table table = table_;
+      List<Image> result = new ArrayList<Image>(size_);
+      for (int i = 0; i < table.capacity(); ++i) {
+         Object value = table.values_.get(i);
+         if (value != null && value != REMOVED) {
+            result.add((Image) value);
+         }
+      }
+      return result;
+   }
+
+   // The slot holding key, or the empty slot where it would be inserted
+   private static int findSlot(Table table, long key) {
+      for (int i = firstSlot(key, table.mask_); ; i = (i + 1) & table.mask_) {
+         if (table.values_.get(i) == null || table.keys_.get(i) == key) {
+            return i;
+         }
+      }
+   }
+
+   private Table resize(int minEntries) {
+      int capacity = INITIAL_CAPACITY;
+      while (capacity < 2 * minEntries) {
+         capacity *= 2;
+      }
+      Table old = table_;
+      Table table = new Table(capacity);
+      int used = 0;
+      for (int i = 0; i < old.capacity(); ++i) {
+         Object value = old.values_.get(i);
+         if (value != null && value != REMOVED) {
+            long key = old.keys_.get(i);
+            int slot = findSlot(table, key);
+            table.keys_.set(slot, key);
+            table.values_.set(slot, value);
+            used++;
+         }
+      }
+      usedSlots_ = used;
+      table_ = table;
+      return table;
+   }
+}
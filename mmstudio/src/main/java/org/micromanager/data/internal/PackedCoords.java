@@ -0,0 +1,89 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal;
+
+import org.micromanager.data.Coords;
+
+/**
+ * Packs Coords on the standard axes into a single long, for use as a hash
+ * key that is much cheaper to hash and compare than the Coords itself.
+ *
+ * <p>The time point gets 23 bits, the stage position 16 bits, and the Z
+ * slice and channel 12 bits each, so that packed keys are never negative.
+ * Coords with other axes, or with indices that do not fit, cannot be packed.
+ * Since Coords do not contain axes with index 0, a missing axis and index 0
+ * pack the same way, as they should.
+ */
+final class PackedCoords {
+   static final long NOT_PACKABLE = -1L;
+
+   private static final String[] AXES = {
+         Coords.TIME_POINT, Coords.STAGE_POSITION, Coords.Z_SLICE, Coords.CHANNEL};
+   private static final int[] SHIFTS = {40, 24, 12, 0};
+   private static final int[] MAX_INDICES = {
+         (1 << 23) - 1, (1 << 16) - 1, (1 << 12) - 1, (1 << 12) - 1};
+
+   private PackedCoords() {
+   }
+
+   private static int slotOf(String axis) {
+      for (int slot = 0; slot < AXES.length; ++slot) {
+         if (AXES[slot].equals(axis)) {
+            return slot;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * @return the packed key, or NOT_PACKABLE
+    */
+   static long pack(Coords coords) {
+      long key = 0;
+      for (String axis : coords.getAxes()) {
+         int slot = slotOf(axis);
+         if (slot < 0) {
+            return NOT_PACKABLE;
+         }
+         int index = coords.getIndex(axis);
+         if (index < 0 || index > MAX_INDICES[slot]) {
+            return NOT_PACKABLE;
+         }
+         key |= (long) index << SHIFTS[slot];
+      }
+      return key;
+   }
+
+   /**
+    * Return the bits of packed keys that hold the given axes. Axes that are
+    * not packed are ignored.
+    */
+   static long maskFor(String... axes) {
+      long mask = 0;
+      for (String axis : axes) {
+         int slot = slotOf(axis);
+         if (slot >= 0) {
+            mask |= (long) MAX_INDICES[slot] << SHIFTS[slot];
+         }
+      }
+      return mask;
+   }
+}
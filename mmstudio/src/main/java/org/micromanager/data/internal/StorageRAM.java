@@ -23,10 +23,11 @@ package org.micromanager.data.internal;
 import com.google.common.eventbus.Subscribe;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import org.micromanager.data.Coords;
 import org.micromanager.data.DataProviderHasNewSummaryMetadataEvent;
 import org.micromanager.data.Datastore;
@@ -36,20 +37,32 @@ import org.micromanager.data.SummaryMetadata;
 
 
 /**
- * Simple RAM-based storage for Datastores. Methods that interact with the
- * HashMap that is our image storage are synchronized.
- * TODO: coordsToImage_ can be set to null in the close function
- * if any of the member functions are called after "close", a null pointer exception
- * will follow.  We can either check for null whenever coordsToImage is used,
- * or make sure that no member is ever called after the close function
- * (which may be very difficult to guarantee).
+ * Simple RAM-based storage for Datastores.
+ *
+ * <p>Images whose Coords only use the standard axes are kept in a hash table
+ * keyed by the Coords packed into a long (see PackedCoords); any others in a
+ * ConcurrentHashMap keyed by Coords. Lookups for images ignoring some axes
+ * (as done by the display for all channels at a position) use an index from
+ * the packed key with those axes cleared to the keys of the matching images,
+ * created the first time a given set of axes is ignored.
+ *
+ * <p>Reads take no locks, so that the display does not contend with the
+ * thread adding images. Writes (putImage() and deleteImage()) are
+ * synchronized.
  */
 public final class StorageRAM implements RewritableStorage {
-   private HashMap<Coords, Image> coordsToImage_;
-   private Coords maxIndex_;
-   private SummaryMetadata summaryMetadata_;
-   private final Set<String> axesInUse_;
-   private Image anyImage_;
+   private final LongKeyImageTable packedImages_ = new LongKeyImageTable();
+   private final ConcurrentHashMap<Coords, Image> unpackedImages_ =
+         new ConcurrentHashMap<>();
+   // By mask of ignored axes: packed key with those axes cleared -> packed
+   // keys of images. Modified only while synchronized on this.
+   private final ConcurrentHashMap<Long, ConcurrentHashMap<Long, Set<Long>>>
+         ignoringIndexes_ = new ConcurrentHashMap<>();
+   private volatile boolean isClosed_ = false;
+   private volatile Coords maxIndex_;
+   private volatile SummaryMetadata summaryMetadata_;
+   private final Set<String> axesInUse_ = ConcurrentHashMap.newKeySet();
+   private volatile Image anyImage_;
 
    /**
     * Image Data Storage located in RAM.
@@ -57,9 +70,7 @@ public final class StorageRAM implements RewritableStorage {
     * @param store Datastore that "owns" this storage.
     */
    public StorageRAM(Datastore store) {
-      coordsToImage_ = new HashMap<>();
       maxIndex_ = new DefaultCoords.Builder().build();
-      axesInUse_ = new TreeSet<>();
       summaryMetadata_ = (new DefaultSummaryMetadata.Builder()).build();
       // It is imperative that we be notified of new images before anyone who
       // wants to retrieve the images from the store is notified.
@@ -71,22 +82,48 @@ public final class StorageRAM implements RewritableStorage {
     */
    @Override
    public synchronized void putImage(Image image) {
+      if (isClosed_) {
+         return;
+      }
       Image imageExisting = getAnyImage();
       if (imageExisting != null) {
          ImageSizeChecker.checkImageSizes(image, imageExisting);
       }
       Coords coords = image.getCoords();
-      coordsToImage_.put(coords, image);
+      long key = PackedCoords.pack(coords);
+      if (key == PackedCoords.NOT_PACKABLE) {
+         unpackedImages_.put(coords, image);
+      } else if (packedImages_.put(key, image) == null) {
+         for (Map.Entry<Long, ConcurrentHashMap<Long, Set<Long>>> e
+               : ignoringIndexes_.entrySet()) {
+            addToIndex(e.getValue(), e.getKey(), key);
+         }
+      }
+      if (anyImage_ == null) {
+         anyImage_ = image;
+      }
+      Coords maxIndex = maxIndex_;
       for (String axis : coords.getAxes()) {
          axesInUse_.add(axis);
-         if (maxIndex_.getIndex(axis) < coords.getIndex(axis)) {
+         if (maxIndex.getIndex(axis) < coords.getIndex(axis)) {
             // Either this image is further along on this axis, or we have
             // no index for this axis yet.
-            maxIndex_ = maxIndex_.copyBuilder()
+            maxIndex = maxIndex.copyBuilder()
                   .index(axis, coords.getIndex(axis))
                   .build();
          }
       }
+      maxIndex_ = maxIndex;
+   }
+
+   private static void addToIndex(ConcurrentHashMap<Long, Set<Long>> index,
+                                  long mask, long key) {
+      Set<Long> keys = index.get(key & ~mask);
+      if (keys == null) {
+         keys = ConcurrentHashMap.newKeySet();
+         index.put(key & ~mask, keys);
+      }
+      keys.add(key);
    }
 
    @Override
@@ -96,40 +133,33 @@ public final class StorageRAM implements RewritableStorage {
    }
 
    @Override
-   public synchronized Image getImage(Coords coords) {
-      if (coordsToImage_ != null && coordsToImage_.containsKey(coords)) {
-         return coordsToImage_.get(coords);
+   public Image getImage(Coords coords) {
+      if (isClosed_) {
+         return null;
       }
-      return null;
+      long key = PackedCoords.pack(coords);
+      if (key == PackedCoords.NOT_PACKABLE) {
+         return unpackedImages_.get(coords);
+      }
+      return packedImages_.get(key);
    }
 
    @Override
    public Image getAnyImage() {
-      if (anyImage_ != null) {
-         return anyImage_;
-      }
-      synchronized (this) {
-         if (coordsToImage_ != null && coordsToImage_.size() > 0) {
-            Coords coords = new ArrayList<>(coordsToImage_.keySet()).get(0);
-            anyImage_ = coordsToImage_.get(coords);
-            return anyImage_;
-         }
-      }
-      return null;
+      return anyImage_;
    }
 
    @Override
-   public synchronized List<Image> getImagesMatching(Coords coords) {
-      if (coordsToImage_ == null) {
+   public List<Image> getImagesMatching(Coords coords) {
+      if (isClosed_) {
          return null;
       }
-      List<Image> results = new ArrayList<>();
-      for (Image image : coordsToImage_.values()) {
-         // TODO figure out why subSpace was used and fix problems by not doing it
-         //  if (image.getCoords().isSubspaceCoordsOf(coords)) {
-         if (image.getCoords().equals(coords)) {
-            results.add(image);
-         }
+      // TODO figure out why subSpace was used and fix problems by not doing it
+      //  (formerly, images with image.getCoords().isSubspaceCoordsOf(coords))
+      List<Image> results = new ArrayList<>(1);
+      Image image = getImage(coords);
+      if (image != null) {
+         results.add(image);
       }
       return results;
    }
@@ -146,28 +176,41 @@ public final class StorageRAM implements RewritableStorage {
     *     (except for the axes to be ignored).
     * @throws IOException Not sure why this is here, should never be thrown.
     */
-   public synchronized List<Image> getImagesIgnoringAxes(Coords coords, String... ignoreTheseAxes)
+   public List<Image> getImagesIgnoringAxes(Coords coords, String... ignoreTheseAxes)
          throws IOException {
-      if (coordsToImage_ == null) {
+      if (isClosed_) {
          return null;
       }
-      // Optimization: traversing large HashMaps is costly, so avoid that when there is no need
-      // without this, there is noticeable slowdown for one axis data > ~10,000 images.
-      // An alternative optimization approach is to keep collections of coords
-      // for all possible ignoredAxes.  There is more upfront work involved but may be
-      // needed for fast multi-camera imaging.
       List<Image> result = new ArrayList<>();
       boolean haveIgnoredAxes = false;
       for (String axis : ignoreTheseAxes) {
          if (axesInUse_.contains(axis)) {
             haveIgnoredAxes = true;
-            continue;
+            break;
          }
       }
       if (!haveIgnoredAxes) {
-         result.add(coordsToImage_.get(coords));
-      } else {  // could not optimize, traverse our HashMap
-         for (Image image : coordsToImage_.values()) {
+         result.add(getImage(coords));
+         return result;
+      }
+
+      long key = PackedCoords.pack(coords);
+      long mask = PackedCoords.maskFor(ignoreTheseAxes);
+      // If coords has an axis that is not packed, or an ignored axis, no
+      // packed image can match
+      if (key != PackedCoords.NOT_PACKABLE && (key & mask) == 0) {
+         Set<Long> keys = getIgnoringIndex(mask).get(key);
+         if (keys != null) {
+            for (long matchKey : keys) {
+               Image image = packedImages_.get(matchKey);
+               if (image != null) {
+                  result.add(image);
+               }
+            }
+         }
+      }
+      if (!unpackedImages_.isEmpty()) {
+         for (Image image : unpackedImages_.values()) {
             Coords imCoord = image.getCoords().copyRemovingAxes(ignoreTheseAxes);
             if (imCoord.equals(coords)) {
                result.add(image);
@@ -177,14 +220,42 @@ public final class StorageRAM implements RewritableStorage {
       return result;
    }
 
+   private ConcurrentHashMap<Long, Set<Long>> getIgnoringIndex(long mask) {
+      ConcurrentHashMap<Long, Set<Long>> index = ignoringIndexes_.get(mask);
+      if (index != null) {
+         return index;
+      }
+      // Build the index while no images can be added
+      synchronized (this) {
+         index = ignoringIndexes_.get(mask);
+         if (index == null) {
+            index = new ConcurrentHashMap<>();
+            for (Image image : packedImages_.values()) {
+               addToIndex(index, mask, PackedCoords.pack(image.getCoords()));
+            }
+            ignoringIndexes_.put(mask, index);
+         }
+         return index;
+      }
+   }
+
    @Override
-   public synchronized Iterable<Coords> getUnorderedImageCoords() {
-      return coordsToImage_.keySet();
+   public Iterable<Coords> getUnorderedImageCoords() {
+      if (isClosed_) {
+         return Collections.emptyList();
+      }
+      List<Image> images = packedImages_.values();
+      List<Coords> result = new ArrayList<>(images.size() + unpackedImages_.size());
+      for (Image image : images) {
+         result.add(image.getCoords());
+      }
+      result.addAll(unpackedImages_.keySet());
+      return result;
    }
 
    @Override
    public boolean hasImage(Coords coords) {
-      return coordsToImage_.containsKey(coords);
+      return getImage(coords) != null;
    }
 
    @Override
@@ -215,19 +286,37 @@ public final class StorageRAM implements RewritableStorage {
 
    @Override
    public int getNumImages() {
-      return coordsToImage_.size();
+      return packedImages_.size() + unpackedImages_.size();
    }
 
    @Override
    public synchronized void deleteImage(Coords coords) throws IllegalArgumentException {
-      if (!coordsToImage_.containsKey(coords)) {
+      long key = PackedCoords.pack(coords);
+      Image removed;
+      if (key == PackedCoords.NOT_PACKABLE) {
+         removed = unpackedImages_.remove(coords);
+      } else {
+         removed = packedImages_.remove(key);
+         if (removed != null) {
+            for (Map.Entry<Long, ConcurrentHashMap<Long, Set<Long>>> e
+                  : ignoringIndexes_.entrySet()) {
+               Set<Long> keys = e.getValue().get(key & ~e.getKey());
+               if (keys != null) {
+                  keys.remove(key);
+               }
+            }
+         }
+      }
+      if (removed == null) {
          throw new IllegalArgumentException("Storage does not contain image at " + coords);
       }
-      coordsToImage_.remove(coords);
    }
 
    @Override
-   public void close() {
-      coordsToImage_ = null;
+   public synchronized void close() {
+      isClosed_ = true;
+      packedImages_.clear();
+      unpackedImages_.clear();
+      ignoringIndexes_.clear();
    }
 }
@@ -0,0 +1,96 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+//
+
+package org.micromanager.data.internal;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.internal.LazilyParsedNumber;
+import java.util.Iterator;
+import mmcorej.org.json.JSONArray;
+import mmcorej.org.json.JSONException;
+import mmcorej.org.json.JSONObject;
+
+/**
+ * Converts the tags of a TaggedImage into a Gson tree, from which metadata,
+ * coords and image format are extracted with NonPropertyMapJSONFormats.
+ *
+ * <p>This walks the JSONObject directly instead of serializing it to a
+ * string and parsing that string again, which is costly at high frame rates.
+ * The result is the same tree the round trip through a string would give:
+ * in particular, numbers are represented by their JSON text, so that
+ * e.g. a Double 1.0 is seen as 1, as it would be after parsing.
+ */
+final class TaggedImageTags {
+   private TaggedImageTags() {
+   }
+
+   static JsonObject toGson(JSONObject tags) {
+      JsonObject result = new JsonObject();
+      Iterator<String> keys = tags.keys();
+      while (keys.hasNext()) {
+         String key = keys.next();
+         result.add(key, toGson(tags.opt(key)));
+      }
+      return result;
+   }
+
+   private static JsonArray toGson(JSONArray array) {
+      JsonArray result = new JsonArray();
+      for (int i = 0; i < array.length(); i++) {
+         result.add(toGson(array.opt(i)));
+      }
+      return result;
+   }
+
+   private static JsonElement toGson(Object value) {
+      if (value == null || value == JSONObject.NULL) {
+         return JsonNull.INSTANCE;
+      }
+      if (value instanceof String) {
+         return new JsonPrimitive((String) value);
+      }
+      if (value instanceof Number) {
+         try {
+            return new JsonPrimitive(new LazilyParsedNumber(
+                  JSONObject.numberToString((Number) value)));
+         } catch (JSONException e) {
+            // Non-finite numbers are not valid JSON
+            throw new IllegalArgumentException(
+                  "Invalid number in TaggedImage tags: " + value, e);
+         }
+      }
+      if (value instanceof Boolean) {
+         return new JsonPrimitive((Boolean) value);
+      }
+      if (value instanceof JSONObject) {
+         return toGson((JSONObject) value);
+      }
+      if (value instanceof JSONArray) {
+         return toGson((JSONArray) value);
+      }
+      // JSONObject writes other values as strings
+      return new JsonPrimitive(value.toString());
+   }
+}
@@ -0,0 +1,400 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Multipage TIFF
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+//
+
+package org.micromanager.data.internal.multipagetiff;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.micromanager.internal.utils.ReportingUtils;
+import org.micromanager.internal.utils.ThreadFactoryFactory;
+
+/**
+ * Runs the writing tasks of a StorageMultipageTiff, in submission order, on
+ * a single background thread.
+ *
+ * <p>The queue is bounded by the number of bytes that queued (and running)
+ * tasks will write, not by the number of tasks. Once the capacity is
+ * reached, submit() blocks the caller until the writing thread has caught
+ * up far enough for the new task to fit. A task is always admitted when
+ * nothing else is in flight, so that a single task larger than the capacity
+ * cannot deadlock the writer.
+ *
+ * <p>Exceptions thrown by a task are logged, and the next task is run. If
+ * the writing thread dies anyway (e.g., from an OutOfMemoryError), the
+ * queue shuts itself down: tasks that were still queued are dropped, and
+ * waiting and later callers of submit() and execute() get an
+ * IllegalStateException instead of blocking forever.
+ *
+ * <p>The queue keeps simple statistics (depth, bytes in flight, and the time
+ * producers have spent blocked) that can be used to judge whether the disk
+ * keeps up with acquisition.
+ */
+final class BoundedWritingQueue {
+   static final long DEFAULT_CAPACITY_BYTES = 512L * 1024 * 1024;
+
+   private final long capacityBytes_;
+   private final ArrayDeque<Task> tasks_ = new ArrayDeque<>();
+   private final ReentrantLock lock_ = new ReentrantLock();
+   // Signalled when tasks complete (space available, or queue drained)
+   private final Condition taskDone_ = lock_.newCondition();
+   // Signalled when a task is added or the queue is shut down
+   private final Condition taskAdded_ = lock_.newCondition();
+   private final Thread thread_;
+
+   // All guarded by lock_
+   private long bytesInFlight_ = 0;
+   private int runningTasks_ = 0;
+   private boolean shutdown_ = false;
+   private boolean terminated_ = false;
+   private int maxQueueDepth_ = 0;
+   private long bytesWritten_ = 0;
+   private long stallCount_ = 0;
+   private long stallNanos_ = 0;
+   private long maxStallNanos_ = 0;
+
+   private static final class Task {
+      final Runnable runnable_;
+      final long bytes_;
+
+      Task(Runnable runnable, long bytes) {
+         runnable_ = runnable;
+         bytes_ = bytes;
+      }
+   }
+
+   BoundedWritingQueue(String name) {
+      this(name, DEFAULT_CAPACITY_BYTES);
+   }
+
+   /**
+    * @param name          name of the writing thread (for debugging)
+    * @param capacityBytes number of bytes that may be queued before producers
+    *                      are made to wait
+    */
+   BoundedWritingQueue(String name, long capacityBytes) {
+      if (capacityBytes <= 0) {
+         throw new IllegalArgumentException(
+               "Invalid writing queue capacity: " + capacityBytes);
+      }
+      capacityBytes_ = capacityBytes;
+      thread_ = ThreadFactoryFactory.createThreadFactory(name).newThread(
+            this::runTasks);
+      thread_.start();
+   }
+
+   /**
+    * Queues a task that writes a negligible amount of data. Such tasks never
+    * block the caller.
+    */
+   void execute(Runnable task) {
+      lock_.lock();
+      try {
+         enqueue(task, 0);
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * Queues a task, first waiting until the bytes it will write fit within
+    * the capacity of the queue.
+    *
+    * <p>If the calling thread is interrupted while waiting, the task is
+    * queued anyway (so that no data is lost) and the interrupt status is
+    * restored.
+    *
+    * @param task  writing task
+    * @param bytes number of bytes the task will write
+    * @throws IllegalStateException if the queue has been shut down, or the
+    *     writing thread has died
+    */
+   void submit(Runnable task, long bytes) {
+      lock_.lock();
+      try {
+         if (!fits(bytes)) {
+            long start = System.nanoTime();
+            boolean interrupted = false;
+            while (!shutdown_ && !fits(bytes)) {
+               try {
+                  taskDone_.await();
+               } catch (InterruptedException e) {
+                  interrupted = true;
+                  break;
+               }
+            }
+            long stall = System.nanoTime() - start;
+            stallCount_++;
+            stallNanos_ += stall;
+            maxStallNanos_ = Math.max(maxStallNanos_, stall);
+            if (interrupted) {
+               ReportingUtils.logError(
+                     "Interrupted while waiting for image data to be written");
+               Thread.currentThread().interrupt();
+            }
+         }
+         enqueue(task, bytes);
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   private boolean fits(long bytes) {
+      return bytesInFlight_ == 0 || bytesInFlight_ + bytes <= capacityBytes_;
+   }
+
+   private void enqueue(Runnable task, long bytes) {
+      if (terminated_) {
+         throw new IllegalStateException("Writing thread has stopped");
+      }
+      if (shutdown_) {
+         throw new IllegalStateException("Writing queue has been shut down");
+      }
+      tasks_.addLast(new Task(task, bytes));
+      bytesInFlight_ += bytes;
+      maxQueueDepth_ = Math.max(maxQueueDepth_, tasks_.size());
+      taskAdded_.signal();
+   }
+
+   /**
+    * Blocks until all tasks submitted so far have completed (or the writing
+    * thread has died).
+    *
+    * @throws InterruptedException if interrupted while waiting
+    */
+   void awaitCompletion() throws InterruptedException {
+      lock_.lock();
+      try {
+         while (!terminated_ && (!tasks_.isEmpty() || runningTasks_ > 0)) {
+            taskDone_.await();
+         }
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * Stops accepting new tasks. Tasks already queued will still be run.
+    */
+   void shutdown() {
+      lock_.lock();
+      try {
+         shutdown_ = true;
+         taskAdded_.signalAll();
+         taskDone_.signalAll();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   boolean isShutdown() {
+      lock_.lock();
+      try {
+         return shutdown_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * Waits for all queued tasks to complete after shutdown().
+    *
+    * @return true if the writing thread has finished, false on timeout
+    * @throws InterruptedException if interrupted while waiting
+    */
+   boolean awaitTermination(long timeout, TimeUnit unit)
+         throws InterruptedException {
+      long remaining = unit.toNanos(timeout);
+      lock_.lock();
+      try {
+         while (!terminated_) {
+            if (remaining <= 0) {
+               return false;
+            }
+            remaining = taskDone_.awaitNanos(remaining);
+         }
+         return true;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   private void runTasks() {
+      try {
+         while (true) {
+            Task task;
+            lock_.lock();
+            try {
+               while (tasks_.isEmpty() && !shutdown_) {
+                  taskAdded_.awaitUninterruptibly();
+               }
+               if (tasks_.isEmpty()) {
+                  return;
+               }
+               task = tasks_.pollFirst();
+               runningTasks_++;
+            } finally {
+               lock_.unlock();
+            }
+
+            try {
+               task.runnable_.run();
+            } catch (RuntimeException e) {
+               ReportingUtils.logError(e, "Error while writing image data");
+            } catch (Error e) {
+               ReportingUtils.logError(e, "Writing thread died");
+               // Before the space taken by the task is released, so that
+               // no waiting producer gets to queue another task
+               terminate();
+               throw e;
+            } finally {
+               lock_.lock();
+               try {
+                  runningTasks_--;
+                  bytesInFlight_ -= task.bytes_;
+                  bytesWritten_ += task.bytes_;
+                  taskDone_.signalAll();
+               } finally {
+                  lock_.unlock();
+               }
+            }
+         }
+      } finally {
+         terminate();
+      }
+   }
+
+   // Called on the writing thread when it stops, normally or not
+   private void terminate() {
+      lock_.lock();
+      try {
+         if (!tasks_.isEmpty()) {
+            ReportingUtils.logError("Writing thread stopped; "
+                  + tasks_.size() + " writing tasks were dropped");
+            for (Task task : tasks_) {
+               bytesInFlight_ -= task.bytes_;
+            }
+            tasks_.clear();
+         }
+         shutdown_ = true;
+         terminated_ = true;
+         taskAdded_.signalAll();
+         taskDone_.signalAll();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   long getCapacityBytes() {
+      return capacityBytes_;
+   }
+
+   /**
+    * @return number of tasks waiting to be run (not counting a running task)
+    */
+   int getQueueDepth() {
+      lock_.lock();
+      try {
+         return tasks_.size();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   int getMaxQueueDepth() {
+      lock_.lock();
+      try {
+         return maxQueueDepth_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return bytes of queued and currently running tasks
+    */
+   long getBytesInFlight() {
+      lock_.lock();
+      try {
+         return bytesInFlight_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   long getBytesWritten() {
+      lock_.lock();
+      try {
+         return bytesWritten_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return number of times a producer had to wait for space in the queue
+    */
+   long getStallCount() {
+      lock_.lock();
+      try {
+         return stallCount_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return total time producers have spent waiting for space, in ms
+    */
+   double getStallTimeMs() {
+      lock_.lock();
+      try {
+         return stallNanos_ / 1e6;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   double getMaxStallTimeMs() {
+      lock_.lock();
+      try {
+         return maxStallNanos_ / 1e6;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   @Override
+   public String toString() {
+      lock_.lock();
+      try {
+         return String.format("queue depth %d (max %d), %d bytes in flight "
+                     + "(capacity %d), %d bytes written, stalled %d times "
+                     + "for %.1f ms in total (max %.1f ms)",
+               tasks_.size(), maxQueueDepth_, bytesInFlight_, capacityBytes_,
+               bytesWritten_, stallCount_, stallNanos_ / 1e6,
+               maxStallNanos_ / 1e6);
+      } finally {
+         lock_.unlock();
+      }
+   }
+}
@@ -0,0 +1,244 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Multipage TIFF
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+//
+
+package org.micromanager.data.internal.multipagetiff;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recycles the direct buffers that hold image pixels while they are written,
+ * because allocating direct buffers is slow.
+ *
+ * <p>Buffers are kept in size classes (capacities rounded up to a multiple of
+ * {@value #SIZE_CLASS_GRANULARITY} bytes), so that images of different sizes,
+ * e.g. from several cameras, do not evict each other. Within a class,
+ * buffers are reused in LIFO order (the most recently used buffer may still
+ * be in cache). The total capacity of pooled (i.e., currently unused)
+ * buffers is capped; buffers that have not been reused within the idle
+ * timeout are dropped, as is everything once clear() is called.
+ *
+ * <p>Each StorageMultipageTiff owns one pool, shared by its writers.
+ */
+final class DirectBufferPool {
+   static final int SIZE_CLASS_GRANULARITY = 4096;
+   static final long DEFAULT_MAX_POOLED_BYTES =
+         System.getProperty("sun.arch.data.model", "").equals("32")
+               ? 0 : 256L * 1024 * 1024;
+   static final long DEFAULT_IDLE_TIMEOUT_MS = 10000;
+
+   private final ByteOrder order_;
+   private final HashMap<Integer, ArrayDeque<PooledBuffer>> classes_ =
+         new HashMap<>();
+   private long maxPooledBytes_;
+   private long idleTimeoutNanos_;
+   private long pooledBytes_ = 0;
+
+   private long hits_ = 0;
+   private long misses_ = 0;
+   private long allocatedBytes_ = 0;
+   private long evictions_ = 0;
+
+   private static final class PooledBuffer {
+      final ByteBuffer buffer_;
+      final long releaseTimeNanos_;
+
+      PooledBuffer(ByteBuffer buffer, long releaseTimeNanos) {
+         buffer_ = buffer;
+         releaseTimeNanos_ = releaseTimeNanos;
+      }
+   }
+
+   DirectBufferPool(ByteOrder order) {
+      this(order, DEFAULT_MAX_POOLED_BYTES, DEFAULT_IDLE_TIMEOUT_MS);
+   }
+
+   /**
+    * @param order          byte order of the buffers handed out
+    * @param maxPooledBytes maximum total capacity of unused buffers kept
+    * @param idleTimeoutMs  time after which an unused buffer is dropped
+    */
+   DirectBufferPool(ByteOrder order, long maxPooledBytes, long idleTimeoutMs) {
+      order_ = order;
+      setMaxPooledBytes(maxPooledBytes);
+      setIdleTimeoutMs(idleTimeoutMs);
+   }
+
+   synchronized void setMaxPooledBytes(long maxPooledBytes) {
+      if (maxPooledBytes < 0) {
+         throw new IllegalArgumentException("Invalid pool size: " + maxPooledBytes);
+      }
+      maxPooledBytes_ = maxPooledBytes;
+      makeRoom(0);
+   }
+
+   synchronized void setIdleTimeoutMs(long idleTimeoutMs) {
+      if (idleTimeoutMs < 0) {
+         throw new IllegalArgumentException("Invalid timeout: " + idleTimeoutMs);
+      }
+      idleTimeoutNanos_ = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+   }
+
+   /**
+    * Provides a direct buffer with position 0 and limit capacity, recycled if
+    * possible. The buffer's capacity() may be larger than requested.
+    *
+    * @param capacity number of bytes needed
+    * @return cleared buffer in the byte order of the pool
+    */
+   ByteBuffer acquire(int capacity) {
+      int sizeClass = sizeClass(capacity);
+      synchronized (this) {
+         evictIdle(System.nanoTime());
+         ArrayDeque<PooledBuffer> pooled = classes_.get(sizeClass);
+         PooledBuffer entry = pooled == null ? null : pooled.pollFirst();
+         if (entry != null) {
+            pooledBytes_ -= entry.buffer_.capacity();
+            hits_++;
+            ByteBuffer b = entry.buffer_;
+            b.clear();
+            b.limit(capacity);
+            // Ensure correct byte order in case it was changed by a user
+            return b.order(order_);
+         }
+         misses_++;
+         allocatedBytes_ += sizeClass;
+      }
+      ByteBuffer b = ByteBuffer.allocateDirect(sizeClass).order(order_);
+      b.limit(capacity);
+      return b;
+   }
+
+   /**
+    * Returns a buffer to the pool. Buffers not obtained from acquire() (heap
+    * buffers, or buffers whose capacity is not a size class) are ignored.
+    * If the pool is full, older unused buffers are dropped to make room.
+    */
+   synchronized void release(ByteBuffer b) {
+      if (!b.isDirect() || b.capacity() % SIZE_CLASS_GRANULARITY != 0
+            || b.capacity() > maxPooledBytes_) {
+         return;
+      }
+      long now = System.nanoTime();
+      evictIdle(now);
+      makeRoom(b.capacity());
+      ArrayDeque<PooledBuffer> pooled = classes_.get(b.capacity());
+      if (pooled == null) {
+         pooled = new ArrayDeque<>();
+         classes_.put(b.capacity(), pooled);
+      }
+      pooled.addFirst(new PooledBuffer(b, now));
+      pooledBytes_ += b.capacity();
+   }
+
+   /**
+    * Drops all unused buffers, e.g. once writing has finished.
+    */
+   synchronized void clear() {
+      for (ArrayDeque<PooledBuffer> pooled : classes_.values()) {
+         evictions_ += pooled.size();
+      }
+      classes_.clear();
+      pooledBytes_ = 0;
+   }
+
+   private static int sizeClass(int capacity) {
+      long rounded = ((long) capacity + SIZE_CLASS_GRANULARITY - 1)
+            / SIZE_CLASS_GRANULARITY * SIZE_CLASS_GRANULARITY;
+      return (int) Math.min(rounded, Integer.MAX_VALUE
+            / SIZE_CLASS_GRANULARITY * SIZE_CLASS_GRANULARITY);
+   }
+
+   private void evictIdle(long now) {
+      Iterator<ArrayDeque<PooledBuffer>> it = classes_.values().iterator();
+      while (it.hasNext()) {
+         ArrayDeque<PooledBuffer> pooled = it.next();
+         // Oldest entries are at the end
+         while (!pooled.isEmpty()
+               && now - pooled.peekLast().releaseTimeNanos_ > idleTimeoutNanos_) {
+            pooledBytes_ -= pooled.pollLast().buffer_.capacity();
+            evictions_++;
+         }
+         if (pooled.isEmpty()) {
+            it.remove();
+         }
+      }
+   }
+
+   // Drop the least recently released buffers until bytes more would fit.
+   private void makeRoom(long bytes) {
+      while (pooledBytes_ + bytes > maxPooledBytes_ && !classes_.isEmpty()) {
+         ArrayDeque<PooledBuffer> oldest = null;
+         Integer oldestClass = null;
+         for (Map.Entry<Integer, ArrayDeque<PooledBuffer>> e : classes_.entrySet()) {
+            if (oldest == null || e.getValue().peekLast().releaseTimeNanos_
+                  - oldest.peekLast().releaseTimeNanos_ < 0) {
+               oldest = e.getValue();
+               oldestClass = e.getKey();
+            }
+         }
+         pooledBytes_ -= oldest.pollLast().buffer_.capacity();
+         evictions_++;
+         if (oldest.isEmpty()) {
+            classes_.remove(oldestClass);
+         }
+      }
+   }
+
+   /**
+    * @return number of acquire() calls served by a pooled buffer
+    */
+   synchronized long getHits() {
+      return hits_;
+   }
+
+   /**
+    * @return number of acquire() calls that allocated a new buffer
+    */
+   synchronized long getMisses() {
+      return misses_;
+   }
+
+   synchronized long getAllocatedBytes() {
+      return allocatedBytes_;
+   }
+
+   synchronized long getEvictions() {
+      return evictions_;
+   }
+
+   synchronized long getPooledBytes() {
+      return pooledBytes_;
+   }
+
+   @Override
+   public synchronized String toString() {
+      return String.format("%d hits, %d misses (%d bytes allocated), "
+                  + "%d evictions, %d bytes pooled in %d size classes (max %d)",
+            hits_, misses_, allocatedBytes_, evictions_, pooledBytes_,
+            classes_.size(), maxPooledBytes_);
+   }
+}
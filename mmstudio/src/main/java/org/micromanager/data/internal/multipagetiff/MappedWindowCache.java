@@ -0,0 +1,176 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Multipage TIFF
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+//
+
+package org.micromanager.data.internal.multipagetiff;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memory-maps the files of a StorageMultipageTiff in fixed-size, read-only
+ * windows and hands out slices of those windows, so that image data can be
+ * read without copying it onto the Java heap.
+ *
+ * <p>Windows are shared by all readers of a storage and are kept in
+ * least-recently-used order. Once the total mapped size exceeds the
+ * configured maximum, the least recently used windows are dropped. Java
+ * offers no way to unmap a buffer explicitly; the operating system mapping
+ * is released once the window and all slices handed out from it have been
+ * garbage collected.
+ *
+ * <p>Consecutive windows overlap by a quarter of the window size, so that
+ * any record shorter than that lies entirely within the window in which it
+ * starts. Longer records are not served from the cache (slice() returns
+ * null) and should be read in the conventional way.
+ */
+final class MappedWindowCache {
+   static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024;
+   static final long DEFAULT_MAX_MAPPED_BYTES = 4L * 1024 * 1024 * 1024;
+
+   private final long windowSize_;
+   private final long windowOverlap_;
+   private final long maxMappedBytes_;
+   private final LinkedHashMap<WindowKey, MappedByteBuffer> windows_ =
+         new LinkedHashMap<>(16, 0.75f, true);
+   private long mappedBytes_ = 0;
+
+   MappedWindowCache() {
+      this(DEFAULT_WINDOW_SIZE, DEFAULT_MAX_MAPPED_BYTES);
+   }
+
+   /**
+    * @param windowSize     distance in bytes between the starts of consecutive
+    *                       windows
+    * @param maxMappedBytes total size of mapped windows above which least
+    *                       recently used windows are dropped
+    */
+   MappedWindowCache(long windowSize, long maxMappedBytes) {
+      if (windowSize < 4096 || windowSize + windowSize / 4 > Integer.MAX_VALUE) {
+         throw new IllegalArgumentException("Invalid window size: " + windowSize);
+      }
+      windowSize_ = windowSize;
+      windowOverlap_ = windowSize / 4;
+      maxMappedBytes_ = maxMappedBytes;
+   }
+
+   /**
+    * Returns a read-only view of length bytes of the file behind channel,
+    * starting at offset, or null if the requested range cannot be served
+    * from a single window.
+    *
+    * @param channel Channel of a file opened for reading
+    * @param offset  Position of the first byte in the file
+    * @param length  Number of bytes requested
+    * @param order   Byte order to be set on the returned buffer
+    * @return Read-only ByteBuffer with position 0 and capacity length, or null
+    * @throws IOException if the file cannot be mapped
+    */
+   synchronized ByteBuffer slice(FileChannel channel, long offset, int length,
+                                 ByteOrder order) throws IOException {
+      if (length > windowOverlap_) {
+         return null;
+      }
+      long index = offset / windowSize_;
+      long windowStart = index * windowSize_;
+      WindowKey key = new WindowKey(channel, index);
+      MappedByteBuffer window = windows_.get(key);
+      if (window == null) {
+         long windowLength = Math.min(windowSize_ + windowOverlap_,
+               channel.size() - windowStart);
+         if (offset + length > windowStart + windowLength) {
+            // Requested range extends past the end of the file.
+            return null;
+         }
+         window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+               windowLength);
+         windows_.put(key, window);
+         mappedBytes_ += window.capacity();
+         evict();
+      }
+      int start = (int) (offset - windowStart);
+      if (start + length > window.capacity()) {
+         return null;
+      }
+      ByteBuffer view = window.duplicate();
+      view.position(start);
+      view.limit(start + length);
+      return view.slice().order(order);
+   }
+
+   /**
+    * Forget all windows belonging to the given channel. Slices that were
+    * handed out earlier remain valid.
+    */
+   synchronized void release(FileChannel channel) {
+      Iterator<Map.Entry<WindowKey, MappedByteBuffer>> it =
+            windows_.entrySet().iterator();
+      while (it.hasNext()) {
+         Map.Entry<WindowKey, MappedByteBuffer> entry = it.next();
+         if (entry.getKey().channel_ == channel) {
+            mappedBytes_ -= entry.getValue().capacity();
+            it.remove();
+         }
+      }
+   }
+
+   synchronized long getMappedBytes() {
+      return mappedBytes_;
+   }
+
+   private void evict() {
+      Iterator<MappedByteBuffer> it = windows_.values().iterator();
+      // Never evict the window that was just added (the last one).
+      while (mappedBytes_ > maxMappedBytes_ && windows_.size() > 1) {
+         mappedBytes_ -= it.next().capacity();
+         it.remove();
+      }
+   }
+
+   private static final class WindowKey {
+      private final FileChannel channel_;
+      private final long index_;
+
+      WindowKey(FileChannel channel, long index) {
+         channel_ = channel;
+         index_ = index;
+      }
+
+      @Override
+      public boolean equals(Object other) {
+         if (!(other instanceof WindowKey)) {
+            return false;
+         }
+         WindowKey key = (WindowKey) other;
+         return channel_ == key.channel_ && index_ == key.index_;
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * System.identityHashCode(channel_) + Long.hashCode(index_);
+      }
+   }
+}
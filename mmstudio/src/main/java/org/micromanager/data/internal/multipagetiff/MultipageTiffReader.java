@@ -35,6 +35,7 @@ import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
@@ -42,6 +43,7 @@ import javax.swing.SwingUtilities;
 import mmcorej.org.json.JSONException;
 import mmcorej.org.json.JSONObject;
 import org.micromanager.PropertyMap;
+import org.micromanager.PropertyMaps;
 import org.micromanager.data.Coords;
 import org.micromanager.data.Datastore;
 import org.micromanager.data.Image;
@@ -71,6 +73,10 @@ public final class MultipageTiffReader {
    private static final char STRIP_BYTE_COUNTS = MultipageTiffWriter.STRIP_BYTE_COUNTS;
 
    private static final char MM_METADATA = MultipageTiffWriter.MM_METADATA;
+   private static final char WIDTH = MultipageTiffWriter.WIDTH;
+   private static final char HEIGHT = MultipageTiffWriter.HEIGHT;
+   private static final char BITS_PER_SAMPLE = MultipageTiffWriter.BITS_PER_SAMPLE;
+   private static final char SAMPLES_PER_PIXEL = MultipageTiffWriter.SAMPLES_PER_PIXEL;
 
    // Note: ordering of axes here matches that in MDUtils.getLabel().
    // If you change this, you will need to track down places where the size of
@@ -82,6 +88,8 @@ public final class MultipageTiffReader {
    private File file_;
    private RandomAccessFile raFile_;
    private FileChannel fileChannel_;
+   // Non-null when images should be served from memory-mapped windows.
+   private MappedWindowCache mappedWindows_;
 
    private StorageMultipageTiff masterStorage_;
    private SummaryMetadata summaryMetadata_;
@@ -126,6 +134,7 @@ public final class MultipageTiffReader {
          ReportingUtils.showError(ex, "Cannot open file: " + file_.getName());
          throw ex instanceof IOException ? (IOException) ex : new IOException(ex);
       }
+      mappedWindows_ = masterStorage.getMappedWindowCache();
       readHeader(); // Determine byte order
       readSummaryMD();
 
@@ -375,6 +384,15 @@ public final class MultipageTiffReader {
             data.pixelOffset = entry.value;
          } else if (entry.tag == STRIP_BYTE_COUNTS) {
             data.bytesPerImage = entry.value;
+         } else if (entry.tag == WIDTH) {
+            data.width = entry.value;
+         } else if (entry.tag == HEIGHT) {
+            data.height = entry.value;
+         } else if (entry.tag == BITS_PER_SAMPLE && entry.count == 1) {
+            // For RGB, the value is an offset to per-sample bit depths
+            data.bitsPerSample = entry.value;
+         } else if (entry.tag == SAMPLES_PER_PIXEL) {
+            data.samplesPerPixel = entry.value;
          }
       }
       data.nextIFD = unsignInt(entries.getInt(numEntries * 12));
@@ -389,6 +407,10 @@ public final class MultipageTiffReader {
    }
 
    private String getString(ByteBuffer buffer) {
+      if (!buffer.hasArray()) {
+         // Memory-mapped slice; always starts at position 0.
+         return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+      }
       try {
          return new String(buffer.array(), "UTF-8");
       } catch (UnsupportedEncodingException ex) {
@@ -417,20 +439,61 @@ public final class MultipageTiffReader {
       long byteOffset = coordsToOffset_.get(coords);
 
       IFDData data = readIFD(byteOffset);
-      return (DefaultImage) readImage(data);
+      PropertyMap formatPmap = getFormatFromIFD(data);
+      if (formatPmap == null) {
+         return (DefaultImage) readImage(data);
+      }
+      // Coords are known from the index map, and the image format from the
+      // IFD, so the plane's JSON only needs to be parsed if someone asks for
+      // its metadata.
+      ByteBuffer pixelBuffer = readRecord(data.pixelOffset, (int) data.bytesPerImage);
+      final ByteBuffer mdBuffer = readRecord(data.mdOffset, (int) data.mdLength);
+      Metadata metadata = DefaultMetadata.createLazily(() ->
+            NonPropertyMapJSONFormats.metadata().fromGson(parseJSON(mdBuffer)));
+      return createImage(pixelBuffer, formatPmap, coords, metadata);
    }
 
-   private Image readImage(IFDData data) throws IOException {
-      ByteBuffer pixelBuffer = ByteBuffer.allocate((int) data.bytesPerImage).order(byteOrder_);
-      ByteBuffer mdBuffer = ByteBuffer.allocate((int) data.mdLength).order(byteOrder_);
-      fileChannel_.read(pixelBuffer, data.pixelOffset);
-      fileChannel_.read(mdBuffer, data.mdOffset);
+   /**
+    * Determine width, height, and pixel type from the TIFF tags.
+    *
+    * @return format PropertyMap, or null if the tags are not sufficient
+    */
+   private PropertyMap getFormatFromIFD(IFDData data) {
+      if (data.width < 1 || data.height < 1) {
+         return null;
+      }
+      long numPixels = data.width * data.height;
+      PixelType pixelType;
+      if (data.samplesPerPixel == 3 && data.bytesPerImage == 3 * numPixels) {
+         pixelType = PixelType.RGB32;
+      } else if (data.samplesPerPixel == 1 && data.bitsPerSample == 8
+            && data.bytesPerImage == numPixels) {
+         pixelType = PixelType.GRAY8;
+      } else if (data.samplesPerPixel == 1 && data.bitsPerSample == 16
+            && data.bytesPerImage == 2 * numPixels) {
+         pixelType = PixelType.GRAY16;
+      } else {
+         return null;
+      }
+      return PropertyMaps.builder()
+            .putInteger(PropertyKey.WIDTH.key(), (int) data.width)
+            .putInteger(PropertyKey.HEIGHT.key(), (int) data.height)
+            .putEnumAsString(PropertyKey.PIXEL_TYPE.key(), pixelType)
+            .build();
+   }
 
-      String mdJSON = getString(mdBuffer);
+   private JsonElement parseJSON(ByteBuffer buffer) {
       JsonParser parser = new JsonParser();
-      JsonReader reader = new JsonReader(new StringReader(mdJSON));
+      JsonReader reader = new JsonReader(new StringReader(getString(buffer)));
       reader.setLenient(true);
-      JsonElement mdGson = parser.parse(reader);
+      return parser.parse(reader);
+   }
+
+   private Image readImage(IFDData data) throws IOException {
+      ByteBuffer pixelBuffer = readRecord(data.pixelOffset, (int) data.bytesPerImage);
+      ByteBuffer mdBuffer = readRecord(data.mdOffset, (int) data.mdLength);
+
+      JsonElement mdGson = parseJSON(mdBuffer);
 
       try {
          PropertyMap formatPmap = NonPropertyMapJSONFormats.imageFormat()
@@ -471,46 +534,74 @@ public final class MultipageTiffReader {
                   PropertyKey.PIXEL_TYPE.key(), pixelType).build();
          }
 
-         // TODO We should avoid converting to Java array and back, instead using
-         // a nio buffer directly as the Image storage (even better if memory
-         // mapped).
-         switch (pixelType) {
-            case GRAY8:
-               return new DefaultImage(pixelBuffer.array(), formatPmap,
+         return createImage(pixelBuffer, formatPmap, coords, metadata);
+      } catch (IllegalStateException ise) {
+
+         // can be thrown when meatadata are bad, todo: report
+         return null;
+      }
+   }
+
+   private DefaultImage createImage(ByteBuffer pixelBuffer, PropertyMap formatPmap,
+                                    Coords coords, Metadata metadata) throws IOException {
+      PixelType pixelType = formatPmap.getStringAsEnum(
+            PropertyKey.PIXEL_TYPE.key(), PixelType.class, null);
+      // Heap buffers are converted to Java arrays; memory-mapped buffers are
+      // used directly as the Image storage, so that pixels are only copied
+      // when someone asks for them as an array.
+      switch (pixelType) {
+         case GRAY8:
+            return new DefaultImage(pixelBuffer.hasArray() ? pixelBuffer.array()
+                  : pixelBuffer, formatPmap, coords, metadata);
+         case GRAY16:
+            if (!pixelBuffer.hasArray()) {
+               return new DefaultImage(pixelBuffer.asShortBuffer(), formatPmap,
                      coords, metadata);
-            case GRAY16:
-               short[] pixels16 = new short[pixelBuffer.capacity() / 2];
-               for (int i = 0; i < pixels16.length; i++) {
-                  pixels16[i] = pixelBuffer.getShort(i * 2);
+            }
+            short[] pixels16 = new short[pixelBuffer.capacity() / 2];
+            for (int i = 0; i < pixels16.length; i++) {
+               pixels16[i] = pixelBuffer.getShort(i * 2);
+            }
+            return new DefaultImage(pixels16, formatPmap, coords, metadata);
+         case RGB32:
+            byte[] pixelsARGB = new byte[4 * pixelBuffer.capacity() / 3];
+            int i = 0;
+            for (int j = 0; j < pixelBuffer.capacity(); j++) {
+               byte b = pixelBuffer.get(j);
+               // need to swap byte 0 and 2: saved order is RGBA, but we want BGRA
+               if (i % 4 == 0) {
+                  pixelsARGB[i + 2] = b;
+               } else if (i % 2 == 0) {
+                  pixelsARGB[i - 2] = b;
+               } else {
+                  pixelsARGB[i] = b;
                }
-               return new DefaultImage(pixels16, formatPmap, coords, metadata);
-            case RGB32:
-               byte[] pixelsARGB = new byte[(int) (4 * data.bytesPerImage / 3)];
-               int i = 0;
-               for (byte b : pixelBuffer.array()) {
-                  // need to swap byte 0 and 2: saved order is RGBA, but we want BGRA
-                  if (i % 4 == 0) {
-                     pixelsARGB[i + 2] = b;
-                  } else if (i % 2 == 0) {
-                     pixelsARGB[i - 2] = b;
-                  } else {
-                     pixelsARGB[i] = b;
-                  }
+               i++;
+               if ((i + 1) % 4 == 0) {
+                  pixelsARGB[i] = 0;
                   i++;
-                  if ((i + 1) % 4 == 0) {
-                     pixelsARGB[i] = 0;
-                     i++;
-                  }
                }
-               return new DefaultImage(pixelsARGB, formatPmap, coords, metadata);
-            default:
-               throw new IOException("Unknown pixel type: " + pixelType.name());
-         }
-      } catch (IllegalStateException ise) {
+            }
+            return new DefaultImage(pixelsARGB, formatPmap, coords, metadata);
+         default:
+            throw new IOException("Unknown pixel type: " + pixelType.name());
+      }
+   }
 
-         // can be thrown when meatadata are bad, todo: report
-         return null;
+   /**
+    * Reads a block of image data or metadata. When memory mapping is enabled,
+    * the result is a read-only slice of the mapping (no copy is made);
+    * otherwise it is a freshly allocated heap buffer.
+    */
+   private ByteBuffer readRecord(long position, int length) throws IOException {
+      if (mappedWindows_ != null) {
+         ByteBuffer slice = mappedWindows_.slice(fileChannel_, position, length,
+               byteOrder_);
+         if (slice != null) {
+            return slice;
+         }
       }
+      return readIntoBuffer(position, length);
    }
 
    private IFDEntry readDirectoryEntry(int offset, ByteBuffer buffer) throws IOException {
@@ -567,6 +658,9 @@ public final class MultipageTiffReader {
     * @throws IOException Accessing disk can cause these.
     */
    public void close() throws IOException {
+      if (mappedWindows_ != null && fileChannel_ != null) {
+         mappedWindows_.release(fileChannel_);
+      }
       if (fileChannel_ != null) {
          fileChannel_.close();
          fileChannel_ = null;
@@ -712,6 +806,10 @@ public final class MultipageTiffReader {
       public long mdLength;
       public long nextIFD;
       public long nextIFDOffsetLocation;
+      public long width;
+      public long height;
+      public long bitsPerSample;
+      public long samplesPerPixel;
 
       public IFDData() {
       }
@@ -37,12 +37,9 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.CharBuffer;
 import java.nio.channels.FileChannel;
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ThreadPoolExecutor;
 import org.micromanager.PropertyMap;
 import org.micromanager.PropertyMaps;
 import org.micromanager.data.Coords;
@@ -110,7 +107,8 @@ public final class MultipageTiffWriter {
    private StorageMultipageTiff masterStorage_;
    private RandomAccessFile raFile_;
    private FileChannel fileChannel_;
-   private final ThreadPoolExecutor writingExecutor_;
+   private final BoundedWritingQueue writingQueue_;
+   private final DirectBufferPool bufferPool_;
    private long filePosition_ = 0;
    //current position of the dynamically written index map
    private long indexMapPosition_;
@@ -228,7 +226,8 @@ public final class MultipageTiffWriter {
                "Insufficent space on disk: no room to write data");
       }
       fileChannel_ = raFile_.getChannel();
-      writingExecutor_ = masterStorage_.getWritingExecutor();
+      writingQueue_ = masterStorage_.getWritingQueue();
+      bufferPool_ = masterStorage_.getBufferPool();
       coordsToOffset_ = new HashMap<>();
       reader_.setFileChannel(fileChannel_);
       reader_.setIndexMap(coordsToOffset_);
@@ -265,16 +264,9 @@ public final class MultipageTiffWriter {
    // Buffer allocation and recycling
    //
 
-   // The idea here is to recycle the direct buffers for image pixels, because
-   // allocation is slow. We do not need a large pool,
-   // because the only aim is to avoid situations where allocation is limiting
-   // at steady state. If writing is, on average, faster than incoming images,
-   // the pool should always have a buffer ready for a new request.
-   // Ideally we would also evict unused buffers after a timeout, so as not to
-   // leak memory after writing has concluded.
-   // Increasing the number of buffers becomes a problem when saving MDAs with many
-   // positions and using one MultipageTiffWriter per position, leading to excessive
-   // memory usage by allocating many Direct Byte buffers.
+   // Direct buffers for image pixels are recycled through the pool owned by
+   // the StorageMultipageTiff, because allocation is slow. Small buffers
+   // (IFDs, index map entries) are simply allocated.
 
    private static final int BUFFER_DIRECT_THRESHOLD = 1024;
 
@@ -284,59 +276,16 @@ public final class MultipageTiffWriter {
       return b.order(BYTE_ORDER);
    }
 
-   private static final int BUFFER_POOL_SIZE =
-         System.getProperty("sun.arch.data.model").equals("32") ? 0 : 3;
-   private static final Deque<ByteBuffer> pooledBuffers_;
-
-   static {
-      if (BUFFER_POOL_SIZE > 0) {
-         pooledBuffers_ = new ArrayDeque<>(BUFFER_POOL_SIZE);
-      } else {
-         pooledBuffers_ = null;
-      }
-   }
-
-   private static int pooledBufferCapacity_ = 0;
-
-   private static ByteBuffer getLargeBuffer(int capacity) {
-      if (BUFFER_POOL_SIZE == 0) {
-         return allocateByteBuffer(capacity);
-      }
-
-      synchronized (MultipageTiffWriter.class) {
-         if (capacity != pooledBufferCapacity_) {
-            pooledBuffers_.clear();
-            pooledBufferCapacity_ = capacity;
-         }
-
-         // Recycle in LIFO order (smaller images may still be in L3 cache)
-         ByteBuffer b = pooledBuffers_.pollFirst();
-         if (b != null) {
-            // Ensure correct byte order in case recycled from other source
-            b.order(BYTE_ORDER).clear();
-            return b;
-         }
-      }
-      return allocateByteBuffer(capacity);
+   private ByteBuffer getLargeBuffer(int capacity) {
+      return bufferPool_.acquire(capacity);
    }
 
-   private static void tryRecycleLargeBuffer(ByteBuffer b) {
-      // Keep up to BUFFER_POOL_SIZE direct buffers of the current size
-      if (BUFFER_POOL_SIZE == 0 || !b.isDirect()) {
-         return;
-      }
-      synchronized (MultipageTiffWriter.class) {
-         if (b.capacity() == pooledBufferCapacity_) {
-            if (pooledBuffers_.size() == BUFFER_POOL_SIZE) {
-               pooledBuffers_.removeLast(); // Discard oldest
-            }
-            pooledBuffers_.addFirst(b);
-         }
-      }
+   private void tryRecycleLargeBuffer(ByteBuffer b) {
+      bufferPool_.release(b);
    }
 
    private void executeWritingTask(Runnable writingTask) {
-      writingExecutor_.execute(writingTask);
+      writingQueue_.execute(writingTask);
    }
 
    private void fileChannelWrite(final ByteBuffer buffer, final long position) {
@@ -352,16 +301,39 @@ public final class MultipageTiffWriter {
    }
 
    private void fileChannelWrite(final ByteBuffer[] buffers) {
-      executeWritingTask(() -> {
+      fileChannelWrite(buffers, null, 0);
+   }
+
+   /**
+    * Writes the buffers at the current file position with a single gathering
+    * write, followed (if not null) by the index map entry for the plane they
+    * contain. The caller blocks while the writing queue is full.
+    */
+   private void fileChannelWrite(final ByteBuffer[] buffers,
+         final ByteBuffer indexMapEntry, final long indexMapEntryPosition) {
+      long bytes = 0;
+      for (ByteBuffer buffer : buffers) {
+         bytes += buffer.remaining();
+      }
+      final long totalBytes = bytes;
+      writingQueue_.submit(() -> {
          try {
-            fileChannel_.write(buffers);
+            long remaining = totalBytes;
+            while (remaining > 0) {
+               remaining -= fileChannel_.write(buffers);
+            }
+            // Written after the image data, so that the index map never
+            // points to an incompletely written plane
+            if (indexMapEntry != null) {
+               fileChannel_.write(indexMapEntry, indexMapEntryPosition);
+            }
          } catch (IOException e) {
             ReportingUtils.logError(e);
          }
          for (ByteBuffer buffer : buffers) {
             tryRecycleLargeBuffer(buffer);
          }
-      });
+      }, totalBytes);
    }
 
    public MultipageTiffReader getReader() {
@@ -560,30 +532,18 @@ public final class MultipageTiffWriter {
     * @throws IOException can happen
     */
    public void writeImage(Image img) throws IOException {
-      if (writingExecutor_ != null) {
-         int queueSize = writingExecutor_.getQueue().size();
-         int attemptCount = 0;
-         while (queueSize > 20) {
-            if (attemptCount == 0) {
-               ReportingUtils.logMessage("Warning: writing queue behind by "
-                     + queueSize + " images.");
-            }
-            ++attemptCount;
-            try {
-               Thread.sleep(5);
-               queueSize = writingExecutor_.getQueue().size();
-            } catch (InterruptedException ex) {
-               ReportingUtils.logError(ex);
-            }
-         }
-      }
       long offset = filePosition_;
       writeIFD(img);
-      addToIndexMap(img.getCoords(), offset);
-      writeBuffers();
+      long indexMapEntryPosition = indexMapPosition_;
+      ByteBuffer indexMapEntry = addToIndexMap(img.getCoords(), offset);
+      fileChannelWrite(takeBuffers(), indexMapEntry, indexMapEntryPosition);
    }
 
-   private void addToIndexMap(Coords coords, long offset) {
+   /**
+    * Records the offset of an image and creates the index map entry for it,
+    * which the caller must write at the current indexMapPosition_.
+    */
+   private ByteBuffer addToIndexMap(Coords coords, long offset) {
       // If a duplicate key is received, forget about the previous one
       // this allows overwriting of images without loss of data
       coordsToOffset_.put(coords, offset);
@@ -603,16 +563,20 @@ public final class MultipageTiffWriter {
       }
 
       buffer.putInt(16, new Long(offset).intValue());
-      fileChannelWrite(buffer, indexMapPosition_);
       indexMapPosition_ += 20;
+      return buffer;
    }
 
-   private void writeBuffers() throws IOException {
+   private ByteBuffer[] takeBuffers() {
       ByteBuffer[] buffs = new ByteBuffer[buffers_.size()];
       for (int i = 0; i < buffs.length; i++) {
          buffs[i] = buffers_.removeFirst();
       }
-      fileChannelWrite(buffs);
+      return buffs;
+   }
+
+   private void writeBuffers() throws IOException {
+      fileChannelWrite(takeBuffers());
    }
 
    private void writeIFD(Image img) {
@@ -37,10 +37,6 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import javax.swing.JOptionPane;
 import org.micromanager.data.Coords;
@@ -62,7 +58,6 @@ import org.micromanager.internal.propertymap.NonPropertyMapJSONFormats;
 import org.micromanager.internal.utils.MMException;
 import org.micromanager.internal.utils.ProgressBar;
 import org.micromanager.internal.utils.ReportingUtils;
-import org.micromanager.internal.utils.ThreadFactoryFactory;
 
 
 /**
@@ -77,6 +72,8 @@ public final class StorageMultipageTiff implements Storage {
          "generate a metadata file when saving datasets as multipage TIFF files";
    private static final String SHOULD_USE_SEPARATE_FILES_FOR_POSITIONS =
          "generate a separate multipage TIFF file for each stage position";
+   private static final String SHOULD_USE_MEMORY_MAPPED_READS =
+         "read multipage TIFF files through memory mapping";
    private static final HashSet<String> ALLOWED_AXES = new HashSet<>(
          Arrays.asList(Coords.CHANNEL, Coords.T, Coords.Z,
                Coords.STAGE_POSITION));
@@ -90,12 +87,19 @@ public final class StorageMultipageTiff implements Storage {
    private int lastFrameOpenedDataSet_ = -1;
    private final String directory_;
    private final boolean separateMetadataFile_;
+   // Only used when reading existing data sets; null unless memory-mapped
+   // reading was requested.
+   private final MappedWindowCache mappedWindows_;
    private boolean splitByXYPosition_ = true;
    private volatile boolean finished_ = false;
    private OMEMetadata omeMetadata_;
    private int lastFrame_ = 0;
    private int lastAcquiredPosition_ = 0;
-   private ThreadPoolExecutor writingExecutor_;
+   private long writingQueueCapacity_ = BoundedWritingQueue.DEFAULT_CAPACITY_BYTES;
+   private volatile BoundedWritingQueue writingQueue_;
+   // Recycles the pixel buffers of all writers of this storage
+   private final DirectBufferPool bufferPool_ =
+         new DirectBufferPool(MultipageTiffWriter.BYTE_ORDER);
    private Image firstImage_;
 
    // Images that are currently being written. We keep them around until
@@ -120,7 +124,7 @@ public final class StorageMultipageTiff implements Storage {
                                Boolean amInWriteMode)
          throws IOException {
       this(parent, store, dir, amInWriteMode, getShouldGenerateMetadataFile(),
-            getShouldSplitPositions());
+            getShouldSplitPositions(), getShouldUseMemoryMappedReads());
    }
 
    /**
@@ -140,6 +144,22 @@ public final class StorageMultipageTiff implements Storage {
    public StorageMultipageTiff(Component parent, Datastore store, String dir,
                                boolean amInWriteMode, boolean separateMDFile,
                                boolean separateFilesForPositions) throws IOException {
+      this(parent, store, dir, amInWriteMode, separateMDFile,
+            separateFilesForPositions, false);
+   }
+
+   /**
+    * As above, optionally reading existing files through memory mapping.
+    *
+    * @param memoryMappedReads If true, existing files are memory-mapped and
+    *                          images read from them share the mapping instead
+    *                          of copying pixels onto the heap. Ignored in
+    *                          write mode.
+    */
+   public StorageMultipageTiff(Component parent, Datastore store, String dir,
+                               boolean amInWriteMode, boolean separateMDFile,
+                               boolean separateFilesForPositions,
+                               boolean memoryMappedReads) throws IOException {
       store_ = (DefaultDatastore) store;
       parent_ = parent;
       // We must be notified of changes in the Datastore before everyone else,
@@ -149,6 +169,8 @@ public final class StorageMultipageTiff implements Storage {
       splitByXYPosition_ = separateFilesForPositions;
 
       amInWriteMode_ = amInWriteMode;
+      mappedWindows_ = (memoryMappedReads && !amInWriteMode)
+            ? new MappedWindowCache() : null;
       directory_ = dir;
       store_.setSavePath(directory_);
       store_.setName(new File(directory_).getName());
@@ -188,8 +210,75 @@ public final class StorageMultipageTiff implements Storage {
       }
    }
 
-   public ThreadPoolExecutor getWritingExecutor() {
-      return writingExecutor_;
+   /**
+    * Provides the cache of memory-mapped file windows that readers of
+    * existing files should use.
+    *
+    * @return Window cache, or null when memory-mapped reading is not enabled.
+    */
+   MappedWindowCache getMappedWindowCache() {
+      return mappedWindows_;
+   }
+
+   BoundedWritingQueue getWritingQueue() {
+      return writingQueue_;
+   }
+
+   /**
+    * Sets the amount of image data that may be waiting to be written to disk
+    * before putImage() blocks. Must be called before the first image is
+    * written.
+    *
+    * @param bytes capacity of the writing queue in bytes
+    */
+   public void setWritingQueueCapacity(long bytes) {
+      if (writingQueue_ != null) {
+         throw new IllegalStateException(
+               "Writing queue capacity must be set before writing starts");
+      }
+      if (bytes <= 0) {
+         throw new IllegalArgumentException("Invalid capacity: " + bytes);
+      }
+      writingQueueCapacity_ = bytes;
+   }
+
+   DirectBufferPool getBufferPool() {
+      return bufferPool_;
+   }
+
+   /**
+    * Sets the maximum amount of memory used to keep direct buffers for
+    * reuse while writing, and the time after which an unused buffer is
+    * released.
+    *
+    * @param bytes         maximum total capacity of unused pooled buffers
+    * @param idleTimeoutMs time after which an unused buffer is released
+    */
+   public void setBufferPoolLimits(long bytes, long idleTimeoutMs) {
+      bufferPool_.setMaxPooledBytes(bytes);
+      bufferPool_.setIdleTimeoutMs(idleTimeoutMs);
+   }
+
+   /**
+    * Describes the reuse of pixel buffers while writing (hits, misses and
+    * bytes allocated).
+    *
+    * @return description of the buffer pool statistics
+    */
+   public String getBufferPoolStatistics() {
+      return bufferPool_.toString();
+   }
+
+   /**
+    * Describes the state of the writing queue (depth, bytes in flight and the
+    * time spent waiting for the disk), for diagnosing slow saving.
+    *
+    * @return description of the writing statistics, or null if nothing has
+    *       been written
+    */
+   public String getWritingStatistics() {
+      BoundedWritingQueue queue = writingQueue_;
+      return queue == null ? null : queue.toString();
    }
 
    /**
@@ -341,7 +430,7 @@ public final class StorageMultipageTiff implements Storage {
 
       try {
          writeImage(image, false);
-      } catch (MMException | InterruptedException | ExecutionException | IOException e) {
+      } catch (MMException | InterruptedException | IOException e) {
          ReportingUtils.showError(e, "Failed to write image at " + image.getCoords());
       }
    }
@@ -352,15 +441,10 @@ public final class StorageMultipageTiff implements Storage {
    }
 
    private void writeImage(DefaultImage image, boolean waitForWritingToFinish)
-         throws MMException, InterruptedException, ExecutionException, IOException {
+         throws MMException, InterruptedException, IOException {
       writeImage(image);
       if (waitForWritingToFinish) {
-         Future f = writingExecutor_.submit(new Runnable() {
-            @Override
-            public void run() {
-            }
-         });
-         f.get();
+         writingQueue_.awaitCompletion();
       }
    }
 
@@ -385,19 +469,16 @@ public final class StorageMultipageTiff implements Storage {
 
       startWritingTask(image);
 
-      writingExecutor_.submit(new Runnable() {
-         @Override
-         public void run() {
-            synchronized (coordsToPendingImage_) {
-               coordsToPendingImage_.remove(coords);
-            }
+      writingQueue_.execute(() -> {
+         synchronized (coordsToPendingImage_) {
+            coordsToPendingImage_.remove(coords);
          }
       });
    }
 
    /**
     * This method handles starting the process of writing images (which means
-    * that it ultimately submits a task to writingExecutor_).
+    * that it ultimately submits a task to writingQueue_).
     */
    private void startWritingTask(DefaultImage image) throws MMException, IOException {
       // Update maxIndices_
@@ -412,12 +493,10 @@ public final class StorageMultipageTiff implements Storage {
          }
       }
 
-      // initialize writing executor
-      if (writingExecutor_ == null) {
-         writingExecutor_ = new ThreadPoolExecutor(1, 1, 0,
-               TimeUnit.NANOSECONDS,
-               new LinkedBlockingQueue<>(),
-               ThreadFactoryFactory.createThreadFactory("StorageMultiPageTiff"));
+      // initialize writing queue
+      if (writingQueue_ == null) {
+         writingQueue_ = new BoundedWritingQueue("StorageMultiPageTiff",
+               writingQueueCapacity_);
       }
       int fileSetIndex = 0;
       if (splitByXYPosition_) {
@@ -546,20 +625,23 @@ public final class StorageMultipageTiff implements Storage {
                progressBar.setProgress(count);
             }
          }
-         //shut down writing executor--pause here until all tasks have finished
+         //shut down writing queue--pause here until all tasks have finished
          //writing so that no attempt is made to close the dataset (and thus
          //the FileChannel) before everything has finished writing mkae sure
          //all images have finished writing if they are on seperate thread
-         if (writingExecutor_ != null && !writingExecutor_.isShutdown()) {
-            writingExecutor_.shutdown();
+         if (writingQueue_ != null && !writingQueue_.isShutdown()) {
+            writingQueue_.shutdown();
             try {
                // Wait for tasks to finish.
                int i = 0;
-               while (!writingExecutor_.awaitTermination(4, TimeUnit.SECONDS)) {
+               while (!writingQueue_.awaitTermination(4, TimeUnit.SECONDS)) {
                   ReportingUtils.logMessage(
                         "Waiting for image stack to finish writing (" + i + ")...");
                   i++;
                }
+               ReportingUtils.logMessage("Finished writing image stack: "
+                     + writingQueue_ + "; pixel buffers: " + bufferPool_);
+               bufferPool_.clear();
             } catch (InterruptedException e) {
                ReportingUtils.logError("File finishing thread interrupted");
                Thread.interrupted();
@@ -1037,4 +1119,14 @@ public final class StorageMultipageTiff implements Storage {
       MMStudio.getInstance().profile().getSettings(StorageMultipageTiff.class)
             .putBoolean(SHOULD_USE_SEPARATE_FILES_FOR_POSITIONS, shouldSplit);
    }
+
+   public static boolean getShouldUseMemoryMappedReads() {
+      return MMStudio.getInstance().profile().getSettings(StorageMultipageTiff.class)
+            .getBoolean(SHOULD_USE_MEMORY_MAPPED_READS, false);
+   }
+
+   public static void setShouldUseMemoryMappedReads(boolean shouldMap) {
+      MMStudio.getInstance().profile().getSettings(StorageMultipageTiff.class)
+            .putBoolean(SHOULD_USE_MEMORY_MAPPED_READS, shouldMap);
+   }
 }
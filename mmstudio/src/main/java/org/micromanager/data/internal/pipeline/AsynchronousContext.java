@@ -20,20 +20,43 @@
 
 package org.micromanager.data.internal.pipeline;
 
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 import org.micromanager.data.Datastore;
+import org.micromanager.data.Image;
 import org.micromanager.data.Processor;
+import org.micromanager.internal.utils.ImageHandoffQueue;
 import org.micromanager.internal.utils.ReportingUtils;
 
 public final class AsynchronousContext extends BaseContext {
-   private boolean isFlushed_ = false;
-   private LinkedBlockingQueue<ImageWrapper> inputQueue_ = null;
+   private static final int MAX_BATCH_SIZE = 64;
+
+   private final ImageHandoffQueue<ImageWrapper> inputQueue_;
 
    public AsynchronousContext(Processor processor,
                               Datastore store, DefaultPipeline parent) {
+      this(processor, store, parent, StageSettings.DEFAULT);
+   }
+
+   /**
+    * @param queueDepth number of images that may wait to be processed before
+    *                   insertImage() blocks
+    */
+   public AsynchronousContext(Processor processor, Datastore store,
+                              DefaultPipeline parent, int queueDepth) {
+      this(processor, store, parent,
+            new StageSettings(queueDepth, StageSettings.DEFAULT_THREADS));
+   }
+
+   /**
+    * @param settings queue depth and capacity of the input queue
+    */
+   public AsynchronousContext(Processor processor, Datastore store,
+                              DefaultPipeline parent, StageSettings settings) {
       super(processor, store, parent);
-      inputQueue_ = new LinkedBlockingQueue<ImageWrapper>(1);
+      inputQueue_ = new ImageHandoffQueue<ImageWrapper>(
+            settings.getQueueCapacityBytes(), settings.getQueueDepth(),
+            AsynchronousContext::getImageBytes);
       // Create a new thread to do processing in.
       new Thread(new Runnable() {
          @Override
@@ -43,65 +66,69 @@ public final class AsynchronousContext extends BaseContext {
       }, "Processor context for " + processor_).start();
    }
 
+   private static long getImageBytes(ImageWrapper wrapper) {
+      Image image = wrapper.getImage();
+      if (image == null) {
+         return 0;
+      }
+      return (long) image.getWidth() * image.getHeight()
+            * image.getBytesPerPixel();
+   }
+
    /**
     * This method runs in a separate thread, and pulls images from the
     * input queue, to feed into the processor. It only runs when the pipeline
     * is in asynchronous mode; in synchronous mode, the processor is invoked
-    * directly by insertImage().
+    * directly by insertImage(). It returns once the pipeline has been
+    * flushed.
     */
    private void monitorQueue() {
+      List<ImageWrapper> batch = new ArrayList<ImageWrapper>(MAX_BATCH_SIZE);
       while (true) {
-         ImageWrapper wrapper = null;
          try {
-            wrapper = inputQueue_.poll(1000, TimeUnit.MILLISECONDS);
-         } catch (InterruptedException e) {
-            // Ignore it.
-            Thread.currentThread().interrupt();
-         }
-         if (wrapper == null) {
-            // Queue is empty.
-            if (isFlushed_) {
-               // All done.
+            if (!inputQueue_.awaitBatch(batch, MAX_BATCH_SIZE)) {
+               // Flushed, and all images handled.
                return;
-            } else {
-               // Go back to polling.
-               continue;
             }
+         } catch (InterruptedException e) {
+            ReportingUtils.logError(e, "Interrupted while waiting for images");
+            return;
          }
-         if (wrapper.getImage() == null) {
-            // Flushing the queue; cleanup the processor and pass the empty
-            // wrapper along.
-            processor_.cleanup(this);
-            if (sink_ != null) {
-               sink_.insertImage(wrapper);
-            }
-            isFlushed_ = true;
-            if (flushLatch_ != null) {
-               flushLatch_.countDown();
-            }
-         } else {
-            // Non-null image: process it.
-            isFlushed_ = false;
-            try {
-               processor_.processImage(wrapper.getImage(), this);
-            } catch (Exception e) {
-               ReportingUtils.logError(e, "Processor failed to process image");
-               // Pass the exception to our parent.
-               parent_.exceptionOccurred(e);
+         for (ImageWrapper wrapper : batch) {
+            if (wrapper.getImage() == null) {
+               // Flushing the queue; cleanup the processor and pass the
+               // empty wrapper along.
+               processor_.cleanup(this);
+               if (sink_ != null) {
+                  sink_.insertImage(wrapper);
+               }
+               if (flushLatch_ != null) {
+                  flushLatch_.countDown();
+               }
+            } else {
+               processImage(wrapper);
             }
          }
+         batch.clear();
       }
    }
 
    /**
     * Process an image. If the input ImageWrapper has a null image, then we
     * flush the pipeline instead, passing the null along to the next context.
+    * No images may be inserted after that.
     */
    public void insertImage(ImageWrapper wrapper) {
+      if (wrapper.getImage() != null) {
+         stats_.imageQueued();
+      }
       try {
          inputQueue_.put(wrapper);
       } catch (InterruptedException e) {
          ReportingUtils.logError(e, "Interrupted while passing image along pipeline");
       }
+      if (wrapper.getImage() == null) {
+         inputQueue_.endOfStream();
+      }
    }
 }
@@ -24,10 +24,12 @@ import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
 import org.micromanager.data.Datastore;
 import org.micromanager.data.Image;
+import org.micromanager.data.PixelBufferPool;
 import org.micromanager.data.Processor;
 import org.micromanager.data.ProcessorContext;
 import org.micromanager.data.SummaryMetadata;
 import org.micromanager.internal.utils.ReportingUtils;
+import org.micromanager.internal.utils.performance.PerformanceMonitor;
 
 public abstract class BaseContext implements ProcessorContext {
    protected BaseContext sink_ = null;
@@ -35,12 +37,44 @@ public abstract class BaseContext implements ProcessorContext {
    protected Datastore store_;
    protected DefaultPipeline parent_;
    protected CountDownLatch flushLatch_;
+   protected final StageStatistics stats_;
+   private final PixelBufferPool pixelBufferPool_;
+
+   // Output of the image being processed; only touched by the thread that
+   // is running processImage() (see processImage(ImageWrapper))
+   private long outputWaitNs_;
+   private int numOutputs_;
 
    public BaseContext(Processor processor, Datastore store,
                       DefaultPipeline parent) {
       processor_ = processor;
       store_ = store;
       parent_ = parent;
+      if (parent != null) {
+         stats_ = parent.createStageStatistics(processor);
+         pixelBufferPool_ = parent.getPixelBufferPool();
+      } else {
+         stats_ = new StageStatistics(processor, 0,
+               PerformanceMonitor.createWithTimeConstantMs(1000.0));
+         pixelBufferPool_ = new DefaultPixelBufferPool();
+      }
+   }
+
+   /**
+    * Run the processor on an image, recording its timing.
+    */
+   protected void processImage(ImageWrapper wrapper) {
+      long startNs = stats_.processingStarted(wrapper);
+      outputWaitNs_ = 0;
+      numOutputs_ = 0;
+      try {
+         processor_.processImage(wrapper.getImage(), this);
+      } catch (Exception e) {
+         ReportingUtils.logError(e, "Processor failed to process image");
+         // Pass the exception to our parent.
+         parent_.exceptionOccurred(e);
+      }
+      stats_.imageProcessed(startNs, outputWaitNs_, numOutputs_);
    }
 
    /**
@@ -49,6 +83,21 @@ public abstract class BaseContext implements ProcessorContext {
     */
    @Override
    public void outputImage(Image image) {
+      long startNs = System.nanoTime();
+      handOn(image);
+      outputHandedOn(System.nanoTime() - startNs);
+   }
+
+   /**
+    * Called after each image output by the processor has been passed on,
+    * with the time that took.
+    */
+   protected void outputHandedOn(long outputWaitNs) {
+      outputWaitNs_ += outputWaitNs;
+      numOutputs_++;
+   }
+
+   private void handOn(Image image) {
       if (sink_ == null) {
          // Send the image to the Datastore.
          try {
@@ -99,8 +148,20 @@ public abstract class BaseContext implements ProcessorContext {
     */
    public abstract void insertImage(ImageWrapper wrapper);
 
+   /**
+    * @return the timing statistics of this stage
+    */
+   public StageStatistics getStatistics() {
+      return stats_;
+   }
+
    @Override
    public SummaryMetadata getSummaryMetadata() {
       return store_.getSummaryMetadata();
    }
+
+   @Override
+   public PixelBufferPool getPixelBufferPool() {
+      return pixelBufferPool_;
+   }
 }
@@ -22,6 +22,7 @@ package org.micromanager.data.internal.pipeline;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import org.micromanager.data.Datastore;
@@ -30,10 +31,16 @@ import org.micromanager.data.Image;
 import org.micromanager.data.Pipeline;
 import org.micromanager.data.PipelineErrorException;
 import org.micromanager.data.Processor;
+import org.micromanager.data.ProcessorStatistics;
 import org.micromanager.data.SummaryMetadata;
+import org.micromanager.internal.MMStudio;
 import org.micromanager.internal.utils.ReportingUtils;
+import org.micromanager.internal.utils.performance.PerformanceMonitor;
+import org.micromanager.internal.utils.performance.gui.PerformanceMonitorUI;
 
 public final class DefaultPipeline implements Pipeline {
+   private static final String SHOULD_RUN_PROCESSORS_IN_PARALLEL =
+         "run stateless image processors on several threads";
 
    private final List<Processor> processors_;
    private final List<BaseContext> contexts_;
@@ -42,20 +49,51 @@ public final class DefaultPipeline implements Pipeline {
    private boolean haveInsertedImages_ = false;
    private boolean amHalting_ = false;
    private boolean isHalted_ = false;
-   private final ArrayList<Exception> exceptions_;
+   private final List<Exception> exceptions_;
+   private final PerformanceMonitor perfMon_ =
+         PerformanceMonitor.createWithTimeConstantMs(1000.0);
+   private final DefaultPixelBufferPool pixelBufferPool_ =
+         new DefaultPixelBufferPool();
+   private PerformanceMonitorUI perfMonUI_ = null;
 
-   @SuppressWarnings("LeakingThisInConstructor")
    public DefaultPipeline(List<Processor> processors, Datastore store,
                           boolean isSynchronous) {
+      this(processors, store, isSynchronous, null);
+   }
+
+   /**
+    * Create a pipeline, specifying how each stage is run in asynchronous
+    * mode. Stateless processors are run on as many threads as their
+    * settings allow (with their output kept in order); all others on one
+    * thread.
+    *
+    * @param stageSettings settings for each processor, in the same order;
+    *                      null (or null elements) for the defaults. Ignored
+    *                      when isSynchronous is true.
+    */
+   @SuppressWarnings("LeakingThisInConstructor")
+   public DefaultPipeline(List<Processor> processors, Datastore store,
+                          boolean isSynchronous, List<StageSettings> stageSettings) {
       processors_ = processors;
       store_ = store;
       contexts_ = new ArrayList<BaseContext>();
-      exceptions_ = new ArrayList<Exception>();
-      for (Processor processor : processors_) {
+      exceptions_ = Collections.synchronizedList(new ArrayList<Exception>());
+      for (int i = 0; i < processors_.size(); ++i) {
+         Processor processor = processors_.get(i);
+         StageSettings settings = null;
+         if (stageSettings != null && i < stageSettings.size()) {
+            settings = stageSettings.get(i);
+         }
+         if (settings == null) {
+            settings = StageSettings.DEFAULT;
+         }
          if (isSynchronous) {
             contexts_.add(new SynchronousContext(processor, store_, this));
+         } else if (processor.isStateless() && settings.getThreads() > 1) {
+            contexts_.add(new ParallelContext(processor, store_, this, settings));
          } else {
-            contexts_.add(new AsynchronousContext(processor, store_, this));
+            contexts_.add(new AsynchronousContext(processor, store_, this,
+                  settings));
          }
       }
       // Chain the contexts together. The last one goes to the Datastore by
@@ -64,6 +102,26 @@ public final class DefaultPipeline implements Pipeline {
          contexts_.get(i).setSink(contexts_.get(i + 1));
       }
       isSynchronous_ = isSynchronous;
+      if (!contexts_.isEmpty()) {
+         // Only shown when enabled by system property
+         perfMonUI_ = PerformanceMonitorUI.create(perfMon_,
+               "Pipeline Performance");
+      }
+   }
+
+   /**
+    * Create the statistics for the next stage; called by each context as it
+    * is constructed.
+    */
+   StageStatistics createStageStatistics(Processor processor) {
+      return new StageStatistics(processor, contexts_.size(), perfMon_);
+   }
+
+   /**
+    * @return the pool of pixel arrays shared by all stages
+    */
+   DefaultPixelBufferPool getPixelBufferPool() {
+      return pixelBufferPool_;
    }
 
    @Override
@@ -92,8 +150,10 @@ public final class DefaultPipeline implements Pipeline {
          return;
       }
       if (exceptions_.size() > 0) {
-         for (Exception ex : exceptions_) {
-            ReportingUtils.logError(ex);
+         synchronized (exceptions_) {
+            for (Exception ex : exceptions_) {
+               ReportingUtils.logError(ex);
+            }
          }
          // Currently in an error state.
          throw new PipelineErrorException();
@@ -145,6 +205,8 @@ public final class DefaultPipeline implements Pipeline {
       } catch (InterruptedException e) {
          ReportingUtils.logError("Interrupted while waiting for flush to complete.");
       }
+      pixelBufferPool_.clear();
+      perfMonUI_.dispose();
       isHalted_ = true;
    }
 
@@ -168,7 +230,26 @@ public final class DefaultPipeline implements Pipeline {
       return processors_;
    }
 
+   @Override
+   public List<ProcessorStatistics> getStatistics() {
+      List<ProcessorStatistics> result = new ArrayList<ProcessorStatistics>();
+      for (BaseContext context : contexts_) {
+         result.add(context.getStatistics());
+      }
+      return result;
+   }
+
    public void exceptionOccurred(Exception e) {
       exceptions_.add(e);
    }
+
+   public static boolean getShouldRunProcessorsInParallel() {
+      return MMStudio.getInstance().profile().getSettings(DefaultPipeline.class)
+            .getBoolean(SHOULD_RUN_PROCESSORS_IN_PARALLEL, false);
+   }
+
+   public static void setShouldRunProcessorsInParallel(boolean shouldRun) {
+      MMStudio.getInstance().profile().getSettings(DefaultPipeline.class)
+            .putBoolean(SHOULD_RUN_PROCESSORS_IN_PARALLEL, shouldRun);
+   }
 }
@@ -0,0 +1,220 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API implementation
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import org.micromanager.data.PixelBufferPool;
+
+/**
+ * The PixelBufferPool of a DefaultPipeline.
+ *
+ * <p>Unused arrays are kept per element type and exact length, and reused
+ * in LIFO order; the total size of unused arrays is capped. Arrays that
+ * have been handed out are tracked weakly (arrays have identity equality, so
+ * a WeakHashMap works as a weak identity set), which lets recycle() reject foreign or duplicate
+ * arrays without keeping images alive that went to a Datastore.
+ */
+public final class DefaultPixelBufferPool implements PixelBufferPool {
+   static final long DEFAULT_MAX_POOLED_BYTES =
+         System.getProperty("sun.arch.data.model", "").equals("32")
+               ? 32L * 1024 * 1024 : 256L * 1024 * 1024;
+
+   private final long maxPooledBytes_;
+   private final HashMap<Integer, ArrayDeque<byte[]>> bytes_ = new HashMap<>();
+   private final HashMap<Integer, ArrayDeque<short[]>> shorts_ = new HashMap<>();
+   private final HashMap<Integer, ArrayDeque<float[]>> floats_ = new HashMap<>();
+   private final WeakHashMap<Object, Boolean> handedOut_ = new WeakHashMap<>();
+   private long pooledBytes_ = 0;
+
+   private long hits_ = 0;
+   private long misses_ = 0;
+
+   public DefaultPixelBufferPool() {
+      this(DEFAULT_MAX_POOLED_BYTES);
+   }
+
+   /**
+    * @param maxPooledBytes maximum total size of unused arrays kept
+    */
+   public DefaultPixelBufferPool(long maxPooledBytes) {
+      if (maxPooledBytes < 0) {
+         throw new IllegalArgumentException("Invalid pool size: " + maxPooledBytes);
+      }
+      maxPooledBytes_ = maxPooledBytes;
+   }
+
+   @Override
+   public byte[] getBytes(int length) {
+      synchronized (this) {
+         byte[] array = take(bytes_, length, length);
+         if (array != null) {
+            return array;
+         }
+      }
+      return handOut(new byte[length]);
+   }
+
+   @Override
+   public short[] getShorts(int length) {
+      synchronized (this) {
+         short[] array = take(shorts_, length, 2L * length);
+         if (array != null) {
+            return array;
+         }
+      }
+      return handOut(new short[length]);
+   }
+
+   @Override
+   public float[] getFloats(int length) {
+      synchronized (this) {
+         float[] array = take(floats_, length, 4L * length);
+         if (array != null) {
+            return array;
+         }
+      }
+      return handOut(new float[length]);
+   }
+
+   @Override
+   public synchronized boolean recycle(Object pixels) {
+      if (pixels == null || handedOut_.remove(pixels) == null) {
+         return false;
+      }
+      if (pixels instanceof byte[]) {
+         byte[] array = (byte[]) pixels;
+         return put(bytes_, array, array.length, array.length);
+      } else if (pixels instanceof short[]) {
+         short[] array = (short[]) pixels;
+         return put(shorts_, array, array.length, 2L * array.length);
+      } else if (pixels instanceof float[]) {
+         float[] array = (float[]) pixels;
+         return put(floats_, array, array.length, 4L * array.length);
+      }
+      return false;
+   }
+
+   /**
+    * Drop all unused arrays, e.g. once the pipeline has been halted.
+    */
+   public synchronized void clear() {
+      bytes_.clear();
+      shorts_.clear();
+      floats_.clear();
+      pooledBytes_ = 0;
+   }
+
+   public synchronized long getPooledBytes() {
+      return pooledBytes_;
+   }
+
+   /**
+    * @return number of requests served with a recycled array
+    */
+   public synchronized long getHitCount() {
+      return hits_;
+   }
+
+   /**
+    * @return number of requests for which a new array was allocated
+    */
+   public synchronized long getMissCount() {
+      return misses_;
+   }
+
+   @Override
+   public synchronized String toString() {
+      return String.format("%d recycled, %d allocated, %d bytes pooled",
+            hits_, misses_, pooledBytes_);
+   }
+
+   private <T> T take(Map<Integer, ArrayDeque<T>> pool, int length,
+                      long sizeBytes) {
+      ArrayDeque<T> arrays = pool.get(length);
+      T array = arrays == null ? null : arrays.pollFirst();
+      if (array == null) {
+         misses_++;
+         return null;
+      }
+      if (arrays.isEmpty()) {
+         pool.remove(length);
+      }
+      pooledBytes_ -= sizeBytes;
+      hits_++;
+      handedOut_.put(array, Boolean.TRUE);
+      return array;
+   }
+
+   private synchronized <T> T handOut(T array) {
+      handedOut_.put(array, Boolean.TRUE);
+      return array;
+   }
+
+   private <T> boolean put(Map<Integer, ArrayDeque<T>> pool, T array,
+                           int length, long sizeBytes) {
+      if (sizeBytes > maxPooledBytes_) {
+         return false;
+      }
+      while (pooledBytes_ + sizeBytes > maxPooledBytes_) {
+         dropOne();
+      }
+      ArrayDeque<T> arrays = pool.get(length);
+      if (arrays == null) {
+         arrays = new ArrayDeque<>();
+         pool.put(length, arrays);
+      }
+      arrays.addFirst(array);
+      pooledBytes_ += sizeBytes;
+      return true;
+   }
+
+   // Drop one of the largest unused arrays (of the first element type that
+   // has any); with a fixed set of image sizes the cap is rarely reached.
+   private void dropOne() {
+      if (dropLargest(bytes_, 1) || dropLargest(shorts_, 2)) {
+         return;
+      }
+      dropLargest(floats_, 4);
+   }
+
+   private <T> boolean dropLargest(Map<Integer, ArrayDeque<T>> pool,
+                                   int bytesPerElement) {
+      Integer largest = null;
+      for (Integer length : pool.keySet()) {
+         if (largest == null || length > largest) {
+            largest = length;
+         }
+      }
+      if (largest == null) {
+         return false;
+      }
+      ArrayDeque<T> arrays = pool.get(largest);
+      arrays.pollLast();
+      if (arrays.isEmpty()) {
+         pool.remove(largest);
+      }
+      pooledBytes_ -= (long) bytesPerElement * largest;
+      return true;
+   }
+}
@@ -29,6 +29,7 @@ import org.micromanager.data.Image;
  */
 public final class ImageWrapper {
    private Image image_;
+   private final long creationTimeNs_ = System.nanoTime();
 
    public ImageWrapper(Image image) {
       image_ = image;
@@ -37,4 +38,12 @@ public final class ImageWrapper {
    public Image getImage() {
       return image_;
    }
+
+   /**
+    * @return System.nanoTime() when the wrapper was created, i.e. when the
+    *     image was handed to the stage; used to measure queue wait
+    */
+   public long getCreationTimeNs() {
+      return creationTimeNs_;
+   }
 }
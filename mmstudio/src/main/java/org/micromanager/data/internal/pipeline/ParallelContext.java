@@ -0,0 +1,206 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import org.micromanager.data.Datastore;
+import org.micromanager.data.Image;
+import org.micromanager.data.PixelBufferPool;
+import org.micromanager.data.Processor;
+import org.micromanager.data.ProcessorContext;
+import org.micromanager.data.SummaryMetadata;
+import org.micromanager.internal.utils.ReportingUtils;
+import org.micromanager.internal.utils.ThreadFactoryFactory;
+
+/**
+ * Context that runs a stateless processor on several threads at once.
+ *
+ * <p>Each incoming image is given a sequence number. The images output by
+ * the processor for that input are collected and handed to the next stage
+ * only once all earlier inputs have been handled, so that downstream stages
+ * see images in the same order as with a single thread.
+ *
+ * <p>The number of images that have been accepted but not yet handed on is
+ * limited to the number of threads plus the queue depth; further calls to
+ * insertImage() block until earlier images have been handed on.
+ */
+public final class ParallelContext extends BaseContext {
+   private static final Runnable STOP = () -> { };
+
+   private final LinkedBlockingQueue<Runnable> tasks_ =
+         new LinkedBlockingQueue<>();
+   private final int numThreads_;
+   private final int maxInFlight_;
+   private final Semaphore inFlight_;
+
+   // Assigned by insertImage(), which is never called concurrently
+   private long nextSequence_ = 0;
+
+   // Guarded by completed_
+   private final HashMap<Long, List<Image>> completed_ = new HashMap<>();
+   private long nextToEmit_ = 0;
+   private boolean emitting_ = false;
+
+   public ParallelContext(Processor processor, Datastore store,
+                          DefaultPipeline parent, StageSettings settings) {
+      super(processor, store, parent);
+      numThreads_ = settings.getThreads();
+      maxInFlight_ = settings.getThreads() + settings.getQueueDepth();
+      inFlight_ = new Semaphore(maxInFlight_);
+      ThreadFactory factory = ThreadFactoryFactory.createThreadFactory(
+            "Processor context for " + processor_);
+      for (int i = 0; i < numThreads_; i++) {
+         factory.newThread(this::runTasks).start();
+      }
+   }
+
+   private void runTasks() {
+      while (true) {
+         Runnable task;
+         try {
+            task = tasks_.take();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+         }
+         if (task == STOP) {
+            return;
+         }
+         task.run();
+      }
+   }
+
+   /**
+    * Process an image. If the input ImageWrapper has a null image, then we
+    * wait until all images have been processed and handed on, and flush the
+    * pipeline, passing the null along to the next context.
+    */
+   @Override
+   public void insertImage(ImageWrapper wrapper) {
+      if (wrapper.getImage() == null) {
+         flush(wrapper);
+         return;
+      }
+      stats_.imageQueued();
+      try {
+         inFlight_.acquire();
+      } catch (InterruptedException e) {
+         ReportingUtils.logError(e, "Interrupted while passing image along pipeline");
+         return;
+      }
+      final long sequence = nextSequence_++;
+      tasks_.add(() -> process(sequence, wrapper));
+   }
+
+   private void process(long sequence, ImageWrapper wrapper) {
+      final List<Image> outputs = new ArrayList<>(1);
+      ProcessorContext collector = new ProcessorContext() {
+         @Override
+         public void outputImage(Image output) {
+            outputs.add(output);
+         }
+
+         @Override
+         public SummaryMetadata getSummaryMetadata() {
+            return ParallelContext.this.getSummaryMetadata();
+         }
+
+         @Override
+         public PixelBufferPool getPixelBufferPool() {
+            return ParallelContext.this.getPixelBufferPool();
+         }
+      };
+      long startNs = stats_.processingStarted(wrapper);
+      try {
+         processor_.processImage(wrapper.getImage(), collector);
+      } catch (Exception e) {
+         ReportingUtils.logError(e, "Processor failed to process image");
+         // Pass the exception to our parent.
+         parent_.exceptionOccurred(e);
+      }
+      // Outputs are handed on (and timed) in complete()
+      stats_.imageProcessed(startNs, -1, outputs.size());
+      complete(sequence, outputs);
+   }
+
+   /**
+    * Record the outputs for one input, and hand on all outputs that are next
+    * in sequence. Only one thread hands on images at a time; a thread that
+    * finds another one doing so leaves its outputs for that thread.
+    */
+   private void complete(long sequence, List<Image> outputs) {
+      synchronized (completed_) {
+         completed_.put(sequence, outputs);
+         if (emitting_) {
+            return;
+         }
+         emitting_ = true;
+      }
+      while (true) {
+         List<Image> next;
+         synchronized (completed_) {
+            next = completed_.remove(nextToEmit_);
+            if (next == null) {
+               emitting_ = false;
+               return;
+            }
+            nextToEmit_++;
+         }
+         try {
+            for (Image output : next) {
+               outputImage(output);
+            }
+         } finally {
+            inFlight_.release();
+         }
+      }
+   }
+
+   private void flush(ImageWrapper wrapper) {
+      // Holding all permits means that all images have been handed on
+      inFlight_.acquireUninterruptibly(maxInFlight_);
+      try {
+         processor_.cleanup(this);
+         if (sink_ != null) {
+            sink_.insertImage(wrapper);
+         }
+      } finally {
+         inFlight_.release(maxInFlight_);
+         tasks_.addAll(Collections.nCopies(numThreads_, STOP));
+      }
+      if (flushLatch_ != null) {
+         flushLatch_.countDown();
+      }
+   }
+
+   // Images are handed on by whichever thread is emitting, so record the
+   // time directly instead of accumulating it per input image.
+   @Override
+   protected void outputHandedOn(long outputWaitNs) {
+      stats_.outputHandedOn(outputWaitNs);
+   }
+}
@@ -0,0 +1,94 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal.pipeline;
+
+/**
+ * How one stage (processor) of an asynchronous pipeline is run.
+ *
+ * <p>The queue depth is the number of images that may wait for the stage
+ * before the previous stage (or the caller of Pipeline.insertImage()) is
+ * blocked; the queue capacity optionally also limits the number of bytes of
+ * pixel data those images may hold. The number of threads only applies to processors that declare
+ * themselves stateless (see Processor.isStateless()); other processors are
+ * always run on a single thread.
+ */
+public final class StageSettings {
+   public static final int DEFAULT_QUEUE_DEPTH = 1;
+   public static final int DEFAULT_THREADS = 1;
+   public static final StageSettings DEFAULT =
+         new StageSettings(DEFAULT_QUEUE_DEPTH, DEFAULT_THREADS);
+   // Used when the user enables parallel processing (see
+   // DefaultPipeline.getShouldRunProcessorsInParallel())
+   public static final int PARALLEL_THREADS =
+         Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+   public static final StageSettings PARALLEL =
+         new StageSettings(DEFAULT_QUEUE_DEPTH, PARALLEL_THREADS);
+
+   private final int queueDepth_;
+   private final int threads_;
+   private final long queueCapacityBytes_;
+
+   /**
+    * @param queueDepth number of images that may be waiting for the stage
+    * @param threads    maximum number of threads processing images in
+    *                   parallel, if the processor is stateless
+    */
+   public StageSettings(int queueDepth, int threads) {
+      this(queueDepth, threads, Long.MAX_VALUE);
+   }
+
+   /**
+    * @param queueDepth         number of images that may be waiting for the
+    *                           stage
+    * @param threads            maximum number of threads processing images
+    *                           in parallel, if the processor is stateless
+    * @param queueCapacityBytes number of bytes of pixel data that may be
+    *                           waiting for the stage (at least one image is
+    *                           always accepted)
+    */
+   public StageSettings(int queueDepth, int threads, long queueCapacityBytes) {
+      if (queueDepth < 1) {
+         throw new IllegalArgumentException("Invalid queue depth: " + queueDepth);
+      }
+      if (threads < 1) {
+         throw new IllegalArgumentException("Invalid number of threads: " + threads);
+      }
+      if (queueCapacityBytes < 1) {
+         throw new IllegalArgumentException(
+               "Invalid queue capacity: " + queueCapacityBytes);
+      }
+      queueDepth_ = queueDepth;
+      threads_ = threads;
+      queueCapacityBytes_ = queueCapacityBytes;
+   }
+
+   public int getQueueDepth() {
+      return queueDepth_;
+   }
+
+   public int getThreads() {
+      return threads_;
+   }
+
+   public long getQueueCapacityBytes() {
+      return queueCapacityBytes_;
+   }
+}
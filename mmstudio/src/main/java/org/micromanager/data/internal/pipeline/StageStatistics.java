@@ -0,0 +1,187 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     Data API
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.data.internal.pipeline;
+
+import org.micromanager.data.Processor;
+import org.micromanager.data.ProcessorStatistics;
+import org.micromanager.internal.utils.performance.ExponentialSmoothing;
+import org.micromanager.internal.utils.performance.PerformanceMonitor;
+import org.micromanager.internal.utils.performance.RunningQuantile;
+import org.micromanager.internal.utils.performance.SkipListRunningQuantile;
+
+/**
+ * Records the timing of one pipeline stage.
+ *
+ * <p>Averages are sampled into the pipeline's PerformanceMonitor (so that
+ * they show up in its PerformanceMonitorUI), under labels prefixed with the
+ * stage number and processor name. Recording methods are called from the
+ * threads that run the stage, and may be called concurrently for stages run
+ * on several threads.
+ */
+final class StageStatistics implements ProcessorStatistics {
+   private static final int QUANTILE_SIZE = 100;
+   private static final double NS_PER_MS = 1e6;
+
+   private final Processor processor_;
+   private final PerformanceMonitor perfMon_;
+   private final String queueWaitLabel_;
+   private final String processingLabel_;
+   private final String outputWaitLabel_;
+   private final String fanOutLabel_;
+   private final String queueDepthLabel_;
+
+   // All guarded by this
+   private final RunningQuantile processingTimes_ =
+         SkipListRunningQuantile.create(QUANTILE_SIZE);
+   private long imagesProcessed_ = 0;
+   private long imagesOutput_ = 0;
+   private int queueDepth_ = 0;
+
+   StageStatistics(Processor processor, int stageIndex,
+         PerformanceMonitor perfMon) {
+      processor_ = processor;
+      perfMon_ = perfMon;
+      String prefix = String.format("%d %s: ", stageIndex + 1,
+            processor == null ? "" : processor.getClass().getSimpleName());
+      queueWaitLabel_ = prefix + "Queue wait (ms)";
+      processingLabel_ = prefix + "Processing time (ms)";
+      outputWaitLabel_ = prefix + "Output wait (ms)";
+      fanOutLabel_ = prefix + "Images out per image in";
+      queueDepthLabel_ = prefix + "Queue depth";
+   }
+
+   /**
+    * Called when an image is accepted by the stage, before it waits to be
+    * processed.
+    */
+   synchronized void imageQueued() {
+      queueDepth_++;
+      perfMon_.sample(queueDepthLabel_, queueDepth_);
+   }
+
+   /**
+    * Called when processing of an image starts.
+    *
+    * @return the start time, to be passed to imageProcessed()
+    */
+   long processingStarted(ImageWrapper wrapper) {
+      long now = System.nanoTime();
+      synchronized (this) {
+         queueDepth_ = Math.max(0, queueDepth_ - 1);
+         perfMon_.sample(queueDepthLabel_, queueDepth_);
+         perfMon_.sample(queueWaitLabel_,
+               (now - wrapper.getCreationTimeNs()) / NS_PER_MS);
+      }
+      return now;
+   }
+
+   /**
+    * Called when processing of an image is finished.
+    *
+    * @param startNs the value returned by processingStarted()
+    * @param outputWaitNs time spent handing the outputs on, which is not
+    *                     counted as processing time; -1 if the outputs are
+    *                     handed on later (see outputHandedOn())
+    * @param numOutputs number of images output for this image
+    */
+   void imageProcessed(long startNs, long outputWaitNs, int numOutputs) {
+      double processingMs =
+            (System.nanoTime() - startNs - outputWaitNs) / NS_PER_MS;
+      synchronized (this) {
+         imagesProcessed_++;
+         imagesOutput_ += numOutputs;
+         processingTimes_.sample(processingMs);
+         perfMon_.sample(processingLabel_, processingMs);
+         perfMon_.sample(fanOutLabel_, numOutputs);
+         if (outputWaitNs >= 0) {
+            perfMon_.sample(outputWaitLabel_, outputWaitNs / NS_PER_MS);
+         }
+      }
+   }
+
+   /**
+    * Record time spent handing output on, for stages that do so outside
+    * of processImage().
+    */
+   synchronized void outputHandedOn(long outputWaitNs) {
+      perfMon_.sample(outputWaitLabel_, outputWaitNs / NS_PER_MS);
+   }
+
+   private synchronized double getAverage(String label) {
+      ExponentialSmoothing stat = perfMon_.getStatistic(label);
+      return stat == null ? 0.0 : stat.getAverage();
+   }
+
+   @Override
+   public Processor getProcessor() {
+      return processor_;
+   }
+
+   @Override
+   public synchronized long getImagesProcessed() {
+      return imagesProcessed_;
+   }
+
+   @Override
+   public synchronized long getImagesOutput() {
+      return imagesOutput_;
+   }
+
+   @Override
+   public double getAverageQueueWaitMs() {
+      return getAverage(queueWaitLabel_);
+   }
+
+   @Override
+   public double getAverageProcessingTimeMs() {
+      return getAverage(processingLabel_);
+   }
+
+   @Override
+   public synchronized double getProcessingTimeQuantileMs(double q) {
+      return processingTimes_.getQuantile(q);
+   }
+
+   @Override
+   public double getAverageOutputWaitMs() {
+      return getAverage(outputWaitLabel_);
+   }
+
+   @Override
+   public double getAverageFanOut() {
+      return getAverage(fanOutLabel_);
+   }
+
+   @Override
+   public synchronized int getQueueDepth() {
+      return queueDepth_;
+   }
+
+   @Override
+   public synchronized String toString() {
+      return String.format("%s: %d in, %d out, queue wait %.2f ms, "
+                  + "processing %.2f ms (median %.2f, 90%% %.2f), output wait %.2f ms",
+            processor_ == null ? "" : processor_.getClass().getSimpleName(),
+            imagesProcessed_, imagesOutput_, getAverageQueueWaitMs(),
+            getAverageProcessingTimeMs(), processingTimes_.getQuantile(0.5),
+            processingTimes_.getQuantile(0.9), getAverageOutputWaitMs());
+   }
+}
@@ -22,7 +22,6 @@ package org.micromanager.data.internal.pipeline;
 
 import org.micromanager.data.Datastore;
 import org.micromanager.data.Processor;
-import org.micromanager.internal.utils.ReportingUtils;
 
 public final class SynchronousContext extends BaseContext {
    public SynchronousContext(Processor processor, Datastore store,
@@ -46,13 +45,8 @@ public final class SynchronousContext extends BaseContext {
             flushLatch_.countDown();
          }
       } else {
-         try {
-            processor_.processImage(wrapper.getImage(), this);
-         } catch (Exception e) {
-            ReportingUtils.logError(e, "Processor failed to process image");
-            // Pass the exception to our parent.
-            parent_.exceptionOccurred(e);
-         }
+         stats_.imageQueued();
+         processImage(wrapper);
       }
    }
 }
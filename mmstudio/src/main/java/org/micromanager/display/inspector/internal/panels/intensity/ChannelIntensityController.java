@@ -441,6 +441,7 @@ public final class ChannelIntensityController implements HistogramView.Listener
             int lengthToUse = Math.min(data.length, (1 << rangeBits) - 1);
             histogram_.setComponentGraph(component, data, lengthToUse, lengthToUse);
             histogram_.setROIIndicator(componentStats.isROIStats());
+            histogram_.setSampledIndicator(componentStats.isSampled());
          }
 
          updateScalingIndicators(settings, componentStats, component);
@@ -85,6 +85,7 @@ public final class HistogramView extends JPanel {
    private boolean fillHistograms_ = true;
    private boolean plotLogIntensity_ = false;
    private boolean roiIndicatorEnabled_ = false;
+   private boolean sampledIndicatorEnabled_ = false;
    private String overlayText_ = null;
 
    // Layout state
@@ -308,6 +309,14 @@ public final class HistogramView extends JPanel {
       repaint();
    }
 
+   /**
+    * Show that the histogram was computed from a subset of the pixels.
+    */
+   public void setSampledIndicator(boolean enable) {
+      sampledIndicatorEnabled_ = enable;
+      repaint();
+   }
+
    public void setOverlayText(String text) {
       overlayText_ = text;
       repaint();
@@ -754,10 +763,17 @@ public final class HistogramView extends JPanel {
    }
 
    private void drawROIIndicator(Graphics2D g) {
-      if (!roiIndicatorEnabled_) {
+      if (!roiIndicatorEnabled_ && !sampledIndicatorEnabled_) {
          return;
       }
-      String text = "ROI";
+      String text;
+      if (!sampledIndicatorEnabled_) {
+         text = "ROI";
+      } else if (!roiIndicatorEnabled_) {
+         text = "Sampled";
+      } else {
+         text = "ROI, Sampled";
+      }
       Rectangle rect = getGraphRect();
       Point graphRight = new Point(rect.x + rect.width, rect.y + rect.height / 2);
 
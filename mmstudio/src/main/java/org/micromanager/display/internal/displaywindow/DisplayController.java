@@ -446,6 +446,11 @@ public final class DisplayController extends DisplayWindowAPIAdapter
    @Override
    @MustCallOnEDT
    public ImagesAndStats getCurrentImagesAndStats() {
+      if (displayedImages_ != null && displayedImages_.isSampledStats()) {
+         // Whoever asks is going to look at the stats; the exact stats will
+         // be posted when ready
+         computeQueue_.requestExactStats();
+      }
       return displayedImages_;
    }
 
@@ -13,7 +13,6 @@
 
 package org.micromanager.display.internal.imagestats;
 
-import com.google.common.base.Preconditions;
 import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,21 +23,6 @@ import java.util.concurrent.Future;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import net.imglib2.Cursor;
-import net.imglib2.IterableInterval;
-import net.imglib2.histogram.BinMapper1d;
-import net.imglib2.histogram.Histogram1d;
-import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImgs;
-import net.imglib2.transform.integer.MixedTransform;
-import net.imglib2.type.numeric.IntegerType;
-import net.imglib2.type.numeric.integer.UnsignedByteType;
-import net.imglib2.type.numeric.integer.UnsignedShortType;
-import net.imglib2.util.ConstantUtils;
-import net.imglib2.util.Intervals;
-import net.imglib2.view.IntervalView;
-import net.imglib2.view.MixedTransformView;
-import net.imglib2.view.Views;
 import org.micromanager.data.Image;
 import org.micromanager.internal.utils.ThreadFactoryFactory;
 import org.micromanager.internal.utils.performance.CPUTimer;
@@ -49,7 +33,12 @@ import org.micromanager.internal.utils.performance.WallTimer;
  * @author Mark A. Tsuchida
  */
 public final class ImageStatsProcessor {
-   private static final int MASK_THRESH = 128;
+   // Frames with fewer pixels than this are computed on a single thread
+   private static final int MIN_STRIPE_PIXELS = 1 << 20;
+   private static final int MAX_STRIPES =
+         Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+   // Frames with fewer pixels than this are not sampled, even if requested
+   private static final int MIN_SAMPLED_PIXELS = 512 * 512;
 
    private final ExecutorService executor_;
 
@@ -120,19 +109,30 @@ public final class ImageStatsProcessor {
 
    private ImageStats computeStats(Image image,
                                    ImageStatsRequest request, int index)
-         throws ClassCastException {
+         throws InterruptedException, ExecutionException {
       CPUTimer cpuTimer = CPUTimer.createStarted();
 
       int nComponents = image.getNumComponents();
       Integer boxedBitDepth = image.getMetadata().getBitDepth();
-      int bytesPerSample = image.getBytesPerPixel() / nComponents;
+      int bytesPerSample = image.getBytesPerComponent();
       int bitDepth = boxedBitDepth == null
             ? 8 * bytesPerSample : boxedBitDepth;
       int binCountPowerOf2 =
             Math.min(bitDepth, request.getMaxBinCountPowerOf2());
 
-      // RGB888 images can come with an extra component in the pixel buffer.
-      // TODO XXX Handle this case!
+      final Kernel kernel;
+      if (nComponents == 1 && bytesPerSample == 1) {
+         kernel = (px, w, b, y0, y1, m, mb, acc) ->
+               PixelStatsKernels.accumulateBytes((byte[]) px, w, b, y0, y1, m, mb, acc);
+      } else if (nComponents == 1 && bytesPerSample == 2) {
+         kernel = (px, w, b, y0, y1, m, mb, acc) ->
+               PixelStatsKernels.accumulateShorts((short[]) px, w, b, y0, y1, m, mb, acc);
+      } else if (nComponents == 3 && image.getBytesPerPixel() == 4) {
+         kernel = (px, w, b, y0, y1, m, mb, acc) ->
+               PixelStatsKernels.accumulateRGB32((byte[]) px, w, b, y0, y1, m, mb, acc);
+      } else {
+         return null; // We don't know how to compute (TODO FIX)
+      }
 
       // Determine the overlap between the ROI rect/mask and the image
       boolean useROI;
@@ -159,169 +159,75 @@ public final class ImageStatsProcessor {
       }
 
       // If (the used part of) the mask has no pixels, revert to full image
-      IterableInterval<UnsignedByteType> mask =
-            wrapROIMask(maskBytes, nComponents, maskBounds, statsBounds);
-      boolean maskEmpty = true;
-      for (Cursor<UnsignedByteType> c = mask.cursor(); c.hasNext(); c.fwd()) {
-         if (c.get().getInteger() >= MASK_THRESH) {
-            maskEmpty = false;
-            break;
-         }
-      }
-      if (maskEmpty) {
+      if (!PixelStatsKernels.maskHasPixels(maskBytes, maskBounds, statsBounds)) {
          statsBounds = imageBounds;
-         mask = wrapROIMask(null, nComponents, imageBounds, statsBounds);
+         maskBytes = null;
          useROI = false;
       }
 
-      ImageStats result = null;
-      if (bytesPerSample == 1) {
-         Img<UnsignedByteType> img =
-               ArrayImgs.unsignedBytes((byte[]) image.getRawPixels(),
-                     nComponents, image.getWidth(), image.getHeight());
-         result = compute(
-               clipToRect(img, nComponents, statsBounds),
-               mask,
-               nComponents, bitDepth, binCountPowerOf2,
-               useROI, index);
-      } else if (bytesPerSample == 2) {
-         Img<UnsignedShortType> img =
-               ArrayImgs.unsignedShorts((short[]) image.getRawPixels(),
-                     nComponents, image.getWidth(), image.getHeight());
-         result = compute(
-               clipToRect(img, nComponents, statsBounds),
-               mask,
-               nComponents, bitDepth, binCountPowerOf2,
-               useROI, index);
-      }
-
-      if (perfMon_ != null) {
-         perfMon_.sample("Process CPU time (ms)", cpuTimer.getMs());
-      }
-
-      return result; // null if we don't know how to compute (TODO FIX)
-   }
-
-   private <T extends IntegerType<T>> ImageStats compute(
-         IterableInterval<T> img, IterableInterval<UnsignedByteType> mask,
-         int nComponents, int sampleBitDepth, int binCountPowerOf2,
-         boolean isROI, int index) {
-      // It's easier to debug if we check first...
-      Preconditions.checkArgument(img.numDimensions() == 3);
-      Preconditions.checkArgument(img.dimension(0) == nComponents);
-      for (int d = 0; d < 3; ++d) {
-         Preconditions.checkArgument(img.dimension(d) == mask.dimension(d));
-      }
-
-      BinMapper1d<T> binMapper =
-            PowerOf2BinMapper.create(sampleBitDepth, binCountPowerOf2);
-
-      // Some ugliness to allow us to compute stats for multiple components in
-      // a single interation over the pixels.
-      List<Histogram1d<T>> histograms = new ArrayList<Histogram1d<T>>();
-      long[] counts = new long[nComponents];
-      long[] minima = new long[nComponents];
-      long[] maxima = new long[nComponents];
-      long[] sums = new long[nComponents];
-      long[] sumsOfSquares = new long[nComponents];
-      for (int component = 0; component < nComponents; ++component) {
-         histograms.add(new Histogram1d<T>(binMapper));
-         counts[component] = 0;
-         minima[component] = Long.MAX_VALUE;
-         maxima[component] = Long.MIN_VALUE;
-         sums[component] = 0;
-         sumsOfSquares[component] = 0;
-      }
-
-      // Note: sums of squares could overflow with a huge image (65k by 65k or
-      // greater). If we ever deal with such images, we should split the image
-      // before computing partial statistics.
-      // The reason for computing sums of squares, rather than a running stdev,
-      // is to make it easy to parallelize these computations within a single
-      // image.
-
-      // Perform the actual computations:
-      Cursor<T> dataCursor = img.localizingCursor();
-      Cursor<UnsignedByteType> maskCursor = mask.cursor();
-      for (int i = 0; dataCursor.hasNext(); ++i) {
-         int component = i % nComponents;
-         T dataSample = dataCursor.next();
-         UnsignedByteType maskSample = maskCursor.next();
-
-         if (maskSample.getInteger() < MASK_THRESH) {
-            continue;
+      final Object pixels = image.getRawPixels();
+      final int width = image.getWidth();
+      final Rectangle bounds = statsBounds;
+      final byte[] mask = maskBytes;
+      final Rectangle finalMaskBounds = maskBounds;
+
+      // Split large frames into horizontal stripes, computed in parallel. The
+      // first stripe is computed on this thread.
+      long boundsPixels = (long) bounds.width * bounds.height;
+      int stride = boundsPixels < MIN_SAMPLED_PIXELS
+            ? 1 : request.getSamplingStride();
+      int nStripes = (int) Math.max(1, Math.min(MAX_STRIPES,
+            boundsPixels / stride / stride / MIN_STRIPE_PIXELS));
+      PixelStatsKernels.Accumulator[] partials =
+            new PixelStatsKernels.Accumulator[nStripes];
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int stripe = 0; stripe < nStripes; ++stripe) {
+         final PixelStatsKernels.Accumulator acc = new PixelStatsKernels.Accumulator(
+               nComponents, bitDepth, binCountPowerOf2, stride);
+         partials[stripe] = acc;
+         final int rowStart = bounds.y + (int) ((long) bounds.height * stripe / nStripes);
+         final int rowEnd = bounds.y + (int) ((long) bounds.height * (stripe + 1) / nStripes);
+         if (stripe > 0) {
+            futures.add(executor_.submit(() -> kernel.accumulate(pixels, width,
+                  bounds, rowStart, rowEnd, mask, finalMaskBounds, acc)));
          }
-
-         long dataValue = dataSample.getIntegerLong();
-
-         histograms.get(component).increment(dataSample);
-         counts[component]++;
-         if (dataValue < minima[component]) {
-            minima[component] = dataValue;
+      }
+      kernel.accumulate(pixels, width, bounds,
+            bounds.y, bounds.y + bounds.height / nStripes,
+            mask, finalMaskBounds, partials[0]);
+      try {
+         for (Future<?> future : futures) {
+            future.get();
          }
-         if (dataValue > maxima[component]) {
-            maxima[component] = dataValue;
+      } finally {
+         for (Future<?> future : futures) {
+            future.cancel(true);
          }
-         sums[component] += dataValue;
-         sumsOfSquares[component] += dataValue * dataValue;
+      }
+      for (int stripe = 1; stripe < nStripes; ++stripe) {
+         partials[0].merge(partials[stripe]);
       }
 
       IntegerComponentStats[] componentStats =
             new IntegerComponentStats[nComponents];
       for (int component = 0; component < nComponents; ++component) {
-         componentStats[component] = IntegerComponentStats.builder()
-               .histogram(histograms.get(component).toLongArray(),
-                     Math.max(0, sampleBitDepth - binCountPowerOf2))
-               .pixelCount(counts[component])
-               .usedROI(isROI)
-               .minimum(minima[component])
-               .maximum(maxima[component])
-               .sum(sums[component])
-               .sumOfSquares(sumsOfSquares[component])
-               .build();
+         componentStats[component] = partials[0].toStats(component, useROI);
       }
 
-      return ImageStats.create(index, componentStats);
-   }
-
-   private <T extends IntegerType<T>> IterableInterval<T> clipToRect(
-         Img<T> fullImg, int nComponents, Rectangle statsBounds) {
-      Preconditions.checkNotNull(statsBounds);
-      return Views.interval(fullImg,
-            Intervals.createMinSize(
-                  0, statsBounds.x, statsBounds.y,
-                  nComponents, statsBounds.width, statsBounds.height)
-      );
-   }
-
-   private IterableInterval<UnsignedByteType> wrapROIMask(
-         byte[] rawMask, int nComponents, Rectangle maskBounds, Rectangle statsBounds) {
-      Preconditions.checkNotNull(maskBounds);
-      Preconditions.checkNotNull(statsBounds);
-      if (rawMask == null) {
-         return Views.iterable(
-               ConstantUtils.constantRandomAccessibleInterval(
-                     new UnsignedByteType(255),
-                     3,
-                     Intervals.createMinSize(0, statsBounds.x, statsBounds.y,
-                           nComponents, statsBounds.width, statsBounds.height)));
+      if (perfMon_ != null) {
+         perfMon_.sample("Process CPU time (ms)", cpuTimer.getMs());
       }
 
-      // The 2D mask, positioned in the image's coordinate system
-      IntervalView<UnsignedByteType> mask = Views.translate(
-            ArrayImgs.unsignedBytes(rawMask,
-                  maskBounds.width, maskBounds.height),
-            maskBounds.x, maskBounds.y);
+      return ImageStats.create(index, componentStats);
+   }
 
-      // Add the component dimension and clip to the intersection with the image
-      long[] min = {0, statsBounds.x, statsBounds.y};
-      long[] max = {nComponents - 1, statsBounds.x + statsBounds.width - 1,
-            statsBounds.y + statsBounds.height - 1};
-      MixedTransform t = new MixedTransform(3, 2);
-      t.setComponentMapping(new int[] {1, 2});
-      return Views.iterable(Views.interval(
-            new MixedTransformView<UnsignedByteType>(mask, t),
-            min, max
-      ));
+   /**
+    * One of the accumulate methods of PixelStatsKernels, with the pixel
+    * array type erased.
+    */
+   private interface Kernel {
+      void accumulate(Object pixels, int width, Rectangle bounds,
+                      int rowStart, int rowEnd, byte[] mask, Rectangle maskBounds,
+                      PixelStatsKernels.Accumulator acc);
    }
 }
\ No newline at end of file
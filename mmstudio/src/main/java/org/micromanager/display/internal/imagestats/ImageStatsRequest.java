@@ -30,21 +30,36 @@ public final class ImageStatsRequest {
    private final Coords nominalCoords_;
    private final List<Image> images_ = new ArrayList<>();
    private final BoundsRectAndMask roi_;
+   private final int samplingStride_;
 
    public static ImageStatsRequest create(Coords nominalCoords,
                                           List<Image> images,
                                           BoundsRectAndMask roi) {
-      return new ImageStatsRequest(nominalCoords, images, roi);
+      return new ImageStatsRequest(nominalCoords, images, roi, 1);
    }
 
    private ImageStatsRequest(Coords nominalCoords,
                              List<Image> images,
-                             BoundsRectAndMask roi) {
+                             BoundsRectAndMask roi,
+                             int samplingStride) {
       Preconditions.checkNotNull(nominalCoords);
       Preconditions.checkNotNull(images);
+      Preconditions.checkArgument(samplingStride >= 1);
       nominalCoords_ = nominalCoords;
       images_.addAll(images);
       roi_ = roi;
+      samplingStride_ = samplingStride;
+   }
+
+   /**
+    * Return a copy of this request with a different sampling stride.
+    *
+    * @param stride compute stats from every stride-th pixel of every
+    *               stride-th row; 1 for exact stats
+    * @return the new request
+    */
+   public ImageStatsRequest copyWithSamplingStride(int stride) {
+      return new ImageStatsRequest(nominalCoords_, images_, roi_, stride);
    }
 
    public Coords getNominalCoords() {
@@ -63,6 +78,13 @@ public final class ImageStatsRequest {
       return Collections.unmodifiableList(images_);
    }
 
+   /**
+    * @return the requested pixel sampling stride; 1 for exact stats
+    */
+   public int getSamplingStride() {
+      return samplingStride_;
+   }
+
    public int getMaxBinCountPowerOf2() {
       return 16; // TODO Should be configurable
    }
@@ -75,4 +75,23 @@ public final class ImagesAndStats {
    public boolean isRealStats() {
       return request_ == originalRequest_;
    }
+
+   /**
+    * Returns whether any of the stats were computed from sampled pixels.
+    *
+    * @return true if the stats are approximate
+    */
+   public boolean isSampledStats() {
+      for (ImageStats stats : stats_) {
+         if (stats == null) {
+            continue;
+         }
+         for (int c = 0; c < stats.getNumberOfComponents(); ++c) {
+            if (stats.getComponentStats(c).isSampled()) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ public final class IntegerComponentStats {
    private final int binWidthPowerOf2_;
    private final long pixelCount_;
    private final boolean usedROI_;
+   private final int samplingStride_;
    private final long minimum_;
    private final long maximum_;
    private final long sum_;
@@ -37,6 +38,7 @@ public final class IntegerComponentStats {
       private int binWidthPowerOf2_;
       private long pixelCount_;
       private boolean usedROI_;
+      private int samplingStride_ = 1;
       private long minimum_;
       private long maximum_;
       private long sum_;
@@ -62,6 +64,17 @@ public final class IntegerComponentStats {
          return this;
       }
 
+      /**
+       * Set the stride with which pixels were sampled, in both x and y.
+       *
+       * @param stride 1 if every pixel was used
+       * @return this builder
+       */
+      public Builder samplingStride(int stride) {
+         samplingStride_ = stride;
+         return this;
+      }
+
       public Builder minimum(long min) {
          minimum_ = min;
          return this;
@@ -98,6 +111,7 @@ public final class IntegerComponentStats {
       binWidthPowerOf2_ = b.binWidthPowerOf2_;
       pixelCount_ = b.pixelCount_;
       usedROI_ = b.usedROI_;
+      samplingStride_ = b.samplingStride_;
       minimum_ = b.minimum_;
       maximum_ = b.maximum_;
       sum_ = b.sum_;
@@ -159,6 +173,23 @@ public final class IntegerComponentStats {
       return usedROI_;
    }
 
+   /**
+    * Return whether the stats were computed from a subset of the pixels.
+    *
+    * <p>Sampled stats are approximate: the histogram and pixel count only
+    * include the sampled pixels (roughly 1 in {@code stride * stride}), and
+    * the minimum and maximum may miss isolated extreme pixels.
+    *
+    * @return true if pixels were sampled
+    */
+   public boolean isSampled() {
+      return samplingStride_ > 1;
+   }
+
+   public int getSamplingStride() {
+      return samplingStride_;
+   }
+
    public long getMeanIntensity() {
       if (pixelCount_ == 0) {
          return 0;
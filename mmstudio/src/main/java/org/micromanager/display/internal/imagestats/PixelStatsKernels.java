@@ -0,0 +1,285 @@
+// Copyright (C) 2026 agent
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.display.internal.imagestats;
+
+import java.awt.Rectangle;
+import org.micromanager.data.internal.PixelType;
+
+/**
+ * Histogram and moment computation directly on raw pixel arrays.
+ *
+ * <p>Each kernel accumulates the pixels in a range of rows of the stats
+ * bounds into an {@link Accumulator}. Accumulators for disjoint row ranges
+ * can be computed concurrently and merged afterwards. The histogram bins are
+ * the same as those of {@link PowerOf2BinMapper}: bin 0 counts values below
+ * range (never, for unsigned data), the last bin counts values above the
+ * range of the sample bit depth, and the others are {@code value >> shift}.
+ *
+ * <p>With a sampling stride greater than 1, only every stride-th pixel of
+ * every stride-th row (counted from the top left of the stats bounds) is
+ * used. The sampled pixels do not depend on how the rows are split.
+ */
+final class PixelStatsKernels {
+   static final int MASK_THRESH = 128;
+
+   private PixelStatsKernels() {
+   }
+
+   /**
+    * Partial statistics for each component of an image.
+    */
+   static final class Accumulator {
+      private final int stride_;
+      private final int binShift_;
+      private final long endOfRange_;
+      private final long[][] histograms_;
+      private final long[] counts_;
+      private final long[] minima_;
+      private final long[] maxima_;
+      private final long[] sums_;
+      private final long[] sumsOfSquares_;
+
+      Accumulator(int nComponents, int sampleBitDepth, int binCountPowerOf2) {
+         this(nComponents, sampleBitDepth, binCountPowerOf2, 1);
+      }
+
+      Accumulator(int nComponents, int sampleBitDepth, int binCountPowerOf2,
+                  int samplingStride) {
+         stride_ = samplingStride;
+         binShift_ = Math.max(0, sampleBitDepth - binCountPowerOf2);
+         endOfRange_ = (1L << sampleBitDepth) - 1;
+         histograms_ = new long[nComponents][(1 << binCountPowerOf2) + 2];
+         counts_ = new long[nComponents];
+         minima_ = new long[nComponents];
+         maxima_ = new long[nComponents];
+         sums_ = new long[nComponents];
+         sumsOfSquares_ = new long[nComponents];
+         for (int component = 0; component < nComponents; ++component) {
+            minima_[component] = Long.MAX_VALUE;
+            maxima_[component] = Long.MIN_VALUE;
+         }
+      }
+
+      private void add(int component, long count, long min, long max,
+                       long sum, long sumOfSquares) {
+         counts_[component] += count;
+         minima_[component] = Math.min(minima_[component], min);
+         maxima_[component] = Math.max(maxima_[component], max);
+         sums_[component] += sum;
+         sumsOfSquares_[component] += sumOfSquares;
+      }
+
+      /**
+       * Add the statistics of another (disjoint) part of the same image.
+       */
+      void merge(Accumulator other) {
+         for (int component = 0; component < counts_.length; ++component) {
+            long[] histogram = histograms_[component];
+            long[] otherHistogram = other.histograms_[component];
+            for (int bin = 0; bin < histogram.length; ++bin) {
+               histogram[bin] += otherHistogram[bin];
+            }
+            add(component, other.counts_[component],
+                  other.minima_[component], other.maxima_[component],
+                  other.sums_[component], other.sumsOfSquares_[component]);
+         }
+      }
+
+      int getNumberOfComponents() {
+         return counts_.length;
+      }
+
+      IntegerComponentStats toStats(int component, boolean usedROI) {
+         return IntegerComponentStats.builder()
+               .histogram(histograms_[component], binShift_)
+               .pixelCount(counts_[component])
+               .usedROI(usedROI)
+               .samplingStride(stride_)
+               .minimum(minima_[component])
+               .maximum(maxima_[component])
+               .sum(sums_[component])
+               .sumOfSquares(sumsOfSquares_[component])
+               .build();
+      }
+   }
+
+   /**
+    * Return true if any mask pixel within statsBounds is set.
+    */
+   static boolean maskHasPixels(byte[] mask, Rectangle maskBounds,
+                                Rectangle statsBounds) {
+      if (mask == null) {
+         return true;
+      }
+      for (int y = statsBounds.y; y < statsBounds.y + statsBounds.height; ++y) {
+         int offset = maskOffset(maskBounds, statsBounds.x, y);
+         for (int i = offset; i < offset + statsBounds.width; ++i) {
+            if ((mask[i] & 0xff) >= MASK_THRESH) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   private static int maskOffset(Rectangle maskBounds, int x, int y) {
+      return (y - maskBounds.y) * maskBounds.width + (x - maskBounds.x);
+   }
+
+   // The first sampled row at or after rowStart
+   private static int firstRow(Rectangle bounds, int rowStart, int stride) {
+      return rowStart + Math.floorMod(bounds.y - rowStart, stride);
+   }
+
+   /**
+    * Accumulate rows [rowStart, rowEnd) of an 8-bit, single-component image.
+    *
+    * @param mask ROI mask positioned at maskBounds, or null to use all pixels
+    */
+   static void accumulateBytes(byte[] pixels, int width, Rectangle bounds,
+                               int rowStart, int rowEnd,
+                               byte[] mask, Rectangle maskBounds,
+                               Accumulator acc) {
+      final int shift = acc.binShift_;
+      final long endOfRange = acc.endOfRange_;
+      final int overflowBin = acc.histograms_[0].length - 1;
+      final long[] histogram = acc.histograms_[0];
+      final int stride = acc.stride_;
+      long count = 0;
+      long sum = 0;
+      long sumOfSquares = 0;
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int y = firstRow(bounds, rowStart, stride); y < rowEnd; y += stride) {
+         int offset = y * width + bounds.x;
+         int maskIndex = mask == null ? 0 : maskOffset(maskBounds, bounds.x, y);
+         for (int i = offset; i < offset + bounds.width;
+               i += stride, maskIndex += stride) {
+            if (mask != null && (mask[maskIndex] & 0xff) < MASK_THRESH) {
+               continue;
+            }
+            int v = pixels[i] & 0xff;
+            histogram[v > endOfRange ? overflowBin : (v >> shift) + 1]++;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            sum += v;
+            sumOfSquares += v * v;
+            ++count;
+         }
+      }
+      if (count > 0) {
+         acc.add(0, count, min, max, sum, sumOfSquares);
+      }
+   }
+
+   /**
+    * Accumulate rows [rowStart, rowEnd) of a 16-bit, single-component image.
+    *
+    * @param mask ROI mask positioned at maskBounds, or null to use all pixels
+    */
+   static void accumulateShorts(short[] pixels, int width, Rectangle bounds,
+                                int rowStart, int rowEnd,
+                                byte[] mask, Rectangle maskBounds,
+                                Accumulator acc) {
+      final int shift = acc.binShift_;
+      final long endOfRange = acc.endOfRange_;
+      final int overflowBin = acc.histograms_[0].length - 1;
+      final long[] histogram = acc.histograms_[0];
+      final int stride = acc.stride_;
+      long count = 0;
+      long sum = 0;
+      long sumOfSquares = 0;
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int y = firstRow(bounds, rowStart, stride); y < rowEnd; y += stride) {
+         int offset = y * width + bounds.x;
+         if (mask == null) {
+            // No-ROI fast path
+            for (int i = offset; i < offset + bounds.width; i += stride) {
+               int v = pixels[i] & 0xffff;
+               histogram[v > endOfRange ? overflowBin : (v >> shift) + 1]++;
+               min = Math.min(min, v);
+               max = Math.max(max, v);
+               sum += v;
+               sumOfSquares += (long) v * v;
+            }
+            count += (bounds.width + stride - 1) / stride;
+            continue;
+         }
+         int maskIndex = maskOffset(maskBounds, bounds.x, y);
+         for (int i = offset; i < offset + bounds.width;
+               i += stride, maskIndex += stride) {
+            if ((mask[maskIndex] & 0xff) < MASK_THRESH) {
+               continue;
+            }
+            int v = pixels[i] & 0xffff;
+            histogram[v > endOfRange ? overflowBin : (v >> shift) + 1]++;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            sum += v;
+            sumOfSquares += (long) v * v;
+            ++count;
+         }
+      }
+      if (count > 0) {
+         acc.add(0, count, min, max, sum, sumOfSquares);
+      }
+   }
+
+   /**
+    * Accumulate rows [rowStart, rowEnd) of an RGB32 image (4 bytes per
+    * pixel, components ordered as in {@link PixelType#RGB32}).
+    *
+    * @param mask ROI mask positioned at maskBounds, or null to use all pixels
+    */
+   static void accumulateRGB32(byte[] pixels, int width, Rectangle bounds,
+                               int rowStart, int rowEnd,
+                               byte[] mask, Rectangle maskBounds,
+                               Accumulator acc) {
+      final int shift = acc.binShift_;
+      final long endOfRange = acc.endOfRange_;
+      final int overflowBin = acc.histograms_[0].length - 1;
+      final int stride = acc.stride_;
+      for (int component = 0; component < 3; ++component) {
+         final int sampleOffset =
+               PixelType.RGB32.getComponentSampleOffset(component);
+         final long[] histogram = acc.histograms_[component];
+         long count = 0;
+         long sum = 0;
+         long sumOfSquares = 0;
+         int min = Integer.MAX_VALUE;
+         int max = Integer.MIN_VALUE;
+         for (int y = firstRow(bounds, rowStart, stride); y < rowEnd; y += stride) {
+            int offset = 4 * (y * width + bounds.x) + sampleOffset;
+            int end = offset + 4 * bounds.width;
+            int maskIndex = mask == null ? 0 : maskOffset(maskBounds, bounds.x, y);
+            for (int i = offset; i < end; i += 4 * stride, maskIndex += stride) {
+               if (mask != null && (mask[maskIndex] & 0xff) < MASK_THRESH) {
+                  continue;
+               }
+               int v = pixels[i] & 0xff;
+               histogram[v > endOfRange ? overflowBin : (v >> shift) + 1]++;
+               min = Math.min(min, v);
+               max = Math.max(max, v);
+               sum += v;
+               sumOfSquares += v * v;
+               ++count;
+            }
+         }
+         if (count > 0) {
+            acc.add(component, count, min, max, sum, sumOfSquares);
+         }
+      }
+   }
+}
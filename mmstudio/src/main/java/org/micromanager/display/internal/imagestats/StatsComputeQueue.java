@@ -20,6 +20,8 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang3.event.EventListenerSupport;
 import org.micromanager.internal.utils.ThreadFactoryFactory;
 import org.micromanager.internal.utils.performance.PerformanceMonitor;
@@ -27,6 +29,12 @@ import org.micromanager.internal.utils.performance.PerformanceMonitor;
 /**
  * Facade to manage background, rate-limited image stats computation.
  *
+ * <p>When requests arrive in quick succession (e.g. in live mode), stats are
+ * computed from a sparse grid of pixels (see
+ * {@link #setSamplingStride(int)}). Exact stats for the latest request are
+ * computed once requests stop arriving, or when asked for with
+ * {@link #requestExactStats()}.
+ *
  * @author Mark A. Tsuchida
  */
 public final class StatsComputeQueue {
@@ -89,6 +97,28 @@ public final class StatsComputeQueue {
 
    private PerformanceMonitor perfMon_;
 
+   public static final int DEFAULT_SAMPLING_STRIDE = 4;
+
+   // Requests arriving at shorter intervals than this get sampled stats
+   private static final long SAMPLING_MAX_REQUEST_INTERVAL_NS = 100000000L;
+
+   // Exact stats are computed when no request has arrived for this long
+   private static final long EXACT_STATS_DELAY_MS = 250;
+
+   private final ScheduledExecutorService exactStatsExecutor_ =
+         Executors.newSingleThreadScheduledExecutor(ThreadFactoryFactory
+               .createThreadFactory("Stats Compute Queue Exact Stats"));
+
+   // Guarded by monitor on this
+   private int samplingStride_ = DEFAULT_SAMPLING_STRIDE;
+   private long lastRequestNs_ = 0;
+   private boolean haveRequest_ = false;
+
+   // The latest request, if it was computed with sampling and exact stats
+   // have not yet been computed. Guarded by monitor on this
+   private ImageStatsRequest pendingExactRequest_;
+   private Future<?> pendingExactFuture_;
+
 
    public static StatsComputeQueue create() {
       return new StatsComputeQueue();
@@ -112,6 +142,7 @@ public final class StatsComputeQueue {
 
    public synchronized void shutdown() throws InterruptedException {
       processor_.shutdown();
+      exactStatsExecutor_.shutdownNow();
       computeExecutor_.shutdown();
       bypassExecutor_.shutdown();
       resultExecutor_.shutdown();
@@ -123,6 +154,21 @@ public final class StatsComputeQueue {
       long nowNs = System.nanoTime();
       int priority = request.getNumberOfImages();
 
+      cancelExactStats();
+      boolean useSampling = samplingStride_ > 1 && haveRequest_
+            && nowNs - lastRequestNs_ < SAMPLING_MAX_REQUEST_INTERVAL_NS;
+      lastRequestNs_ = nowNs;
+      haveRequest_ = true;
+      if (useSampling) {
+         request = request.copyWithSamplingStride(samplingStride_);
+         if (updateIntervalNs_ < Long.MAX_VALUE) {
+            scheduleExactStats(request, EXACT_STATS_DELAY_MS);
+         }
+         if (perfMon_ != null) {
+            perfMon_.sampleTimeInterval("Sampled stats requested");
+         }
+      }
+
       if (updateIntervalNs_ < Long.MAX_VALUE) {
          final long waitTargetNs = updateIntervalNs_ == Long.MAX_VALUE
                ? Long.MAX_VALUE :
@@ -298,6 +344,73 @@ public final class StatsComputeQueue {
       }));
    }
 
+   private void cancelExactStats() {
+      if (pendingExactFuture_ != null) {
+         pendingExactFuture_.cancel(false);
+      }
+      pendingExactFuture_ = null;
+      pendingExactRequest_ = null;
+   }
+
+   private void scheduleExactStats(final ImageStatsRequest sampledRequest,
+                                   long delayMs) {
+      pendingExactRequest_ = sampledRequest;
+      pendingExactFuture_ = exactStatsExecutor_.schedule(new Runnable() {
+         @Override
+         public void run() {
+            submitExactStats(sampledRequest);
+         }
+      }, delayMs, TimeUnit.MILLISECONDS);
+   }
+
+   private synchronized void submitExactStats(ImageStatsRequest sampledRequest) {
+      // Do nothing if a newer request arrived after we were scheduled
+      if (pendingExactRequest_ != sampledRequest) {
+         return;
+      }
+      pendingExactRequest_ = null;
+      pendingExactFuture_ = null;
+      if (perfMon_ != null) {
+         perfMon_.sampleTimeInterval("Exact stats submitted");
+      }
+      // Use a new sequence number, so that the exact stats replace the
+      // sampled stats for the same images
+      submitCompute(nextRequestSequenceNumber_++,
+            sampledRequest.getNumberOfImages(),
+            sampledRequest.copyWithSamplingStride(1), System.nanoTime());
+   }
+
+   /**
+    * Compute exact stats for the latest request now, if it was computed with
+    * sampling and exact stats are still pending. Call when exact stats are
+    * needed, e.g. when the stats are about to be inspected.
+    */
+   public synchronized void requestExactStats() {
+      ImageStatsRequest request = pendingExactRequest_;
+      if (request != null) {
+         cancelExactStats();
+         scheduleExactStats(request, 0);
+      }
+   }
+
+   /**
+    * Set the stride with which pixels are sampled when requests arrive in
+    * quick succession.
+    *
+    * @param stride use every stride-th pixel of every stride-th row; 1 to
+    *               always compute exact stats
+    */
+   public synchronized void setSamplingStride(int stride) {
+      samplingStride_ = Math.max(1, stride);
+      if (samplingStride_ == 1) {
+         requestExactStats();
+      }
+   }
+
+   public synchronized int getSamplingStride() {
+      return samplingStride_;
+   }
+
    public synchronized void setProcessIntervalNs(long intervalNs) {
       updateIntervalNs_ = Math.max(0, intervalNs);
    }
@@ -22,25 +22,24 @@ import java.awt.Dimension;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
 import mmcorej.CMMCore;
 import mmcorej.TaggedImage;
-import mmcorej.org.json.JSONException;
-import mmcorej.org.json.JSONObject;
+import org.micromanager.acquisition.internal.SequenceBufferReader;
 import org.micromanager.data.Coordinates;
 import org.micromanager.data.Coords;
 import org.micromanager.data.DatastoreFrozenException;
@@ -108,6 +107,32 @@ public final class SnapLiveManager extends DataViewerListener
    private boolean amStartingSequenceAcquisition_ = false;
 
    private final List<DefaultImage> lastImageForEachChannel_ = new ArrayList<>();
+   // Only used by the grabber (scheduler_) thread
+   private final SequenceBufferReader liveReader_;
+
+   // Newest grabbed image of each camera channel that has not been displayed
+   // yet. The grabber thread replaces entries without waiting for the EDT,
+   // which takes them when it gets to it; frames that arrive faster than
+   // they can be displayed are skipped (and counted) rather than slowing
+   // down the grabber.
+   private volatile AtomicReferenceArray<LiveFrame> liveFrames_ =
+         new AtomicReferenceArray<>(1);
+   private final AtomicBoolean liveFramesDrainPending_ = new AtomicBoolean(false);
+   private final AtomicLong liveFramesSkipped_ = new AtomicLong(0);
+   // Only accessed on the EDT
+   private long liveFramesDisplayed_ = 0;
+   private long liveFramesSkippedAtLastSample_ = 0;
+   private long lastLiveRateSampleNs_ = System.nanoTime();
+
+   private static final class LiveFrame {
+      private final Image image_;
+      private final long liveModeCount_;
+
+      LiveFrame(Image image, long liveModeCount) {
+         image_ = image;
+         liveModeCount_ = liveModeCount;
+      }
+   }
 
    private final ScheduledExecutorService scheduler_ =
          Executors.newSingleThreadScheduledExecutor(
@@ -183,6 +208,7 @@ public final class SnapLiveManager extends DataViewerListener
       core_ = core;
       uiMovesStageManager_ = mmStudio_.getUiMovesStageManager();
       displayInfoLock_ = new Object();
+      liveReader_ = new SequenceBufferReader(core);
    }
 
    @Override
@@ -269,6 +295,7 @@ public final class SnapLiveManager extends DataViewerListener
          shouldForceReset_ = true;
       }
       numCameraChannels_ = (int) coreCameras;
+      liveFrames_ = new AtomicReferenceArray<>(Math.max(1, numCameraChannels_));
       final double exposureMs;
       try {
          exposureMs = core_.getExposure();
@@ -394,72 +421,105 @@ public final class SnapLiveManager extends DataViewerListener
     * pipeline.
     */
    private void grabAndAddImages(String camName, final long liveModeCount) {
-      try {
-         // We scan over 2*numCameraChannels here because, in multi-camera
-         // setups, one camera could be generating images faster than the
-         // other(s). Of course, 2x isn't guaranteed to be enough here, either,
-         // but it's what we've historically used.
-         HashSet<Integer> channelsSet = new HashSet<>();
-         for (int c = 0; c < 6 * numCameraChannels_; ++c) {
-            TaggedImage tagged;
-            try {
-               tagged = core_.getNBeforeLastTaggedImage(c);
-               perfMon_.sampleTimeInterval("getNBeforeLastTaggedImage");
-               perfMon_.sample("No image in sequence buffer (%)", 0.0);
-            } catch (Exception e) {
-               // No image in the sequence buffer.
-               perfMon_.sample("No image in sequence buffer (%)", 100.0);
-               continue;
-            }
-            JSONObject tags = tagged.tags;
-            int imageChannel = c;
-            if ((numCameraChannels_ > 1) && tags.has(camName + "-CameraChannelIndex")) {
-               imageChannel = tags.getInt(camName + "-CameraChannelIndex");
-            }
-            if (channelsSet.contains(imageChannel)) {
-               // Already provided a more recent version of this channel.
-               continue;
-            }
+      // We scan over several times numCameraChannels here because, in
+      // multi-camera setups, one camera could be generating images faster
+      // than the other(s).
+      List<TaggedImage> newest = liveReader_.getNewestTaggedImages(
+            camName, numCameraChannels_, 6 * numCameraChannels_);
+      for (int channel = 0; channel < newest.size(); ++channel) {
+         TaggedImage tagged = newest.get(channel);
+         if (tagged == null) {
+            perfMon_.sample("No image in sequence buffer (%)", 100.0);
+            continue;
+         }
+         perfMon_.sampleTimeInterval("getNBeforeLastTaggedImage");
+         perfMon_.sample("No image in sequence buffer (%)", 0.0);
+         Image newImage;
+         try {
             DefaultImage image = new DefaultImage(tagged);
             final Long seqNr = image.getMetadata().getImageNumber();
             perfMon_.sample("Image missing ImageNumber (%)",
                   seqNr == null ? 100.0 : 0.0);
             Coords newCoords = image.getCoords().copyBuilder()
                   .t(0)
-                  .c(imageChannel).build();
+                  .c(channel).build();
             // Generate a new UUID for the image, so that our histogram
             // update code realizes this is a new image.
             Metadata newMetadata = image.getMetadata().copyBuilderWithNewUUID()
                   .build();
-            final Image newImage = image.copyWith(newCoords, newMetadata);
+            newImage = image.copyWith(newCoords, newMetadata);
+         } catch (RuntimeException e) {
+            ReportingUtils.logError(e, "Exception in image grabber thread.");
+            continue;
+         }
+         offerLiveFrame(channel, newImage, liveModeCount);
+      }
+   }
 
-            try {
-               SwingUtilities.invokeAndWait(() -> {
-                  synchronized (SnapLiveManager.this) {
-                     if (scheduledGrab_ == null
-                           || liveModeStartCount_ != liveModeCount) {
-                        throw new CancellationException();
-                     }
-                  }
-                  displayImage(newImage);
-               });
-
-            } catch (InterruptedException unexpected) {
-               Thread.currentThread().interrupt();
-            } catch (InvocationTargetException e) {
-               if (e.getCause() instanceof CancellationException) {
-                  return;
-               }
-               throw new RuntimeException(e.getCause());
-            }
-            channelsSet.add(imageChannel);
-            if (channelsSet.size() == numCameraChannels_) {
-               // Got every channel.
-               break;
+   /**
+    * Hand a grabbed image to the EDT for display, replacing any image of the
+    * same channel that has not been displayed yet. Never blocks.
+    */
+   private void offerLiveFrame(int channel, Image image, long liveModeCount) {
+      AtomicReferenceArray<LiveFrame> frames = liveFrames_;
+      if (channel >= frames.length()) {
+         // More camera channels than when live mode started. Move the
+         // pending frames to a larger array; each one is taken out of the
+         // old array, so the EDT cannot also display it from there.
+         AtomicReferenceArray<LiveFrame> grown =
+               new AtomicReferenceArray<>(channel + 1);
+         for (int ch = 0; ch < frames.length(); ++ch) {
+            grown.set(ch, frames.getAndSet(ch, null));
+         }
+         liveFrames_ = grown;
+         frames = grown;
+      }
+      LiveFrame previous = frames.getAndSet(channel,
+            new LiveFrame(image, liveModeCount));
+      if (previous != null) {
+         liveFramesSkipped_.incrementAndGet();
+      }
+      if (liveFramesDrainPending_.compareAndSet(false, true)) {
+         SwingUtilities.invokeLater(this::displayLiveFrames);
+      }
+   }
+
+   /**
+    * Display the newest grabbed image of each channel.
+    */
+   @MustCallOnEDT
+   private void displayLiveFrames() {
+      // Clear the flag first, so that frames offered from now on schedule
+      // another call
+      liveFramesDrainPending_.set(false);
+      AtomicReferenceArray<LiveFrame> frames = liveFrames_;
+      for (int ch = 0; ch < frames.length(); ++ch) {
+         LiveFrame frame = frames.getAndSet(ch, null);
+         if (frame == null) {
+            continue;
+         }
+         synchronized (this) {
+            if (scheduledGrab_ == null
+                  || liveModeStartCount_ != frame.liveModeCount_) {
+               // Live mode has been stopped (or restarted) since the grab
+               continue;
             }
          }
-      } catch (JSONException e) {
-         ReportingUtils.logError(e, "Exception in image grabber thread.");
+         displayImage(frame.image_);
+         ++liveFramesDisplayed_;
+      }
+
+      long now = System.nanoTime();
+      double elapsedS = (now - lastLiveRateSampleNs_) / 1e9;
+      if (elapsedS >= 0.5) {
+         long skipped = liveFramesSkipped_.get();
+         perfMon_.sample("Live frames displayed (fps)",
+               liveFramesDisplayed_ / elapsedS);
+         perfMon_.sample("Live frames skipped (fps)",
+               (skipped - liveFramesSkippedAtLastSample_) / elapsedS);
+         liveFramesDisplayed_ = 0;
+         liveFramesSkippedAtLastSample_ = skipped;
+         lastLiveRateSampleNs_ = now;
       }
    }
 
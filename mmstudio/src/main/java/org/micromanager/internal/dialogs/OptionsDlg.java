@@ -40,6 +40,8 @@ import org.micromanager.ApplicationSkin.SkinMode;
 import org.micromanager.Studio;
 import org.micromanager.UserProfile;
 import org.micromanager.data.internal.multipagetiff.StorageMultipageTiff;
+import org.micromanager.data.internal.pipeline.DefaultPipeline;
+import org.micromanager.data.internal.pipeline.StageSettings;
 import org.micromanager.internal.MMStudio;
 import org.micromanager.internal.MainFrame;
 import org.micromanager.internal.StartupSettings;
@@ -249,6 +251,32 @@ public final class OptionsDlg extends JDialog {
             StorageMultipageTiff.setShouldSplitPositions(
                   separateFilesForPositionsMPTiffCheckBox.isSelected()));
 
+      final JCheckBox memoryMappedReadsCheckBox = new JCheckBox();
+      memoryMappedReadsCheckBox.setText(
+            "Use memory mapping when opening Image Stack Files");
+      memoryMappedReadsCheckBox.setToolTipText(
+            "Avoids copying pixels when browsing large data sets. "
+                  + "Takes effect for data sets opened after changing this setting.");
+      memoryMappedReadsCheckBox.setSelected(
+            StorageMultipageTiff.getShouldUseMemoryMappedReads());
+      memoryMappedReadsCheckBox.addActionListener((ActionEvent arg0) ->
+            StorageMultipageTiff.setShouldUseMemoryMappedReads(
+                  memoryMappedReadsCheckBox.isSelected()));
+
+      final JCheckBox parallelProcessorsCheckBox = new JCheckBox();
+      parallelProcessorsCheckBox.setText(
+            "Run image processors on several threads when possible");
+      parallelProcessorsCheckBox.setToolTipText(
+            "Lets processors that support it (e.g. flat-field correction) "
+                  + "use up to " + StageSettings.PARALLEL_THREADS
+                  + " threads. Takes effect for acquisitions started after "
+                  + "changing this setting.");
+      parallelProcessorsCheckBox.setSelected(
+            DefaultPipeline.getShouldRunProcessorsInParallel());
+      parallelProcessorsCheckBox.addActionListener((ActionEvent arg0) ->
+            DefaultPipeline.setShouldRunProcessorsInParallel(
+                  parallelProcessorsCheckBox.isSelected()));
+
       final JCheckBox syncExposureMainAndMDA = new JCheckBox();
       syncExposureMainAndMDA.setText("Sync exposure between Main and MDA windows");
       syncExposureMainAndMDA.setSelected(AcqControlDlg.getShouldSyncExposure());
@@ -294,6 +322,7 @@ public final class OptionsDlg extends JDialog {
 
       super.add(metadataFileWithMultipageTiffCheckBox, "wrap");
       super.add(separateFilesForPositionsMPTiffCheckBox, "wrap");
+      super.add(memoryMappedReadsCheckBox, "wrap");
 
       super.add(new JSeparator(), "wrap");
 
@@ -325,6 +354,7 @@ public final class OptionsDlg extends JDialog {
 
       super.add(syncExposureMainAndMDA, "wrap");
       super.add(hideMDAdisplay, "wrap");
+      super.add(parallelProcessorsCheckBox, "wrap");
       super.add(runServer, "wrap");
 
       super.add(new JSeparator(), "wrap");
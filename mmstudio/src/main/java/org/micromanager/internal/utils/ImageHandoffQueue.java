@@ -0,0 +1,589 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     mmstudio
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.internal.utils;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Queue for handing images from a producer (e.g. the acquisition engine) to
+ * a consumer thread.
+ *
+ * <p>The queue is bounded by the number of bytes of the queued images, and
+ * optionally also by their number. A single element is always admitted when
+ * the queue is empty, so that an image larger than the capacity cannot block
+ * forever.
+ *
+ * <p>Unlike a plain BlockingQueue, the stream of images has an explicit end.
+ * The producer calls {@link #endOfStream()} after its last image, and the
+ * consumer takes images in batches with {@link #awaitBatch}, which returns
+ * false once all images have been taken; {@link #take()} throws instead of
+ * waiting forever. Either side can call {@link #abort()}, which discards the
+ * queued images and wakes up all waiting threads; images offered after that
+ * are dropped. Waiting is purely signal-based, without timed polling.
+ *
+ * <p>The queue counts rejected (overflowing) and dropped images and the time
+ * producers have spent blocked, so that it can be judged whether the
+ * consumer keeps up (see {@link #toString()}).
+ *
+ * @param <E> element type
+ */
+public final class ImageHandoffQueue<E> extends AbstractQueue<E>
+      implements BlockingQueue<E> {
+   private final long capacityBytes_;
+   private final int maxElements_;
+   private final ToLongFunction<? super E> sizer_;
+   private final ArrayDeque<E> elements_ = new ArrayDeque<>();
+   private final ArrayDeque<Long> sizes_ = new ArrayDeque<>();
+   private final ReentrantLock lock_ = new ReentrantLock();
+   // Signalled when an element is added, or the stream ends or is aborted
+   private final Condition notEmpty_ = lock_.newCondition();
+   // Signalled when elements are removed, or the stream is aborted
+   private final Condition notFull_ = lock_.newCondition();
+
+   // All guarded by lock_
+   private long bytesQueued_ = 0;
+   private boolean endOfStream_ = false;
+   private boolean aborted_ = false;
+   private long acceptedCount_ = 0;
+   private long rejectedCount_ = 0;
+   private long droppedCount_ = 0;
+   private long maxBytesQueued_ = 0;
+   private int maxQueueDepth_ = 0;
+   private long batchCount_ = 0;
+   private long batchedCount_ = 0;
+   private int maxBatchSize_ = 0;
+   private long stallCount_ = 0;
+   private long stallNanos_ = 0;
+
+   /**
+    * @param capacityBytes number of bytes that may be queued before
+    *                      producers are made to wait
+    * @param sizer         function returning the size of an element in bytes
+    */
+   public ImageHandoffQueue(long capacityBytes, ToLongFunction<? super E> sizer) {
+      this(capacityBytes, Integer.MAX_VALUE, sizer);
+   }
+
+   /**
+    * @param capacityBytes number of bytes that may be queued before
+    *                      producers are made to wait
+    * @param maxElements   number of elements that may be queued before
+    *                      producers are made to wait
+    * @param sizer         function returning the size of an element in bytes
+    */
+   public ImageHandoffQueue(long capacityBytes, int maxElements,
+                            ToLongFunction<? super E> sizer) {
+      if (capacityBytes <= 0) {
+         throw new IllegalArgumentException(
+               "Invalid handoff queue capacity: " + capacityBytes);
+      }
+      if (maxElements <= 0) {
+         throw new IllegalArgumentException(
+               "Invalid handoff queue depth: " + maxElements);
+      }
+      capacityBytes_ = capacityBytes;
+      maxElements_ = maxElements;
+      sizer_ = sizer;
+   }
+
+   private boolean fits(long bytes) {
+      return elements_.isEmpty() || (elements_.size() < maxElements_
+            && bytesQueued_ + bytes <= capacityBytes_);
+   }
+
+   private void enqueue(E e, long bytes) {
+      elements_.addLast(e);
+      sizes_.addLast(bytes);
+      bytesQueued_ += bytes;
+      acceptedCount_++;
+      maxBytesQueued_ = Math.max(maxBytesQueued_, bytesQueued_);
+      maxQueueDepth_ = Math.max(maxQueueDepth_, elements_.size());
+      notEmpty_.signal();
+   }
+
+   private E dequeue() {
+      E e = elements_.pollFirst();
+      bytesQueued_ -= sizes_.pollFirst();
+      return e;
+   }
+
+   private void checkNotEnded() {
+      if (endOfStream_) {
+         throw new IllegalStateException(
+               "Image offered after end of stream");
+      }
+   }
+
+   // Wait for space for an element of the given size, without time limit if
+   // timeoutNs is negative. Returns false on timeout or abort.
+   private boolean awaitSpace(long bytes, long timeoutNs)
+         throws InterruptedException {
+      if (fits(bytes) || aborted_) {
+         return !aborted_;
+      }
+      long start = System.nanoTime();
+      long remaining = timeoutNs;
+      try {
+         while (!aborted_ && !fits(bytes)) {
+            if (timeoutNs < 0) {
+               notFull_.await();
+            } else {
+               if (remaining <= 0) {
+                  return false;
+               }
+               remaining = notFull_.awaitNanos(remaining);
+            }
+         }
+         return !aborted_;
+      } finally {
+         stallCount_++;
+         stallNanos_ += System.nanoTime() - start;
+      }
+   }
+
+   /**
+    * Adds an image, waiting for space if necessary. After abort(), the image
+    * is dropped instead.
+    *
+    * @throws IllegalStateException if endOfStream() has been called
+    */
+   @Override
+   public void put(E e) throws InterruptedException {
+      long bytes = sizer_.applyAsLong(e);
+      lock_.lockInterruptibly();
+      try {
+         checkNotEnded();
+         if (awaitSpace(bytes, -1)) {
+            enqueue(e, bytes);
+         } else {
+            droppedCount_++;
+         }
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   @Override
+   public boolean offer(E e, long timeout, TimeUnit unit)
+         throws InterruptedException {
+      long bytes = sizer_.applyAsLong(e);
+      lock_.lockInterruptibly();
+      try {
+         checkNotEnded();
+         if (awaitSpace(bytes, Math.max(0, unit.toNanos(timeout)))) {
+            enqueue(e, bytes);
+            return true;
+         }
+         if (aborted_) {
+            droppedCount_++;
+         } else {
+            rejectedCount_++;
+         }
+         return false;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * Adds an image if there is space for it, without waiting.
+    *
+    * @return false if the queue is full (the image is counted as rejected)
+    *     or has been aborted (the image is counted as dropped)
+    */
+   @Override
+   public boolean offer(E e) {
+      long bytes = sizer_.applyAsLong(e);
+      lock_.lock();
+      try {
+         checkNotEnded();
+         if (aborted_) {
+            droppedCount_++;
+            return false;
+         }
+         if (!fits(bytes)) {
+            rejectedCount_++;
+            return false;
+         }
+         enqueue(e, bytes);
+         return true;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * Signals that no more images will be added. The consumer will still
+    * receive the images already queued.
+    */
+   public void endOfStream() {
+      lock_.lock();
+      try {
+         endOfStream_ = true;
+         notEmpty_.signalAll();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * Discards all queued images and wakes up all waiting producers and
+    * consumers. Images added afterwards are dropped.
+    */
+   public void abort() {
+      lock_.lock();
+      try {
+         aborted_ = true;
+         droppedCount_ += elements_.size();
+         elements_.clear();
+         sizes_.clear();
+         bytesQueued_ = 0;
+         notEmpty_.signalAll();
+         notFull_.signalAll();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   public boolean isAborted() {
+      lock_.lock();
+      try {
+         return aborted_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * Waits until images are available, then moves up to maxElements of them
+    * to batch.
+    *
+    * @return false, without adding anything to batch, if there are no more
+    *     images: either the stream has ended and all images have been taken,
+    *     or the queue has been aborted
+    * @throws InterruptedException if interrupted while waiting
+    */
+   public boolean awaitBatch(Collection<? super E> batch, int maxElements)
+         throws InterruptedException {
+      lock_.lockInterruptibly();
+      try {
+         while (elements_.isEmpty() && !endOfStream_ && !aborted_) {
+            notEmpty_.await();
+         }
+         if (elements_.isEmpty()) {
+            return false;
+         }
+         int n = drain(batch, maxElements);
+         batchCount_++;
+         batchedCount_ += n;
+         maxBatchSize_ = Math.max(maxBatchSize_, n);
+         return true;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   // Requires lock_
+   private int drain(Collection<? super E> c, int maxElements) {
+      int n = 0;
+      while (n < maxElements && !elements_.isEmpty()) {
+         c.add(dequeue());
+         n++;
+      }
+      if (n > 0) {
+         notFull_.signalAll();
+      }
+      return n;
+   }
+
+   /**
+    * Takes the next image, waiting for one if necessary.
+    *
+    * @throws IllegalStateException if the queue is empty and the stream has
+    *     ended or been aborted, so that no image will ever arrive
+    */
+   @Override
+   public E take() throws InterruptedException {
+      lock_.lockInterruptibly();
+      try {
+         while (elements_.isEmpty()) {
+            if (endOfStream_ || aborted_) {
+               throw new IllegalStateException(
+                     "No more images: " + (aborted_ ? "aborted" : "end of stream"));
+            }
+            notEmpty_.await();
+         }
+         E e = dequeue();
+         notFull_.signalAll();
+         return e;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * Takes the next image, waiting up to the given time for one. Returns
+    * null at once if the stream has ended or been aborted.
+    */
+   @Override
+   public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+      long remaining = unit.toNanos(timeout);
+      lock_.lockInterruptibly();
+      try {
+         while (elements_.isEmpty()) {
+            if (remaining <= 0 || endOfStream_ || aborted_) {
+               return null;
+            }
+            remaining = notEmpty_.awaitNanos(remaining);
+         }
+         E e = dequeue();
+         notFull_.signalAll();
+         return e;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   @Override
+   public E poll() {
+      lock_.lock();
+      try {
+         if (elements_.isEmpty()) {
+            return null;
+         }
+         E e = dequeue();
+         notFull_.signalAll();
+         return e;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   @Override
+   public E peek() {
+      lock_.lock();
+      try {
+         return elements_.peekFirst();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   @Override
+   public int drainTo(Collection<? super E> c) {
+      return drainTo(c, Integer.MAX_VALUE);
+   }
+
+   @Override
+   public int drainTo(Collection<? super E> c, int maxElements) {
+      if (c == this) {
+         throw new IllegalArgumentException("Cannot drain queue to itself");
+      }
+      lock_.lock();
+      try {
+         return drain(c, maxElements);
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   @Override
+   public void clear() {
+      lock_.lock();
+      try {
+         elements_.clear();
+         sizes_.clear();
+         bytesQueued_ = 0;
+         notFull_.signalAll();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   @Override
+   public int size() {
+      lock_.lock();
+      try {
+         return elements_.size();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return number of elements that can be added without waiting, ignoring
+    *     the byte capacity
+    */
+   @Override
+   public int remainingCapacity() {
+      lock_.lock();
+      try {
+         return maxElements_ - elements_.size();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return an iterator over a snapshot of the queued elements; it does
+    *     not support remove()
+    */
+   @Override
+   public Iterator<E> iterator() {
+      lock_.lock();
+      try {
+         return Collections.unmodifiableList(
+               new ArrayList<E>(elements_)).iterator();
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   public long getCapacityBytes() {
+      return capacityBytes_;
+   }
+
+   public long getBytesQueued() {
+      lock_.lock();
+      try {
+         return bytesQueued_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   public long getMaxBytesQueued() {
+      lock_.lock();
+      try {
+         return maxBytesQueued_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   public int getMaxQueueDepth() {
+      lock_.lock();
+      try {
+         return maxQueueDepth_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return number of images that have been added to the queue
+    */
+   public long getAcceptedCount() {
+      lock_.lock();
+      try {
+         return acceptedCount_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return number of times an image was not added because the queue was
+    *     full, including timed offers that timed out
+    */
+   public long getRejectedCount() {
+      lock_.lock();
+      try {
+         return rejectedCount_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return number of images discarded by, or offered after, abort()
+    */
+   public long getDroppedCount() {
+      lock_.lock();
+      try {
+         return droppedCount_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return number of times a producer had to wait for space in the queue
+    */
+   public long getStallCount() {
+      lock_.lock();
+      try {
+         return stallCount_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return total time producers have spent waiting for space, in ms
+    */
+   public double getStallTimeMs() {
+      lock_.lock();
+      try {
+         return stallNanos_ / 1e6;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   /**
+    * @return average number of images taken per call to awaitBatch()
+    */
+   public double getAverageBatchSize() {
+      lock_.lock();
+      try {
+         return batchCount_ == 0 ? 0.0 : (double) batchedCount_ / batchCount_;
+      } finally {
+         lock_.unlock();
+      }
+   }
+
+   @Override
+   public String toString() {
+      lock_.lock();
+      try {
+         return String.format("%d images accepted, %d rejected, %d dropped; "
+                     + "max depth %d, max %d bytes queued (capacity %d); "
+                     + "%d batches (max %d images); producers stalled %d "
+                     + "times for %.1f ms in total",
+               acceptedCount_, rejectedCount_, droppedCount_, maxQueueDepth_,
+               maxBytesQueued_, capacityBytes_, batchCount_, maxBatchSize_,
+               stallCount_, stallNanos_ / 1e6);
+      } finally {
+         lock_.unlock();
+      }
+   }
+}
@@ -0,0 +1,88 @@
+///////////////////////////////////////////////////////////////////////////////
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     mmstudio
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.internal.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a loop over a range of items (pixels, rows, tiles...) on a
+ * ForkJoinPool, by splitting the range in halves until the stripes are
+ * small.
+ */
+public final class ParallelStripes {
+   /**
+    * Work on the items from (inclusive) to to (exclusive). Must be safe to
+    * call concurrently for disjoint ranges.
+    */
+   public interface RangeKernel {
+      void apply(int from, int to);
+   }
+
+   private ParallelStripes() {
+   }
+
+   /**
+    * Runs the kernel over items 0 to count, in stripes of at least minItems
+    * items (except when count itself is smaller). Returns when all stripes
+    * are done.
+    *
+    * @param pool pool to run the stripes on; null to run on the calling
+    *     thread
+    */
+   public static void run(ForkJoinPool pool, int count, int minItems,
+         RangeKernel kernel) {
+      minItems = Math.max(1, minItems);
+      if (pool == null || count < 2 * minItems) {
+         kernel.apply(0, count);
+         return;
+      }
+      pool.invoke(new StripeTask(kernel, minItems, 0, count));
+   }
+
+   /**
+    * Processes a stripe of items, splitting it in halves while it is large.
+    */
+   private static final class StripeTask extends RecursiveAction {
+      private final RangeKernel kernel_;
+      private final int minItems_;
+      private final int from_;
+      private final int to_;
+
+      StripeTask(RangeKernel kernel, int minItems, int from, int to) {
+         kernel_ = kernel;
+         minItems_ = minItems;
+         from_ = from;
+         to_ = to;
+      }
+
+      @Override
+      protected void compute() {
+         if (to_ - from_ < 2 * minItems_) {
+            kernel_.apply(from_, to_);
+            return;
+         }
+         int middle = (from_ + to_) >>> 1;
+         invokeAll(new StripeTask(kernel_, minItems_, from_, middle),
+               new StripeTask(kernel_, minItems_, middle, to_));
+      }
+   }
+}
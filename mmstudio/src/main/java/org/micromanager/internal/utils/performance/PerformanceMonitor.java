@@ -91,6 +91,16 @@ public final class PerformanceMonitor {
       stat.sample();
    }
 
+   /**
+    * Return the statistic recorded with sample() under the given label.
+    *
+    * @param statLabel label passed to sample()
+    * @return the statistic, or null if nothing has been sampled yet
+    */
+   public ExponentialSmoothing getStatistic(String statLabel) {
+      return stats_.get(statLabel);
+   }
+
    public List<Map.Entry<String, ? extends AbstractExponentialSmoothing>>
             getEntries() {
       // Combine stats into a single sorted list
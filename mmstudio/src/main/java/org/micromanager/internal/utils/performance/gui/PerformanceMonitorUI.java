@@ -28,6 +28,9 @@ import org.micromanager.internal.utils.performance.PerformanceMonitor;
 public class PerformanceMonitorUI {
    private final PerformanceMonitor monitor_;
    private PerformanceMonitorTableModel model_;
+   // Only accessed on the EDT
+   private JFrame frame_;
+   private Timer timer_;
 
    private static final String SYSPROP = "org.micromanager.showperfmon";
 
@@ -65,5 +68,24 @@ public class PerformanceMonitorUI {
       frame.setVisible(true);
       Timer timer = new Timer(1000, e -> model_.setData(monitor_.getEntries()));
       timer.start();
+      frame_ = frame;
+      timer_ = timer;
+   }
+
+   /**
+    * Stop updating and close the frame, if it is shown. Can be called from
+    * any thread.
+    */
+   public void dispose() {
+      SwingUtilities.invokeLater(() -> {
+         if (timer_ != null) {
+            timer_.stop();
+            timer_ = null;
+         }
+         if (frame_ != null) {
+            frame_.dispose();
+            frame_ = null;
+         }
+      });
    }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+package org.micromanager.acquisition.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import mmcorej.TaggedImage;
+import mmcorej.org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SequenceBufferReaderTest {
+   // A sequence buffer that other threads can add images to
+   private static class FakeBuffer implements SequenceBufferReader.SequenceBuffer {
+      final ConcurrentLinkedQueue<TaggedImage> images_ =
+            new ConcurrentLinkedQueue<>();
+
+      void add(int count) {
+         for (int i = 0; i < count; ++i) {
+            images_.add(new TaggedImage(new byte[1], null));
+         }
+      }
+
+      void add(TaggedImage image) {
+         images_.add(image);
+      }
+
+      @Override
+      public int getRemainingImageCount() {
+         return images_.size();
+      }
+
+      @Override
+      public TaggedImage popNextTaggedImage() throws Exception {
+         TaggedImage image = images_.poll();
+         if (image == null) {
+            throw new Exception("Circular buffer is empty");
+         }
+         return image;
+      }
+
+      @Override
+      public TaggedImage getNBeforeLastTaggedImage(long n) throws Exception {
+         List<TaggedImage> images = new ArrayList<>(images_);
+         if (n >= images.size()) {
+            throw new Exception("Not enough images in the circular buffer");
+         }
+         return images.get(images.size() - 1 - (int) n);
+      }
+   }
+
+   private static TaggedImage cameraChannelImage(int index) throws Exception {
+      JSONObject tags = new JSONObject();
+      tags.put("Cam-CameraChannelIndex", index);
+      return new TaggedImage(new byte[1], tags);
+   }
+
+   @Test
+   public void testTakesAllAvailableImages() throws Exception {
+      FakeBuffer buffer = new FakeBuffer();
+      SequenceBufferReader reader = new SequenceBufferReader(buffer);
+      buffer.add(5);
+      List<TaggedImage> out = new ArrayList<>();
+      Assert.assertEquals(5, reader.awaitTaggedImages(out, 100, 1000));
+      Assert.assertEquals(5, out.size());
+      Assert.assertEquals(0, buffer.getRemainingImageCount());
+   }
+
+   @Test
+   public void testBatchIsLimited() throws Exception {
+      FakeBuffer buffer = new FakeBuffer();
+      SequenceBufferReader reader = new SequenceBufferReader(buffer);
+      buffer.add(10);
+      List<TaggedImage> out = new ArrayList<>();
+      Assert.assertEquals(4, reader.awaitTaggedImages(out, 4, 1000));
+      Assert.assertEquals(4, out.size());
+      Assert.assertEquals(6, buffer.getRemainingImageCount());
+      Assert.assertEquals(4, reader.awaitTaggedImages(out, 4, 1000));
+      Assert.assertEquals(2, reader.awaitTaggedImages(out, 4, 1000));
+      Assert.assertEquals(10, out.size());
+   }
+
+   @Test
+   public void testTimesOutWithoutImages() throws Exception {
+      SequenceBufferReader reader = new SequenceBufferReader(new FakeBuffer());
+      List<TaggedImage> out = new ArrayList<>();
+      long start = System.nanoTime();
+      Assert.assertEquals(0, reader.awaitTaggedImages(out, 100, 50));
+      long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      Assert.assertTrue("Returned after " + elapsedMs + " ms", elapsedMs >= 50);
+      Assert.assertTrue(out.isEmpty());
+   }
+
+   @Test
+   public void testReturnsImagesArrivingWhileWaiting() throws Exception {
+      final FakeBuffer buffer = new FakeBuffer();
+      SequenceBufferReader reader = new SequenceBufferReader(buffer);
+      Thread producer = new Thread(() -> {
+         try {
+            Thread.sleep(20);
+         } catch (InterruptedException e) {
+            return;
+         }
+         buffer.add(3);
+      });
+      producer.start();
+      List<TaggedImage> out = new ArrayList<>();
+      // Images may be added while they are being taken
+      int taken = reader.awaitTaggedImages(out, 100, 10000);
+      producer.join();
+      Assert.assertTrue(taken > 0);
+      Assert.assertEquals(taken, out.size());
+   }
+
+   @Test
+   public void testWakeUpEndsWait() throws Exception {
+      final SequenceBufferReader reader = new SequenceBufferReader(
+            new FakeBuffer());
+      final CountDownLatch returned = new CountDownLatch(1);
+      final int[] taken = {-1};
+      Thread consumer = new Thread(() -> {
+         try {
+            taken[0] = reader.awaitTaggedImages(new ArrayList<TaggedImage>(),
+                  100, 10000);
+         } catch (Exception e) {
+            // Leave taken at -1
+         }
+         returned.countDown();
+      });
+      consumer.start();
+      Thread.sleep(20);
+      reader.wakeUp();
+      Assert.assertTrue(returned.await(2, TimeUnit.SECONDS));
+      consumer.join();
+      Assert.assertEquals(0, taken[0]);
+   }
+
+   @Test
+   public void testWakeUpBeforeWaiting() throws Exception {
+      SequenceBufferReader reader = new SequenceBufferReader(new FakeBuffer());
+      reader.wakeUp();
+      List<TaggedImage> out = new ArrayList<>();
+      long start = System.nanoTime();
+      Assert.assertEquals(0, reader.awaitTaggedImages(out, 100, 10000));
+      Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+      // The wake-up is used up; the next call waits for the timeout
+      start = System.nanoTime();
+      Assert.assertEquals(0, reader.awaitTaggedImages(out, 100, 50));
+      Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 50);
+   }
+
+   @Test
+   public void testNewestImageOfSingleChannel() throws Exception {
+      FakeBuffer buffer = new FakeBuffer();
+      SequenceBufferReader reader = new SequenceBufferReader(buffer);
+      List<TaggedImage> newest = reader.getNewestTaggedImages("Cam", 1, 6);
+      Assert.assertEquals(1, newest.size());
+      Assert.assertNull(newest.get(0));
+      buffer.add(3);
+      TaggedImage last = new TaggedImage(new byte[1], null);
+      buffer.add(last);
+      newest = reader.getNewestTaggedImages("Cam", 1, 6);
+      Assert.assertSame(last, newest.get(0));
+      // Nothing is removed from the buffer
+      Assert.assertEquals(4, buffer.getRemainingImageCount());
+   }
+
+   @Test
+   public void testNewestImageOfEachCameraChannel() throws Exception {
+      FakeBuffer buffer = new FakeBuffer();
+      SequenceBufferReader reader = new SequenceBufferReader(buffer);
+      TaggedImage old0 = cameraChannelImage(0);
+      TaggedImage new1 = cameraChannelImage(1);
+      TaggedImage new0 = cameraChannelImage(0);
+      TaggedImage newer1 = cameraChannelImage(1);
+      buffer.add(old0);
+      buffer.add(new1);
+      buffer.add(new0);
+      buffer.add(newer1);
+      List<TaggedImage> newest = reader.getNewestTaggedImages("Cam", 2, 12);
+      Assert.assertSame(new0, newest.get(0));
+      Assert.assertSame(newer1, newest.get(1));
+   }
+
+   @Test
+   public void testMissingCameraChannel() throws Exception {
+      FakeBuffer buffer = new FakeBuffer();
+      SequenceBufferReader reader = new SequenceBufferReader(buffer);
+      TaggedImage image = cameraChannelImage(1);
+      buffer.add(image);
+      buffer.add(cameraChannelImage(5));
+      List<TaggedImage> newest = reader.getNewestTaggedImages("Cam", 2, 12);
+      Assert.assertNull(newest.get(0));
+      Assert.assertSame(image, newest.get(1));
+   }
+}
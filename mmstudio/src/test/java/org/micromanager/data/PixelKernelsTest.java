@@ -0,0 +1,140 @@
+package org.micromanager.data;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PixelKernelsTest {
+   private static final int WIDTH = 5;
+   private static final int HEIGHT = 3;
+
+   private static short[] makeShorts(int width, int height) {
+      short[] pixels = new short[width * height];
+      for (int i = 0; i < pixels.length; ++i) {
+         pixels[i] = (short) (1000 * i + 7);
+      }
+      return pixels;
+   }
+
+   // Reference: mirror, then rotate clockwise by 90 degrees step by step
+   private static short[] reference(short[] src, int width, int height,
+                                    boolean mirror, int rotation) {
+      short[] result = src.clone();
+      if (mirror) {
+         for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+               result[y * width + x] = src[y * width + width - 1 - x];
+            }
+         }
+      }
+      for (int r = 0; r < rotation; r += 90) {
+         short[] rotated = new short[result.length];
+         for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+               // (x, y) goes to (height - 1 - y, x) in a height-wide image
+               rotated[x * height + height - 1 - y] = result[y * width + x];
+            }
+         }
+         result = rotated;
+         int tmp = width;
+         width = height;
+         height = tmp;
+      }
+      return result;
+   }
+
+   @Test
+   public void testTransformShorts() {
+      short[] src = makeShorts(WIDTH, HEIGHT);
+      for (boolean mirror : new boolean[] {false, true}) {
+         for (int rotation = 0; rotation < 360; rotation += 90) {
+            short[] dst = new short[src.length];
+            PixelKernels.transform(src, WIDTH, HEIGHT, mirror, rotation, dst);
+            Assert.assertArrayEquals("mirror " + mirror + ", rotation " + rotation,
+                  reference(src, WIDTH, HEIGHT, mirror, rotation), dst);
+         }
+      }
+      Assert.assertEquals(HEIGHT, PixelKernels.transformedWidth(WIDTH, HEIGHT, 90));
+      Assert.assertEquals(WIDTH, PixelKernels.transformedHeight(WIDTH, HEIGHT, 270));
+   }
+
+   @Test
+   public void testTransformRGB() {
+      short[] index = makeShorts(WIDTH, HEIGHT);
+      byte[] src = new byte[4 * index.length];
+      for (int i = 0; i < index.length; ++i) {
+         for (int b = 0; b < 4; ++b) {
+            src[4 * i + b] = (byte) (16 * i + b);
+         }
+      }
+      byte[] dst = new byte[src.length];
+      PixelKernels.transform(src, WIDTH, HEIGHT, 4, true, 90, dst);
+      short[] expected = reference(index, WIDTH, HEIGHT, true, 90);
+      for (int i = 0; i < expected.length; ++i) {
+         int srcPixel = (expected[i] - 7) / 1000;
+         for (int b = 0; b < 4; ++b) {
+            Assert.assertEquals(src[4 * srcPixel + b], dst[4 * i + b]);
+         }
+      }
+   }
+
+   @Test
+   public void testInvalidRotation() {
+      try {
+         PixelKernels.transform(new short[4], 2, 2, false, 45, new short[4]);
+         Assert.fail("Accepted rotation of 45 degrees");
+      } catch (IllegalArgumentException expected) {
+      }
+   }
+
+   @Test
+   public void testCrop() {
+      short[] src = makeShorts(WIDTH, HEIGHT);
+      short[] dst = new short[2 * 2];
+      PixelKernels.crop(src, WIDTH, 3, 1, 2, 2, dst);
+      Assert.assertArrayEquals(new short[] {src[8], src[9], src[13], src[14]}, dst);
+
+      byte[] bytes = {1, 2, 3, 4, 5, 6, 7, 8};
+      byte[] right = new byte[4];
+      PixelKernels.crop(bytes, 2, 2, 1, 0, 1, 2, right);
+      Assert.assertArrayEquals(new byte[] {3, 4, 7, 8}, right);
+   }
+
+   @Test
+   public void testSubtractSaturating() {
+      short[] a = {(short) 60000, 10, 5};
+      short[] b = {1000, 20, 5};
+      PixelKernels.subtractSaturating(a, b, a);
+      Assert.assertArrayEquals(new short[] {(short) 59000, 0, 0}, a);
+
+      byte[] c = {(byte) 200, 3};
+      PixelKernels.subtractSaturating(c, new byte[] {100, 4}, c);
+      Assert.assertArrayEquals(new byte[] {100, 0}, c);
+   }
+
+   @Test
+   public void testRatio() {
+      short[] num = {(short) 50000, 300, 100, 40};
+      short[] numBackground = {0, 100, 0, 0};
+      short[] den = {10000, 100, 10, 10};
+      float[] ratio = new float[num.length];
+      PixelKernels.ratio(num, numBackground, 0, den, null, 10, 2.0, ratio);
+      Assert.assertEquals(2 * 50000.0f / 9990.0f, ratio[0], 1e-6f);
+      Assert.assertEquals(2 * 200.0f / 90.0f, ratio[1], 1e-6f);
+      // Division by zero
+      Assert.assertEquals(Float.POSITIVE_INFINITY, ratio[2], 0.0f);
+
+      short[] shorts = new short[ratio.length];
+      ratio[3] = -1.0f;
+      int max = PixelKernels.toShorts(ratio, shorts);
+      Assert.assertEquals(10, shorts[0]);
+      Assert.assertEquals(4, shorts[1]);
+      Assert.assertEquals((short) 65535, shorts[2]);
+      Assert.assertEquals(0, shorts[3]);
+      Assert.assertEquals(65535, max);
+
+      byte[] bytes = new byte[3];
+      max = PixelKernels.toBytesScaled(new float[] {1.0f, 3.0f, 2.0f}, bytes);
+      Assert.assertArrayEquals(new byte[] {0, (byte) 255, (byte) 128}, bytes);
+      Assert.assertEquals(255, max);
+   }
+}
@@ -0,0 +1,149 @@
+package org.micromanager.data.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Image;
+
+/**
+ * Compares StorageRAM with the former synchronized HashMap implementation,
+ * inserting images while another thread does display lookups.
+ *
+ * <p>Like all *Benchmark classes, this is left out of the unit tests and
+ * only runs when named with test.class, e.g.
+ * ant -Dtest.class=org.micromanager.data.internal.StorageRAMBenchmark test
+ */
+public class StorageRAMBenchmark {
+   private static final int TIME_POINTS = 25000;
+   private static final int CHANNELS = 4;
+   private static final int PASSES = 3;
+
+   // The former implementation: a HashMap with synchronized access and a
+   // linear scan for images ignoring axes.
+   private static final class SynchronizedHashMapStorage {
+      private final HashMap<Coords, Image> coordsToImage_ = new HashMap<>();
+
+      synchronized void putImage(Image image) {
+         coordsToImage_.put(image.getCoords(), image);
+      }
+
+      synchronized Image getImage(Coords coords) {
+         return coordsToImage_.get(coords);
+      }
+
+      synchronized List<Image> getImagesIgnoringAxes(Coords coords,
+                                                     String... ignoreTheseAxes) {
+         List<Image> result = new ArrayList<>();
+         for (Image image : coordsToImage_.values()) {
+            if (image.getCoords().copyRemovingAxes(ignoreTheseAxes).equals(coords)) {
+               result.add(image);
+            }
+         }
+         return result;
+      }
+   }
+
+   private interface Lookups {
+      void put(Image image);
+
+      Image get(Coords coords);
+
+      List<Image> ignoringChannel(Coords coords) throws IOException;
+   }
+
+   @Test
+   public void compareStorage() throws Exception {
+      List<Image> images = new ArrayList<>();
+      for (int t = 0; t < TIME_POINTS; ++t) {
+         for (int c = 0; c < CHANNELS; ++c) {
+            images.add(StorageRAMTest.makeImage(
+                  Coordinates.builder().t(t).c(c).build()));
+         }
+      }
+      for (int pass = 0; pass < PASSES; ++pass) {
+         final SynchronizedHashMapStorage legacy = new SynchronizedHashMapStorage();
+         run("synchronized HashMap", images, new Lookups() {
+            @Override
+            public void put(Image image) {
+               legacy.putImage(image);
+            }
+
+            @Override
+            public Image get(Coords coords) {
+               return legacy.getImage(coords);
+            }
+
+            @Override
+            public List<Image> ignoringChannel(Coords coords) {
+               return legacy.getImagesIgnoringAxes(coords, Coords.CHANNEL);
+            }
+         });
+         final StorageRAM storage = StorageRAMTest.makeStorage();
+         run("StorageRAM", images, new Lookups() {
+            @Override
+            public void put(Image image) {
+               storage.putImage(image);
+            }
+
+            @Override
+            public Image get(Coords coords) {
+               return storage.getImage(coords);
+            }
+
+            @Override
+            public List<Image> ignoringChannel(Coords coords) throws IOException {
+               return storage.getImagesIgnoringAxes(coords, Coords.CHANNEL);
+            }
+         });
+      }
+   }
+
+   // Time the insertion of all images while another thread does display
+   // lookups of recent time points (point lookups, then all channels).
+   private static void run(String name, final List<Image> images,
+                           final Lookups lookups) throws Exception {
+      final int[] lookupCount = {0};
+      final AtomicBoolean done = new AtomicBoolean(false);
+      Thread display = new Thread(() -> {
+         int count = 0;
+         try {
+            while (!done.get()) {
+               for (int t = 0; t < TIME_POINTS && !done.get(); t += 97) {
+                  lookups.get(Coordinates.builder().t(t).c(1).build());
+                  if (t % 4850 == 0) {
+                     lookups.ignoringChannel(Coordinates.builder().t(t).build());
+                  }
+                  count++;
+               }
+            }
+         } catch (IOException e) {
+            throw new RuntimeException(e);
+         }
+         lookupCount[0] = count;
+      });
+      display.start();
+      long start = System.nanoTime();
+      for (Image image : images) {
+         lookups.put(image);
+      }
+      double putMs = (System.nanoTime() - start) / 1e6;
+      long lookupStart = System.nanoTime();
+      int ignoring = 0;
+      for (int t = 0; t < TIME_POINTS; t += 250) {
+         ignoring += lookups.ignoringChannel(Coordinates.builder().t(t).build()).size();
+      }
+      double ignoringMs = (System.nanoTime() - lookupStart) / 1e6;
+      done.set(true);
+      display.join();
+      System.out.println(String.format(
+            "%s: %d puts in %.1f ms with %d concurrent lookups; "
+                  + "%d ignoring-channel lookups (%d images) in %.1f ms",
+            name, images.size(), putMs, lookupCount[0],
+            TIME_POINTS / 250, ignoring, ignoringMs));
+   }
+}
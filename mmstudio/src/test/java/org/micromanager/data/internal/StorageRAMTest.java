@@ -0,0 +1,151 @@
+package org.micromanager.data.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Image;
+
+/**
+ * Tests StorageRAM lookups, for images on the standard axes (packed keys) and
+ * on other axes.
+ */
+public class StorageRAMTest {
+   static Image makeImage(Coords coords) {
+      return new DefaultImage(new byte[4], 2, 2, 1, 1, coords, null);
+   }
+
+   static StorageRAM makeStorage() {
+      return new StorageRAM(new DefaultDatastore(null));
+   }
+
+   private static Set<Coords> coordsOf(List<Image> images) {
+      Set<Coords> result = new HashSet<>();
+      for (Image image : images) {
+         result.add(image.getCoords());
+      }
+      return result;
+   }
+
+   @Test
+   public void testPutAndGet() {
+      StorageRAM storage = makeStorage();
+      List<Coords> all = new ArrayList<>();
+      for (int t = 0; t < 50; ++t) {
+         for (int c = 0; c < 3; ++c) {
+            Coords coords = Coordinates.builder().t(t).c(c).z(t % 4).build();
+            all.add(coords);
+            storage.putImage(makeImage(coords));
+         }
+      }
+      Coords custom = Coordinates.builder().t(2).index("angle", 3).build();
+      storage.putImage(makeImage(custom));
+      all.add(custom);
+
+      Assert.assertEquals(all.size(), storage.getNumImages());
+      for (Coords coords : all) {
+         Assert.assertTrue(storage.hasImage(coords));
+         Assert.assertEquals(coords, storage.getImage(coords).getCoords());
+         Assert.assertEquals(1, storage.getImagesMatching(coords).size());
+      }
+      Assert.assertFalse(storage.hasImage(Coordinates.builder().t(50).build()));
+      Assert.assertNull(storage.getImage(Coordinates.builder().t(2).index("angle", 4).build()));
+      Assert.assertEquals(new HashSet<>(all), toSet(storage.getUnorderedImageCoords()));
+      Assert.assertEquals(49, storage.getMaxIndex(Coords.TIME_POINT));
+      Assert.assertEquals(3, storage.getMaxIndex("angle"));
+
+      storage.deleteImage(all.get(0));
+      Assert.assertNull(storage.getImage(all.get(0)));
+      Assert.assertEquals(all.size() - 1, storage.getNumImages());
+   }
+
+   private static Set<Coords> toSet(Iterable<Coords> coords) {
+      Set<Coords> result = new HashSet<>();
+      for (Coords c : coords) {
+         result.add(c);
+      }
+      return result;
+   }
+
+   @Test
+   public void testImagesIgnoringAxes() throws IOException {
+      StorageRAM storage = makeStorage();
+      for (int t = 0; t < 10; ++t) {
+         for (int c = 0; c < 3; ++c) {
+            storage.putImage(makeImage(Coordinates.builder().t(t).c(c).build()));
+         }
+      }
+      Coords position = Coordinates.builder().t(4).build();
+      Assert.assertEquals(3,
+            storage.getImagesIgnoringAxes(position, Coords.CHANNEL).size());
+
+      // The index is kept up to date after it has been created
+      storage.putImage(makeImage(Coordinates.builder().t(4).c(3).build()));
+      Assert.assertEquals(4,
+            storage.getImagesIgnoringAxes(position, Coords.CHANNEL).size());
+      storage.deleteImage(Coordinates.builder().t(4).c(1).build());
+      Set<Coords> expected = new HashSet<>();
+      expected.add(Coordinates.builder().t(4).build());
+      expected.add(Coordinates.builder().t(4).c(2).build());
+      expected.add(Coordinates.builder().t(4).c(3).build());
+      Assert.assertEquals(expected, coordsOf(
+            storage.getImagesIgnoringAxes(position, Coords.CHANNEL)));
+
+      // Ignoring two axes
+      Assert.assertEquals(30, storage.getImagesIgnoringAxes(
+            Coordinates.builder().build(), Coords.CHANNEL, Coords.TIME_POINT).size());
+
+      // Coords containing an ignored axis match nothing
+      Assert.assertTrue(storage.getImagesIgnoringAxes(
+            Coordinates.builder().t(4).c(2).build(), Coords.CHANNEL).isEmpty());
+   }
+
+   @Test
+   public void testImagesIgnoringAxesWithCustomAxis() throws IOException {
+      StorageRAM storage = makeStorage();
+      for (int angle = 0; angle < 3; ++angle) {
+         for (int c = 0; c < 2; ++c) {
+            storage.putImage(makeImage(
+                  Coordinates.builder().c(c).index("angle", angle).build()));
+         }
+      }
+      Assert.assertEquals(2, storage.getImagesIgnoringAxes(
+            Coordinates.builder().index("angle", 2).build(), Coords.CHANNEL).size());
+      Assert.assertEquals(3, storage.getImagesIgnoringAxes(
+            Coordinates.builder().c(1).build(), "angle").size());
+   }
+
+   @Test
+   public void testConcurrentReads() throws InterruptedException {
+      final StorageRAM storage = makeStorage();
+      final int n = 20000;
+      final AtomicBoolean failed = new AtomicBoolean(false);
+      Thread reader = new Thread(() -> {
+         int seen = 0;
+         while (seen < n) {
+            Image image = storage.getImage(Coordinates.builder().t(seen).build());
+            if (image == null) {
+               continue;
+            }
+            if (image.getCoords().getT() != seen) {
+               failed.set(true);
+               return;
+            }
+            seen++;
+         }
+      });
+      reader.start();
+      for (int t = 0; t < n; ++t) {
+         storage.putImage(makeImage(Coordinates.builder().t(t).build()));
+      }
+      reader.join(10000);
+      Assert.assertFalse(reader.isAlive());
+      Assert.assertFalse(failed.get());
+   }
+}
@@ -0,0 +1,55 @@
+package org.micromanager.data.internal;
+
+import com.google.gson.JsonElement;
+import mmcorej.org.json.JSONException;
+import mmcorej.org.json.JSONObject;
+import org.junit.Test;
+import org.micromanager.PropertyMap;
+import org.micromanager.internal.propertymap.NonPropertyMapJSONFormats;
+
+/**
+ * Compares the per-frame cost of converting TaggedImage tags directly with
+ * the former round trip through a JSON string.
+ *
+ * <p>Like all *Benchmark classes, this is left out of the unit tests and
+ * only runs when named with test.class, e.g.
+ * ant -Dtest.class=org.micromanager.data.internal.TaggedImageTagsBenchmark test
+ */
+public class TaggedImageTagsBenchmark {
+   private static final int FRAMES = 200000;
+   private static final int PASSES = 3;
+
+   @Test
+   public void compareConversion() throws JSONException {
+      JSONObject[] tags = new JSONObject[100];
+      for (int i = 0; i < tags.length; i++) {
+         tags[i] = TaggedImageTagsTest.makeTags(i);
+      }
+      for (int pass = 0; pass < PASSES; pass++) {
+         long start = System.nanoTime();
+         long checksum = 0;
+         for (int i = 0; i < FRAMES; i++) {
+            checksum += convert(TaggedImageTagsTest.roundTrip(
+                  tags[i % tags.length]));
+         }
+         double stringNs = (System.nanoTime() - start) / (double) FRAMES;
+
+         start = System.nanoTime();
+         for (int i = 0; i < FRAMES; i++) {
+            checksum += convert(TaggedImageTags.toGson(tags[i % tags.length]));
+         }
+         double directNs = (System.nanoTime() - start) / (double) FRAMES;
+         System.out.println(String.format(
+               "Per frame: %.1f us via string, %.1f us direct (checksum %d)",
+               stringNs / 1000, directNs / 1000, checksum));
+      }
+   }
+
+   // The work DefaultImage(TaggedImage, null, null) does with the tree
+   private static int convert(JsonElement je) {
+      PropertyMap metadata = NonPropertyMapJSONFormats.metadata().fromGson(je);
+      PropertyMap coords = NonPropertyMapJSONFormats.coords().fromGson(je);
+      PropertyMap format = NonPropertyMapJSONFormats.imageFormat().fromGson(je);
+      return metadata.size() + coords.size() + format.size();
+   }
+}
@@ -0,0 +1,88 @@
+package org.micromanager.data.internal;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import mmcorej.TaggedImage;
+import mmcorej.org.json.JSONArray;
+import mmcorej.org.json.JSONException;
+import mmcorej.org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.micromanager.PropertyMap;
+import org.micromanager.internal.propertymap.NonPropertyMapJSONFormats;
+
+/**
+ * Checks that converting TaggedImage tags directly gives the same result as
+ * the former round trip through a JSON string.
+ */
+public class TaggedImageTagsTest {
+   static JSONObject makeTags(int frame) throws JSONException {
+      JSONObject tags = new JSONObject();
+      tags.put("Width", 2048);
+      tags.put("Height", 2048);
+      tags.put("PixelType", "GRAY16");
+      tags.put("BitDepth", 16);
+      tags.put("Camera", "Camera");
+      tags.put("Binning", 1);
+      tags.put("ROI", "0-0-2048-2048");
+      tags.put("Exposure-ms", 10.0);
+      tags.put("ElapsedTime-ms", 2.5 * frame);
+      tags.put("ImageNumber", Integer.toString(frame));
+      tags.put("PixelSizeUm", 0.065);
+      tags.put("XPositionUm", -1234.5);
+      tags.put("YPositionUm", 67.0);
+      tags.put("ZPositionUm", 1.25);
+      tags.put("PositionName", "Pos0");
+      tags.put("ChannelIndex", 1);
+      tags.put("SliceIndex", 2);
+      tags.put("FrameIndex", frame);
+      tags.put("PositionIndex", 0);
+      JSONArray scopeDataKeys = new JSONArray();
+      for (int i = 0; i < 40; i++) {
+         String key = "Device" + (i % 5) + "-Property" + i;
+         tags.put(key, Integer.toString(i * 7));
+         scopeDataKeys.put(key);
+      }
+      tags.put("ScopeDataKeys", scopeDataKeys);
+      return tags;
+   }
+
+   static JsonElement roundTrip(JSONObject tags) {
+      return new JsonParser().parse(tags.toString());
+   }
+
+   @Test
+   public void testSameTreeAsStringRoundTrip() throws JSONException {
+      JSONObject tags = makeTags(3);
+      Assert.assertEquals(roundTrip(tags), TaggedImageTags.toGson(tags));
+   }
+
+   @Test
+   public void testSamePropertyMaps() throws JSONException {
+      JSONObject tags = makeTags(5);
+      JsonElement expected = roundTrip(tags);
+      JsonElement actual = TaggedImageTags.toGson(tags);
+      for (NonPropertyMapJSONFormats format : new NonPropertyMapJSONFormats[] {
+            NonPropertyMapJSONFormats.metadata(),
+            NonPropertyMapJSONFormats.coords(),
+            NonPropertyMapJSONFormats.imageFormat()}) {
+         PropertyMap e = format.fromGson(expected);
+         PropertyMap a = format.fromGson(actual);
+         Assert.assertEquals(e, a);
+      }
+   }
+
+   @Test
+   public void testImageFromTaggedImage() throws JSONException {
+      JSONObject tags = makeTags(7);
+      tags.put("Width", 4);
+      tags.put("Height", 2);
+      DefaultImage image = new DefaultImage(new TaggedImage(new short[8], tags));
+      Assert.assertEquals(4, image.getWidth());
+      Assert.assertEquals(2, image.getHeight());
+      Assert.assertEquals(7, image.getCoords().getT());
+      Assert.assertEquals(1, image.getCoords().getC());
+      Assert.assertEquals(10.0, image.getMetadata().getExposureMs(), 0.0);
+      Assert.assertEquals("Camera", image.getMetadata().getCamera());
+   }
+}
@@ -0,0 +1,192 @@
+package org.micromanager.data.internal.multipagetiff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BoundedWritingQueueTest {
+   private static final long TIMEOUT_S = 10;
+
+   // Runs submit() on another thread, so that the test can check whether it
+   // blocks
+   private static Thread submitLater(final BoundedWritingQueue queue,
+         final Runnable task, final long bytes, final AtomicBoolean submitted,
+         final List<Throwable> failures) {
+      Thread thread = new Thread(() -> {
+         try {
+            queue.submit(task, bytes);
+            submitted.set(true);
+         } catch (Throwable e) {
+            failures.add(e);
+         }
+      });
+      thread.start();
+      return thread;
+   }
+
+   private static Runnable awaiting(final CountDownLatch latch) {
+      return () -> {
+         try {
+            latch.await();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      };
+   }
+
+   @Test
+   public void testBlocksAtCapacity() throws Exception {
+      BoundedWritingQueue queue = new BoundedWritingQueue("test", 100);
+      CountDownLatch release = new CountDownLatch(1);
+      queue.submit(awaiting(release), 60);
+      queue.submit(() -> { }, 40);
+      assertEquals(100, queue.getBytesInFlight());
+
+      AtomicBoolean submitted = new AtomicBoolean(false);
+      List<Throwable> failures =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+      Thread producer = submitLater(queue, () -> { }, 10, submitted,
+            failures);
+      producer.join(200);
+      assertTrue(producer.isAlive());
+      assertFalse(submitted.get());
+
+      release.countDown();
+      producer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+      assertFalse(producer.isAlive());
+      assertTrue(submitted.get());
+      assertTrue(failures.isEmpty());
+      queue.awaitCompletion();
+      assertEquals(0, queue.getBytesInFlight());
+      assertEquals(110, queue.getBytesWritten());
+      assertEquals(1, queue.getStallCount());
+      queue.shutdown();
+      assertTrue(queue.awaitTermination(TIMEOUT_S, TimeUnit.SECONDS));
+   }
+
+   @Test
+   public void testAdmitsLargeTaskWhenIdle() throws Exception {
+      BoundedWritingQueue queue = new BoundedWritingQueue("test", 100);
+      final CountDownLatch done = new CountDownLatch(1);
+      // Larger than the capacity, but nothing else is in flight
+      queue.submit(done::countDown, 1000);
+      assertTrue(done.await(TIMEOUT_S, TimeUnit.SECONDS));
+      queue.awaitCompletion();
+      assertEquals(0, queue.getStallCount());
+      queue.submit(() -> { }, 1000);
+      queue.awaitCompletion();
+      assertEquals(2000, queue.getBytesWritten());
+      queue.shutdown();
+      assertTrue(queue.awaitTermination(TIMEOUT_S, TimeUnit.SECONDS));
+   }
+
+   @Test
+   public void testRunsTasksInOrder() throws Exception {
+      BoundedWritingQueue queue = new BoundedWritingQueue("test", 1000);
+      final List<Integer> order =
+            Collections.synchronizedList(new ArrayList<Integer>());
+      for (int i = 0; i < 200; ++i) {
+         final int n = i;
+         if (i % 3 == 0) {
+            queue.execute(() -> order.add(n));
+         } else {
+            queue.submit(() -> order.add(n), 50);
+         }
+      }
+      queue.awaitCompletion();
+      assertEquals(200, order.size());
+      for (int i = 0; i < order.size(); ++i) {
+         assertEquals(i, (int) order.get(i));
+      }
+      queue.shutdown();
+      assertTrue(queue.awaitTermination(TIMEOUT_S, TimeUnit.SECONDS));
+   }
+
+   @Test
+   public void testShutdownRunsQueuedTasks() throws Exception {
+      BoundedWritingQueue queue = new BoundedWritingQueue("test", 1000);
+      CountDownLatch release = new CountDownLatch(1);
+      final List<Integer> ran =
+            Collections.synchronizedList(new ArrayList<Integer>());
+      queue.submit(awaiting(release), 10);
+      queue.submit(() -> ran.add(1), 10);
+      queue.submit(() -> ran.add(2), 10);
+      queue.shutdown();
+      assertTrue(queue.isShutdown());
+      assertFalse(queue.awaitTermination(50, TimeUnit.MILLISECONDS));
+      try {
+         queue.submit(() -> { }, 10);
+         fail("Task accepted after shutdown");
+      } catch (IllegalStateException expected) {
+      }
+      release.countDown();
+      assertTrue(queue.awaitTermination(TIMEOUT_S, TimeUnit.SECONDS));
+      assertEquals(2, ran.size());
+   }
+
+   @Test
+   public void testContinuesAfterFailedTask() throws Exception {
+      BoundedWritingQueue queue = new BoundedWritingQueue("test", 1000);
+      final AtomicBoolean ran = new AtomicBoolean(false);
+      queue.submit(() -> {
+         throw new IllegalArgumentException("Expected by test");
+      }, 10);
+      queue.submit(() -> ran.set(true), 10);
+      queue.awaitCompletion();
+      assertTrue(ran.get());
+      assertFalse(queue.isShutdown());
+      queue.shutdown();
+      assertTrue(queue.awaitTermination(TIMEOUT_S, TimeUnit.SECONDS));
+   }
+
+   @Test
+   public void testFailsFastAfterWritingThreadDies() throws Exception {
+      BoundedWritingQueue queue = new BoundedWritingQueue("test", 100);
+      CountDownLatch release = new CountDownLatch(1);
+      final CountDownLatch failing = new CountDownLatch(1);
+      queue.submit(() -> {
+         failing.countDown();
+         try {
+            release.await();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         throw new AssertionError("Expected by test");
+      }, 100);
+      assertTrue(failing.await(TIMEOUT_S, TimeUnit.SECONDS));
+
+      // Waits for space until the writing thread dies
+      AtomicBoolean submitted = new AtomicBoolean(false);
+      List<Throwable> failures =
+            Collections.synchronizedList(new ArrayList<Throwable>());
+      Thread producer = submitLater(queue, () -> { }, 50, submitted,
+            failures);
+      producer.join(100);
+      assertTrue(producer.isAlive());
+      release.countDown();
+      producer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_S));
+      assertFalse(producer.isAlive());
+      assertFalse(submitted.get());
+      assertEquals(1, failures.size());
+      assertTrue(failures.get(0) instanceof IllegalStateException);
+
+      assertTrue(queue.awaitTermination(TIMEOUT_S, TimeUnit.SECONDS));
+      assertTrue(queue.isShutdown());
+      queue.awaitCompletion();
+      try {
+         queue.submit(() -> { }, 10);
+         fail("Task accepted after the writing thread died");
+      } catch (IllegalStateException expected) {
+      }
+      try {
+         queue.execute(() -> { });
+         fail("Task accepted after the writing thread died");
+      } catch (IllegalStateException expected) {
+      }
+   }
+}
@@ -0,0 +1,75 @@
+package org.micromanager.data.internal.multipagetiff;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DirectBufferPoolTest {
+   private static final long ONE_HOUR_MS = 3600 * 1000;
+
+   @Test
+   public void testReuseWithinSizeClass() {
+      DirectBufferPool pool = new DirectBufferPool(ByteOrder.LITTLE_ENDIAN,
+            1024 * 1024, ONE_HOUR_MS);
+      ByteBuffer b = pool.acquire(5000);
+      assertTrue(b.isDirect());
+      assertEquals(5000, b.remaining());
+      assertEquals(ByteOrder.LITTLE_ENDIAN, b.order());
+      pool.release(b);
+      ByteBuffer again = pool.acquire(6000);
+      assertSame(b, again);
+      assertEquals(6000, again.remaining());
+      assertEquals(1, pool.getHits());
+      assertEquals(1, pool.getMisses());
+   }
+
+   @Test
+   public void testSizesDoNotEvictEachOther() {
+      DirectBufferPool pool = new DirectBufferPool(ByteOrder.nativeOrder(),
+            1024 * 1024, ONE_HOUR_MS);
+      for (int i = 0; i < 10; i++) {
+         ByteBuffer small = pool.acquire(10000);
+         ByteBuffer large = pool.acquire(100000);
+         pool.release(small);
+         pool.release(large);
+      }
+      assertEquals(2, pool.getMisses());
+      assertEquals(18, pool.getHits());
+      assertEquals(0, pool.getEvictions());
+   }
+
+   @Test
+   public void testCapIsRespected() {
+      DirectBufferPool pool = new DirectBufferPool(ByteOrder.nativeOrder(),
+            3 * 4096, ONE_HOUR_MS);
+      ByteBuffer[] buffers = new ByteBuffer[5];
+      for (int i = 0; i < buffers.length; i++) {
+         buffers[i] = pool.acquire(4096);
+      }
+      for (ByteBuffer b : buffers) {
+         pool.release(b);
+      }
+      assertEquals(3 * 4096, pool.getPooledBytes());
+      assertEquals(2, pool.getEvictions());
+   }
+
+   @Test
+   public void testIdleBuffersAreDropped() throws InterruptedException {
+      DirectBufferPool pool = new DirectBufferPool(ByteOrder.nativeOrder(),
+            1024 * 1024, 1);
+      pool.release(pool.acquire(4096));
+      Thread.sleep(20);
+      pool.acquire(4096);
+      assertEquals(0, pool.getHits());
+      assertEquals(2, pool.getMisses());
+      assertEquals(1, pool.getEvictions());
+   }
+
+   @Test
+   public void testHeapBuffersAreIgnored() {
+      DirectBufferPool pool = new DirectBufferPool(ByteOrder.nativeOrder());
+      pool.release(ByteBuffer.allocate(4096));
+      assertEquals(0, pool.getPooledBytes());
+   }
+}
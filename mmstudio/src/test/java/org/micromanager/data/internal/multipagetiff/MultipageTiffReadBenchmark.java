@@ -0,0 +1,83 @@
+package org.micromanager.data.internal.multipagetiff;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assume;
+import org.junit.Test;
+import org.micromanager.data.Coords;
+import org.micromanager.data.internal.DefaultDatastore;
+import org.micromanager.data.internal.DefaultImage;
+
+/**
+ * Compares the number of planes per second that can be read from a
+ * multipage TIFF data set with and without memory mapping.
+ *
+ * <p>Like all *Benchmark classes, this is left out of the unit tests and
+ * only runs when named with test.class. It also needs a large data set on
+ * disk, given by the property mm.benchmark.mptiff, e.g.
+ * ant -Dtest.class=org.micromanager.data.internal.multipagetiff.MultipageTiffReadBenchmark
+ * -Dmm.benchmark.mptiff=/data/big_acq test
+ * For meaningful results, the data set should be several times larger than
+ * the physical memory, or the OS file cache should be dropped between runs.
+ */
+public class MultipageTiffReadBenchmark {
+   private static final String DATASET_PROPERTY = "mm.benchmark.mptiff";
+   private static final int PASSES = 2;
+
+   @Test
+   public void comparePlanesPerSecond() throws IOException {
+      String dir = System.getProperty(DATASET_PROPERTY);
+      Assume.assumeTrue(dir != null);
+      for (int pass = 0; pass < PASSES; pass++) {
+         run(dir, false);
+         run(dir, true);
+      }
+   }
+
+   private static void run(String dir, boolean memoryMapped) throws IOException {
+      DefaultDatastore store = new DefaultDatastore(null);
+      StorageMultipageTiff storage = new StorageMultipageTiff(null, store,
+            dir, false, false, true, memoryMapped);
+      List<Coords> allCoords = new ArrayList<>();
+      for (Coords coords : storage.getUnorderedImageCoords()) {
+         allCoords.add(coords);
+      }
+      long checksum = 0;
+      long bytes = 0;
+      long start = System.nanoTime();
+      for (Coords coords : allCoords) {
+         DefaultImage image = (DefaultImage) storage.getImage(coords);
+         checksum += touchPixels(image.getPixelBuffer());
+         bytes += (long) image.getWidth() * image.getHeight()
+               * image.getBytesPerPixel();
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      storage.close();
+      System.out.println(String.format(
+            "%s: %d planes in %.2f s, %.1f planes/s, %.1f MB/s (checksum %d)",
+            memoryMapped ? "memory-mapped" : "heap copy", allCoords.size(),
+            seconds, allCoords.size() / seconds, bytes / seconds / 1e6,
+            checksum));
+   }
+
+   // Read every pixel, as a display would, so that both paths do the I/O.
+   private static long touchPixels(Buffer buffer) {
+      long sum = 0;
+      if (buffer instanceof ByteBuffer) {
+         ByteBuffer bb = (ByteBuffer) buffer;
+         for (int i = 0; i < bb.capacity(); i++) {
+            sum += bb.get(i);
+         }
+      } else if (buffer instanceof ShortBuffer) {
+         ShortBuffer sb = (ShortBuffer) buffer;
+         for (int i = 0; i < sb.capacity(); i++) {
+            sum += sb.get(i);
+         }
+      }
+      return sum;
+   }
+}
@@ -0,0 +1,75 @@
+package org.micromanager.data.internal.pipeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.micromanager.data.Image;
+import org.micromanager.data.PixelBufferPool;
+import org.micromanager.data.ProcessorContext;
+import org.micromanager.data.SummaryMetadata;
+
+public class DefaultPixelBufferPoolTest {
+   @Test
+   public void testRecycling() {
+      DefaultPixelBufferPool pool = new DefaultPixelBufferPool();
+      short[] first = pool.getShorts(100);
+      Assert.assertTrue(pool.recycle(first));
+      Assert.assertEquals(200, pool.getPooledBytes());
+      Assert.assertSame(first, pool.getShorts(100));
+      Assert.assertNotSame(first, pool.getShorts(100));
+      Assert.assertEquals(1, pool.getHitCount());
+      Assert.assertEquals(2, pool.getMissCount());
+
+      // Lengths and types are kept apart
+      byte[] bytes = pool.getBytes(100);
+      pool.recycle(bytes);
+      Assert.assertNotSame(bytes, pool.getBytes(99));
+      Assert.assertEquals(100, pool.getFloats(100).length);
+      Assert.assertSame(bytes, pool.getBytes(100));
+   }
+
+   @Test
+   public void testForeignAndDuplicateArraysRejected() {
+      DefaultPixelBufferPool pool = new DefaultPixelBufferPool();
+      Assert.assertFalse(pool.recycle(new byte[10]));
+      Assert.assertFalse(pool.recycle(null));
+      float[] floats = pool.getFloats(10);
+      Assert.assertTrue(pool.recycle(floats));
+      Assert.assertFalse(pool.recycle(floats));
+      Assert.assertEquals(40, pool.getPooledBytes());
+   }
+
+   @Test
+   public void testCapacity() {
+      DefaultPixelBufferPool pool = new DefaultPixelBufferPool(250);
+      byte[] a = pool.getBytes(100);
+      byte[] b = pool.getBytes(100);
+      byte[] c = pool.getBytes(100);
+      byte[] big = pool.getBytes(1000);
+      Assert.assertTrue(pool.recycle(a));
+      Assert.assertTrue(pool.recycle(b));
+      Assert.assertTrue(pool.recycle(c));
+      Assert.assertEquals(200, pool.getPooledBytes());
+      Assert.assertFalse(pool.recycle(big));
+      pool.clear();
+      Assert.assertEquals(0, pool.getPooledBytes());
+   }
+
+   @Test
+   public void testContextWithoutPoolAllocates() {
+      ProcessorContext context = new ProcessorContext() {
+         @Override
+         public void outputImage(Image image) {
+         }
+
+         @Override
+         public SummaryMetadata getSummaryMetadata() {
+            return null;
+         }
+      };
+      PixelBufferPool pool = context.getPixelBufferPool();
+      short[] first = pool.getShorts(100);
+      Assert.assertEquals(100, first.length);
+      Assert.assertFalse(pool.recycle(first));
+      Assert.assertNotSame(first, pool.getShorts(100));
+   }
+}
@@ -0,0 +1,100 @@
+package org.micromanager.data.internal.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Image;
+import org.micromanager.data.Processor;
+import org.micromanager.data.ProcessorContext;
+import org.micromanager.data.internal.DefaultImage;
+
+public class ParallelContextTest {
+   private static final int NUM_IMAGES = 200;
+
+   // Outputs every image twice (as T = 2i and T = 2i + 1), after a random
+   // delay, so that workers finish out of order.
+   private static final class DuplicatingProcessor implements Processor {
+      private final Random random_ = new Random(42);
+
+      @Override
+      public boolean isStateless() {
+         return true;
+      }
+
+      @Override
+      public void processImage(Image image, ProcessorContext context) {
+         int delayMs;
+         synchronized (random_) {
+            delayMs = random_.nextInt(3);
+         }
+         try {
+            Thread.sleep(delayMs);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         int t = image.getCoords().getT();
+         context.outputImage(image.copyAtCoords(
+               image.getCoords().copyBuilder().t(2 * t).build()));
+         context.outputImage(image.copyAtCoords(
+               image.getCoords().copyBuilder().t(2 * t + 1).build()));
+      }
+   }
+
+   private static final class RecordingContext extends BaseContext {
+      private final List<Integer> frames_ =
+            Collections.synchronizedList(new ArrayList<Integer>());
+      private final CountDownLatch flushed_ = new CountDownLatch(1);
+
+      RecordingContext() {
+         super(null, null, null);
+      }
+
+      @Override
+      public void insertImage(ImageWrapper wrapper) {
+         if (wrapper.getImage() == null) {
+            flushed_.countDown();
+         } else {
+            frames_.add(wrapper.getImage().getCoords().getT());
+         }
+      }
+   }
+
+   @Test
+   public void testOutputOrderIsPreserved() throws InterruptedException {
+      DefaultPipeline parent = new DefaultPipeline(
+            new ArrayList<Processor>(), null, false);
+      ParallelContext context = new ParallelContext(new DuplicatingProcessor(),
+            null, parent, new StageSettings(2, 4));
+      RecordingContext sink = new RecordingContext();
+      context.setSink(sink);
+      CountDownLatch latch = new CountDownLatch(1);
+      context.setFlushLatch(latch);
+
+      for (int i = 0; i < NUM_IMAGES; i++) {
+         context.insertImage(new ImageWrapper(new DefaultImage(new byte[4],
+               2, 2, 1, 1, Coordinates.builder().t(i).build(), null)));
+      }
+      context.insertImage(new ImageWrapper(null));
+
+      Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+      Assert.assertTrue(sink.flushed_.await(10, TimeUnit.SECONDS));
+      Assert.assertEquals(2 * NUM_IMAGES, sink.frames_.size());
+      for (int i = 0; i < 2 * NUM_IMAGES; i++) {
+         Assert.assertEquals(i, (int) sink.frames_.get(i));
+      }
+      Assert.assertTrue(parent.getExceptions().isEmpty());
+
+      StageStatistics stats = context.getStatistics();
+      Assert.assertEquals(NUM_IMAGES, stats.getImagesProcessed());
+      Assert.assertEquals(2 * NUM_IMAGES, stats.getImagesOutput());
+      Assert.assertEquals(0, stats.getQueueDepth());
+      Assert.assertEquals(2.0, stats.getAverageFanOut(), 1e-9);
+      Assert.assertTrue(stats.getProcessingTimeQuantileMs(0.5) >= 0.0);
+   }
+}
@@ -0,0 +1,233 @@
+package org.micromanager.display.internal.imagestats;
+
+import java.awt.Rectangle;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the raw-array kernels against a straightforward per-pixel
+ * computation.
+ */
+public class PixelStatsKernelsTest {
+   private static final int WIDTH = 37;
+   private static final int HEIGHT = 23;
+
+   private static void assertStatsEqual(IntegerComponentStats expected,
+                                        IntegerComponentStats actual) {
+      assertArrayEquals(expected.getInRangeHistogram(),
+            actual.getInRangeHistogram());
+      assertEquals(expected.getPixelCountBelowRange(),
+            actual.getPixelCountBelowRange());
+      assertEquals(expected.getPixelCountAboveRange(),
+            actual.getPixelCountAboveRange());
+      assertEquals(expected.getPixelCount(), actual.getPixelCount());
+      assertEquals(expected.getMinIntensity(), actual.getMinIntensity());
+      assertEquals(expected.getMaxIntensity(), actual.getMaxIntensity());
+      assertEquals(expected.getMeanIntensity(), actual.getMeanIntensity());
+      assertEquals(expected.getStandardDeviation(),
+            actual.getStandardDeviation(), 1e-9);
+   }
+
+   // Reference implementation, using the same bins as PowerOf2BinMapper
+   private static IntegerComponentStats reference(int[] values, int width,
+         Rectangle bounds, byte[] mask, Rectangle maskBounds,
+         int bitDepth, int binCountPowerOf2) {
+      int shift = Math.max(0, bitDepth - binCountPowerOf2);
+      long[] histogram = new long[(1 << binCountPowerOf2) + 2];
+      long count = 0;
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      long sum = 0;
+      long sumOfSquares = 0;
+      for (int y = bounds.y; y < bounds.y + bounds.height; ++y) {
+         for (int x = bounds.x; x < bounds.x + bounds.width; ++x) {
+            if (mask != null && (mask[(y - maskBounds.y) * maskBounds.width
+                  + x - maskBounds.x] & 0xff) < PixelStatsKernels.MASK_THRESH) {
+               continue;
+            }
+            long v = values[y * width + x];
+            if (v > (1L << bitDepth) - 1) {
+               histogram[histogram.length - 1]++;
+            } else {
+               histogram[(int) (v >> shift) + 1]++;
+            }
+            count++;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            sum += v;
+            sumOfSquares += v * v;
+         }
+      }
+      return IntegerComponentStats.builder()
+            .histogram(histogram, shift)
+            .pixelCount(count)
+            .minimum(min)
+            .maximum(max)
+            .sum(sum)
+            .sumOfSquares(sumOfSquares)
+            .build();
+   }
+
+   private static byte[] randomMask(Random random, Rectangle maskBounds) {
+      byte[] mask = new byte[maskBounds.width * maskBounds.height];
+      random.nextBytes(mask);
+      return mask;
+   }
+
+   // Compute in two stripes and merge, as ImageStatsProcessor does
+   private static PixelStatsKernels.Accumulator striped(short[] pixels,
+         Rectangle bounds, byte[] mask, Rectangle maskBounds,
+         int bitDepth, int binCountPowerOf2) {
+      PixelStatsKernels.Accumulator first =
+            new PixelStatsKernels.Accumulator(1, bitDepth, binCountPowerOf2);
+      PixelStatsKernels.Accumulator second =
+            new PixelStatsKernels.Accumulator(1, bitDepth, binCountPowerOf2);
+      int split = bounds.y + bounds.height / 2;
+      PixelStatsKernels.accumulateShorts(pixels, WIDTH, bounds,
+            bounds.y, split, mask, maskBounds, first);
+      PixelStatsKernels.accumulateShorts(pixels, WIDTH, bounds,
+            split, bounds.y + bounds.height, mask, maskBounds, second);
+      first.merge(second);
+      return first;
+   }
+
+   @Test
+   public void testShortsFullFrame() {
+      Random random = new Random(1);
+      short[] pixels = new short[WIDTH * HEIGHT];
+      int[] values = new int[pixels.length];
+      for (int i = 0; i < pixels.length; ++i) {
+         // 12-bit data, with some saturated/out-of-range pixels
+         values[i] = random.nextInt(5000);
+         pixels[i] = (short) values[i];
+      }
+      Rectangle bounds = new Rectangle(0, 0, WIDTH, HEIGHT);
+      PixelStatsKernels.Accumulator acc = striped(pixels, bounds, null, null, 12, 8);
+      assertStatsEqual(reference(values, WIDTH, bounds, null, null, 12, 8),
+            acc.toStats(0, false));
+   }
+
+   @Test
+   public void testShortsHighValues() {
+      Random random = new Random(2);
+      short[] pixels = new short[WIDTH * HEIGHT];
+      int[] values = new int[pixels.length];
+      for (int i = 0; i < pixels.length; ++i) {
+         values[i] = 60000 + random.nextInt(5536);
+         pixels[i] = (short) values[i];
+      }
+      Rectangle bounds = new Rectangle(0, 0, WIDTH, HEIGHT);
+      PixelStatsKernels.Accumulator acc = striped(pixels, bounds, null, null, 16, 10);
+      assertStatsEqual(reference(values, WIDTH, bounds, null, null, 16, 10),
+            acc.toStats(0, false));
+   }
+
+   @Test
+   public void testShortsWithMask() {
+      Random random = new Random(3);
+      short[] pixels = new short[WIDTH * HEIGHT];
+      int[] values = new int[pixels.length];
+      for (int i = 0; i < pixels.length; ++i) {
+         values[i] = random.nextInt(65536);
+         pixels[i] = (short) values[i];
+      }
+      Rectangle maskBounds = new Rectangle(5, 3, 20, 30);
+      byte[] mask = randomMask(random, maskBounds);
+      Rectangle bounds = maskBounds.intersection(new Rectangle(0, 0, WIDTH, HEIGHT));
+      PixelStatsKernels.Accumulator acc =
+            striped(pixels, bounds, mask, maskBounds, 16, 8);
+      assertStatsEqual(reference(values, WIDTH, bounds, mask, maskBounds, 16, 8),
+            acc.toStats(0, true));
+   }
+
+   @Test
+   public void testBytesWithMask() {
+      Random random = new Random(4);
+      byte[] pixels = new byte[WIDTH * HEIGHT];
+      random.nextBytes(pixels);
+      int[] values = new int[pixels.length];
+      for (int i = 0; i < pixels.length; ++i) {
+         values[i] = pixels[i] & 0xff;
+      }
+      Rectangle maskBounds = new Rectangle(2, 1, 30, 10);
+      byte[] mask = randomMask(random, maskBounds);
+      PixelStatsKernels.Accumulator acc = new PixelStatsKernels.Accumulator(1, 8, 8);
+      PixelStatsKernels.accumulateBytes(pixels, WIDTH, maskBounds,
+            maskBounds.y, maskBounds.y + maskBounds.height, mask, maskBounds, acc);
+      assertStatsEqual(
+            reference(values, WIDTH, maskBounds, mask, maskBounds, 8, 8),
+            acc.toStats(0, true));
+   }
+
+   @Test
+   public void testRGB32() {
+      Random random = new Random(5);
+      byte[] pixels = new byte[4 * WIDTH * HEIGHT];
+      random.nextBytes(pixels);
+      Rectangle bounds = new Rectangle(3, 4, 20, 10);
+      PixelStatsKernels.Accumulator acc = new PixelStatsKernels.Accumulator(3, 8, 6);
+      PixelStatsKernels.accumulateRGB32(pixels, WIDTH, bounds,
+            bounds.y, bounds.y + bounds.height, null, null, acc);
+      // Components are stored B-G-R-_ (see PixelType.RGB32)
+      int[] byteOffsets = {2, 1, 0};
+      for (int component = 0; component < 3; ++component) {
+         int[] values = new int[WIDTH * HEIGHT];
+         for (int i = 0; i < values.length; ++i) {
+            values[i] = pixels[4 * i + byteOffsets[component]] & 0xff;
+         }
+         assertStatsEqual(reference(values, WIDTH, bounds, null, null, 8, 6),
+               acc.toStats(component, false));
+      }
+   }
+
+   @Test
+   public void testSampledStripes() {
+      Random random = new Random(6);
+      short[] pixels = new short[WIDTH * HEIGHT];
+      for (int i = 0; i < pixels.length; ++i) {
+         pixels[i] = (short) random.nextInt(65536);
+      }
+      Rectangle bounds = new Rectangle(1, 2, 30, 19);
+      int stride = 3;
+
+      // Reference: a full computation on the sampled pixels only
+      int sampledWidth = (bounds.width + stride - 1) / stride;
+      int sampledHeight = (bounds.height + stride - 1) / stride;
+      int[] sampled = new int[sampledWidth * sampledHeight];
+      for (int sy = 0; sy < sampledHeight; ++sy) {
+         for (int sx = 0; sx < sampledWidth; ++sx) {
+            sampled[sy * sampledWidth + sx] = pixels[(bounds.y + sy * stride)
+                  * WIDTH + bounds.x + sx * stride] & 0xffff;
+         }
+      }
+      IntegerComponentStats expected = reference(sampled, sampledWidth,
+            new Rectangle(0, 0, sampledWidth, sampledHeight), null, null, 16, 8);
+
+      // Split at a row that is not a multiple of the stride
+      PixelStatsKernels.Accumulator first =
+            new PixelStatsKernels.Accumulator(1, 16, 8, stride);
+      PixelStatsKernels.Accumulator second =
+            new PixelStatsKernels.Accumulator(1, 16, 8, stride);
+      PixelStatsKernels.accumulateShorts(pixels, WIDTH, bounds,
+            bounds.y, bounds.y + 7, null, null, first);
+      PixelStatsKernels.accumulateShorts(pixels, WIDTH, bounds,
+            bounds.y + 7, bounds.y + bounds.height, null, null, second);
+      first.merge(second);
+      IntegerComponentStats actual = first.toStats(0, false);
+      assertStatsEqual(expected, actual);
+      assertTrue(actual.isSampled());
+      assertEquals(stride, actual.getSamplingStride());
+   }
+
+   @Test
+   public void testMaskHasPixels() {
+      Rectangle maskBounds = new Rectangle(0, 0, 4, 4);
+      byte[] mask = new byte[16];
+      mask[15] = (byte) 255;
+      assertTrue(PixelStatsKernels.maskHasPixels(mask, maskBounds, maskBounds));
+      assertFalse(PixelStatsKernels.maskHasPixels(mask, maskBounds,
+            new Rectangle(0, 0, 3, 3)));
+      assertTrue(PixelStatsKernels.maskHasPixels(null, maskBounds, maskBounds));
+   }
+}
@@ -0,0 +1,143 @@
+package org.micromanager.internal.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ImageHandoffQueueTest {
+   private static ImageHandoffQueue<byte[]> makeQueue(long capacityBytes) {
+      return new ImageHandoffQueue<byte[]>(capacityBytes, p -> p.length);
+   }
+
+   @Test
+   public void byteCapacityLimitsQueue() throws InterruptedException {
+      ImageHandoffQueue<byte[]> queue = makeQueue(100);
+      assertTrue(queue.offer(new byte[60]));
+      assertTrue(queue.offer(new byte[40]));
+      assertFalse(queue.offer(new byte[1]));
+      assertFalse(queue.offer(new byte[1], 10, TimeUnit.MILLISECONDS));
+      assertEquals(2, queue.getRejectedCount());
+      assertEquals(100, queue.getBytesQueued());
+
+      assertEquals(60, queue.poll().length);
+      assertTrue(queue.offer(new byte[50]));
+      assertEquals(90, queue.getBytesQueued());
+   }
+
+   @Test
+   public void oversizedElementAcceptedWhenEmpty() {
+      ImageHandoffQueue<byte[]> queue = makeQueue(100);
+      assertTrue(queue.offer(new byte[1000]));
+      assertFalse(queue.offer(new byte[1]));
+   }
+
+   @Test
+   public void elementCountLimitsQueue() {
+      ImageHandoffQueue<byte[]> queue =
+            new ImageHandoffQueue<byte[]>(1000, 2, p -> p.length);
+      assertTrue(queue.offer(new byte[1]));
+      assertTrue(queue.offer(new byte[1]));
+      assertFalse(queue.offer(new byte[1]));
+      assertEquals(0, queue.remainingCapacity());
+   }
+
+   @Test
+   public void batchesEndWithStream() throws InterruptedException {
+      ImageHandoffQueue<byte[]> queue = makeQueue(1000);
+      for (int i = 0; i < 10; ++i) {
+         queue.put(new byte[i]);
+      }
+      queue.endOfStream();
+      List<byte[]> batch = new ArrayList<byte[]>();
+      assertTrue(queue.awaitBatch(batch, 4));
+      assertEquals(4, batch.size());
+      assertTrue(queue.awaitBatch(batch, 100));
+      assertEquals(10, batch.size());
+      for (int i = 0; i < 10; ++i) {
+         assertEquals(i, batch.get(i).length);
+      }
+      assertFalse(queue.awaitBatch(batch, 100));
+      assertEquals(10, batch.size());
+      assertEquals(5.0, queue.getAverageBatchSize(), 0.0);
+   }
+
+   @Test
+   public void putAfterEndOfStreamFails() throws InterruptedException {
+      ImageHandoffQueue<byte[]> queue = makeQueue(1000);
+      queue.endOfStream();
+      try {
+         queue.put(new byte[1]);
+         fail("Image accepted after end of stream");
+      } catch (IllegalStateException expected) {
+      }
+   }
+
+   @Test
+   public void takeAfterEndOfStreamFails() throws InterruptedException {
+      ImageHandoffQueue<byte[]> queue = makeQueue(1000);
+      queue.put(new byte[3]);
+      queue.endOfStream();
+      assertEquals(3, queue.take().length);
+      assertNull(queue.poll(1, TimeUnit.DAYS));
+      try {
+         queue.take();
+         fail("take() returned after end of stream");
+      } catch (IllegalStateException expected) {
+      }
+   }
+
+   @Test
+   public void consumerWakesUpForImagesAndEnd() throws InterruptedException {
+      final ImageHandoffQueue<byte[]> queue = makeQueue(1000);
+      final List<byte[]> received = new ArrayList<byte[]>();
+      Thread consumer = new Thread(() -> {
+         try {
+            while (queue.awaitBatch(received, 16)) {
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      });
+      consumer.start();
+      for (int i = 0; i < 1000; ++i) {
+         queue.put(new byte[10]);
+      }
+      queue.endOfStream();
+      consumer.join(5000);
+      assertFalse(consumer.isAlive());
+      assertEquals(1000, received.size());
+      assertEquals(1000, queue.getAcceptedCount());
+      assertTrue(queue.getMaxBytesQueued() <= 1000);
+   }
+
+   @Test
+   public void abortWakesUpProducer() throws InterruptedException {
+      final ImageHandoffQueue<byte[]> queue = makeQueue(100);
+      queue.put(new byte[100]);
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+      Thread producer = new Thread(() -> {
+         try {
+            queue.put(new byte[100]);
+         } catch (Throwable e) {
+            error.set(e);
+         }
+      });
+      producer.start();
+      while (producer.getState() != Thread.State.WAITING) {
+         Thread.yield();
+      }
+      queue.abort();
+      producer.join(5000);
+      assertFalse(producer.isAlive());
+      assertNull(error.get());
+      assertTrue(queue.isAborted());
+      assertEquals(2, queue.getDroppedCount());
+      assertEquals(0, queue.getBytesQueued());
+      assertFalse(queue.awaitBatch(new ArrayList<byte[]>(), 10));
+      assertFalse(queue.offer(new byte[1]));
+      assertEquals(3, queue.getDroppedCount());
+   }
+}
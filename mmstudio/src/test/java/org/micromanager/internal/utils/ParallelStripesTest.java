@@ -0,0 +1,70 @@
+package org.micromanager.internal.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ParallelStripesTest {
+   // Counts how often each item was visited, and checks the stripe sizes
+   private static AtomicIntegerArray visit(ForkJoinPool pool, int count,
+         final int minItems, final AtomicInteger stripes) {
+      final AtomicIntegerArray visits = new AtomicIntegerArray(count);
+      final int total = count;
+      ParallelStripes.run(pool, count, minItems, (from, to) -> {
+         assertTrue(to - from >= Math.min(total, minItems));
+         for (int i = from; i < to; i++) {
+            visits.incrementAndGet(i);
+         }
+         stripes.incrementAndGet();
+      });
+      return visits;
+   }
+
+   @Test
+   public void visitsEachItemOnce() {
+      AtomicInteger stripes = new AtomicInteger();
+      AtomicIntegerArray visits = visit(ForkJoinPool.commonPool(), 100003,
+            1000, stripes);
+      for (int i = 0; i < visits.length(); i++) {
+         assertEquals(1, visits.get(i));
+      }
+      assertTrue(stripes.get() > 1);
+      assertTrue(stripes.get() <= 100003 / 1000);
+   }
+
+   @Test
+   public void smallRangesRunInOneStripe() {
+      AtomicInteger stripes = new AtomicInteger();
+      visit(ForkJoinPool.commonPool(), 1999, 1000, stripes);
+      assertEquals(1, stripes.get());
+      stripes.set(0);
+      visit(ForkJoinPool.commonPool(), 0, 1000, stripes);
+      assertEquals(1, stripes.get());
+   }
+
+   @Test
+   public void runsOnCallingThreadWithoutPool() {
+      final Thread caller = Thread.currentThread();
+      AtomicInteger stripes = new AtomicInteger();
+      ParallelStripes.run(null, 100000, 1, (from, to) -> {
+         assertSame(caller, Thread.currentThread());
+         assertEquals(0, from);
+         assertEquals(100000, to);
+         stripes.incrementAndGet();
+      });
+      assertEquals(1, stripes.get());
+   }
+
+   @Test
+   public void splitsDownToSingleItems() {
+      AtomicInteger stripes = new AtomicInteger();
+      AtomicIntegerArray visits = visit(ForkJoinPool.commonPool(), 64, 1,
+            stripes);
+      assertEquals(64, stripes.get());
+      for (int i = 0; i < visits.length(); i++) {
+         assertEquals(1, visits.get(i));
+      }
+   }
+}
@@ -24,6 +24,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.micromanager.asidispim.data.AcquisitionModes;
 import org.micromanager.asidispim.data.CameraModes;
+import org.micromanager.asidispim.data.DeskewProcessor;
 import org.micromanager.asidispim.data.Cameras;
 import org.micromanager.asidispim.data.Devices;
 import org.micromanager.asidispim.data.MultichannelModes;
@@ -48,6 +49,8 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JCheckBox;
@@ -95,6 +98,7 @@ import org.micromanager.PositionList;
 import org.micromanager.PropertyMap;
 import org.micromanager.PropertyMaps;
 import org.micromanager.acquisition.SequenceSettings;
+import org.micromanager.acquisition.internal.SequenceBufferReader;
 import org.micromanager.Studio;
 import org.micromanager.data.Coords;
 import org.micromanager.data.Coords.CoordsBuilder;
@@ -104,6 +108,8 @@ import org.micromanager.data.DatastoreFrozenException;
 import org.micromanager.data.DatastoreRewriteException;
 import org.micromanager.data.Image;
 import org.micromanager.data.Metadata;
+import org.micromanager.data.Pipeline;
+import org.micromanager.data.ProcessorFactory;
 import org.micromanager.data.SummaryMetadata;
 import org.micromanager.display.DisplayWindow;
 import org.micromanager.display.ChannelDisplaySettings;
@@ -174,8 +180,12 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
     private final JLabel acquisitionStatusLabel_;
     private int numTimePointsDone_;
     private final AtomicBoolean cancelAcquisition_ = new AtomicBoolean(false);  // true if we should stop acquisition
+    private final SequenceBufferReader sequenceReader_;
+    private static final int MAX_IMAGES_PER_BATCH = 1000;  // images taken from the core's sequence buffer at a time
+    private static final long IMAGE_WAIT_MS = 100;  // how long to wait for images before checking for cancellation/timeout
     private final AtomicBoolean acquisitionRequested_ = new AtomicBoolean(false);  // true if acquisition has been requested to start or is underway
     private final AtomicBoolean acquisitionRunning_ = new AtomicBoolean(false);   // true if the acquisition is actually underway
+    private Pipeline deskewPipeline_ = null;  // deskews stage scanning data as it is acquired, null unless requested
     private final StagePositionUpdater posUpdater_;
     private final JSpinner stepSize_;
     private final JLabel desiredSlicePeriodLabel_;
@@ -236,6 +246,7 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
         controller_ = controller;
         autofocus_ = autofocus;
         core_ = gui_.core();
+        sequenceReader_ = new SequenceBufferReader(core_);
         numTimePointsDone_ = 0;
         sliceTiming_ = new SliceTiming();
         lastAcquisitionPath_ = "";
@@ -2511,6 +2522,24 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
 
                 store.setSummaryMetadata(smb.userData(pmb.build()).build());
 
+                // deskew stage scanning data into a second datastore as it is acquired if requested
+                if (acqSettings.isStageScanning && prefs_.getBoolean(
+                        MyStrings.PanelNames.DATAANALYSIS.toString(),
+                        Properties.Keys.PLUGIN_DESKEW_DURING_ACQ, false)) {
+                    final String dataAnalysisPanel = MyStrings.PanelNames.DATAANALYSIS.toString();
+                    List<ProcessorFactory> deskewFactories = new ArrayList<ProcessorFactory>();
+                    deskewFactories.add(DeskewProcessor.createFactory(gui_,
+                            prefs_.getFloat(dataAnalysisPanel, Properties.Keys.PLUGIN_DESKEW_FACTOR, 1.0f),
+                            prefs_.getBoolean(dataAnalysisPanel, Properties.Keys.PLUGIN_DESKEW_INVERT, false),
+                            prefs_.getBoolean(dataAnalysisPanel, Properties.Keys.PLUGIN_DESKEW_INTERPOLATE, false),
+                            prefs_.getBoolean(dataAnalysisPanel, Properties.Keys.PLUGIN_DESKEW_MAX_PROJECTION, false)));
+                    Datastore deskewStore = gui_.data().createRAMDatastore();
+                    gui_.displays().createDisplay(deskewStore);
+                    gui_.displays().manage(deskewStore);
+                    deskewPipeline_ = gui_.data().createPipeline(deskewFactories, deskewStore, false);
+                    deskewPipeline_.insertSummaryMetadata(store.getSummaryMetadata());
+                }
+
                 // note that these SequenceSettings are quite incomplete
                 SequenceSettings settings = acqSettings.getSequenceSettings();
                 // TODO replace original "SetAcquisitionProperty" code!!
@@ -2726,15 +2755,27 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
 
                                 start = System.currentTimeMillis();
                                 long last = start;
+                                // take all available images at once, waiting for them without polling the core in a tight loop
+                                List<TaggedImage> batch = new ArrayList<TaggedImage>();
                                 try {
                                     while ((core_.getRemainingImageCount() > 0
                                             || core_.isSequenceRunning(firstCamera)
                                             || (twoSided && core_.isSequenceRunning(secondCamera)))
                                             && !done) {
+                                        batch.clear();
+                                        sequenceReader_.awaitTaggedImages(batch, MAX_IMAGES_PER_BATCH, IMAGE_WAIT_MS);
                                         now = System.currentTimeMillis();
-                                        if (core_.getRemainingImageCount() > 0) {  // we have an image to grab
-                                            TaggedImage timg = core_.popNextTaggedImage();
-
+                                        if (batch.isEmpty()) {  // no image ready yet
+                                            done = cancelAcquisition_.get();
+                                            if (now - last >= timeout2) {
+                                                ReportingUtils.logError("Camera did not send all expected images within"
+                                                        + " a reasonable period for timepoint " + (timePoint + 1) + ".  Continuing anyway.");
+                                                nonfatalError = true;
+                                                done = true;
+                                            }
+                                            continue;
+                                        }
+                                        for (TaggedImage timg : batch) {  // we have images to grab
                                             if (checkForSkips && imagesToSkip != 0) {
                                                 imagesToSkip--;
                                                 continue;  // goes to next iteration of this loop without doing anything else 
@@ -2826,16 +2867,6 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
                                                 }
                                             }
                                             last = now;  // keep track of last image timestamp
-
-                                        } else {  // no image ready yet
-                                            done = cancelAcquisition_.get();
-                                            Thread.sleep(1);
-                                            if (now - last >= timeout2) {
-                                                ReportingUtils.logError("Camera did not send all expected images within"
-                                                        + " a reasonable period for timepoint " + (timePoint + 1) + ".  Continuing anyway.");
-                                                nonfatalError = true;
-                                                done = true;
-                                            }
                                         }
                                     }
 
@@ -2947,6 +2978,13 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
                         store.freeze();
                     }
 
+                    // let the deskew processor finish any incomplete volumes
+                    if (deskewPipeline_ != null) {
+                        deskewPipeline_.halt();
+                        deskewPipeline_.getDatastore().freeze();
+                        deskewPipeline_ = null;
+                    }
+
                     ReportingUtils.logMessage("diSPIM plugin acquisition "
                             + " took: " + (System.currentTimeMillis() - acqButtonStart) + "ms");
 
@@ -3117,6 +3155,7 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
     public void windowClosing() {
         if (acquisitionRequested_.get()) {
             cancelAcquisition_.set(true);
+            sequenceReader_.wakeUp();  // don't wait for the next image before noticing
             while (acquisitionRunning_.get()) {
                 // spin wheels until we are done
             }
@@ -3198,6 +3237,9 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
         img = img.copyWith(coord, md);
 
         store.putImage(img);
+        if (deskewPipeline_ != null) {
+            deskewPipeline_.insertImage(img);
+        }
 
         /*
       // create required coordinate tags
@@ -3264,6 +3306,7 @@ public class AcquisitionPanel extends ListeningJPanel implements DevicesListener
     public void stopAcquisition() {
         if (isAcquisitionRequested()) {
             cancelAcquisition_.set(true);
+            sequenceReader_.wakeUp();  // don't wait for the next image before noticing
         }
     }
 
@@ -78,6 +78,8 @@ public class DataAnalysisPanel extends ListeningJPanel {
    private final JCheckBox deskewInvert_; 
  	private final JCheckBox deskewInterpolate_; 
    private final JCheckBox deskewAutoTest_; 
+   private final JCheckBox deskewDuringAcq_;
+   private final JCheckBox deskewMaxProjection_;
    private final JButton exportButton_; 
    
    public static final String[] TRANSFORMOPTIONS = 
@@ -308,6 +310,14 @@ public class DataAnalysisPanel extends ListeningJPanel {
       deskewAutoTest_ = pu.makeCheckBox("Auto-deskew test acquisitions", 
  		        Properties.Keys.PLUGIN_DESKEW_AUTO_TEST, panelName_, false); 
  		deskewPanel_.add(deskewAutoTest_, "left, span 2, wrap"); 
+
+      deskewDuringAcq_ = pu.makeCheckBox("Deskew during stage scan acquisitions",
+              Properties.Keys.PLUGIN_DESKEW_DURING_ACQ, panelName_, false);
+      deskewPanel_.add(deskewDuringAcq_, "left, span 2, wrap");
+
+      deskewMaxProjection_ = pu.makeCheckBox("Only show max projection of deskewed volumes",
+              Properties.Keys.PLUGIN_DESKEW_MAX_PROJECTION, panelName_, false);
+      deskewPanel_.add(deskewMaxProjection_, "left, span 2, wrap");
             
       JButton deskewButton = new JButton("Deskew Open Dataset");
       deskewButton.addActionListener(new ActionListener() {
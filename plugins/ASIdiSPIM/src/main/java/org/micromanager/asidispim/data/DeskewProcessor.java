@@ -0,0 +1,381 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:          DeskewProcessor.java
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     ASIdiSPIM plugin
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.asidispim.data;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.micromanager.PropertyMap;
+import org.micromanager.Studio;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Image;
+import org.micromanager.data.Metadata;
+import org.micromanager.data.Processor;
+import org.micromanager.data.ProcessorContext;
+import org.micromanager.data.ProcessorFactory;
+import org.micromanager.data.SummaryMetadata;
+import org.micromanager.internal.utils.ParallelStripes;
+
+/**
+ * Processor that deskews stage scanning data while it is being acquired.
+ * Does the same as the deskew of the Data Analysis tab: each slice is
+ * translated along x by a multiple of the slice step (in pixels) onto a
+ * wider canvas, in a direction that depends on the acquisition mode and the
+ * side.  Because each output slice only depends on its own input slice,
+ * slices are deskewed as soon as they arrive, and no volume is buffered.
+ *
+ * Either outputs the deskewed slices, or only the maximum projection of
+ * each deskewed volume.  Rows of each slice are deskewed in parallel.
+ * Images are passed on unchanged when the data is not stage scanning data,
+ * or when the image type is not supported (only 8 and 16-bit grayscale).
+ *
+ * @author agent
+ */
+public class DeskewProcessor implements Processor {
+
+    // Stripes are at least this large, so that the overhead of forking a
+    // task stays small compared to the work
+    static final int MIN_STRIPE_PIXELS = 1 << 16;
+
+    private final Studio gui_;
+    private final double deskewFactor_;
+    private final boolean invert_;
+    private final boolean interpolate_;
+    private final boolean maxProjection_;
+    private final ForkJoinPool pool_;
+
+    private AcquisitionModes.Keys acqMode_ = AcquisitionModes.Keys.NONE;
+    private boolean firstSideIsA_ = true;
+    private boolean twoSided_ = true;
+    private double zStepUm_ = 0.0;
+    private int numSlices_ = 0;
+    private boolean active_ = false;
+    private boolean warned_ = false;
+
+    // shift of each slice in pixels, set once the pixel size is known
+    private double[] shifts_ = null;
+    private int newWidth_ = 0;
+
+    // maximum projections in progress, by coords with z = 0
+    private final Map<Coords, Projection> projections_ = new HashMap<Coords, Projection>();
+
+    /**
+     * Maximum projection in progress of a single deskewed volume.
+     */
+    private static class Projection {
+        private final Object pixels_;
+        private final Image firstImage_;
+        private int count_ = 0;
+
+        Projection(Object pixels, Image firstImage) {
+            pixels_ = pixels;
+            firstImage_ = firstImage;
+        }
+    }
+
+    /**
+     * @param gui Studio instance
+     * @param deskewFactor factor applied to the slice step (in pixels) to
+     *          get the shift between slices, 1.0 for the diSPIM
+     * @param invert whether to invert the deskew direction
+     * @param interpolate whether to interpolate linearly between pixels,
+     *          otherwise shifts are rounded to whole pixels
+     * @param maxProjection whether to output only the maximum projection
+     *          of each deskewed volume instead of all deskewed slices
+     */
+    public DeskewProcessor(Studio gui, double deskewFactor, boolean invert,
+            boolean interpolate, boolean maxProjection) {
+        gui_ = gui;
+        deskewFactor_ = deskewFactor;
+        invert_ = invert;
+        interpolate_ = interpolate;
+        maxProjection_ = maxProjection;
+        pool_ = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * @return a factory creating DeskewProcessors with these settings
+     * @see #DeskewProcessor(Studio, double, boolean, boolean, boolean)
+     */
+    public static ProcessorFactory createFactory(final Studio gui,
+            final double deskewFactor, final boolean invert,
+            final boolean interpolate, final boolean maxProjection) {
+        return new ProcessorFactory() {
+            @Override
+            public Processor createProcessor() {
+                return new DeskewProcessor(gui, deskewFactor, invert,
+                        interpolate, maxProjection);
+            }
+        };
+    }
+
+    @Override
+    public SummaryMetadata processSummaryMetadata(SummaryMetadata summary) {
+        PropertyMap metadata = summary.getUserData();
+        Coords intended = summary.getIntendedDimensions();
+        active_ = false;
+        if (metadata == null || intended == null) {
+            return summary;
+        }
+        acqMode_ = AcquisitionModes.getKeyFromString(
+                metadata.getString("SPIMmode", ""));
+        if (!(acqMode_ == AcquisitionModes.Keys.STAGE_SCAN
+                || acqMode_ == AcquisitionModes.Keys.STAGE_SCAN_INTERLEAVED
+                || acqMode_ == AcquisitionModes.Keys.STAGE_SCAN_UNIDIRECTIONAL)) {
+            gui_.logs().logMessage("Deskew: not stage scanning data, passing images on unchanged");
+            return summary;
+        }
+        firstSideIsA_ = !metadata.getString("FirstSide", "A").equals("B");
+        twoSided_ = metadata.getInteger("NumberOfSides", 2) == 2;
+        zStepUm_ = metadata.getDouble("z-step_um", 0.0);
+        numSlices_ = intended.getZ();
+        if (zStepUm_ <= 0.0 || numSlices_ < 1) {
+            gui_.logs().logMessage("Deskew: unknown step size or number of slices, "
+                    + "passing images on unchanged");
+            return summary;
+        }
+        active_ = true;
+        shifts_ = null;
+        if (maxProjection_) {
+            return summary.copyBuilder().intendedDimensions(
+                    intended.copyBuilder().z(1).build()).build();
+        }
+        return summary;
+    }
+
+    /**
+     * @param channel channel index of the image
+     * @return -1 or 1, the direction in which slices are shifted
+     */
+    private int getDirection(int channel) {
+        int dir = -1;
+        if (acqMode_ == AcquisitionModes.Keys.STAGE_SCAN) {
+            if (twoSided_) {
+                dir = (channel % 2) * 2 - 1;  // -1 for path A which are odd channels, 1 for path B
+            }
+            // invert direction if we started with path B, regardless of single- or double-sided
+            if (!firstSideIsA_) {
+                dir *= -1;
+            }
+        }
+        if (invert_) {
+            dir *= -1;
+        }
+        return dir;
+    }
+
+    /**
+     * Computes the shift of each slice, and the width of the deskewed images.
+     *
+     * @return false if the pixel size of the image is not known
+     */
+    private boolean computeShifts(Image image) {
+        Double pixelSize = image.getMetadata().getPixelSizeUm();
+        if (pixelSize == null || pixelSize < 1e-6) {
+            return false;
+        }
+        final double dx = zStepUm_ / pixelSize * deskewFactor_;
+        shifts_ = new double[numSlices_];
+        for (int s = 0; s < numSlices_; s++) {
+            shifts_[s] = dx * s;
+        }
+        newWidth_ = image.getWidth() + (int) Math.abs(Math.ceil(dx * numSlices_));
+        return true;
+    }
+
+    @Override
+    public void processImage(Image image, ProcessorContext context) {
+        if (!active_) {
+            context.outputImage(image);
+            return;
+        }
+        if (image.getNumComponents() != 1
+                || (image.getBytesPerPixel() != 1 && image.getBytesPerPixel() != 2)) {
+            warnOnce("Deskew: can not deskew images with " + image.getBytesPerPixel()
+                    + " bytes per pixel and " + image.getNumComponents() + " components");
+            context.outputImage(image);
+            return;
+        }
+        if (shifts_ == null && !computeShifts(image)) {
+            warnOnce("Deskew: pixel size is not known, passing images on unchanged");
+            context.outputImage(image);
+            return;
+        }
+        final Coords coords = image.getCoords();
+        final int slice = Math.min(Math.max(coords.getZ(), 0), numSlices_ - 1);
+        final int dir = getDirection(coords.getChannel());
+        final double offset = sliceOffset(image.getWidth(), newWidth_,
+                shifts_[slice], dir, interpolate_);
+
+        if (!maxProjection_) {
+            Object deskewed = image.getBytesPerPixel() == 1
+                    ? new byte[newWidth_ * image.getHeight()]
+                    : new short[newWidth_ * image.getHeight()];
+            shear(image, offset, deskewed, false);
+            Metadata metadata = image.getMetadata().copyBuilderWithNewUUID().build();
+            context.outputImage(gui_.data().wrapImage(deskewed, newWidth_,
+                    image.getHeight(), image.getBytesPerPixel(), 1, coords, metadata));
+            return;
+        }
+
+        Coords volumeCoords = coords.copyBuilder().z(0).build();
+        Projection projection = projections_.get(volumeCoords);
+        if (projection == null) {
+            projection = new Projection(image.getBytesPerPixel() == 1
+                    ? new byte[newWidth_ * image.getHeight()]
+                    : new short[newWidth_ * image.getHeight()], image);
+            projections_.put(volumeCoords, projection);
+        }
+        shear(image, offset, projection.pixels_, true);
+        projection.count_++;
+        if (projection.count_ >= numSlices_) {
+            projections_.remove(volumeCoords);
+            outputProjection(volumeCoords, projection, context);
+        }
+    }
+
+    private void warnOnce(String message) {
+        if (!warned_) {
+            gui_.logs().logError(message);
+            warned_ = true;
+        }
+    }
+
+    private void outputProjection(Coords volumeCoords, Projection projection,
+            ProcessorContext context) {
+        Image first = projection.firstImage_;
+        Metadata metadata = first.getMetadata().copyBuilderWithNewUUID().build();
+        context.outputImage(gui_.data().wrapImage(projection.pixels_, newWidth_,
+                first.getHeight(), first.getBytesPerPixel(), 1, volumeCoords, metadata));
+    }
+
+    /**
+     * Outputs the projections of volumes that were not completed, for
+     * instance because the acquisition was stopped.
+     */
+    @Override
+    public void cleanup(ProcessorContext context) {
+        for (Map.Entry<Coords, Projection> entry : projections_.entrySet()) {
+            outputProjection(entry.getKey(), entry.getValue(), context);
+        }
+        projections_.clear();
+    }
+
+    private void shear(Image image, double offset, Object dest, boolean max) {
+        final Object src = image.getRawPixels();
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final int newWidth = newWidth_;
+        ParallelStripes.RangeKernel kernel = makeKernel(src, width, offset,
+                dest, newWidth, interpolate_, max);
+        ParallelStripes.run(pool_, height, MIN_STRIPE_PIXELS / newWidth, kernel);
+    }
+
+    /**
+     * Computes the position of the left edge of a slice on the wider canvas,
+     * the way the Canvas Size and Translate commands of the offline deskew
+     * place it: the slice starts at the right edge of the canvas when it is
+     * shifted to the left (and at the left edge otherwise), and is then
+     * translated by dir * shift.  Like ImageJ's Translate, the translation
+     * is truncated to whole pixels when not interpolating.
+     *
+     * @param shift shift of the slice in pixels
+     * @param dir -1 or 1, the direction in which slices are shifted
+     */
+    static double sliceOffset(int width, int newWidth, double shift, int dir,
+            boolean interpolate) {
+        double translation = dir * shift;
+        if (!interpolate) {
+            translation = (int) translation;
+        }
+        return (dir < 0 ? newWidth - width : 0) + translation;
+    }
+
+    /**
+     * Creates the kernel that places each row of the source at the given
+     * offset in the destination row, which is newWidth wide.  Pixels of the
+     * destination that are not covered by the source are zero.  When max is
+     * set, the destination holds a projection in progress and is updated
+     * with the maximum of its values and the shifted source.
+     *
+     * @param src byte[] or short[] source pixels
+     * @param dest byte[] or short[] destination pixels, of the same type
+     */
+    static ParallelStripes.RangeKernel makeKernel(Object src,
+            final int width, final double offset, Object dest,
+            final int newWidth, final boolean interpolate, final boolean max) {
+        final byte[] srcBytes = src instanceof byte[] ? (byte[]) src : null;
+        final short[] srcShorts = src instanceof short[] ? (short[]) src : null;
+        final byte[] destBytes = dest instanceof byte[] ? (byte[]) dest : null;
+        final short[] destShorts = dest instanceof short[] ? (short[]) dest : null;
+        if ((srcBytes == null || destBytes == null)
+                && (srcShorts == null || destShorts == null)) {
+            throw new IllegalArgumentException("Source and destination pixels "
+                    + "must both be byte[] or short[]");
+        }
+        final boolean bytes = srcBytes != null;
+        // without interpolation we shift by whole pixels
+        final double shift = interpolate ? offset : Math.round(offset);
+        final int whole = (int) Math.floor(shift);
+        final double frac = shift - whole;
+        return new ParallelStripes.RangeKernel() {
+            @Override
+            public void apply(int fromRow, int toRow) {
+                for (int y = fromRow; y < toRow; y++) {
+                    int srcRow = y * width;
+                    int destRow = y * newWidth;
+                    for (int x = 0; x < newWidth; x++) {
+                        // source position of this destination pixel is
+                        //   x - shift, between pixels i - 1 and i
+                        int i = x - whole;
+                        double value;
+                        if (frac == 0.0) {
+                            value = sample(i, srcRow);
+                        } else {
+                            value = sample(i - 1, srcRow) * frac
+                                    + sample(i, srcRow) * (1.0 - frac);
+                        }
+                        int result = (int) (value + 0.5);
+                        if (bytes) {
+                            if (!max || result > (destBytes[destRow + x] & 0xff)) {
+                                destBytes[destRow + x] = (byte) result;
+                            }
+                        } else {
+                            if (!max || result > (destShorts[destRow + x] & 0xffff)) {
+                                destShorts[destRow + x] = (short) result;
+                            }
+                        }
+                    }
+                }
+            }
+
+            private int sample(int i, int srcRow) {
+                if (i < 0 || i >= width) {
+                    return 0;
+                }
+                return bytes ? srcBytes[srcRow + i] & 0xff
+                        : srcShorts[srcRow + i] & 0xffff;
+            }
+        };
+    }
+}
@@ -0,0 +1,162 @@
+package org.micromanager.asidispim.data;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+import org.micromanager.internal.utils.ParallelStripes;
+
+/**
+ * Compares the deskew of DeskewProcessor with the offline deskew of the
+ * Data Analysis tab, which puts each slice on a wider canvas with ImageJ's
+ * Canvas Size command and then shifts it with Translate.
+ */
+public class DeskewProcessorTest {
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 7;
+    private static final int SLICES = 9;
+    private static final double[] SLICE_STEPS_PX = {0.8, 1.37, 2.5};
+    // ImageJ computes the interpolation weights in a different order, which
+    // can make results that are half-way between two values round differently
+    private static final double INTERPOLATION_TOLERANCE = 1.0;
+
+    private static int newWidth(double dx) {
+        return WIDTH + (int) Math.abs(Math.ceil(dx * SLICES));
+    }
+
+    private static ImageProcessor randomSlice(Random random, boolean bytes) {
+        ImageProcessor slice = bytes ? new ByteProcessor(WIDTH, HEIGHT)
+                : new ShortProcessor(WIDTH, HEIGHT);
+        int max = bytes ? 256 : 65536;
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            slice.set(i, random.nextInt(max));
+        }
+        return slice;
+    }
+
+    // As the Data Analysis tab does it: Canvas Size with zero background,
+    // then Translate of the slice
+    private static ImageProcessor offlineDeskew(ImageProcessor slice, int s,
+            double dx, int dir, boolean interpolate) {
+        int newWidth = newWidth(dx);
+        ImageProcessor canvas = slice.createProcessor(newWidth, HEIGHT);
+        canvas.insert(slice, dir < 0 ? newWidth - WIDTH : 0, 0);
+        canvas.setInterpolationMethod(interpolate ? ImageProcessor.BILINEAR
+                : ImageProcessor.NONE);
+        canvas.setBackgroundValue(0);
+        canvas.translate(dx * s * dir, 0);
+        return canvas;
+    }
+
+    // When interpolating, ImageJ's Translate sets pixels whose source
+    // position is not between two pixels of the canvas (including the whole
+    // last row) to the background, where the processor interpolates with
+    // zeros beyond the edges of the slice instead.  Those pixels are not
+    // compared.
+    private static boolean isComparable(int x, int y, int s, double dx,
+            int dir, boolean interpolate) {
+        double translation = dx * s * dir;
+        if (!interpolate || translation == (int) translation) {
+            return true;
+        }
+        double sourceX = x - translation;
+        return sourceX >= 0.0 && sourceX < newWidth(dx) - 1.0 && y < HEIGHT - 1;
+    }
+
+    private static ParallelStripes.RangeKernel kernel(ImageProcessor slice,
+            int s, double dx, int dir, boolean interpolate, ImageProcessor dest,
+            boolean max) {
+        double offset = DeskewProcessor.sliceOffset(WIDTH, newWidth(dx),
+                dx * s, dir, interpolate);
+        return DeskewProcessor.makeKernel(slice.getPixels(), WIDTH, offset,
+                dest.getPixels(), newWidth(dx), interpolate, max);
+    }
+
+    private static void checkSlices(boolean bytes) {
+        Random random = new Random(bytes ? 8 : 16);
+        for (double dx : SLICE_STEPS_PX) {
+            for (int dir : new int[] {-1, 1}) {
+                for (boolean interpolate : new boolean[] {false, true}) {
+                    for (int s = 0; s < SLICES; s++) {
+                        ImageProcessor slice = randomSlice(random, bytes);
+                        ImageProcessor expected = offlineDeskew(slice, s, dx,
+                                dir, interpolate);
+                        ImageProcessor actual = slice.createProcessor(
+                                newWidth(dx), HEIGHT);
+                        kernel(slice, s, dx, dir, interpolate, actual, false)
+                                .apply(0, HEIGHT);
+                        for (int y = 0; y < HEIGHT; y++) {
+                            for (int x = 0; x < newWidth(dx); x++) {
+                                if (isComparable(x, y, s, dx, dir, interpolate)) {
+                                    Assert.assertEquals("dx " + dx + ", dir " + dir
+                                            + ", interpolate " + interpolate + ", slice "
+                                            + s + " at " + x + "," + y,
+                                            expected.get(x, y), actual.get(x, y),
+                                            interpolate ? INTERPOLATION_TOLERANCE : 0.0);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void test8BitSlicesMatchOfflineDeskew() {
+        checkSlices(true);
+    }
+
+    @Test
+    public void test16BitSlicesMatchOfflineDeskew() {
+        checkSlices(false);
+    }
+
+    @Test
+    public void testMaxProjectionMatchesOfflineDeskew() {
+        Random random = new Random(3);
+        double dx = SLICE_STEPS_PX[1];
+        for (int dir : new int[] {-1, 1}) {
+            for (boolean interpolate : new boolean[] {false, true}) {
+                ImageProcessor expected = new ShortProcessor(newWidth(dx), HEIGHT);
+                ImageProcessor actual = new ShortProcessor(newWidth(dx), HEIGHT);
+                boolean[] comparable = new boolean[newWidth(dx) * HEIGHT];
+                Arrays.fill(comparable, true);
+                for (int s = 0; s < SLICES; s++) {
+                    ImageProcessor slice = randomSlice(random, false);
+                    ImageProcessor deskewed = offlineDeskew(slice, s, dx, dir,
+                            interpolate);
+                    for (int y = 0; y < HEIGHT; y++) {
+                        for (int x = 0; x < newWidth(dx); x++) {
+                            expected.set(x, y, Math.max(expected.get(x, y),
+                                    deskewed.get(x, y)));
+                            comparable[y * newWidth(dx) + x] &=
+                                    isComparable(x, y, s, dx, dir, interpolate);
+                        }
+                    }
+                    // Rows in parallel, as the processor does it
+                    ParallelStripes.run(ForkJoinPool.commonPool(), HEIGHT, 1,
+                            kernel(slice, s, dx, dir, interpolate, actual, true));
+                }
+                for (int i = 0; i < comparable.length; i++) {
+                    if (comparable[i]) {
+                        Assert.assertEquals("dir " + dir + ", interpolate "
+                                + interpolate + " at " + i,
+                                expected.get(i), actual.get(i),
+                                interpolate ? INTERPOLATION_TOLERANCE : 0.0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMixedPixelTypes() {
+        DeskewProcessor.makeKernel(new byte[WIDTH], WIDTH, 0.0,
+                new short[WIDTH], WIDTH, false, false);
+    }
+}
@@ -0,0 +1,201 @@
+package org.micromanager.plugins.framecombiner;
+
+import java.util.concurrent.ForkJoinPool;
+import org.micromanager.internal.utils.ParallelStripes;
+
+/**
+ * Combines frames one at a time into running sums, minima or maxima, so
+ * that only the accumulator (and not every frame of the set) is kept in
+ * memory. Each frame is folded in as soon as it arrives, split into
+ * stripes that are processed in parallel on a ForkJoinPool.
+ *
+ * Sums are accumulated in longs and can therefore not overflow. The result
+ * of a sum is clipped to the largest value of the pixel type; the result of
+ * a mean is truncated.
+ */
+final class FrameAccumulator {
+
+   // Stripes are at least this large, so that the overhead of forking a
+   // task stays small compared to the work
+   static final int MIN_STRIPE_PIXELS = 1 << 16;
+
+   private final String algorithm_;
+   private final int bytesPerPixel_;
+   private final int numPixels_;
+   private final ForkJoinPool pool_;
+
+   // Used for sum and mean
+   private long[] sums_;
+   // Used for min and max
+   private int[] extrema_;
+   private int count_;
+
+   /**
+    * @param algorithm one of the FrameCombinerPlugin.PROCESSOR_ALGO_*
+    * constants
+    * @param bytesPerPixel 1 or 2
+    * @param numPixels number of pixels of each frame
+    * @param pool pool to run the stripes on; null to run on the calling
+    * thread
+    */
+   FrameAccumulator(String algorithm, int bytesPerPixel, int numPixels,
+           ForkJoinPool pool) {
+      if (!algorithm.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MEAN)
+              && !algorithm.equals(FrameCombinerPlugin.PROCESSOR_ALGO_SUM)
+              && !algorithm.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MAX)
+              && !algorithm.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MIN)) {
+         throw new IllegalArgumentException("FrameCombiner : Algorithm called "
+                 + algorithm + " is not implemented or not found.");
+      }
+      if (bytesPerPixel != 1 && bytesPerPixel != 2) {
+         throw new IllegalArgumentException("FrameCombiner : Unsupported "
+                 + bytesPerPixel + " bytes per pixel");
+      }
+      algorithm_ = algorithm;
+      bytesPerPixel_ = bytesPerPixel;
+      numPixels_ = numPixels;
+      pool_ = pool;
+   }
+
+   int getBytesPerPixel() {
+      return bytesPerPixel_;
+   }
+
+   int getNumPixels() {
+      return numPixels_;
+   }
+
+   /**
+    * @return the number of frames added since the last call to finish()
+    */
+   int getCount() {
+      return count_;
+   }
+
+   private boolean isSum() {
+      return algorithm_.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MEAN)
+              || algorithm_.equals(FrameCombinerPlugin.PROCESSOR_ALGO_SUM);
+   }
+
+   /**
+    * Folds a frame into the accumulator.
+    *
+    * @param pixels byte[] or short[] (matching bytesPerPixel) of numPixels
+    * pixels
+    */
+   void add(Object pixels) {
+      final boolean isBytes = bytesPerPixel_ == 1;
+      if (isBytes ? !(pixels instanceof byte[]) : !(pixels instanceof short[])) {
+         throw new IllegalArgumentException("FrameCombiner : Frame does not have "
+                 + bytesPerPixel_ + " bytes per pixel");
+      }
+      int length = isBytes ? ((byte[]) pixels).length : ((short[]) pixels).length;
+      if (length != numPixels_) {
+         throw new IllegalArgumentException("FrameCombiner : Frame has "
+                 + length + " pixels instead of " + numPixels_);
+      }
+
+      final boolean first = count_ == 0;
+      ParallelStripes.RangeKernel kernel;
+      if (isSum()) {
+         if (sums_ == null) {
+            sums_ = new long[numPixels_];
+         }
+         final long[] sums = sums_;
+         if (isBytes) {
+            final byte[] src = (byte[]) pixels;
+            kernel = (from, to) -> {
+               for (int i = from; i < to; i++) {
+                  sums[i] = (first ? 0 : sums[i]) + (src[i] & 0xff);
+               }
+            };
+         } else {
+            final short[] src = (short[]) pixels;
+            kernel = (from, to) -> {
+               for (int i = from; i < to; i++) {
+                  sums[i] = (first ? 0 : sums[i]) + (src[i] & 0xffff);
+               }
+            };
+         }
+      } else {
+         if (extrema_ == null) {
+            extrema_ = new int[numPixels_];
+         }
+         final int[] extrema = extrema_;
+         final boolean max = algorithm_.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MAX);
+         if (isBytes) {
+            final byte[] src = (byte[]) pixels;
+            kernel = (from, to) -> {
+               for (int i = from; i < to; i++) {
+                  int value = src[i] & 0xff;
+                  if (first || (max ? value > extrema[i] : value < extrema[i])) {
+                     extrema[i] = value;
+                  }
+               }
+            };
+         } else {
+            final short[] src = (short[]) pixels;
+            kernel = (from, to) -> {
+               for (int i = from; i < to; i++) {
+                  int value = src[i] & 0xffff;
+                  if (first || (max ? value > extrema[i] : value < extrema[i])) {
+                     extrema[i] = value;
+                  }
+               }
+            };
+         }
+      }
+      run(kernel);
+      count_++;
+   }
+
+   /**
+    * Returns the combination of all frames added since the last call, and
+    * starts a new set. The accumulator arrays are kept for the next set.
+    *
+    * @return a new byte[] or short[] (matching bytesPerPixel) of numPixels
+    * pixels
+    */
+   Object finish() {
+      if (count_ == 0) {
+         throw new IllegalStateException("FrameCombiner : No frames to combine");
+      }
+      final int maxValue = bytesPerPixel_ == 1 ? 0xff : 0xffff;
+      final byte[] bytes = bytesPerPixel_ == 1 ? new byte[numPixels_] : null;
+      final short[] shorts = bytesPerPixel_ == 2 ? new short[numPixels_] : null;
+      ParallelStripes.RangeKernel kernel;
+      if (isSum()) {
+         final long[] sums = sums_;
+         final long divisor = algorithm_.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MEAN)
+                 ? count_ : 1;
+         kernel = (from, to) -> {
+            for (int i = from; i < to; i++) {
+               int value = (int) Math.min(maxValue, sums[i] / divisor);
+               if (bytes != null) {
+                  bytes[i] = (byte) value;
+               } else {
+                  shorts[i] = (short) value;
+               }
+            }
+         };
+      } else {
+         final int[] extrema = extrema_;
+         kernel = (from, to) -> {
+            for (int i = from; i < to; i++) {
+               if (bytes != null) {
+                  bytes[i] = (byte) extrema[i];
+               } else {
+                  shorts[i] = (short) extrema[i];
+               }
+            }
+         };
+      }
+      run(kernel);
+      count_ = 0;
+      return bytes != null ? bytes : shorts;
+   }
+
+   private void run(ParallelStripes.RangeKernel kernel) {
+      ParallelStripes.run(pool_, numPixels_, MIN_STRIPE_PIXELS, kernel);
+   }
+}
@@ -1,5 +1,6 @@
 package org.micromanager.plugins.framecombiner;
 
+import java.util.concurrent.ForkJoinPool;
 import org.micromanager.LogManager;
 import org.micromanager.PropertyMap;
 import org.micromanager.Studio;
@@ -26,8 +27,14 @@ public class SingleCombinationProcessor {
 
    private int current_frame_index_;
    private int processed_frame_index_;
-   private Image[] bufferImages_;
-   private int currentBufferIndex_;
+   // Running combination of the current set of frames
+   private FrameAccumulator accumulator_;
+   // First frame of the current set, which provides the coords and metadata
+   // of the processed image. Its pixels are not kept.
+   private Coords firstCoords_;
+   private Metadata firstMetadata_;
+   private int width_;
+   private int height_;
 
    public SingleCombinationProcessor(Coords coords, Studio studio, String processorAlgo, String processorDimension,
            int numerOfImagesToProcess, boolean processCombinations, boolean isAnyChannelToAvoid) {
@@ -45,11 +52,7 @@ public class SingleCombinationProcessor {
 
       current_frame_index_ = 0;
       processed_frame_index_ = 0;
-      bufferImages_ = new Image[numerOfImagesToProcess_];
-
-      for (int i = 0; i < numerOfImagesToProcess_; i++) {
-         bufferImages_[i] = null;
-      }
+      accumulator_ = null;
 
       processedImage_ = null;
 
@@ -68,22 +71,23 @@ public class SingleCombinationProcessor {
          return;
       }
 
-      currentBufferIndex_ = current_frame_index_ % numerOfImagesToProcess_;
-      bufferImages_[currentBufferIndex_] = image;
-
-      if (currentBufferIndex_ == (numerOfImagesToProcess_ - 1)) {
+      try {
+         // Fold the image into the running combination
+         accumulateImage(image);
+      } catch (Exception ex) {
+         log_.logError(ex);
+         current_frame_index_ += 1;
+         return;
+      }
 
-         try {
-            // Process last `numerOfImagesToProcess_` images
-            processBufferImages();
-         } catch (Exception ex) {
-            log_.logError(ex);
-         }
+      if (accumulator_.getCount() == numerOfImagesToProcess_) {
 
-         // Clean buffered images
-         for (int i = 0; i < numerOfImagesToProcess_; i++) {
-            bufferImages_[i] = null;
-         }
+         // Combine the last `numerOfImagesToProcess_` images
+         processedImage_ = studio_.data().wrapImage(accumulator_.finish(),
+                 width_, height_, accumulator_.getBytesPerPixel(), 1,
+                 firstCoords_, firstMetadata_);
+         firstCoords_ = null;
+         firstMetadata_ = null;
 
          // Add metadata to the processed image
          Metadata metadata = processedImage_.getMetadata();
@@ -120,231 +124,29 @@ public class SingleCombinationProcessor {
    }
 
    public void clear() {
-      for (int i = 0; i < numerOfImagesToProcess_; i++) {
-         bufferImages_[i] = null;
-      }
-      bufferImages_ = null;
-   }
-
-   public void processBufferImages() throws Exception {
-
-      if (processorAlgo_.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MEAN)) {
-         meanProcessImages(false);
-      } else if (processorAlgo_.equals(FrameCombinerPlugin.PROCESSOR_ALGO_SUM)) {
-         meanProcessImages(true);
-      } else if (processorAlgo_.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MAX)) {
-         extremaProcessImages("max");
-      } else if (processorAlgo_.equals(FrameCombinerPlugin.PROCESSOR_ALGO_MIN)) {
-         extremaProcessImages("min");
-      } else {
-         throw new Exception("FrameCombiner : Algorithm called " + processorAlgo_ + " is not implemented or not found.");
-      }
-
+      accumulator_ = null;
+      firstCoords_ = null;
+      firstMetadata_ = null;
    }
 
-   public void meanProcessImages(boolean onlySum) {
-
-      // Could be moved outside processImage() ?
-      Image img = bufferImages_[0];
-      int bitDepth = img.getMetadata().getBitDepth();
-      int width = img.getWidth();
-      int height = img.getHeight();
-      int bytesPerPixel = img.getBytesPerPixel();
-      int numComponents = img.getNumComponents();
-      Coords coords = img.getCoords();
-      Metadata metadata = img.getMetadata();
-
-      Object resultPixels = null;
-
-      if (bytesPerPixel == 1) {
-
-         // Create new array
-         float[] newPixels = new float[width * height];
-         byte[] newPixelsFinal = new byte[width * height];
-
-         // Sum up all pixels from bufferImages
-         for (int i = 0; i < numerOfImagesToProcess_; i++) {
-
-            // Get current frame pixels
-            img = bufferImages_[i];
-            byte[] imgPixels = (byte[]) img.getRawPixels();
-
-            // Iterate over all pixels
-            for (int index = 0; index < newPixels.length; index++) {
-               newPixels[index] = (float) (newPixels[index] + (int) (imgPixels[index] & 0xff));
-            }
+   private void accumulateImage(Image image) {
+      if (accumulator_ == null
+              || accumulator_.getBytesPerPixel() != image.getBytesPerPixel()
+              || image.getWidth() != width_ || image.getHeight() != height_) {
+         if (accumulator_ != null && accumulator_.getCount() > 0) {
+            throw new IllegalArgumentException("FrameCombiner : Image size or type "
+                    + "changed within a set of frames to combine; image skipped");
          }
-
-         // Divide by length to get the mean
-         for (int index = 0; index < newPixels.length; index++) {
-            if (onlySum) {
-               newPixelsFinal[index] = (byte) (int) (newPixels[index]);
-            } else {
-               newPixelsFinal[index] = (byte) (int) (newPixels[index] / numerOfImagesToProcess_);
-            }
-         }
-
-         resultPixels = newPixelsFinal;
-
-      } else if (bytesPerPixel == 2) {
-
-         // Create new array
-         float[] newPixels = new float[width * height];
-         short[] newPixelsFinal = new short[width * height];
-
-         // Sum up all pixels from bufferImages
-         for (int i = 0; i < numerOfImagesToProcess_; i++) {
-
-            // Get current frame pixels
-            img = bufferImages_[i];
-            short[] imgPixels = (short[]) img.getRawPixels();
-
-            // Iterate over all pixels
-            for (int index = 0; index < newPixels.length; index++) {
-               newPixels[index] = (float) (newPixels[index] + (int) (imgPixels[index] & 0xffff));
-            }
-         }
-
-         // Divide by length to get the mean
-         for (int index = 0; index < newPixels.length; index++) {
-            if (onlySum) {
-               newPixelsFinal[index] = (short) (int) (newPixels[index]);
-            } else {
-               newPixelsFinal[index] = (short) (int) (newPixels[index] / numerOfImagesToProcess_);
-            }
-         }
-
-         resultPixels = newPixelsFinal;
-
+         width_ = image.getWidth();
+         height_ = image.getHeight();
+         accumulator_ = new FrameAccumulator(processorAlgo_,
+                 image.getBytesPerPixel(), width_ * height_,
+                 ForkJoinPool.commonPool());
       }
-
-      // Create the processed image
-      processedImage_ = studio_.data().createImage(resultPixels, width, height,
-              bytesPerPixel, numComponents, coords, metadata);
-
-   }
-
-   public void extremaProcessImages(String extremaType) throws Exception {
-
-      // Could be moved outside processImage() ?
-      Image img = bufferImages_[0];
-      int bitDepth = img.getMetadata().getBitDepth();
-      int width = img.getWidth();
-      int height = img.getHeight();
-      int bytesPerPixel = img.getBytesPerPixel();
-      int numComponents = img.getNumComponents();
-      Coords coords = img.getCoords();
-      Metadata metadata = img.getMetadata();
-
-      Object resultPixels = null;
-
-      if (bytesPerPixel == 1) {
-
-         // Create new array
-         float[] newPixels = new float[width * height];
-         byte[] newPixelsFinal = new byte[width * height];
-
-         float currentValue;
-         float actualValue;
-
-         // Init the new array
-         if (extremaType.equals("max")) {
-            for (int i = 0; i < newPixels.length; i++) {
-               newPixels[i] = 0;
-            }
-         } else if (extremaType.equals("min")) {
-            for (int i = 0; i < newPixels.length; i++) {
-               newPixels[i] = Byte.MAX_VALUE;
-            }
-         } else {
-            throw new Exception("FrameCombiner : Wrong extremaType " + extremaType);
-         }
-
-         // Iterate over all frames
-         for (int i = 0; i < numerOfImagesToProcess_; i++) {
-
-            // Get current frame pixels
-            img = bufferImages_[i];
-            short[] imgPixels = (short[]) img.getRawPixels();
-
-            // Iterate over all pixels
-            for (int index = 0; index < newPixels.length; index++) {
-               currentValue = (float) (int) (imgPixels[index] & 0xffff);
-               actualValue = (float) newPixels[index];
-
-               if (extremaType.equals("max")) {
-                  newPixels[index] = (float) Math.max(currentValue, actualValue);
-               } else if (extremaType.equals("min")) {
-                  newPixels[index] = (float) Math.min(currentValue, actualValue);
-               } else {
-                  throw new Exception("FrameCombiner : Wrong extremaType " + extremaType);
-               }
-            }
-         }
-
-         // Convert to short
-         for (int index = 0; index < newPixels.length; index++) {
-            newPixelsFinal[index] = (byte) newPixels[index];
-         }
-
-         resultPixels = newPixelsFinal;
-
-      } else if (bytesPerPixel == 2) {
-
-         // Create new array
-         float[] newPixels = new float[width * height];
-         short[] newPixelsFinal = new short[width * height];
-
-         float currentValue;
-         float actualValue;
-
-         // Init the new array
-         if (extremaType.equals("max")) {
-            for (int i = 0; i < newPixels.length; i++) {
-               newPixels[i] = 0;
-            }
-         } else if (extremaType.equals("min")) {
-            for (int i = 0; i < newPixels.length; i++) {
-               newPixels[i] = Byte.MAX_VALUE;
-            }
-         } else {
-            throw new Exception("FrameCombiner : Wrong extremaType " + extremaType);
-         }
-
-         // Iterate over all frames
-         for (int i = 0; i < numerOfImagesToProcess_; i++) {
-
-            // Get current frame pixels
-            img = bufferImages_[i];
-            short[] imgPixels = (short[]) img.getRawPixels();
-
-            // Iterate over all pixels
-            for (int index = 0; index < newPixels.length; index++) {
-               currentValue = (float) (int) (imgPixels[index] & 0xffff);
-               actualValue = (float) newPixels[index];
-
-               if (extremaType.equals("max")) {
-                  newPixels[index] = (float) Math.max(currentValue, actualValue);
-               } else if (extremaType.equals("min")) {
-                  newPixels[index] = (float) Math.min(currentValue, actualValue);
-               } else {
-                  throw new Exception("FrameCombiner : Wrong extremaType " + extremaType);
-               }
-            }
-         }
-
-         // Convert to short
-         for (int index = 0; index < newPixels.length; index++) {
-            newPixelsFinal[index] = (short) newPixels[index];
-         }
-
-         resultPixels = newPixelsFinal;
-
+      if (accumulator_.getCount() == 0) {
+         firstCoords_ = image.getCoords();
+         firstMetadata_ = image.getMetadata();
       }
-
-      // Create the processed image
-      processedImage_ = studio_.data().createImage(resultPixels, width, height,
-              bytesPerPixel, numComponents, coords, metadata);
-
+      accumulator_.add(image.getRawPixels());
    }
 }
@@ -0,0 +1,100 @@
+package org.micromanager.plugins.framecombiner;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameAccumulatorTest {
+   // Large enough to be split into stripes
+   private static final int NUM_PIXELS = 5 * FrameAccumulator.MIN_STRIPE_PIXELS + 3;
+
+   private static short[][] randomFrames(int numFrames) {
+      Random random = new Random(numFrames);
+      short[][] frames = new short[numFrames][NUM_PIXELS];
+      for (short[] frame : frames) {
+         for (int i = 0; i < NUM_PIXELS; i++) {
+            frame[i] = (short) random.nextInt(65536);
+         }
+      }
+      return frames;
+   }
+
+   private static short[] combine(String algorithm, short[][] frames) {
+      FrameAccumulator accumulator = new FrameAccumulator(algorithm, 2,
+            NUM_PIXELS, ForkJoinPool.commonPool());
+      for (short[] frame : frames) {
+         accumulator.add(frame);
+      }
+      Assert.assertEquals(frames.length, accumulator.getCount());
+      short[] result = (short[]) accumulator.finish();
+      Assert.assertEquals(0, accumulator.getCount());
+      return result;
+   }
+
+   @Test
+   public void testShorts() {
+      short[][] frames = randomFrames(7);
+      short[] mean = combine(FrameCombinerPlugin.PROCESSOR_ALGO_MEAN, frames);
+      short[] sum = combine(FrameCombinerPlugin.PROCESSOR_ALGO_SUM, frames);
+      short[] max = combine(FrameCombinerPlugin.PROCESSOR_ALGO_MAX, frames);
+      short[] min = combine(FrameCombinerPlugin.PROCESSOR_ALGO_MIN, frames);
+      for (int i = 0; i < NUM_PIXELS; i++) {
+         long total = 0;
+         int largest = 0;
+         int smallest = 65535;
+         for (short[] frame : frames) {
+            int value = frame[i] & 0xffff;
+            total += value;
+            largest = Math.max(largest, value);
+            smallest = Math.min(smallest, value);
+         }
+         Assert.assertEquals(total / frames.length, mean[i] & 0xffff);
+         Assert.assertEquals(Math.min(65535, total), sum[i] & 0xffff);
+         Assert.assertEquals(largest, max[i] & 0xffff);
+         Assert.assertEquals(smallest, min[i] & 0xffff);
+      }
+   }
+
+   @Test
+   public void testLargeMeanDoesNotOverflow() {
+      // 2^16 frames of 65535 overflow an int sum and lose precision in floats
+      FrameAccumulator accumulator = new FrameAccumulator(
+            FrameCombinerPlugin.PROCESSOR_ALGO_MEAN, 2, 4, null);
+      short[] bright = {(short) 65535, (short) 65535, (short) 65535, 1};
+      for (int i = 0; i < 1 << 16; i++) {
+         accumulator.add(bright);
+      }
+      Assert.assertArrayEquals(bright, (short[]) accumulator.finish());
+   }
+
+   @Test
+   public void testBytesAndReuse() {
+      FrameAccumulator accumulator = new FrameAccumulator(
+            FrameCombinerPlugin.PROCESSOR_ALGO_MIN, 1, 3, null);
+      accumulator.add(new byte[] {(byte) 200, 5, 7});
+      accumulator.add(new byte[] {(byte) 250, 9, 3});
+      Assert.assertArrayEquals(new byte[] {(byte) 200, 5, 3},
+            (byte[]) accumulator.finish());
+      // A new set starts from scratch
+      accumulator.add(new byte[] {(byte) 255, 6, 8});
+      Assert.assertArrayEquals(new byte[] {(byte) 255, 6, 8},
+            (byte[]) accumulator.finish());
+   }
+
+   @Test
+   public void testWrongFrame() {
+      FrameAccumulator accumulator = new FrameAccumulator(
+            FrameCombinerPlugin.PROCESSOR_ALGO_SUM, 2, 3, null);
+      try {
+         accumulator.add(new byte[3]);
+         Assert.fail("Accepted 8-bit frame");
+      } catch (IllegalArgumentException expected) {
+      }
+      try {
+         accumulator.add(new short[4]);
+         Assert.fail("Accepted frame of wrong size");
+      } catch (IllegalArgumentException expected) {
+      }
+   }
+}
@@ -1117,6 +1117,68 @@ public class MainForm extends JFrame {
       }
    }
 
+   /**
+    * Copies the settings that were stored when this window was last closed
+    * into a GaussianInfo, for code that fits without the window, such as the
+    * live localization processor.  Uses the same defaults as the window.
+    *
+    * @param studio Instance of the Micro-Manager 2.0 api
+    * @param tT GaussianInfo that will receive the stored settings
+    */
+   public static void readStoredValues(Studio studio, GaussianInfo tT) {
+      UserProfile up = studio.getUserProfile();
+      Class oc = MainForm.class;
+      try {
+         tT.setNoiseTolerance(Integer.parseInt(up.getString(oc, NOISETOLERANCE, "100")));
+      } catch (NumberFormatException ex) {
+         tT.setNoiseTolerance(100);
+      }
+      tT.setPhotonConversionFactor(up.getDouble(oc, PCF, 10.41));
+      tT.setGain(up.getDouble(oc, GAIN, 50.0));
+      tT.setPixelSize(up.getDouble(oc, PIXELSIZE, 107.0).floatValue());
+      tT.setZStackStepSize(up.getDouble(oc, ZSTEPSIZE, 50.0).floatValue());
+      tT.setTimeIntervalMs(up.getDouble(oc, TIMEINTERVALMS, 1.0));
+      tT.setBaseLevel(up.getDouble(oc, BACKGROUNDLEVEL, 100.0));
+      tT.setReadNoise(up.getDouble(oc, READNOISE, 0.0));
+      tT.setUseWidthFilter(up.getBoolean(oc, USEFILTER, false));
+      tT.setSigmaMin(up.getDouble(oc, SIGMAMIN, 100.0));
+      tT.setSigmaMax(up.getDouble(oc, SIGMAMAX, 200.0));
+      tT.setUseNrPhotonsFilter(up.getBoolean(oc, USENRPHOTONSFILTER, false));
+      tT.setNrPhotonsMin(up.getDouble(oc, NRPHOTONSMIN, 500.0));
+      tT.setNrPhotonsMax(up.getDouble(oc, NRPHOTONSMAX, 50000.0));
+      tT.setMaxIterations(up.getInt(oc, MAXITERATIONS, 250));
+      tT.setHalfBoxSize(up.getInt(oc, BOXSIZE, 8) / 2);
+      tT.setShape(up.getInt(oc, FITSHAPE, 1));
+      tT.setFitMode(up.getInt(oc, FITMODE, 0) + 1);
+      tT.setUseFixedWidth(up.getBoolean(oc, USEFIXEDWIDTH, false));
+      tT.setFixedWidthNm(up.getDouble(oc, FIXEDWIDTH, 250.0));
+      tT.setSkipChannels(false);
+      if (up.getBoolean(oc, SKIPCHANNELS, false)) {
+         try {
+            String[] parts = up.getString(oc, CHANNELSKIPSTRING, "").split(",");
+            int[] result = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+               result[i] = NumberUtils.displayStringToInt(parts[i]);
+            }
+            tT.setChannelsToSkip(result);
+            tT.setSkipChannels(true);
+         } catch (NumberFormatException | ParseException ex) {
+            ReportingUtils.logError(ex, "Error interpreting channels to skip");
+         }
+      }
+   }
+
+   /**
+    * @param studio Instance of the Micro-Manager 2.0 api
+    * @return the prefilter that was selected when this window was last closed
+    */
+   public static FindLocalMaxima.FilterType readStoredPreFilter(Studio studio) {
+      int index = studio.getUserProfile().getInt(MainForm.class, PREFILTER, 0);
+      FindLocalMaxima.FilterType[] types = FindLocalMaxima.FilterType.values();
+      return index >= 0 && index < types.length ? types[index] :
+            FindLocalMaxima.FilterType.NONE;
+   }
+
    public void updateValues(GaussianInfo tT) {
       try {
          tT.setNoiseTolerance(Integer.parseInt(noiseToleranceTextField_.getText()));
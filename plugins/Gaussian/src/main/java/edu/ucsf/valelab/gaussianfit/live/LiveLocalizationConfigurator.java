@@ -0,0 +1,152 @@
+package edu.ucsf.valelab.gaussianfit.live;
+
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import net.miginfocom.swing.MigLayout;
+import org.micromanager.PropertyMap;
+import org.micromanager.PropertyMaps;
+import org.micromanager.Studio;
+import org.micromanager.data.ProcessorConfigurator;
+import org.micromanager.internal.utils.WindowPositioning;
+
+/**
+ * Lets the user choose how many threads fit spots during acquisition, and
+ * what happens to images that arrive while fitting is behind.
+ *
+ * @author agent
+ */
+public class LiveLocalizationConfigurator extends JFrame
+      implements ProcessorConfigurator {
+   private static final String[] POLICY_OPTIONS = new String[] {
+      "Only find spots", "Skip images"};
+
+   private final Studio studio_;
+   private int nrThreads_;
+   private int maxPendingFrames_;
+   private LiveLocalizationProcessor.FallBehindPolicy policy_;
+
+   public LiveLocalizationConfigurator(PropertyMap settings, Studio studio) {
+      studio_ = studio;
+      nrThreads_ = settings.getInteger(LiveLocalizationPlugin.NR_THREADS,
+            studio_.profile().getSettings(LiveLocalizationConfigurator.class)
+                  .getInteger(LiveLocalizationPlugin.NR_THREADS, defaultNrThreads()));
+      maxPendingFrames_ = settings.getInteger(LiveLocalizationPlugin.MAX_PENDING_FRAMES,
+            studio_.profile().getSettings(LiveLocalizationConfigurator.class)
+                  .getInteger(LiveLocalizationPlugin.MAX_PENDING_FRAMES, 4));
+      try {
+         policy_ = LiveLocalizationProcessor.FallBehindPolicy.valueOf(
+               settings.getString(LiveLocalizationPlugin.FALL_BEHIND_POLICY,
+                     studio_.profile().getSettings(LiveLocalizationConfigurator.class)
+                           .getString(LiveLocalizationPlugin.FALL_BEHIND_POLICY,
+                                 LiveLocalizationProcessor.FallBehindPolicy.DETECT_ONLY.name())));
+      } catch (IllegalArgumentException iae) {
+         policy_ = LiveLocalizationProcessor.FallBehindPolicy.DETECT_ONLY;
+      }
+
+      initComponents();
+
+      super.setLocation(100, 100);
+      WindowPositioning.setUpLocationMemory(this, this.getClass(), null);
+   }
+
+   /**
+    * Leaves a core for the acquisition, and uses at most 8 threads, like the
+    * Localization Microscopy window.
+    *
+    * @return number of fitting threads to use when the user did not choose
+    */
+   static int defaultNrThreads() {
+      return Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors() - 1));
+   }
+
+   @Override
+   public PropertyMap getSettings() {
+      return PropertyMaps.builder()
+            .putInteger(LiveLocalizationPlugin.NR_THREADS, nrThreads_)
+            .putInteger(LiveLocalizationPlugin.MAX_PENDING_FRAMES, maxPendingFrames_)
+            .putString(LiveLocalizationPlugin.FALL_BEHIND_POLICY, policy_.name())
+            .build();
+   }
+
+   @Override
+   public void showGUI() {
+      setVisible(true);
+   }
+
+   @Override
+   public void cleanup() {
+      dispose();
+   }
+
+   private void initComponents() {
+      setTitle("Live Localization");
+      setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
+      setLayout(new MigLayout("flowx"));
+
+      int maxThreads = Runtime.getRuntime().availableProcessors();
+      nrThreads_ = Math.max(1, Math.min(maxThreads, nrThreads_));
+      final JSpinner threadsSpinner = new JSpinner(new SpinnerNumberModel(
+            nrThreads_, 1, maxThreads, 1));
+      threadsSpinner.addChangeListener(new ChangeListener() {
+         @Override
+         public void stateChanged(ChangeEvent e) {
+            nrThreads_ = (Integer) threadsSpinner.getValue();
+            updateSettings();
+         }
+      });
+      add(new JLabel("Fitting threads:"), "alignx right");
+      add(threadsSpinner, "wrap");
+
+      maxPendingFrames_ = Math.max(1, Math.min(1000, maxPendingFrames_));
+      final JSpinner pendingSpinner = new JSpinner(new SpinnerNumberModel(
+            maxPendingFrames_, 1, 1000, 1));
+      pendingSpinner.addChangeListener(new ChangeListener() {
+         @Override
+         public void stateChanged(ChangeEvent e) {
+            maxPendingFrames_ = (Integer) pendingSpinner.getValue();
+            updateSettings();
+         }
+      });
+      add(new JLabel("Images waiting to be fitted:"), "alignx right");
+      add(pendingSpinner, "wrap");
+
+      final JComboBox policySelector = new JComboBox(POLICY_OPTIONS);
+      policySelector.setSelectedIndex(
+            policy_ == LiveLocalizationProcessor.FallBehindPolicy.SKIP ? 1 : 0);
+      policySelector.addActionListener(new ActionListener() {
+         @Override
+         public void actionPerformed(ActionEvent e) {
+            policy_ = policySelector.getSelectedIndex() == 1
+                  ? LiveLocalizationProcessor.FallBehindPolicy.SKIP
+                  : LiveLocalizationProcessor.FallBehindPolicy.DETECT_ONLY;
+            updateSettings();
+         }
+      });
+      add(new JLabel("When more images wait:"), "alignx right");
+      add(policySelector, "wrap");
+
+      add(new JLabel(
+               "<html>Spots are found and fitted with the settings of the<br>" +
+               "Localization Microscopy window, as they were when<br>" +
+               "that window was last closed.</html>"),
+            "span, wrap");
+      pack();
+   }
+
+   private void updateSettings() {
+      studio_.profile().getSettings(LiveLocalizationConfigurator.class).putInteger(
+            LiveLocalizationPlugin.NR_THREADS, nrThreads_);
+      studio_.profile().getSettings(LiveLocalizationConfigurator.class).putInteger(
+            LiveLocalizationPlugin.MAX_PENDING_FRAMES, maxPendingFrames_);
+      studio_.profile().getSettings(LiveLocalizationConfigurator.class).putString(
+            LiveLocalizationPlugin.FALL_BEHIND_POLICY, policy_.name());
+      studio_.data().notifyPipelineChanged();
+   }
+}
@@ -0,0 +1,41 @@
+package edu.ucsf.valelab.gaussianfit.live;
+
+import edu.ucsf.valelab.gaussianfit.MainForm;
+import edu.ucsf.valelab.gaussianfit.data.GaussianInfo;
+import org.micromanager.PropertyMap;
+import org.micromanager.Studio;
+import org.micromanager.data.Processor;
+import org.micromanager.data.ProcessorFactory;
+
+/**
+ * @author agent
+ */
+public class LiveLocalizationFactory implements ProcessorFactory {
+   private final Studio studio_;
+   private final PropertyMap settings_;
+
+   public LiveLocalizationFactory(Studio studio, PropertyMap settings) {
+      studio_ = studio;
+      settings_ = settings;
+   }
+
+   @Override
+   public Processor createProcessor() {
+      GaussianInfo info = new GaussianInfo();
+      MainForm.readStoredValues(studio_, info);
+      LiveLocalizationProcessor.FallBehindPolicy policy;
+      try {
+         policy = LiveLocalizationProcessor.FallBehindPolicy.valueOf(
+               settings_.getString(LiveLocalizationPlugin.FALL_BEHIND_POLICY,
+                     LiveLocalizationProcessor.FallBehindPolicy.DETECT_ONLY.name()));
+      } catch (IllegalArgumentException iae) {
+         policy = LiveLocalizationProcessor.FallBehindPolicy.DETECT_ONLY;
+      }
+      return new LiveLocalizationProcessor(studio_, info,
+            MainForm.readStoredPreFilter(studio_),
+            settings_.getInteger(LiveLocalizationPlugin.NR_THREADS,
+                  LiveLocalizationConfigurator.defaultNrThreads()),
+            settings_.getInteger(LiveLocalizationPlugin.MAX_PENDING_FRAMES, 4),
+            policy);
+   }
+}
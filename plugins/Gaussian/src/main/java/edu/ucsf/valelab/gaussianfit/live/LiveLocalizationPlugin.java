@@ -0,0 +1,65 @@
+package edu.ucsf.valelab.gaussianfit.live;
+
+import org.micromanager.PropertyMap;
+import org.micromanager.Studio;
+import org.micromanager.data.ProcessorConfigurator;
+import org.micromanager.data.ProcessorFactory;
+import org.micromanager.data.ProcessorPlugin;
+
+import org.scijava.plugin.Plugin;
+import org.scijava.plugin.SciJavaPlugin;
+
+/**
+ * On-the-fly processor that finds and fits spots in images while they are
+ * acquired, using the settings of the Localization Microscopy window.
+ *
+ * @author agent
+ */
+@Plugin(type = ProcessorPlugin.class)
+public class LiveLocalizationPlugin implements ProcessorPlugin, SciJavaPlugin {
+   public static final String MENU_NAME = "Live Localization";
+   public static final String TOOL_TIP_DESCRIPTION =
+         "Find and fit spots in images while they are acquired";
+
+   // keys of the processor settings
+   static final String NR_THREADS = "nrThreads";
+   static final String MAX_PENDING_FRAMES = "maxPendingFrames";
+   static final String FALL_BEHIND_POLICY = "fallBehindPolicy";
+
+   private Studio studio_;
+
+   @Override
+   public void setContext(Studio studio) {
+      studio_ = studio;
+   }
+
+   @Override
+   public ProcessorConfigurator createConfigurator(PropertyMap settings) {
+      return new LiveLocalizationConfigurator(settings, studio_);
+   }
+
+   @Override
+   public ProcessorFactory createFactory(PropertyMap settings) {
+      return new LiveLocalizationFactory(studio_, settings);
+   }
+
+   @Override
+   public String getName() {
+      return MENU_NAME;
+   }
+
+   @Override
+   public String getHelpText() {
+      return TOOL_TIP_DESCRIPTION;
+   }
+
+   @Override
+   public String getVersion() {
+      return "0.1";
+   }
+
+   @Override
+   public String getCopyright() {
+      return "agent, 2026";
+   }
+}
@@ -0,0 +1,348 @@
+package edu.ucsf.valelab.gaussianfit.live;
+
+import edu.ucsf.valelab.gaussianfit.DataCollectionForm;
+import edu.ucsf.valelab.gaussianfit.algorithm.FindLocalMaxima;
+import edu.ucsf.valelab.gaussianfit.algorithm.GaussianFit;
+import edu.ucsf.valelab.gaussianfit.data.GaussianInfo;
+import edu.ucsf.valelab.gaussianfit.data.RowData;
+import edu.ucsf.valelab.gaussianfit.data.SpotData;
+import edu.ucsf.valelab.gaussianfit.data.SpotTable;
+import edu.ucsf.valelab.gaussianfit.fitmanagement.SpotDataConverter;
+import edu.ucsf.valelab.gaussianfit.fitting.ZCalibrator;
+import edu.ucsf.valelab.gaussianfit.utils.ReportingUtils;
+import ij.process.ImageProcessor;
+import java.awt.Rectangle;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+import org.micromanager.Studio;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Image;
+import org.micromanager.data.Processor;
+import org.micromanager.data.ProcessorContext;
+
+/**
+ * Finds and fits spots in images as they flow through the pipeline.  Images
+ * are passed on unchanged, right away; the analysis runs on a fixed number
+ * of worker threads so that it never holds up the acquisition.
+ *
+ * At most maxPendingFrames images wait for, or are in, fitting.  When more
+ * arrive, fitting has fallen behind, and depending on the policy the image
+ * is either skipped, or only searched for spots (which is much cheaper than
+ * fitting them), until up to twice as many images are pending.  Beyond
+ * that, images are skipped.
+ *
+ * Counts and the density of spots are posted as LocalizationStatsEvents.
+ * When the acquisition ends, the localizations are added to the
+ * Localization Microscopy data window.
+ *
+ * @author agent
+ */
+public class LiveLocalizationProcessor implements Processor {
+
+   /**
+    * What to do with an image that arrives while fitting is behind.
+    */
+   public enum FallBehindPolicy {
+      SKIP,
+      DETECT_ONLY
+   }
+
+   enum Work {
+      FIT,
+      DETECT,
+      SKIP
+   }
+
+   // do not post statistics more often than this
+   private static final long POST_INTERVAL_MS = 250;
+
+   private final Studio studio_;
+   private final GaussianInfo info_;
+   private final FindLocalMaxima.FilterType preFilter_;
+   private final int maxPendingFrames_;
+   private final FallBehindPolicy policy_;
+   private final ThreadPoolExecutor workers_;
+   private final ZCalibrator zc_;
+   private final ThreadLocal<GaussianFit> fitters_;
+
+   private final AtomicInteger pending_ = new AtomicInteger();
+   private final AtomicInteger framesFitted_ = new AtomicInteger();
+   private final AtomicInteger framesDetectedOnly_ = new AtomicInteger();
+   private final AtomicInteger framesSkipped_ = new AtomicInteger();
+   private final AtomicLong nrDetections_ = new AtomicLong();
+   private final AtomicLong lastPost_ = new AtomicLong();
+   private final List<SpotData> results_ =
+         Collections.synchronizedList(new ArrayList<SpotData>());
+   private volatile int lastFrameNrSpots_ = 0;
+   private volatile double density_ = 0.0;
+   private volatile int width_ = 0;
+   private volatile int height_ = 0;
+   // Extent of the data set, tracked by processImage (never concurrent)
+   private volatile int maxChannel_ = 0;
+   private volatile int maxSlice_ = 0;
+   private volatile int maxFrame_ = 0;
+   private volatile int maxPosition_ = 0;
+   private final String title_;
+   private final Consumer<RowData.Builder> resultsHandler_;
+
+   public LiveLocalizationProcessor(Studio studio, GaussianInfo info,
+         FindLocalMaxima.FilterType preFilter, int nrThreads,
+         int maxPendingFrames, FallBehindPolicy policy) {
+      this(studio, info, preFilter, nrThreads, maxPendingFrames, policy,
+            LiveLocalizationProcessor::showInDataCollectionForm);
+   }
+
+   /**
+    * As above, but hands the localizations to resultsHandler when the
+    * acquisition ends instead of showing them in the data window.
+    */
+   LiveLocalizationProcessor(Studio studio, GaussianInfo info,
+         FindLocalMaxima.FilterType preFilter, int nrThreads,
+         int maxPendingFrames, FallBehindPolicy policy,
+         Consumer<RowData.Builder> resultsHandler) {
+      studio_ = studio;
+      resultsHandler_ = resultsHandler;
+      info_ = info;
+      preFilter_ = preFilter;
+      maxPendingFrames_ = Math.max(1, maxPendingFrames);
+      policy_ = policy;
+      zc_ = DataCollectionForm.zc_;
+      final GaussianInfo fitSettings = info;
+      fitters_ = new ThreadLocal<GaussianFit>() {
+         @Override
+         protected GaussianFit initialValue() {
+            return new GaussianFit(fitSettings.getShape(), fitSettings.getFitMode(),
+                  fitSettings.getUseFixedWidth(),
+                  fitSettings.getFixedWidthNm() / fitSettings.getPixelSize() / 2);
+         }
+      };
+      final AtomicInteger threadCount = new AtomicInteger();
+      int threads = Math.max(1, nrThreads);
+      // pending_ keeps the queue from growing beyond 2 * maxPendingFrames_
+      workers_ = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+               @Override
+               public Thread newThread(Runnable r) {
+                  Thread t = new Thread(r, "Live localization "
+                        + threadCount.incrementAndGet());
+                  t.setDaemon(true);
+                  return t;
+               }
+            });
+      title_ = "Live " + new SimpleDateFormat("HH:mm:ss").format(new Date());
+   }
+
+   /**
+    * Decides how to analyze an image, given how many images are pending.
+    */
+   static Work chooseWork(int pending, int maxPending, FallBehindPolicy policy) {
+      if (pending < maxPending) {
+         return Work.FIT;
+      }
+      if (policy == FallBehindPolicy.DETECT_ONLY && pending < 2 * maxPending) {
+         return Work.DETECT;
+      }
+      return Work.SKIP;
+   }
+
+   @Override
+   public void processImage(final Image image, ProcessorContext context) {
+      context.outputImage(image);
+
+      Coords coords = image.getCoords();
+      final int channel = coords.getChannel() + 1;
+      maxChannel_ = Math.max(maxChannel_, channel);
+      maxSlice_ = Math.max(maxSlice_, coords.getZ() + 1);
+      maxFrame_ = Math.max(maxFrame_, coords.getT() + 1);
+      maxPosition_ = Math.max(maxPosition_, coords.getStagePosition() + 1);
+      if (info_.getSkipChannels() && inArray(info_.getChannelsToSkip(), channel)) {
+         return;
+      }
+      // processImage is not called concurrently, so nobody else adds work
+      // between this check and the increment
+      final Work work = chooseWork(pending_.get(), maxPendingFrames_, policy_);
+      if (work == Work.SKIP) {
+         framesSkipped_.incrementAndGet();
+         postStats(false);
+         return;
+      }
+      pending_.incrementAndGet();
+      workers_.execute(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               analyze(image, work);
+            } catch (Exception ex) {
+               ReportingUtils.logError(ex, "Live localization failed on "
+                     + image.getCoords());
+            } finally {
+               pending_.decrementAndGet();
+            }
+            postStats(false);
+         }
+      });
+   }
+
+   private void analyze(Image image, Work work) {
+      ImageProcessor ip = studio_.data().ij().createProcessor(image);
+      Coords coords = image.getCoords();
+      int channel = coords.getChannel() + 1;
+      int slice = coords.getZ() + 1;
+      int frame = coords.getT() + 1;
+      int position = coords.getStagePosition() + 1;
+      int width = ip.getWidth();
+      int height = ip.getHeight();
+      width_ = width;
+      height_ = height;
+
+      int halfSize = info_.getHalfBoxSize();
+      FindLocalMaxima.MaximaList maxima = FindLocalMaxima.findMaxima(ip,
+            new Rectangle(0, 0, width, height), 2 * halfSize,
+            info_.getNoiseTolerance(), preFilter_, null);
+      int nrSpots = maxima.size();
+      nrDetections_.addAndGet(nrSpots);
+      lastFrameNrSpots_ = nrSpots;
+      double areaUm2 = width * height * (info_.getPixelSize() / 1000.0)
+            * (info_.getPixelSize() / 1000.0);
+      density_ = areaUm2 > 0.0 ? nrSpots / areaUm2 : 0.0;
+
+      if (work == Work.DETECT) {
+         framesDetectedOnly_.incrementAndGet();
+         return;
+      }
+
+      GaussianFit fitter = fitters_.get();
+      List<SpotData> fitted = new ArrayList<SpotData>(nrSpots);
+      for (int j = 0; j < nrSpots; j++) {
+         int x = maxima.getX(j);
+         int y = maxima.getY(j);
+         // filter out spots too close to the edge
+         if (x <= halfSize || x >= width - halfSize
+               || y <= halfSize || y >= height - halfSize) {
+            continue;
+         }
+         // this processor is ours alone, so crop without SpotData.LOCK_IP
+         ip.setRoi(x - halfSize, y - halfSize, 2 * halfSize, 2 * halfSize);
+         ImageProcessor spotProcessor = ip.crop();
+         SpotData spot = new SpotData(spotProcessor, channel, slice, frame,
+               position, j, x, y);
+         GaussianFit.Data fitResult = fitter.dogaussianfit(spotProcessor,
+               info_.getMaxIterations());
+         SpotData spotData = SpotDataConverter.convert(spot, fitResult, info_, zc_);
+         if (fitResult.getParms().length > 1
+               && (!info_.getUseWidthFilter()
+                  || (spotData.getWidth() > info_.getSigmaMin()
+                     && spotData.getWidth() < info_.getSigmaMax()))
+               && (!info_.getUseNrPhotonsFilter()
+                  || (spotData.getIntensity() > info_.getNrPhotonsMin()
+                     && spotData.getIntensity() < info_.getNrPhotonsMax()))) {
+            fitted.add(spotData);
+         }
+      }
+      results_.addAll(fitted);
+      framesFitted_.incrementAndGet();
+   }
+
+   private void postStats(boolean finished) {
+      long now = System.currentTimeMillis();
+      long last = lastPost_.get();
+      if (!finished && (now - last < POST_INTERVAL_MS
+            || !lastPost_.compareAndSet(last, now))) {
+         return;
+      }
+      studio_.events().post(new LocalizationStatsEvent(framesFitted_.get(),
+            framesDetectedOnly_.get(), framesSkipped_.get(), results_.size(),
+            nrDetections_.get(), lastFrameNrSpots_, density_, finished));
+   }
+
+   @Override
+   public void cleanup(ProcessorContext context) {
+      workers_.shutdown();
+      try {
+         while (!workers_.awaitTermination(1, TimeUnit.SECONDS)) {
+            studio_.logs().logMessage("Live localization: waiting for "
+                  + pending_.get() + " images to be fitted");
+         }
+      } catch (InterruptedException ie) {
+         workers_.shutdownNow();
+         Thread.currentThread().interrupt();
+      }
+      postStats(true);
+      if (results_.isEmpty()) {
+         return;
+      }
+
+      List<SpotData> spots;
+      synchronized (results_) {
+         spots = new ArrayList<SpotData>(results_);
+      }
+      double zMin = Double.MAX_VALUE;
+      double zMax = 0.0;
+      for (SpotData spot : spots) {
+         double z = spot.getZCenter();
+         zMax = Math.max(zMax, z);
+         if (z > 0.0) {
+            zMin = Math.min(zMin, z);
+         }
+      }
+      if (zMin > zMax) {
+         zMin = zMax;
+      }
+      ArrayList<Double> timePoints = new ArrayList<Double>();
+      // ugly code to deal with 1-based frame numbers and their relation to timePoints
+      timePoints.add(0.0);
+      for (int i = 1; i <= maxFrame_; i++) {
+         timePoints.add((i - 1) * info_.getTimeIntervalMs());
+      }
+      RowData.Builder builder = new RowData.Builder();
+      builder.setName(title_).setTitle(title_).
+            setWidth(width_).setHeight(height_).
+            setPixelSizeNm(info_.getPixelSize()).
+            setZStackStepSizeNm(info_.getZStackStepSize()).
+            setShape(info_.getShape()).setHalfSize(info_.getHalfBoxSize()).
+            setNrChannels(maxChannel_).setNrFrames(maxFrame_).
+            setNrSlices(maxSlice_).setNrPositions(maxPosition_).
+            setMaxNrSpots(spots.size()).
+            setSpotTable(SpotTable.fromSpotList(spots)).
+            setTimePoints(timePoints).setIsTrack(false).
+            setCoordinate(DataCollectionForm.Coordinates.NM).
+            setHasZ(zc_.hasFitFunctions()).
+            setMinZ(zMin).setMaxZ(zMax);
+      resultsHandler_.accept(builder);
+   }
+
+   private static void showInDataCollectionForm(final RowData.Builder builder) {
+      SwingUtilities.invokeLater(new Runnable() {
+         @Override
+         public void run() {
+            DataCollectionForm dcForm = DataCollectionForm.getInstance();
+            dcForm.addSpotData(builder);
+            dcForm.setVisible(true);
+         }
+      });
+   }
+
+   private static boolean inArray(int[] input, final int c) {
+      if (input == null) {
+         return false;
+      }
+      for (final int n : input) {
+         if (n == c) {
+            return true;
+         }
+      }
+      return false;
+   }
+}
@@ -0,0 +1,91 @@
+package edu.ucsf.valelab.gaussianfit.live;
+
+/**
+ * Posted on the application event bus by the live localization processor,
+ * a few times per second while images are analyzed, and once more after
+ * the last image was analyzed.  Counts run from the start of the
+ * acquisition.
+ *
+ * @author agent
+ */
+public class LocalizationStatsEvent {
+   private final int framesFitted_;
+   private final int framesDetectedOnly_;
+   private final int framesSkipped_;
+   private final long nrLocalizations_;
+   private final long nrDetections_;
+   private final int lastFrameNrSpots_;
+   private final double density_;
+   private final boolean finished_;
+
+   public LocalizationStatsEvent(int framesFitted, int framesDetectedOnly,
+         int framesSkipped, long nrLocalizations, long nrDetections,
+         int lastFrameNrSpots, double density, boolean finished) {
+      framesFitted_ = framesFitted;
+      framesDetectedOnly_ = framesDetectedOnly;
+      framesSkipped_ = framesSkipped;
+      nrLocalizations_ = nrLocalizations;
+      nrDetections_ = nrDetections;
+      lastFrameNrSpots_ = lastFrameNrSpots;
+      density_ = density;
+      finished_ = finished;
+   }
+
+   /**
+    * @return number of images in which spots were found and fitted
+    */
+   public int getFramesFitted() {
+      return framesFitted_;
+   }
+
+   /**
+    * @return number of images in which spots were found, but not fitted
+    * because fitting fell behind
+    */
+   public int getFramesDetectedOnly() {
+      return framesDetectedOnly_;
+   }
+
+   /**
+    * @return number of images that were not analyzed because fitting fell
+    * behind
+    */
+   public int getFramesSkipped() {
+      return framesSkipped_;
+   }
+
+   /**
+    * @return number of fitted spots that passed the width and photon filters
+    */
+   public long getNrLocalizations() {
+      return nrLocalizations_;
+   }
+
+   /**
+    * @return number of spots found, in fitted and detect-only images
+    */
+   public long getNrDetections() {
+      return nrDetections_;
+   }
+
+   /**
+    * @return number of spots found in the most recently analyzed image
+    */
+   public int getLastFrameNrSpots() {
+      return lastFrameNrSpots_;
+   }
+
+   /**
+    * @return spots per square micron in the most recently analyzed image
+    */
+   public double getDensity() {
+      return density_;
+   }
+
+   /**
+    * @return true when no more images will be analyzed
+    */
+   public boolean isFinished() {
+      return finished_;
+   }
+}
@@ -0,0 +1,183 @@
+package edu.ucsf.valelab.gaussianfit.algorithm;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.plugin.ImageCalculator;
+import ij.plugin.filter.GaussianBlur;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares FindLocalMaxima with the brute force search it replaced.
+ *
+ * @author agent
+ */
+public class TestFindLocalMaxima {
+
+   /**
+    * The search as it was done before FindLocalMaxima used running maxima.
+    */
+   private static Polygon bruteForceFindMax(ImagePlus iPlus, int n, int threshold,
+         FindLocalMaxima.FilterType filterType) {
+      Polygon maxima = new Polygon();
+      ImageProcessor iProc = iPlus.getProcessor();
+      Rectangle roi = iProc.getRoi();
+      if (filterType == FindLocalMaxima.FilterType.GAUSSIAN1_5) {
+         ImageProcessor iProcG1 = iProc.duplicate();
+         ImageProcessor iProcG5 = iProc.duplicate();
+         new GaussianBlur().blurGaussian(iProcG1, 0.4, 0.4, 0.01);
+         new GaussianBlur().blurGaussian(iProcG5, 2.0, 2.0, 0.01);
+         ImagePlus p1 = new ImagePlus("G1", iProcG1);
+         ImagePlus p5 = new ImagePlus("G5", iProcG5);
+         new ImageCalculator().run("subtract", p1, p5);
+         iProc = p1.getProcessor();
+      }
+      for (int x = roi.x + n; x < roi.width + roi.x - n - 1; x++) {
+         for (int y = roi.y + n; y < roi.height + roi.y - n - 1; y++) {
+            boolean failed = false;
+            for (int mx = x - n; mx < x + n && !failed; mx++) {
+               for (int my = y - n; my < y + n && !failed; my++) {
+                  if (iProc.get(mx, my) > iProc.get(x, y)) {
+                     failed = true;
+                  } else if (iProc.get(mx, my) == iProc.get(x, y)) {
+                     if (mx > x || my > y) {
+                        failed = true;
+                     }
+                  }
+               }
+            }
+            if (!failed) {
+               int cornerAverage = (iProc.get(x - n, y - n) + iProc.get(x - n, y + n) +
+                     iProc.get(x + n, y - n) + iProc.get(x + n, y + n)) / 4;
+               if (iProc.get(x, y) - threshold > cornerAverage) {
+                  maxima.addPoint(x, y);
+               }
+            }
+         }
+      }
+      return maxima;
+   }
+
+   /**
+    * Noisy background with spots, and flat patches so that there are ties.
+    */
+   private static float[] spots(int width, int height, long seed) {
+      Random random = new Random(seed);
+      float[] pixels = new float[width * height];
+      for (int i = 0; i < pixels.length; i++) {
+         pixels[i] = (float) (100 + 10 * random.nextGaussian());
+      }
+      for (int s = 0; s < 40; s++) {
+         double cx = random.nextDouble() * width;
+         double cy = random.nextDouble() * height;
+         double amplitude = 50 + random.nextDouble() * 800;
+         for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+               double r2 = (x - cx) * (x - cx) + (y - cy) * (y - cy);
+               pixels[y * width + x] += (float) (amplitude * Math.exp(-r2 / 3.0));
+            }
+         }
+      }
+      for (int p = 0; p < 6; p++) {
+         int px = random.nextInt(width - 5);
+         int py = random.nextInt(height - 5);
+         for (int y = py; y < py + 4; y++) {
+            for (int x = px; x < px + 4; x++) {
+               pixels[y * width + x] = 400;
+            }
+         }
+      }
+      return pixels;
+   }
+
+   private static ImageProcessor[] processors(int width, int height, long seed) {
+      float[] values = spots(width, height, seed);
+      ShortProcessor sp = new ShortProcessor(width, height);
+      ByteProcessor bp = new ByteProcessor(width, height);
+      FloatProcessor fp = new FloatProcessor(width, height, values.clone(), null);
+      for (int i = 0; i < values.length; i++) {
+         sp.set(i, Math.round(values[i]));
+         bp.set(i, Math.min(255, Math.round(values[i] / 4)));
+      }
+      return new ImageProcessor[]{sp, bp, fp};
+   }
+
+   private static void assertSameMaxima(Polygon expected, Polygon actual) {
+      Assert.assertEquals(expected.npoints, actual.npoints);
+      for (int i = 0; i < expected.npoints; i++) {
+         Assert.assertEquals(expected.xpoints[i], actual.xpoints[i]);
+         Assert.assertEquals(expected.ypoints[i], actual.ypoints[i]);
+      }
+   }
+
+   private static void compare(ImageProcessor ip, Roi roi, int n, int threshold,
+         FindLocalMaxima.FilterType filterType) {
+      ImagePlus iPlus = new ImagePlus("test", ip);
+      if (roi != null) {
+         iPlus.setRoi(roi);
+      }
+      Polygon expected = bruteForceFindMax(iPlus, n, threshold, filterType);
+      assertSameMaxima(expected, FindLocalMaxima.FindMax(iPlus, n, threshold, filterType));
+      ImageProcessor iProc = iPlus.getProcessor();
+      assertSameMaxima(expected, FindLocalMaxima.findMaxima(iProc, iProc.getRoi(), n,
+            threshold, filterType, null).toPolygon());
+   }
+
+   @Test
+   public void testSameAsBruteForce() {
+      for (ImageProcessor ip : processors(97, 83, 1)) {
+         for (int n : new int[]{1, 2, 3, 6, 8}) {
+            compare(ip, null, n, 20, FindLocalMaxima.FilterType.NONE);
+            compare(ip, null, n, 0, FindLocalMaxima.FilterType.NONE);
+            compare(ip, new Roi(11, 7, 60, 51), n, 20, FindLocalMaxima.FilterType.NONE);
+         }
+      }
+   }
+
+   @Test
+   public void testSameAsBruteForceWithPrefilter() {
+      for (ImageProcessor ip : processors(97, 83, 2)) {
+         for (int n : new int[]{1, 3, 8}) {
+            compare(ip, null, n, 5, FindLocalMaxima.FilterType.GAUSSIAN1_5);
+            compare(ip, new Roi(11, 7, 60, 51), n, 5,
+                  FindLocalMaxima.FilterType.GAUSSIAN1_5);
+         }
+      }
+   }
+
+   @Test
+   public void testParallelBands() {
+      // large enough to be split in bands
+      ImageProcessor ip = processors(512, 400, 3)[0];
+      ImagePlus iPlus = new ImagePlus("test", ip);
+      Polygon expected = bruteForceFindMax(iPlus, 8, 20, FindLocalMaxima.FilterType.NONE);
+      ImageProcessor iProc = iPlus.getProcessor();
+      assertSameMaxima(expected, FindLocalMaxima.findMaxima(iProc, iProc.getRoi(), 8, 20,
+            FindLocalMaxima.FilterType.NONE, new ForkJoinPool(4)).toPolygon());
+   }
+
+   @Test
+   public void testWithoutNeighborhood() {
+      // n = 0 compares every pixel with itself only
+      for (ImageProcessor ip : processors(41, 37, 5)) {
+         compare(ip, null, 0, 20, FindLocalMaxima.FilterType.NONE);
+         compare(ip, null, 0, -1, FindLocalMaxima.FilterType.NONE);
+         compare(ip, new Roi(5, 3, 20, 17), 0, -1, FindLocalMaxima.FilterType.NONE);
+      }
+   }
+
+   @Test
+   public void testRoiTooSmall() {
+      ImageProcessor ip = processors(30, 30, 4)[0];
+      Assert.assertEquals(0, FindLocalMaxima.findMaxima(ip, new Rectangle(0, 0, 10, 10),
+            8, 0, FindLocalMaxima.FilterType.NONE, null).size());
+   }
+}
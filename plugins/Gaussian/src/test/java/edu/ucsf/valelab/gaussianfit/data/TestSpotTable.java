@@ -0,0 +1,145 @@
+package edu.ucsf.valelab.gaussianfit.data;
+
+import edu.ucsf.valelab.gaussianfit.datasettransformations.SpotDataFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author agent
+ */
+public class TestSpotTable {
+
+   private static List<SpotData> spots() {
+      List<SpotData> spots = new ArrayList<SpotData>();
+      for (int i = 0; i < 50; i++) {
+         SpotData spot = new SpotData(null, 1 + i % 2, 1, 1 + i / 10, 0, i,
+               i, 2 * i);
+         spot.setData(1000.0 + i, 100.0 - i, 10.0 * i, 20.0 * i, 0.0,
+               250.0, 1.1, 0.2, 12.0 + i);
+         spot.setZCenter(0.5 * i);
+         spot.setOriginalPosition(i, -i, 3.0);
+         if (i % 3 == 0) {
+            spot.addKeyValue(SpotData.Keys.INTEGRALSIGMA, i);
+         }
+         spots.add(spot);
+      }
+      return spots;
+   }
+
+   private static void assertSameSpot(SpotData expected, SpotData actual) {
+      Assert.assertEquals(expected.getFrame(), actual.getFrame());
+      Assert.assertEquals(expected.getSlice(), actual.getSlice());
+      Assert.assertEquals(expected.getChannel(), actual.getChannel());
+      Assert.assertEquals(expected.getPosition(), actual.getPosition());
+      Assert.assertEquals(expected.getX(), actual.getX());
+      Assert.assertEquals(expected.getY(), actual.getY());
+      Assert.assertEquals(expected.getIntensity(), actual.getIntensity(), 0.0);
+      Assert.assertEquals(expected.getBackground(), actual.getBackground(), 0.0);
+      Assert.assertEquals(expected.getXCenter(), actual.getXCenter(), 0.0);
+      Assert.assertEquals(expected.getYCenter(), actual.getYCenter(), 0.0);
+      Assert.assertEquals(expected.getZCenter(), actual.getZCenter(), 0.0);
+      Assert.assertEquals(expected.getWidth(), actual.getWidth(), 0.0);
+      Assert.assertEquals(expected.getSigma(), actual.getSigma(), 0.0);
+      Assert.assertEquals(expected.getXOri(), actual.getXOri(), 0.0);
+      Assert.assertEquals(expected.hasKey(SpotData.Keys.INTEGRALSIGMA),
+            actual.hasKey(SpotData.Keys.INTEGRALSIGMA));
+   }
+
+   @Test
+   public void testRoundTrip() {
+      List<SpotData> spots = spots();
+      SpotTable table = SpotTable.fromSpotList(spots);
+      Assert.assertEquals(spots.size(), table.size());
+      List<SpotData> view = table.asSpotList();
+      for (int row = 0; row < spots.size(); row++) {
+         assertSameSpot(spots.get(row), view.get(row));
+      }
+      Assert.assertTrue(table.hasValue(SpotData.Keys.INTEGRALSIGMA, 3));
+      Assert.assertFalse(table.hasValue(SpotData.Keys.INTEGRALSIGMA, 4));
+      Assert.assertTrue(Double.isNaN(table.getValue("no such key", 0)));
+   }
+
+   @Test
+   public void testIndexes() {
+      SpotTable table = SpotTable.fromSpotList(spots());
+      int[] rows = table.getRowsInFrame(2);
+      Assert.assertEquals(10, rows.length);
+      for (int i = 0; i < rows.length; i++) {
+         Assert.assertEquals(10 + i, rows[i]);
+      }
+      Assert.assertEquals(0, table.getRowsInFrame(99).length);
+      Assert.assertEquals(25, table.getRowsInChannel(2).length);
+      rows = table.getRows(3, 1, 1, 0);
+      Assert.assertEquals(5, rows.length);
+      for (int row : rows) {
+         Assert.assertEquals(3, table.getFrame(row));
+         Assert.assertEquals(1, table.getChannel(row));
+      }
+      Assert.assertNull(table.getRows(3, 2, 1, 0));
+   }
+
+   @Test
+   public void testMapped() throws IOException {
+      List<SpotData> spots = spots();
+      SpotTable table = new SpotTable.Builder().setMapped(true)
+            .addSpots(spots).build();
+      try {
+         Assert.assertTrue(table.isMapped());
+         for (int row = 0; row < spots.size(); row++) {
+            assertSameSpot(spots.get(row), table.getSpot(row));
+         }
+      } finally {
+         table.dispose();
+      }
+   }
+
+   @Test
+   public void testModifiedCopy() throws IOException {
+      SpotTable table = SpotTable.fromSpotList(spots());
+      SpotTable.Builder builder = new SpotTable.Builder(table);
+      builder.setXCenter(5, -1.0);
+      builder.setValue("extra", 7, 42.0);
+      SpotTable copy = builder.build();
+      Assert.assertEquals(-1.0, copy.getXCenter(5), 0.0);
+      Assert.assertEquals(50.0, table.getXCenter(5), 0.0);
+      Assert.assertEquals(42.0, copy.getValue("extra", 7), 0.0);
+      Assert.assertFalse(copy.hasValue("extra", 6));
+      Assert.assertFalse(table.getKeys().contains("extra"));
+   }
+
+   @Test
+   public void testFilterMatchesSpotFilter() {
+      List<SpotData> spots = spots();
+      SpotTable table = SpotTable.fromSpotList(spots);
+      SpotDataFilter filter = new SpotDataFilter();
+      filter.setSigma(true, 10.0, 30.0);
+      for (int row = 0; row < spots.size(); row++) {
+         // filter(SpotData) can not handle spots without a sigma
+         if (table.hasValue(SpotData.Keys.INTEGRALSIGMA, row)) {
+            Assert.assertEquals(filter.filter(spots.get(row)),
+                  filter.filter(table, row));
+         } else {
+            Assert.assertTrue(filter.filter(table, row));
+         }
+      }
+   }
+
+   @Test
+   public void testTableBackedRowData() {
+      List<SpotData> spots = spots();
+      RowData rowData = new RowData.Builder()
+            .setSpotTable(SpotTable.fromSpotList(spots)).build();
+      Assert.assertTrue(rowData.isTableBacked());
+      Assert.assertEquals(spots.size(), rowData.spotList_.size());
+      List<SpotData> image = rowData.get(2, 1, 2, 0);
+      Assert.assertEquals(5, image.size());
+      for (SpotData spot : image) {
+         Assert.assertEquals(2, spot.getFrame());
+         Assert.assertEquals(2, spot.getChannel());
+      }
+   }
+}
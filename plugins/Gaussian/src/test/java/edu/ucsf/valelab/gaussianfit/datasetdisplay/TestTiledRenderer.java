@@ -0,0 +1,237 @@
+package edu.ucsf.valelab.gaussianfit.datasetdisplay;
+
+import edu.ucsf.valelab.gaussianfit.data.SpotData;
+import edu.ucsf.valelab.gaussianfit.data.SpotTable;
+import edu.ucsf.valelab.gaussianfit.datasettransformations.SpotDataFilter;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares TiledRenderer with the way ImageRenderer rendered before it
+ * used tiles.
+ *
+ * @author agent
+ */
+public class TestTiledRenderer {
+   private static final int WIDTH = 64;
+   private static final int HEIGHT = 48;
+   private static final float PIXEL_SIZE = 100.0f;
+   private static final double MAX_Z = 0.5;
+
+   private static SpotTable spots(int nrSpots, long seed) {
+      Random random = new Random(seed);
+      List<SpotData> spots = new ArrayList<SpotData>();
+      for (int i = 0; i < nrSpots; i++) {
+         SpotData spot = new SpotData(null, 1, 1, 1 + i / 100, 1, i, 0, 0);
+         spot.setData(1000.0, 100.0, random.nextDouble() * WIDTH * PIXEL_SIZE,
+               random.nextDouble() * HEIGHT * PIXEL_SIZE, 0.0, 250.0, 1.0, 0.0,
+               10.0 + 20.0 * random.nextDouble());
+         spot.addKeyValue(SpotData.Keys.INTEGRALSIGMA, i % 200);
+         spots.add(spot);
+      }
+      return SpotTable.fromSpotList(spots);
+   }
+
+   private static SpotTable spotsInZ(int nrSpots, long seed) {
+      Random random = new Random(seed);
+      List<SpotData> spots = new ArrayList<SpotData>();
+      for (int i = 0; i < nrSpots; i++) {
+         SpotData spot = new SpotData(null, 1, 1, 1, 1, i, 0, 0);
+         spot.setData(1000.0, 100.0, random.nextDouble() * WIDTH * PIXEL_SIZE,
+               random.nextDouble() * HEIGHT * PIXEL_SIZE,
+               MAX_Z * random.nextDouble(), 250.0, 1.0, 0.0, 20.0);
+         spots.add(spot);
+      }
+      return SpotTable.fromSpotList(spots);
+   }
+
+   /**
+    * The slices of render3D, computed for each localization.
+    */
+   private static short[][] reference3D(SpotTable table, double magnification,
+         Rectangle rect) {
+      double factor = magnification / PIXEL_SIZE;
+      int nrZs = (int) (1000.0 * MAX_Z / (2 * PIXEL_SIZE / magnification));
+      short[][] pixels = new short[nrZs][rect.width * rect.height];
+      for (int row = 0; row < table.size(); row++) {
+         int x = (int) (factor * table.getXCenter(row));
+         int y = (int) (factor * table.getYCenter(row));
+         int z = (int) (factor * table.getZCenter(row) * 500.0);
+         if (rect.contains(x, y) && z >= 0 && z < nrZs) {
+            pixels[z][(y - rect.y) * rect.width + x - rect.x]++;
+         }
+      }
+      return pixels;
+   }
+
+   private static void assertSameSlices(short[][] expected, ImageStack actual) {
+      Assert.assertEquals(expected.length, actual.getSize());
+      for (int z = 0; z < expected.length; z++) {
+         Assert.assertArrayEquals(expected[z], (short[]) actual.getPixels(z + 1));
+      }
+   }
+
+   private static TiledRenderer renderer(SpotTable table, SpotDataFilter sf,
+         ForkJoinPool pool) {
+      return new TiledRenderer(null, table, WIDTH, HEIGHT, PIXEL_SIZE, false,
+            0.0, 0.0, sf, pool);
+   }
+
+   /**
+    * The whole image as rendered before ImageRenderer used tiles.
+    */
+   private static float[] reference(SpotTable table, SpotDataFilter sf,
+         int method, double magnification) {
+      final double renderedPixelInNm = PIXEL_SIZE / magnification;
+      final int width = (int) (WIDTH * magnification);
+      final int height = (int) (HEIGHT * magnification);
+      double factor = magnification / PIXEL_SIZE;
+      float[] pixels = new float[width * height];
+      for (int row = 0; row < table.size(); row++) {
+         if (!sf.filter(table, row)) {
+            continue;
+         }
+         if (method == 0) {
+            int x = (int) (factor * table.getXCenter(row));
+            int y = (int) (factor * table.getYCenter(row));
+            if (x > 0 && x < width && y > 0 && y < height) {
+               pixels[y * width + x] += 1;
+            }
+            continue;
+         }
+         int halfWidth = (int) (2 * table.getSigma(row) / renderedPixelInNm);
+         if (halfWidth == 0) {
+            halfWidth = 2;
+         }
+         int xc = (int) (factor * table.getXCenter(row));
+         int yc = (int) (factor * table.getYCenter(row));
+         if (xc > halfWidth && xc < (width - halfWidth)
+               && yc > halfWidth && yc < (height - halfWidth)) {
+            double xcPixels = table.getXCenter(row) / renderedPixelInNm;
+            double ycPixels = table.getYCenter(row) / renderedPixelInNm;
+            double s = table.getSigma(row) / renderedPixelInNm;
+            float[][] boxPixels = new float[2 * halfWidth][2 * halfWidth];
+            double totalInt = 0.0;
+            for (int x = xc - halfWidth; x < xc + halfWidth; x++) {
+               for (int y = yc - halfWidth; y < yc + halfWidth; y++) {
+                  double val = Math.exp(-((x - xcPixels) * (x - xcPixels)
+                        + (y - ycPixels) * (y - ycPixels)) / (2 * s * s));
+                  totalInt += val;
+                  boxPixels[x - xc + halfWidth][y - yc + halfWidth] = (float) val;
+               }
+            }
+            for (int x = xc - halfWidth; x < xc + halfWidth; x++) {
+               for (int y = yc - halfWidth; y < yc + halfWidth; y++) {
+                  float val = boxPixels[x - xc + halfWidth][y - yc + halfWidth];
+                  pixels[y * width + x] += method == 2 ? (float) (val / totalInt) : val;
+               }
+            }
+         }
+      }
+      return pixels;
+   }
+
+   private static void assertClose(float[] expected, ImageProcessor actual,
+         double tolerance) {
+      int width = actual.getWidth();
+      Assert.assertEquals(expected.length, width * actual.getHeight());
+      double max = 0.0;
+      for (float value : expected) {
+         max = Math.max(max, value);
+      }
+      for (int i = 0; i < expected.length; i++) {
+         // the old scatter plot left out the first row and column
+         if (i < width || i % width == 0) {
+            continue;
+         }
+         Assert.assertEquals(expected[i], actual.getf(i), tolerance * max);
+      }
+   }
+
+   @Test
+   public void testSameAsReference() {
+      SpotTable table = spots(3000, 1);
+      SpotDataFilter sf = new SpotDataFilter();
+      sf.setSigma(true, 20.0, 150.0);
+      TiledRenderer renderer = renderer(table, sf, new ForkJoinPool(4));
+      for (double magnification : new double[] {1.0, 4.0, 16.0}) {
+         assertClose(reference(table, sf, 0, magnification),
+               renderer.render(0, magnification, null), 0.0);
+         assertClose(reference(table, sf, 1, magnification),
+               renderer.render(1, magnification, null), 0.01);
+         assertClose(reference(table, sf, 2, magnification),
+               renderer.render(2, magnification, null), 0.01);
+      }
+   }
+
+   @Test
+   public void testRectangleIsPartOfImage() {
+      SpotTable table = spots(2000, 2);
+      SpotDataFilter sf = new SpotDataFilter();
+      TiledRenderer renderer = renderer(table, sf, null);
+      ImageProcessor full = renderer.render(1, 8.0, null);
+      Rectangle rect = new Rectangle(200, 130, 300, 170);
+      ImageProcessor part = renderer(table, sf, null).render(1, 8.0, rect);
+      Assert.assertEquals(rect.width, part.getWidth());
+      Assert.assertEquals(rect.height, part.getHeight());
+      for (int y = 0; y < rect.height; y++) {
+         for (int x = 0; x < rect.width; x++) {
+            Assert.assertEquals(full.getf(rect.x + x, rect.y + y), part.getf(x, y), 0.0f);
+         }
+      }
+      // from the cache this time
+      part = renderer.render(1, 8.0, rect);
+      for (int y = 0; y < rect.height; y++) {
+         for (int x = 0; x < rect.width; x++) {
+            Assert.assertEquals(full.getf(rect.x + x, rect.y + y), part.getf(x, y), 0.0f);
+         }
+      }
+   }
+
+   @Test
+   public void testParallelSameAsSequential() {
+      SpotTable table = spots(5000, 3);
+      SpotDataFilter sf = new SpotDataFilter();
+      ImageProcessor sequential = renderer(table, sf, null).render(2, 16.0, null);
+      ImageProcessor parallel = renderer(table, sf, new ForkJoinPool(4))
+            .render(2, 16.0, null);
+      Assert.assertArrayEquals((float[]) sequential.getPixels(),
+            (float[]) parallel.getPixels(), 0.0f);
+   }
+
+   @Test
+   public void testSlicesSameAsReference() {
+      SpotTable table = spotsInZ(3000, 5);
+      TiledRenderer renderer = new TiledRenderer(null, table, WIDTH, HEIGHT,
+            PIXEL_SIZE, true, 0.0, MAX_Z, null, new ForkJoinPool(4));
+      Rectangle full = new Rectangle(0, 0, 8 * WIDTH, 8 * HEIGHT);
+      assertSameSlices(reference3D(table, 8.0, full),
+            renderer.render3D(0, 8.0, null));
+      // partly outside the image, and from the cache
+      Rectangle rect = new Rectangle(300, 200, 300, 250);
+      short[][] expected = reference3D(table, 8.0, rect);
+      assertSameSlices(expected, renderer.render3D(0, 8.0, rect));
+      renderer.clearCache();
+      assertSameSlices(expected, renderer.render3D(0, 8.0, rect));
+   }
+
+   @Test
+   public void testFilterEquality() {
+      SpotDataFilter a = new SpotDataFilter();
+      SpotDataFilter b = new SpotDataFilter();
+      Assert.assertEquals(a, b);
+      a.setSigma(true, 10.0, 20.0);
+      Assert.assertNotEquals(a, b);
+      b.setSigma(true, 10.0, 20.0);
+      Assert.assertEquals(a, b);
+      Assert.assertEquals(a.hashCode(), b.hashCode());
+      Assert.assertTrue(renderer(spots(10, 4), a, null).isFor(null, b));
+   }
+}
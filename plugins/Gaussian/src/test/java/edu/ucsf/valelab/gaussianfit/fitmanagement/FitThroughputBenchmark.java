@@ -0,0 +1,103 @@
+package edu.ucsf.valelab.gaussianfit.fitmanagement;
+
+import edu.ucsf.valelab.gaussianfit.algorithm.GaussianFit;
+import edu.ucsf.valelab.gaussianfit.data.SpotData;
+import edu.ucsf.valelab.gaussianfit.fitting.ZCalibrator;
+import ij.process.ShortProcessor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures how many spots per second the fitting threads fit, for an
+ * increasing number of threads, to see how fitting scales on machines with
+ * many cores.
+ *
+ * <p>Like all *Benchmark classes, this is left out of the unit tests and
+ * only runs when named with test.class, e.g.
+ * ant -Dtest.class=edu.ucsf.valelab.gaussianfit.fitmanagement.FitThroughputBenchmark test
+ *
+ * @author agent
+ */
+public class FitThroughputBenchmark {
+   private static final int NR_SPOTS = 20000;
+   private static final int HALF_SIZE = 4;
+   private static final int BATCH_SIZE = 64;
+
+   private static List<SpotData> makeSpots() {
+      Random random = new Random(7);
+      int size = 2 * HALF_SIZE;
+      List<SpotData> spots = new ArrayList<SpotData>(NR_SPOTS);
+      for (int n = 0; n < NR_SPOTS; n++) {
+         double xc = HALF_SIZE + random.nextDouble() - 0.5;
+         double yc = HALF_SIZE + random.nextDouble() - 0.5;
+         short[] pixels = new short[size * size];
+         for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+               double r2 = (x - xc) * (x - xc) + (y - yc) * (y - yc);
+               double value = 100 + 1000 * Math.exp(-r2 / (2 * 1.2 * 1.2))
+                     + 10 * random.nextGaussian();
+               pixels[y * size + x] = (short) Math.max(0, value);
+            }
+         }
+         spots.add(new SpotData(new ShortProcessor(size, size, pixels, null),
+               1, 1, 1 + n / 100, 1, n, 100, 100));
+      }
+      return spots;
+   }
+
+   private static double fitsPerSecond(List<SpotData> spots, int nrThreads)
+         throws Exception {
+      BlockingQueue<List<SpotData>> batches =
+            new LinkedBlockingQueue<List<SpotData>>();
+      for (int i = 0; i < spots.size(); i += BATCH_SIZE) {
+         batches.add(spots.subList(i, Math.min(spots.size(), i + BATCH_SIZE)));
+      }
+      batches.add(GaussianFitStackThread.END_OF_SPOTS);
+
+      ExecutorService pool = Executors.newFixedThreadPool(nrThreads);
+      GaussianFitStackThread[] threads = new GaussianFitStackThread[nrThreads];
+      Future<?>[] futures = new Future<?>[nrThreads];
+      long start = System.nanoTime();
+      for (int i = 0; i < nrThreads; i++) {
+         threads[i] = new GaussianFitStackThread(batches, null, new ZCalibrator());
+         threads[i].setHalfBoxSize(HALF_SIZE);
+         threads[i].setShape(GaussianFit.CIRCLE);
+         threads[i].setFitMode(GaussianFit.LEVENBERGMARQUARD);
+         futures[i] = pool.submit(threads[i]);
+      }
+      int nrFitted = 0;
+      for (int i = 0; i < nrThreads; i++) {
+         futures[i].get();
+         nrFitted += threads[i].getNrFitted();
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      pool.shutdown();
+      Assert.assertEquals(spots.size(), nrFitted);
+      return nrFitted / seconds;
+   }
+
+   @Test
+   public void fitsPerSecondVersusThreads() throws Exception {
+      List<SpotData> spots = makeSpots();
+      // warm up
+      fitsPerSecond(spots, 1);
+      int maxThreads = Runtime.getRuntime().availableProcessors();
+      double single = 0.0;
+      for (int nrThreads = 1; nrThreads <= maxThreads; nrThreads *= 2) {
+         double rate = fitsPerSecond(spots, nrThreads);
+         if (nrThreads == 1) {
+            single = rate;
+         }
+         System.out.println(String.format(
+               "%d threads: %.0f fits/s (%.2fx)", nrThreads, rate, rate / single));
+      }
+   }
+}
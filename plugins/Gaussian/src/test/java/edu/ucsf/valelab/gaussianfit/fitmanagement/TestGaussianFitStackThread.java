@@ -0,0 +1,97 @@
+package edu.ucsf.valelab.gaussianfit.fitmanagement;
+
+import edu.ucsf.valelab.gaussianfit.algorithm.GaussianFit;
+import edu.ucsf.valelab.gaussianfit.data.SpotData;
+import edu.ucsf.valelab.gaussianfit.fitting.ZCalibrator;
+import ij.process.ShortProcessor;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that fitting threads sharing a queue of batches fit every spot
+ * exactly once, and all stop at END_OF_SPOTS.
+ *
+ * @author agent
+ */
+public class TestGaussianFitStackThread {
+   private static final int NR_SPOTS = 1000;
+   private static final int HALF_SIZE = 4;
+   private static final int BATCH_SIZE = 64;
+   private static final int SPOT_X = 100;
+   private static final int SPOT_Y = 50;
+
+   // Spot centers within their boxes, indexed by spot number
+   private final double[] xCenters_ = new double[NR_SPOTS];
+   private final double[] yCenters_ = new double[NR_SPOTS];
+
+   private List<SpotData> makeSpots() {
+      Random random = new Random(7);
+      int size = 2 * HALF_SIZE;
+      List<SpotData> spots = new ArrayList<SpotData>(NR_SPOTS);
+      for (int n = 0; n < NR_SPOTS; n++) {
+         double xc = HALF_SIZE + random.nextDouble() - 0.5;
+         double yc = HALF_SIZE + random.nextDouble() - 0.5;
+         xCenters_[n] = xc;
+         yCenters_[n] = yc;
+         short[] pixels = new short[size * size];
+         for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+               double r2 = (x - xc) * (x - xc) + (y - yc) * (y - yc);
+               double value = 100 + 1000 * Math.exp(-r2 / (2 * 1.2 * 1.2))
+                     + 10 * random.nextGaussian();
+               pixels[y * size + x] = (short) Math.max(0, value);
+            }
+         }
+         spots.add(new SpotData(new ShortProcessor(size, size, pixels, null),
+               1, 1, 1 + n / 100, 1, n, SPOT_X, SPOT_Y));
+      }
+      return spots;
+   }
+
+   @Test
+   public void testFitsEachSpotOnce() throws Exception {
+      List<SpotData> spots = makeSpots();
+      BlockingQueue<List<SpotData>> batches =
+            new LinkedBlockingQueue<List<SpotData>>();
+      for (int i = 0; i < spots.size(); i += BATCH_SIZE) {
+         batches.add(spots.subList(i, Math.min(spots.size(), i + BATCH_SIZE)));
+      }
+      batches.add(GaussianFitStackThread.END_OF_SPOTS);
+
+      GaussianFitStackThread[] threads = new GaussianFitStackThread[4];
+      for (int i = 0; i < threads.length; i++) {
+         threads[i] = new GaussianFitStackThread(batches, null, new ZCalibrator());
+         threads[i].setHalfBoxSize(HALF_SIZE);
+         threads[i].setShape(GaussianFit.CIRCLE);
+         threads[i].setFitMode(GaussianFit.LEVENBERGMARQUARD);
+         threads[i].init();
+      }
+      int nrFitted = 0;
+      Set<Integer> seen = new HashSet<Integer>();
+      for (GaussianFitStackThread thread : threads) {
+         thread.t_.join(60000);
+         Assert.assertFalse(thread.t_.isAlive());
+         nrFitted += thread.getNrFitted();
+         for (SpotData spot : thread.getResults()) {
+            Assert.assertTrue(seen.add(spot.getNr()));
+            double pixelSize = thread.getPixelSize();
+            Assert.assertEquals(SPOT_X - HALF_SIZE + xCenters_[spot.getNr()],
+                  spot.getXCenter() / pixelSize, 0.2);
+            Assert.assertEquals(SPOT_Y - HALF_SIZE + yCenters_[spot.getNr()],
+                  spot.getYCenter() / pixelSize, 0.2);
+         }
+      }
+      Assert.assertEquals(NR_SPOTS, nrFitted);
+      // Fits that did not converge are left out of the results
+      Assert.assertTrue(seen.size() > 0.95 * NR_SPOTS);
+      // The end marker is left for anyone else taking from the queue
+      Assert.assertSame(GaussianFitStackThread.END_OF_SPOTS, batches.poll());
+   }
+}
@@ -0,0 +1,188 @@
+package edu.ucsf.valelab.gaussianfit.live;
+
+import edu.ucsf.valelab.gaussianfit.algorithm.FindLocalMaxima;
+import edu.ucsf.valelab.gaussianfit.algorithm.GaussianFit;
+import edu.ucsf.valelab.gaussianfit.data.GaussianInfo;
+import edu.ucsf.valelab.gaussianfit.data.RowData;
+import edu.ucsf.valelab.gaussianfit.data.SpotTable;
+import edu.ucsf.valelab.gaussianfit.live.LiveLocalizationProcessor.FallBehindPolicy;
+import edu.ucsf.valelab.gaussianfit.live.LiveLocalizationProcessor.Work;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.micromanager.LogManager;
+import org.micromanager.Studio;
+import org.micromanager.data.Coordinates;
+import org.micromanager.data.Coords;
+import org.micromanager.data.DataManager;
+import org.micromanager.data.Image;
+import org.micromanager.data.ImageJConverter;
+import org.micromanager.data.ProcessorContext;
+import org.micromanager.data.SummaryMetadata;
+import org.micromanager.events.EventManager;
+
+/**
+ *
+ * @author agent
+ */
+public class TestLiveLocalizationProcessor {
+   private static final int SIZE = 80;
+   private static final int[][] SPOTS = {{24, 24}, {24, 50}, {50, 24}, {50, 50}};
+
+   @SuppressWarnings("unchecked")
+   private static <T> T stub(Class<T> type, InvocationHandler handler) {
+      return (T) Proxy.newProxyInstance(type.getClassLoader(),
+            new Class<?>[] {type}, handler);
+   }
+
+   // A Studio that converts images, collects posted events and ignores logging
+   private static Studio studio(final Map<Coords, ImageProcessor> processors,
+         final List<Object> posted) {
+      final ImageJConverter converter = stub(ImageJConverter.class,
+            (proxy, method, args) -> "createProcessor".equals(method.getName())
+                  ? processors.get(((Image) args[0]).getCoords()) : null);
+      final DataManager data = stub(DataManager.class,
+            (proxy, method, args) -> "ij".equals(method.getName()) ? converter : null);
+      final EventManager events = stub(EventManager.class,
+            (proxy, method, args) -> {
+               if ("post".equals(method.getName())) {
+                  posted.add(args[0]);
+               }
+               return null;
+            });
+      final LogManager logs = stub(LogManager.class, (proxy, method, args) -> null);
+      return stub(Studio.class, (proxy, method, args) -> {
+         switch (method.getName()) {
+            case "data":
+               return data;
+            case "events":
+               return events;
+            case "logs":
+               return logs;
+            default:
+               return null;
+         }
+      });
+   }
+
+   private static Image image(final Coords coords) {
+      return stub(Image.class, (proxy, method, args) ->
+            "getCoords".equals(method.getName()) ? coords : null);
+   }
+
+   private static ImageProcessor spotImage() {
+      ShortProcessor ip = new ShortProcessor(SIZE, SIZE);
+      for (int y = 0; y < SIZE; y++) {
+         for (int x = 0; x < SIZE; x++) {
+            double value = 100.0;
+            for (int[] spot : SPOTS) {
+               double dx = x - spot[0];
+               double dy = y - spot[1];
+               value += 2000.0 * Math.exp(-(dx * dx + dy * dy) / (2 * 1.3 * 1.3));
+            }
+            ip.set(x, y, (int) Math.round(value));
+         }
+      }
+      return ip;
+   }
+
+   @Test
+   public void testFitsWhileKeepingUp() {
+      for (int pending = 0; pending < 4; pending++) {
+         Assert.assertEquals(Work.FIT, LiveLocalizationProcessor.chooseWork(
+               pending, 4, FallBehindPolicy.SKIP));
+         Assert.assertEquals(Work.FIT, LiveLocalizationProcessor.chooseWork(
+               pending, 4, FallBehindPolicy.DETECT_ONLY));
+      }
+   }
+
+   @Test
+   public void testDegradesWhenBehind() {
+      Assert.assertEquals(Work.SKIP, LiveLocalizationProcessor.chooseWork(
+            4, 4, FallBehindPolicy.SKIP));
+      Assert.assertEquals(Work.DETECT, LiveLocalizationProcessor.chooseWork(
+            4, 4, FallBehindPolicy.DETECT_ONLY));
+      Assert.assertEquals(Work.DETECT, LiveLocalizationProcessor.chooseWork(
+            7, 4, FallBehindPolicy.DETECT_ONLY));
+      // finding spots fell behind as well
+      Assert.assertEquals(Work.SKIP, LiveLocalizationProcessor.chooseWork(
+            8, 4, FallBehindPolicy.DETECT_ONLY));
+   }
+
+   @Test
+   public void testLocalizesAcquisition() {
+      GaussianInfo info = new GaussianInfo();
+      info.setShape(GaussianFit.CIRCLE);
+      info.setFitMode(GaussianFit.NELDERMEAD);
+      Map<Coords, ImageProcessor> processors = new HashMap<Coords, ImageProcessor>();
+      List<Coords> allCoords = new ArrayList<Coords>();
+      for (int p = 0; p < 2; p++) {
+         for (int t = 0; t < 3; t++) {
+            for (int c = 0; c < 2; c++) {
+               Coords coords = Coordinates.builder().p(p).t(t).c(c).z(0).build();
+               allCoords.add(coords);
+               processors.put(coords, spotImage());
+            }
+         }
+      }
+      List<Object> posted = Collections.synchronizedList(new ArrayList<Object>());
+      final List<RowData.Builder> results = new ArrayList<RowData.Builder>();
+      LiveLocalizationProcessor processor = new LiveLocalizationProcessor(
+            studio(processors, posted), info, FindLocalMaxima.FilterType.NONE,
+            2, 100, FallBehindPolicy.SKIP, results::add);
+      final List<Image> output = new ArrayList<Image>();
+      ProcessorContext context = new ProcessorContext() {
+         @Override
+         public void outputImage(Image image) {
+            output.add(image);
+         }
+
+         @Override
+         public SummaryMetadata getSummaryMetadata() {
+            return null;
+         }
+      };
+      for (Coords coords : allCoords) {
+         processor.processImage(image(coords), context);
+      }
+      processor.cleanup(context);
+
+      Assert.assertEquals(allCoords.size(), output.size());
+      Object last = posted.get(posted.size() - 1);
+      Assert.assertTrue(last instanceof LocalizationStatsEvent);
+      LocalizationStatsEvent stats = (LocalizationStatsEvent) last;
+      Assert.assertTrue(stats.isFinished());
+      Assert.assertEquals(allCoords.size(), stats.getFramesFitted());
+      Assert.assertEquals(0, stats.getFramesDetectedOnly());
+      Assert.assertEquals(0, stats.getFramesSkipped());
+      Assert.assertEquals(allCoords.size() * SPOTS.length, stats.getNrDetections());
+      Assert.assertEquals(allCoords.size() * SPOTS.length, stats.getNrLocalizations());
+      Assert.assertEquals(SPOTS.length, stats.getLastFrameNrSpots());
+
+      Assert.assertEquals(1, results.size());
+      RowData rowData = results.get(0).build();
+      Assert.assertEquals(2, rowData.nrChannels_);
+      Assert.assertEquals(3, rowData.nrFrames_);
+      Assert.assertEquals(1, rowData.nrSlices_);
+      Assert.assertEquals(2, rowData.nrPositions_);
+      SpotTable table = rowData.getSpotTable();
+      Assert.assertEquals(allCoords.size() * SPOTS.length, table.size());
+      for (int row = 0; row < table.size(); row++) {
+         double x = table.getXCenter(row) / info.getPixelSize();
+         double y = table.getYCenter(row) / info.getPixelSize();
+         boolean near = false;
+         for (int[] spot : SPOTS) {
+            near |= Math.abs(x - spot[0]) < 0.5 && Math.abs(y - spot[1]) < 0.5;
+         }
+         Assert.assertTrue("Localization at " + x + ", " + y, near);
+      }
+   }
+}
@@ -20,11 +20,10 @@
 
 package org.micromanager.imageflipper;
 
-import ij.process.ImageProcessor;
-
-
 import org.micromanager.data.Image;
 import org.micromanager.data.Metadata;
+import org.micromanager.data.PixelBufferPool;
+import org.micromanager.data.PixelKernels;
 import org.micromanager.data.Processor;
 import org.micromanager.data.ProcessorContext;
 
@@ -59,6 +58,15 @@ public class FlipperProcessor implements Processor {
       isMirrored_ = isMirrored;
    }
 
+   /**
+    * Images are transformed independently of each other, so they can be
+    * processed in parallel.
+    */
+   @Override
+   public boolean isStateless() {
+      return true;
+   }
+
    /**
     * Process one image.
     */
@@ -74,8 +82,10 @@ public class FlipperProcessor implements Processor {
             return;
          }
       }
-      context.outputImage(
-              transformImage(studio_, image, isMirrored_, rotation_));
+      PixelBufferPool pool = context.getPixelBufferPool();
+      Object pixels = image.getRawPixels();
+      context.outputImage(transformImage(studio_, image, pixels, isMirrored_,
+              rotation_, pool));
    }
 
    /**
@@ -90,22 +100,48 @@ public class FlipperProcessor implements Processor {
     */
    public static Image transformImage(Studio studio, Image image,
          boolean isMirrored, int rotation) {
-      
-      ImageProcessor proc = studio.data().ij().createProcessor(image);
+      return transformImage(studio, image, isMirrored, rotation, null);
+   }
 
-      if (isMirrored) {
-         proc.flipHorizontal();
-      }
-      if (rotation == R90) {
-         proc = proc.rotateRight();
-      }
-      if (rotation == R180) {
-         proc = proc.rotateRight();
-         proc = proc.rotateRight();
-      }
-      if (rotation == R270) {
-         proc = proc.rotateLeft();
+   /**
+    * Executes image transformation, taking the pixel array of the result
+    * from a pool.
+    *
+    * @param studio
+    * @param image Image to be transformed.
+    * @param isMirrored Whether or not to mirror the image.
+    * @param rotation Degrees to rotate by (R0, R90, R180, R270)
+    * @param pool Pool to take the pixels of the result from; null to
+    *        allocate them
+    * @return - Transformed Image, otherwise a copy of the input
+    */
+   public static Image transformImage(Studio studio, Image image,
+         boolean isMirrored, int rotation, PixelBufferPool pool) {
+      return transformImage(studio, image, image.getRawPixels(), isMirrored,
+            rotation, pool);
+   }
+
+   private static Image transformImage(Studio studio, Image image,
+         Object pixels, boolean isMirrored, int rotation,
+         PixelBufferPool pool) {
+      int width = image.getWidth();
+      int height = image.getHeight();
+      Object result;
+      if (pixels instanceof byte[]) {
+         byte[] src = (byte[]) pixels;
+         byte[] dst = pool == null ? new byte[src.length] : pool.getBytes(src.length);
+         PixelKernels.transform(src, width, height,
+               image.getBytesPerPixel(), isMirrored, rotation, dst);
+         result = dst;
+      } else if (pixels instanceof short[]) {
+         short[] src = (short[]) pixels;
+         short[] dst = pool == null ? new short[src.length] : pool.getShorts(src.length);
+         PixelKernels.transform(src, width, height, isMirrored, rotation, dst);
+         result = dst;
+      } else {
+         throw new UnsupportedOperationException("Unsupported pixel type");
       }
+
       // Insert some metadata to indicate what we did to the image.
       PropertyMap.Builder builder;
       PropertyMap userData = image.getMetadata().getUserData();
@@ -118,8 +154,11 @@ public class FlipperProcessor implements Processor {
       builder.putInteger("ImageFlipper-Rotation", rotation);
       builder.putString("ImageFlipper-Mirror", isMirrored ? "On" : "Off");
       Metadata newMetadata = image.getMetadata().copyBuilderPreservingUUID().userData(builder.build()).build();
-      Image result = studio.data().ij().createImage(proc, image.getCoords(),
-            newMetadata);
-      return result;
+      Image transformed = studio.data().wrapImage(result,
+            PixelKernels.transformedWidth(width, height, rotation),
+            PixelKernels.transformedHeight(width, height, rotation),
+            image.getBytesPerPixel(), image.getNumComponents(),
+            image.getCoords(), newMetadata);
+      return transformed;
    }
 }
@@ -44,7 +44,6 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowFocusListener;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -527,10 +526,10 @@ public class CVViewer implements DataViewer, ImageStatsPublisher {
             // add the contiguous memory as fragment:
             if (image != null) {
                if (image.getBytesPerPixel() == 1) {
-                  byte[] pixels = ((ByteBuffer) image.getPixelBuffer()).array();
+                  byte[] pixels = (byte[]) image.getRawPixels();
                   fragmentedMemory.add(ByteBuffer.allocateDirect(pixels.length).put(pixels));
                } else if (image.getBytesPerPixel() == 2) {
-                  short[] pixels = ((ShortBuffer) image.getPixelBuffer()).array();
+                  short[] pixels = (short[]) image.getRawPixels();
                   fragmentedMemory.add(ByteBuffer.allocateDirect(
                         2 * pixels.length).order(NATIVE_ORDER).asShortBuffer().put(pixels));
                }
@@ -36,6 +36,8 @@ import org.micromanager.Studio;
  * Images should be provided as full frame, unbinned images.  When binned 
  * images, and/or ROIs of (binned) images are requested, these are provided
  * on the fly, and a copy is cached for later use.
+ * Access is synchronized, because the ShadingProcessor may process several
+ * images at once.
  * @author nico
  */
 public class ImageCollection {
@@ -54,7 +56,7 @@ public class ImageCollection {
       presetFiles_ = new HashMap<>();
    }
    
-   public void setBackground(String file) throws ShadingException {
+   public synchronized void setBackground(String file) throws ShadingException {
       background_.clear();
       if (!file.equals("")) {
          ij.io.Opener opener = new ij.io.Opener();
@@ -69,15 +71,15 @@ public class ImageCollection {
       backgroundFilePath_ = file;
    }
 
-   public String getBackgroundFile() {
+   public synchronized String getBackgroundFile() {
       return backgroundFilePath_;
    }
 
-   public ImagePlusInfo getBackground() {
+   public synchronized ImagePlusInfo getBackground() {
       return background_.get(BASEIMAGE);
    }
    
-   public ImagePlusInfo getBackground(int binning, Rectangle roi) 
+   public synchronized ImagePlusInfo getBackground(int binning, Rectangle roi) 
            throws ShadingException {
       String key = makeKey(binning, roi);
       if (background_.containsKey(key)) {
@@ -107,7 +109,7 @@ public class ImageCollection {
     * @param file Path to TIFF file with flatfield image
     * @throws ShadingException 
     */
-   public void addFlatField(String preset, String file) throws ShadingException {
+   public synchronized void addFlatField(String preset, String file) throws ShadingException {
       ij.io.Opener opener = new ij.io.Opener();
       ImagePlus ip = opener.openImage(file);
       if (ip == null) {
@@ -182,26 +184,26 @@ public class ImageCollection {
       presetFiles_.put(preset, file);
    }
 
-   public String getFileForPreset(String preset) {
+   public synchronized String getFileForPreset(String preset) {
       if (presetFiles_.containsKey(preset)) {
          return presetFiles_.get(preset);
       }
       return null;
    }
 
-   public ImagePlusInfo getFlatField(String preset) {
+   public synchronized ImagePlusInfo getFlatField(String preset) {
       return flatFields_.get(preset).get(BASEIMAGE);
    }
 
-   public void clearFlatFields() {
+   public synchronized void clearFlatFields() {
       flatFields_.clear();
    }
 
-   public void removeFlatField(String preset) {
+   public synchronized void removeFlatField(String preset) {
       flatFields_.remove(preset);
    }
 
-   public ImagePlusInfo getFlatField(String preset, int binning, Rectangle roi)
+   public synchronized ImagePlusInfo getFlatField(String preset, int binning, Rectangle roi)
            throws ShadingException {
       String key = makeKey(binning, roi);
       if (flatFields_.get(preset).containsKey(key)) {
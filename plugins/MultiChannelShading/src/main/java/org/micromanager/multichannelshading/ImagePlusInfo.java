@@ -48,6 +48,8 @@ public class ImagePlusInfo extends ImagePlus{
    private final int binning_;
    private final Rectangle roi_;
    private final Map<ClearCLContext, ClearCLBuffer> clBuffers_;
+   // Computed on first use; see getSubtractionValues()
+   private volatile int[] subtractionValues_;
     
    
    public ImagePlusInfo(ImagePlus ip, int binning, Rectangle roi) {
@@ -76,6 +78,53 @@ public class ImagePlusInfo extends ImagePlus{
       return roi_;
    }
    
+   /**
+    * Provides the pixel values of this (background) image as the amounts to
+    * subtract from the pixels of 8 or 16-bit images, as used by the CPU
+    * implementation of the shading correction.  Float values are truncated
+    * to 16 bits (as ImageUtils.subtractPixelArrays() does).
+    * The values are computed once and cached.
+    * @return - values to subtract, one per pixel
+    */
+   public int[] getSubtractionValues() {
+      int[] values = subtractionValues_;
+      if (values == null) {
+         Object pixels = super.getProcessor().getPixels();
+         if (pixels instanceof byte[]) {
+            byte[] bytes = (byte[]) pixels;
+            values = new int[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+               values[i] = bytes[i] & 0xff;
+            }
+         } else if (pixels instanceof short[]) {
+            short[] shorts = (short[]) pixels;
+            values = new int[shorts.length];
+            for (int i = 0; i < shorts.length; i++) {
+               values[i] = shorts[i] & 0xffff;
+            }
+         } else if (pixels instanceof float[]) {
+            float[] floats = (float[]) pixels;
+            values = new int[floats.length];
+            for (int i = 0; i < floats.length; i++) {
+               values[i] = ((short) floats[i]) & 0xffff;
+            }
+         } else {
+            values = new int[0];
+         }
+         subtractionValues_ = values;
+      }
+      return values;
+   }
+   
+   /**
+    * @return - pixels of this image if it is a float (e.g. normalized 
+    * flatfield) image, otherwise null
+    */
+   public float[] getFloatPixels() {
+      Object pixels = super.getProcessor().getPixels();
+      return pixels instanceof float[] ? (float[]) pixels : null;
+   }
+   
    /**
     * Provides access to pixeldata of this image on the GPU
     * GPU data are cached, i.e. if no copy on the GPU is available,
@@ -0,0 +1,155 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:          ShadingKernels.java
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     MultiChannelShading plugin
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.multichannelshading;
+
+import java.util.concurrent.ForkJoinPool;
+import org.micromanager.internal.utils.ParallelStripes;
+
+/**
+ * CPU implementation of background subtraction and flatfield correction,
+ * used when OpenCL is not available.
+ *
+ * Each pixel is corrected as max(0, pixel - background) * flatField, where
+ * the background holds the values to subtract (see
+ * ImagePlusInfo.getSubtractionValues()) and the flatfield holds the
+ * normalized reciprocal of the flatfield image (see
+ * ImageCollection.addFlatField()); either may be null.  Frames are split
+ * into stripes of rows that are corrected in parallel on a ForkJoinPool.
+ *
+ * @author agent
+ */
+public final class ShadingKernels {
+   // Stripes are at least this large, so that the overhead of forking a
+   // task stays small compared to the work
+   static final int MIN_STRIPE_PIXELS = 1 << 16;
+
+   private ShadingKernels() {
+   }
+
+   /**
+    * Corrects a 16-bit image.  At least one of background and flatField
+    * must be given.
+    *
+    * @param src pixels of the image
+    * @param background values to subtract, or null
+    * @param flatField factors to multiply with, or null
+    * @param dst destination, of the same length as src
+    * @param width width of the image
+    * @param height height of the image
+    * @param pool pool to run the stripes on; null to run on the calling
+    * thread
+    */
+   public static void correct(final short[] src, final int[] background,
+           final float[] flatField, final short[] dst, int width, int height,
+           ForkJoinPool pool) {
+      run(pool, width, height, (from, to) ->
+              correct(src, background, flatField, dst, from, to));
+   }
+
+   /**
+    * Corrects an 8-bit image.  At least one of background and flatField
+    * must be given.
+    *
+    * @param src pixels of the image
+    * @param background values to subtract, or null
+    * @param flatField factors to multiply with, or null
+    * @param dst destination, of the same length as src
+    * @param width width of the image
+    * @param height height of the image
+    * @param pool pool to run the stripes on; null to run on the calling
+    * thread
+    */
+   public static void correct(final byte[] src, final int[] background,
+           final float[] flatField, final byte[] dst, int width, int height,
+           ForkJoinPool pool) {
+      run(pool, width, height, (from, to) ->
+              correct(src, background, flatField, dst, from, to));
+   }
+
+   /**
+    * Corrects pixels from (inclusive) to to (exclusive) of a 16-bit image.
+    * Values are rounded and limited to 65534.
+    */
+   static void correct(short[] src, int[] background, float[] flatField,
+           short[] dst, int from, int to) {
+      if (flatField == null) {
+         for (int i = from; i < to; i++) {
+            dst[i] = (short) Math.max(0, (src[i] & 0xffff) - background[i]);
+         }
+      } else if (background == null) {
+         for (int i = from; i < to; i++) {
+            float value = (src[i] & 0xffff) * flatField[i] + 0.5f;
+            if (value > 2 * Short.MAX_VALUE) {
+               value = 2 * Short.MAX_VALUE;
+            }
+            dst[i] = (short) (int) value;
+         }
+      } else {
+         for (int i = from; i < to; i++) {
+            int subtracted = Math.max(0, (src[i] & 0xffff) - background[i]);
+            float value = subtracted * flatField[i] + 0.5f;
+            if (value > 2 * Short.MAX_VALUE) {
+               value = 2 * Short.MAX_VALUE;
+            }
+            dst[i] = (short) (int) value;
+         }
+      }
+   }
+
+   /**
+    * Corrects pixels from (inclusive) to to (exclusive) of an 8-bit image.
+    * Values are truncated and limited to 254.
+    */
+   static void correct(byte[] src, int[] background, float[] flatField,
+           byte[] dst, int from, int to) {
+      if (flatField == null) {
+         for (int i = from; i < to; i++) {
+            dst[i] = (byte) Math.max(0, (src[i] & 0xff) - background[i]);
+         }
+      } else if (background == null) {
+         for (int i = from; i < to; i++) {
+            float value = (src[i] & 0xff) * flatField[i];
+            if (value > 2 * Byte.MAX_VALUE) {
+               value = 2 * Byte.MAX_VALUE;
+            }
+            dst[i] = (byte) value;
+         }
+      } else {
+         for (int i = from; i < to; i++) {
+            int subtracted = Math.max(0, (src[i] & 0xff) - background[i]);
+            float value = subtracted * flatField[i];
+            if (value > 2 * Byte.MAX_VALUE) {
+               value = 2 * Byte.MAX_VALUE;
+            }
+            dst[i] = (byte) value;
+         }
+      }
+   }
+
+   // Runs the kernel over the pixels of the image, in stripes of whole rows
+   private static void run(ForkJoinPool pool, final int width, int height,
+           final ParallelStripes.RangeKernel kernel) {
+      int minRows = MIN_STRIPE_PIXELS / Math.max(1, width);
+      ParallelStripes.run(pool, height, minRows,
+              (from, to) -> kernel.apply(from * width, to * width));
+   }
+}
@@ -31,11 +31,12 @@ import clearcl.backend.ClearCLBackends;
 import clearcl.enums.BuildStatus;
 import clearcl.exceptions.OpenCLException;
 import coremem.enums.NativeTypeEnum;
-import ij.process.ImageProcessor;
+import ij.process.ByteProcessor;
 
 import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import mmcorej.Configuration;
 import mmcorej.PropertySetting;
@@ -43,6 +44,7 @@ import static org.junit.Assert.assertEquals;
 
 import org.micromanager.data.Image;
 import org.micromanager.data.Metadata;
+import org.micromanager.data.PixelBufferPool;
 import org.micromanager.data.Processor;
 import org.micromanager.data.ProcessorContext;
 import org.micromanager.PropertyMap;
@@ -161,6 +163,15 @@ public class ShadingProcessor implements Processor {
       return source;
    }
 
+   /**
+    * Images are corrected independently of each other. The OpenCL path
+    * shares one GPU context and is therefore kept on a single thread.
+    */
+   @Override
+   public boolean isStateless() {
+      return !useOpenCL_;
+   }
+
    @Override
    public void processImage(Image image, ProcessorContext context) {
       if (!match_) {
@@ -181,7 +192,6 @@ public class ShadingProcessor implements Processor {
       Metadata metadata = image.getMetadata();
       PropertyMap userData = metadata.getUserData();
 
-      Image bgSubtracted = image;
       Image result;
 
       // subtract background
@@ -265,11 +275,10 @@ public class ShadingProcessor implements Processor {
       }
 
 
+      int[] backgroundValues = null;
       if (background != null) {
-         ImageProcessor ip = studio_.data().ij().createProcessor(image);
-         ImageProcessor ipBackground = background.getProcessor();
          try {
-            ip = ImageUtils.subtractImageProcessors(ip, ipBackground);
+            backgroundValues = getBackgroundValues(background, image);
             if (userData != null) {
                userData = userData.copyBuilder().putBoolean("Background-corrected", true).build();
             }
@@ -278,66 +287,67 @@ public class ShadingProcessor implements Processor {
             studio_.alerts().postAlert(MultiChannelShading.MENUNAME, 
                  ErrorSubtractingClass.class, msg);
          }
-         bgSubtracted = studio_.data().ij().createImage(ip, image.getCoords(),
-                 metadata.copyBuilderWithNewUUID().userData(userData).build());
       } else {
          String msg = "No background available...";
          studio_.alerts().postAlert(MultiChannelShading.MENUNAME, NotFlatFieldedClass.class, msg);
       }
 
+      float[] flatFieldValues = null;
+      if (flatFieldImage != null) {
+         flatFieldValues = flatFieldImage.getFloatPixels();
+         if (flatFieldValues != null && flatFieldValues.length != width * height) {
+            flatFieldValues = null;
+         }
+      }
 
       // do not calculate flat field if we don't have a matching channel;
       // just return the background-subtracted image (which is the unmodified
       // image if we also don't have a background subtraction file).
-      if (flatFieldImage == null) {
+      if (flatFieldValues == null) {
          String msg = "No flatfield found...";
          studio_.alerts().postAlert(MultiChannelShading.MENUNAME, NotFlatFieldedClass.class, msg);
-         context.outputImage(bgSubtracted);
-         return;
-      }
-
-      if (userData != null) {
+         if (backgroundValues == null) {
+            context.outputImage(image);
+            return;
+         }
+      } else if (userData != null) {
          userData = userData.copyBuilder().putBoolean("Flatfield-corrected", true).build();
-         metadata = metadata.copyBuilderWithNewUUID().userData(userData).build();
       }
-      
-      
-      
+      metadata = metadata.copyBuilderWithNewUUID().userData(userData).build();
+
+      PixelBufferPool pool = context.getPixelBufferPool();
+      Object correctedPixels;
       if (image.getBytesPerPixel() == 1) {
-         byte[] newPixels = new byte[width * height];
-         byte[] oldPixels = (byte[]) image.getRawPixels();
-         int length = oldPixels.length;
-         float[] flatFieldPixels = (float[]) flatFieldImage.getProcessor().getPixels();
-         for (int index = 0; index < length; index++) {
-            float oldPixel = (float) ((int) (oldPixels[index]) & 0x000000ff);
-            float newValue = oldPixel * flatFieldPixels[index];
-            if (newValue > 2 * Byte.MAX_VALUE) {
-               newValue = 2 * Byte.MAX_VALUE;
-            }
-            newPixels[index] = (byte) (newValue);
-         }
-         result = studio_.data().createImage(newPixels, width, height,
-                 1, 1, image.getCoords(), metadata);
-         context.outputImage(result);
-      } else if (image.getBytesPerPixel() == 2) {
-         short[] newPixels = new short[width * height];
-         short[] oldPixels = (short[]) bgSubtracted.getRawPixels();
-         int length = oldPixels.length;
-         for (int index = 0; index < length; index++) {
-            // shorts are signed in java so have to do this conversion to get 
-            // the right value
-            float oldPixel = (float) ((int) (oldPixels[index]) & 0x0000ffff);
-            float newValue = (oldPixel
-                    * flatFieldImage.getProcessor().getf(index)) + 0.5f;
-            if (newValue > 2 * Short.MAX_VALUE) {
-               newValue = 2 * Short.MAX_VALUE;
-            }
-            newPixels[index] = (short) (((int) newValue) & 0x0000ffff);
-         }
-         result = studio_.data().createImage(newPixels, width, height,
-                 2, 1, image.getCoords(), metadata);
-         context.outputImage(result);
+         byte[] newPixels = pool.getBytes(width * height);
+         ShadingKernels.correct((byte[]) image.getRawPixels(), backgroundValues,
+                 flatFieldValues, newPixels, width, height, ForkJoinPool.commonPool());
+         correctedPixels = newPixels;
+      } else {
+         short[] newPixels = pool.getShorts(width * height);
+         ShadingKernels.correct((short[]) image.getRawPixels(), backgroundValues,
+                 flatFieldValues, newPixels, width, height, ForkJoinPool.commonPool());
+         correctedPixels = newPixels;
+      }
+      result = studio_.data().wrapImage(correctedPixels, width, height,
+              image.getBytesPerPixel(), 1, image.getCoords(), metadata);
+      context.outputImage(result);
+   }
+
+   /**
+    * Returns the values to subtract from the image for background
+    * correction. 8-bit images can only be corrected with 8-bit backgrounds.
+    */
+   private static int[] getBackgroundValues(ImagePlusInfo background,
+           Image image) throws ShadingException {
+      if (background.getWidth() != image.getWidth()
+              || background.getHeight() != image.getHeight()) {
+         throw new ShadingException("Error: Images are of unequal size");
+      }
+      if (image.getBytesPerPixel() == 1
+              && !(background.getProcessor() instanceof ByteProcessor)) {
+         throw new ShadingException("Types of images to be subtracted were not compatible");
       }
+      return background.getSubtractionValues();
    }
 
 
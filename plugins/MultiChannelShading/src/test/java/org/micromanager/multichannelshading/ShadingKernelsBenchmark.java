@@ -0,0 +1,45 @@
+package org.micromanager.multichannelshading;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+/**
+ * Measures the frame rate of the CPU shading correction of 2048x2048 16-bit
+ * frames, on one thread and on the common ForkJoinPool.
+ *
+ * <p>Like all *Benchmark classes, this is left out of the unit tests and
+ * only runs when named with test.class, e.g.
+ * ant -Dtest.class=org.micromanager.multichannelshading.ShadingKernelsBenchmark test
+ */
+public class ShadingKernelsBenchmark {
+   private static final int WIDTH = 2048;
+   private static final int HEIGHT = 2048;
+   private static final int FRAMES = 200;
+   private static final int PASSES = 3;
+
+   @Test
+   public void measure16Bit() {
+      int n = WIDTH * HEIGHT;
+      Random random = new Random(3);
+      short[] src = ShadingKernelsTest.randomShorts(random, n);
+      int[] background = ShadingKernelsTest.randomBackground(random, n, 200);
+      float[] flatField = ShadingKernelsTest.randomFlatField(random, n);
+      short[] dst = new short[n];
+      for (ForkJoinPool pool : new ForkJoinPool[] {null, ForkJoinPool.commonPool()}) {
+         String name = pool == null ? "1 thread" :
+               (pool.getParallelism() + 1) + " threads";
+         for (int pass = 0; pass < PASSES; pass++) {
+            long start = System.nanoTime();
+            for (int f = 0; f < FRAMES; f++) {
+               ShadingKernels.correct(src, background, flatField, dst,
+                     WIDTH, HEIGHT, pool);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format(
+                  "Shading correction, 2048x2048 16-bit, %s: %.1f fps",
+                  name, FRAMES / seconds));
+         }
+      }
+   }
+}
@@ -0,0 +1,96 @@
+package org.micromanager.multichannelshading;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the CPU shading correction against the former single-threaded
+ * implementation.
+ */
+public class ShadingKernelsTest {
+   private static final int WIDTH = 700;
+   private static final int HEIGHT = 500;
+
+   static short[] randomShorts(Random random, int n) {
+      short[] result = new short[n];
+      for (int i = 0; i < n; i++) {
+         result[i] = (short) random.nextInt(65536);
+      }
+      return result;
+   }
+
+   static int[] randomBackground(Random random, int n, int max) {
+      int[] result = new int[n];
+      for (int i = 0; i < n; i++) {
+         result[i] = random.nextInt(max);
+      }
+      return result;
+   }
+
+   static float[] randomFlatField(Random random, int n) {
+      float[] result = new float[n];
+      for (int i = 0; i < n; i++) {
+         result[i] = 0.5f + random.nextFloat();
+      }
+      return result;
+   }
+
+   @Test
+   public void test16Bit() {
+      Random random = new Random(1);
+      int n = WIDTH * HEIGHT;
+      short[] src = randomShorts(random, n);
+      int[] background = randomBackground(random, n, 2000);
+      float[] flatField = randomFlatField(random, n);
+
+      short[] expected = new short[n];
+      for (int i = 0; i < n; i++) {
+         // As the former implementation: subtract, then multiply
+         int subtracted = Math.max(0, (src[i] & 0xffff) - background[i]);
+         float newValue = subtracted * flatField[i] + 0.5f;
+         if (newValue > 2 * Short.MAX_VALUE) {
+            newValue = 2 * Short.MAX_VALUE;
+         }
+         expected[i] = (short) (((int) newValue) & 0x0000ffff);
+      }
+      short[] sequential = new short[n];
+      ShadingKernels.correct(src, background, flatField, sequential,
+            WIDTH, HEIGHT, null);
+      Assert.assertArrayEquals(expected, sequential);
+      short[] parallel = new short[n];
+      ShadingKernels.correct(src, background, flatField, parallel,
+            WIDTH, HEIGHT, ForkJoinPool.commonPool());
+      Assert.assertArrayEquals(expected, parallel);
+
+      short[] subtractedOnly = new short[n];
+      ShadingKernels.correct(src, background, null, subtractedOnly,
+            WIDTH, HEIGHT, ForkJoinPool.commonPool());
+      for (int i = 0; i < n; i++) {
+         Assert.assertEquals(Math.max(0, (src[i] & 0xffff) - background[i]),
+               subtractedOnly[i] & 0xffff);
+      }
+   }
+
+   @Test
+   public void test8Bit() {
+      Random random = new Random(2);
+      int n = WIDTH * HEIGHT;
+      byte[] src = new byte[n];
+      random.nextBytes(src);
+      float[] flatField = randomFlatField(random, n);
+      byte[] expected = new byte[n];
+      for (int i = 0; i < n; i++) {
+         float newValue = (src[i] & 0xff) * flatField[i];
+         if (newValue > 2 * Byte.MAX_VALUE) {
+            newValue = 2 * Byte.MAX_VALUE;
+         }
+         expected[i] = (byte) newValue;
+      }
+      byte[] result = new byte[n];
+      ShadingKernels.correct(src, null, flatField, result, WIDTH, HEIGHT,
+            ForkJoinPool.commonPool());
+      Assert.assertArrayEquals(expected, result);
+   }
+}
@@ -24,11 +24,7 @@
 package org.micromanager.ratioimaging;
 
 import ij.ImagePlus;
-import ij.process.Blitter;
-import ij.process.ByteProcessor;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
-import ij.process.ShortProcessor;
 import java.awt.Rectangle;
 import java.text.ParseException;
 
@@ -38,6 +34,8 @@ import org.micromanager.PropertyMap;
 
 import org.micromanager.data.Coords;
 import org.micromanager.data.Image;
+import org.micromanager.data.PixelBufferPool;
+import org.micromanager.data.PixelKernels;
 import org.micromanager.data.Processor;
 import org.micromanager.data.ProcessorContext;
 import org.micromanager.data.SummaryMetadata;
@@ -66,6 +64,9 @@ public class RatioImagingProcessor implements Processor {
    private final String bc2Path_;
    private ImagePlus bc1_;
    private ImagePlus bc2_;
+   // Pixels of the backgrounds, if they match the images
+   private Object bc1Pixels_;
+   private Object bc2Pixels_;
    private final List<Image> images_;
    private boolean process_;
    private int ch1Index_;
@@ -211,9 +212,11 @@ public class RatioImagingProcessor implements Processor {
       int nrBytesPerPixel = newImage.getBytesPerPixel();
       if (bc1_ == null) {
          bc1_ = getBackground(bc1Path_, binning, roi, nrBytesPerPixel);
+         bc1Pixels_ = getBackgroundPixels(bc1_, bc1Path_, newImage);
       }
       if (bc2_ == null) {
          bc2_ = getBackground(bc2Path_, binning, roi, nrBytesPerPixel);
+         bc2Pixels_ = getBackgroundPixels(bc2_, bc2Path_, newImage);
       }
       
       if (!process_) {
@@ -248,130 +251,71 @@ public class RatioImagingProcessor implements Processor {
 
    }
       
+   /**
+    * Returns the pixels of a background image, or null if there is none or if
+    * it does not match the type and size of the images.
+    */
+   private Object getBackgroundPixels(ImagePlus background, String path,
+           Image image) {
+      if (background == null) {
+         return null;
+      }
+      Object pixels = background.getProcessor().getPixels();
+      int length = image.getWidth() * image.getHeight();
+      if ((image.getBytesPerPixel() == 1 && pixels instanceof byte[]
+              && ((byte[]) pixels).length == length)
+              || (image.getBytesPerPixel() == 2 && pixels instanceof short[]
+              && ((short[]) pixels).length == length)) {
+         return pixels;
+      }
+      studio_.logs().logError("Background image " + path
+              + " does not match the type or size of the images; ignoring it");
+      return null;
+   }
+
    private void process(Image ch1Image, Image ch2Image, ProcessorContext context) {
       
       Coords ratioCoords = ch1Image.getCoords().copyBuilder().c(ratioIndex_).build();
       
-      ImageProcessor ch1Proc = studio_.data().ij().createProcessor(ch1Image);
-      ImageProcessor ch2Proc = studio_.data().ij().createProcessor(ch2Image);
-      if (bc1_ != null) {
-         ch1Proc = subtractImageProcessors(ch1Proc, bc1_.getProcessor());
-      }
-      if (bc2_ != null) {
-         ch2Proc = subtractImageProcessors(ch2Proc, bc2_.getProcessor());
-      }
-      ch1Proc = ch1Proc.convertToFloat();
-      ch2Proc = ch2Proc.convertToFloat();
-      ch1Proc.subtract(bc1Constant_);
-      ch2Proc.subtract(bc2Constant_);
-      ImageProcessor ch3Proc = ch1Proc.createProcessor(ch1Proc.getWidth(), 
-              ch1Proc.getHeight());
-      ch3Proc.insert(ch1Proc, 0, 0);
-      ch3Proc.copyBits(ch2Proc, 0, 0, Blitter.DIVIDE);
-      ch3Proc.multiply(factor_);
-      
-      if (ch1Image.getBytesPerPixel() == 1) {
-         // check this actually works....
-         ch3Proc = ch3Proc.convertToByteProcessor();
-      } else if (ch1Image.getBytesPerPixel() == 2) {
-         // ImageJ method seems to be broken. Copied code from ImageJ1 here
-         ch3Proc = convertFloatToShort( (FloatProcessor) ch3Proc);
+      PixelBufferPool pool = context.getPixelBufferPool();
+      int length = ch1Image.getWidth() * ch1Image.getHeight();
+      float[] ratio = pool.getFloats(length);
+      Object ch1Pixels = ch1Image.getRawPixels();
+      Object ch2Pixels = ch2Image.getRawPixels();
+      Object ratioPixels;
+      int max;
+      if (ch1Pixels instanceof byte[] && ch2Pixels instanceof byte[]) {
+         PixelKernels.ratio((byte[]) ch1Pixels, (byte[]) bc1Pixels_,
+                 bc1Constant_, (byte[]) ch2Pixels, (byte[]) bc2Pixels_,
+                 bc2Constant_, factor_, ratio);
+         byte[] bytes = pool.getBytes(length);
+         // Scaled to the full 8-bit range
+         max = PixelKernels.toBytesScaled(ratio, bytes);
+         ratioPixels = bytes;
+      } else if (ch1Pixels instanceof short[] && ch2Pixels instanceof short[]) {
+         PixelKernels.ratio((short[]) ch1Pixels, (short[]) bc1Pixels_,
+                 bc1Constant_, (short[]) ch2Pixels, (short[]) bc2Pixels_,
+                 bc2Constant_, factor_, ratio);
+         short[] shorts = pool.getShorts(length);
+         max = PixelKernels.toShorts(ratio, shorts);
+         ratioPixels = shorts;
+      } else {
+         pool.recycle(ratio);
+         return;
       }
-      int max = (int) ch3Proc.getMax();
+      pool.recycle(ratio);
+
       int bitDepth = 1;
       while ( (1 << bitDepth) < max && bitDepth <= ch1Image.getBytesPerPixel() * 8) {
          bitDepth += 1;
       }
       
-      Image ratioImage = studio_.data().ij().createImage(ch3Proc, ratioCoords, 
+      Image ratioImage = studio_.data().wrapImage(ratioPixels,
+              ch1Image.getWidth(), ch1Image.getHeight(),
+              ch1Image.getBytesPerPixel(), 1, ratioCoords,
               ch1Image.getMetadata().copyBuilderWithNewUUID().bitDepth(bitDepth).
                       build());
       
       context.outputImage(ratioImage);
    }
-   
-   /**
-    * Copied from https://github.com/imagej/imagej1/blob/master/ij/process/TypeConverter.java
-    * 
-    * The call to chrProc.convertToShortProcess results in pixel values of -1
-    * Not sure why (but in included ImageJ version?) 
-    * Copying the relevant code from the ImageJ1 source fixes it
-    *  
-    * @param ip FloatProcessor to be converted
-    * @return Shortprocessor
-    */
-   ShortProcessor convertFloatToShort(FloatProcessor ip) {
-		float[] pixels32 = (float[])ip.getPixels();
-		short[] pixels16 = new short[ip.getWidth()*ip.getHeight()];
-		double value;
-		for (int i=0,j=0; i< (ip.getWidth() * ip.getHeight()); i++) {
-			value = pixels32[i];
-			if (value<0.0) {
-            value = 0.0;
-         }
-			if (value>65535.0) {
-            value = 65535.0;
-         }
-			pixels16[i] = (short)(value+0.5);
-		}
-	    return new ShortProcessor(ip.getWidth(), ip.getHeight(), pixels16, 
-               ip.getColorModel());
-   }
-   
-   private static ByteProcessor subtractByteProcessors(ByteProcessor proc1, ByteProcessor proc2) {
-      return new ByteProcessor(proc1.getWidth(), proc1.getHeight(),
-              subtractPixelArrays((byte []) proc1.getPixels(), (byte []) proc2.getPixels()),
-              null);
-   }
-   
-   
-   private static ShortProcessor subtractShortProcessors(ShortProcessor proc1, ShortProcessor proc2) {
-      return new ShortProcessor(proc1.getWidth(), proc1.getHeight(),
-              subtractPixelArrays((short []) proc1.getPixels(), (short []) proc2.getPixels()),
-              null);
-   }
-   
-    public static byte[] subtractPixelArrays(byte[] array1, byte[] array2) {
-      int l = array1.length;
-      byte[] result = new byte[l];
-      for (int i=0;i<l;++i) {
-         result[i] = (byte) Math.max(0, unsignedValue(array1[i]) - 
-                 unsignedValue(array2[i]) );
-      }
-      return result;
-   }
-   
-   public static short[] subtractPixelArrays(short[] array1, short[] array2) {
-      int l = array1.length;
-      short[] result = new short[l];
-      for (int i=0;i<l;++i) {
-         result[i] = (short) Math.max(0, unsignedValue(array1[i]) - unsignedValue(array2[i]));
-      }
-      return result;
-   }
-   
-   public static int unsignedValue(byte b) {
-      // Sign-extend, then mask
-      return ((int) b) & 0x000000ff;
-   }
-
-   public static int unsignedValue(short s) {
-      // Sign-extend, then mask
-      return ((int) s) & 0x0000ffff;
-   }
-   
-   public static ImageProcessor subtractImageProcessors(ImageProcessor proc1, ImageProcessor proc2) {
-      if ((proc1.getWidth() != proc2.getWidth())
-              || (proc1.getHeight() != proc2.getHeight())) {
-         return null;
-      }
-
-      if (proc1 instanceof ByteProcessor && proc2 instanceof ByteProcessor) {
-         return subtractByteProcessors((ByteProcessor) proc1, (ByteProcessor) proc2);
-      } else if (proc1 instanceof ShortProcessor && proc2 instanceof ShortProcessor) {
-         return subtractShortProcessors((ShortProcessor) proc1, (ShortProcessor) proc2);
-      }
-      
-      return null;
-   }
 }
@@ -77,6 +77,9 @@ public class Hub {
       tileDimensions_ = controller_.getTileDimensions();
 
       cache_ = new MultiTileCache(numZoomLevels_, tileDimensions_);
+      // Downsampled tiles are computed in the background
+      cache_.setTilesUpdatedListener(
+              () -> SwingUtilities.invokeLater(new GUIUpdater()));
 
       blackImg_ = ImageUtils.makeProcessor(type, tileDimensions_.width, tileDimensions_.height);
 
@@ -181,6 +184,9 @@ public class Hub {
          configDialog_.dispose();
       }
       stop();
+      if (cache_ != null) {
+         cache_.dispose();
+      }
    }
 
    // Methods called when the view changes:
@@ -1,125 +1,411 @@
 package org.micromanager.slideexplorer;
 
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
 
 import java.awt.Dimension;
 import java.awt.Point;
-import java.io.File;
-import java.util.Hashtable;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 // Imports for MMStudio internal packages
 // Plugins should not access internal packages, to ensure modularity and
 // maintainability. However, this plugin code is older than the current
 // MMStudio API, so it still uses internal classes and interfaces. New code
 // should not imitate this practice.
-import org.micromanager.internal.utils.imageanalysis.ImageUtils;
+import org.micromanager.internal.utils.ReportingUtils;
 
+/**
+ * Tiled pyramid of the slide.  Level 0 holds the acquired tiles; each level
+ * below that holds tiles downsampled by two from the four tiles above it.
+ *
+ * Tiles are kept as primitive arrays (byte[], short[] or int[] for RGB) in a
+ * least recently used cache of bounded size, in front of a single
+ * memory-mapped tile file (see TileFile) that holds tiles evicted from
+ * memory.  Downsampled levels are computed in the background, in batches,
+ * so that adding a tile only costs a copy; the listener set with
+ * setTilesUpdatedListener() is called after each batch.
+ */
 public class MultiTileCache {
-	
+
+	/** Default amount of memory used for tiles, in bytes. */
+	public static final long DEFAULT_MEMORY_BUDGET =
+			Math.min(256L << 20, Runtime.getRuntime().maxMemory() / 4);
+	// Tiles added within this time are downsampled in a single batch
+	private static final long BATCH_DELAY_MS = 50;
+
 	protected int minZoomLevel_;
 	protected int width_ = 0;
 	protected int height_ = 0;
 	private int type_ = -1;
-	
-	protected Hashtable<Point3D,MultiTile> allTiles_ = new Hashtable<Point3D,MultiTile>();
-	protected Hashtable<Integer,Point3D> currentTiles_ = new Hashtable<Integer, Point3D>();
-	
+	private final long memoryBudget_;
+
+	// All tiles of the pyramid, readable without locking
+	private final Set<Point3D> allTiles_ = ConcurrentHashMap.newKeySet();
+
+	// Guarded by this
+	// Tiles in memory, least recently used first
+	private final LinkedHashMap<Point3D, Object> memoryTiles_ =
+			new LinkedHashMap<Point3D, Object>(16, 0.75f, true);
+	// Tiles in memory that are not in the tile file yet
+	private final Set<Point3D> dirtyTiles_ = new HashSet<Point3D>();
+	private long memoryBytes_ = 0;
+	private TileFile tileFile_;
+	// Level -1 tiles that need to be computed (again)
+	private final Set<Point3D> pendingParents_ = new HashSet<Point3D>();
+	private boolean downsamplingScheduled_ = false;
+	// Incremented by clear(), to discard downsampling in progress
+	private int generation_ = 0;
+	// Set by dispose(); tiles added afterwards are ignored
+	private boolean disposed_ = false;
+
+	private final ScheduledExecutorService downsampler_ =
+			Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+				Thread thread = new Thread(r, "SlideExplorer downsampler");
+				thread.setDaemon(true);
+				return thread;
+			});
+	private volatile Runnable tilesUpdatedListener_;
+
 	public MultiTileCache(int zoomLevels, Dimension tileDimensions) {
+		this(zoomLevels, tileDimensions, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * @param zoomLevels number of levels of the pyramid
+	 * @param tileDimensions size of the tiles
+	 * @param memoryBudget amount of memory used for tiles, in bytes; tiles
+	 * beyond this are moved to the tile file
+	 */
+	public MultiTileCache(int zoomLevels, Dimension tileDimensions,
+			long memoryBudget) {
 		minZoomLevel_ = -zoomLevels+1;
 		width_ = tileDimensions.width;
 		height_ = tileDimensions.height;
+		memoryBudget_ = memoryBudget;
+	}
 
-        File tmpDir = new File("/tmp");
-        if(!tmpDir.exists())
-                tmpDir.mkdir();
+	/**
+	 * Sets the listener that is called, on the downsampling thread, after
+	 * downsampled tiles have been updated.
+	 */
+	public void setTilesUpdatedListener(Runnable listener) {
+		tilesUpdatedListener_ = listener;
 	}
-	
+
 	public void addImage(Point idx, ImageProcessor proc) {
-		if (type_ == -1) {
-			type_ = ImageUtils.getImageProcessorType(proc);
+		Point3D tileIdx = new Point3D(idx, 0);
+		synchronized (this) {
+			if (disposed_) {
+				return;
+			}
+			if (type_ == -1) {
+				type_ = getType(proc);
+			}
+			Object pixels;
+			if (proc.getWidth() == width_ && proc.getHeight() == height_
+					&& getType(proc) == type_) {
+				pixels = copyOf(proc.getPixels());
+			} else {
+				ImageProcessor tile = makeProcessor(null);
+				tile.insert(proc, 0, 0);
+				pixels = tile.getPixels();
+			}
+			putTile(tileIdx, pixels);
+			if (tileIdx.k > minZoomLevel_) {
+				pendingParents_.add(getParentIndex(tileIdx));
+				if (!downsamplingScheduled_) {
+					downsamplingScheduled_ = true;
+					downsampler_.schedule(this::downsample, BATCH_DELAY_MS,
+							TimeUnit.MILLISECONDS);
+				}
+			}
 		}
-		
-		MultiTile tile = getTile(idx);
-		tile.setImage(proc);
-		propagateTile(idx, tile);
 	}
-	
+
 	public ImageProcessor getImage(Point3D multiTileIndex) {
-		return getMultiTile(multiTileIndex).getImage();
+		Object pixels = getPixels(multiTileIndex);
+		ImageProcessor proc;
+		synchronized (this) {
+			proc = makeProcessor(pixels);
+		}
+		proc.setInterpolationMethod(ImageProcessor.BILINEAR);
+		return proc;
 	}
-	
+
 	public boolean hasImage(Point p) {
-		return allTiles_.containsKey(new Point3D(p,0));
+		return allTiles_.contains(new Point3D(p,0));
 	}
-	
+
 	public boolean hasImage(Point3D p) {
-		return allTiles_.containsKey(p);
-	}
-		
-	protected void propagateTile(Point idx, MultiTile multiTile) {
-		propagateTile(new Point3D(idx, 0), multiTile);
-	}
-	
-	protected void propagateTile(Point3D idx, MultiTile multiTile) {
-		if (idx.k>minZoomLevel_) {
-			Point3D pidx = getParentIndex(idx);
-			Point pquad = getParentQuadrant(idx);
-			MultiTile parentTile = getMultiTile(pidx);
-			
-			ImageProcessor proc = multiTile.getImage();
-			parentTile.insertQuadrantImage(pquad, proc);
-			propagateTile(pidx, parentTile);
-		}
-	}
-		
-	protected MultiTile getMultiTile(int i, int j, int z) {
-		return getMultiTile(new Point3D(i,j,z));
-	}
-	
-	protected MultiTile getTile(Point idx) {
-		return getMultiTile(new Point3D(idx.x, idx.y, 0));
-	}
-	
-	protected synchronized MultiTile getMultiTile(Point3D idx) {
-
-		if (currentTiles_.containsKey(idx.k)) {
-			Point3D currentTile = currentTiles_.get(idx.k);
-			if (!currentTile.equals(idx)) {
-				allTiles_.get(currentTile).dropFromMemory();
-				currentTiles_.remove(currentTile.k);
+		return allTiles_.contains(p);
+	}
+
+	/**
+	 * Computes the downsampled tiles of all tiles added since the last
+	 * batch, one level at a time, so that each tile is computed only once.
+	 */
+	void downsample() {
+		Set<Point3D> batch;
+		int generation;
+		synchronized (this) {
+			batch = new HashSet<Point3D>(pendingParents_);
+			pendingParents_.clear();
+			downsamplingScheduled_ = false;
+			generation = generation_;
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			while (!batch.isEmpty()) {
+				Set<Point3D> parents = new HashSet<Point3D>();
+				for (Point3D idx : batch) {
+					Object pixels;
+					synchronized (this) {
+						pixels = newPixels();
+					}
+					for (int qx = 0; qx < 2; qx++) {
+						for (int qy = 0; qy < 2; qy++) {
+							Point3D child = new Point3D(2 * idx.i + qx,
+									2 * idx.j + qy, idx.k + 1);
+							Object childPixels = getPixels(child);
+							if (childPixels != null) {
+								downsampleQuadrant(childPixels, pixels, qx, qy,
+										width_, height_);
+							}
+						}
+					}
+					synchronized (this) {
+						if (generation != generation_) {
+							return;
+						}
+						putTile(idx, pixels);
+					}
+					if (idx.k > minZoomLevel_) {
+						parents.add(getParentIndex(idx));
+					}
+				}
+				batch = parents;
+			}
+		} catch (RuntimeException e) {
+			// Do not let the downsampling thread die
+			ReportingUtils.logError(e, "SlideExplorer: downsampling failed");
+		}
+		Runnable listener = tilesUpdatedListener_;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Downsamples a tile by averaging blocks of two by two pixels, into
+	 * quadrant (qx, qy) of the parent tile.
+	 */
+	static void downsampleQuadrant(Object child, Object parent, int qx, int qy,
+			int width, int height) {
+		int halfWidth = width / 2;
+		int halfHeight = height / 2;
+		for (int y = 0; y < halfHeight; y++) {
+			int src = 2 * y * width;
+			int dst = (qy * halfHeight + y) * width + qx * halfWidth;
+			if (child instanceof byte[]) {
+				byte[] c = (byte[]) child;
+				byte[] p = (byte[]) parent;
+				for (int x = 0; x < halfWidth; x++, src += 2) {
+					p[dst + x] = (byte) (((c[src] & 0xff) + (c[src + 1] & 0xff)
+							+ (c[src + width] & 0xff) + (c[src + width + 1] & 0xff)
+							+ 2) >> 2);
+				}
+			} else if (child instanceof short[]) {
+				short[] c = (short[]) child;
+				short[] p = (short[]) parent;
+				for (int x = 0; x < halfWidth; x++, src += 2) {
+					p[dst + x] = (short) (((c[src] & 0xffff) + (c[src + 1] & 0xffff)
+							+ (c[src + width] & 0xffff) + (c[src + width + 1] & 0xffff)
+							+ 2) >> 2);
+				}
+			} else {
+				int[] c = (int[]) child;
+				int[] p = (int[]) parent;
+				for (int x = 0; x < halfWidth; x++, src += 2) {
+					int a = c[src];
+					int b = c[src + 1];
+					int d = c[src + width];
+					int e = c[src + width + 1];
+					int value = 0;
+					for (int shift = 0; shift < 32; shift += 8) {
+						int sum = ((a >>> shift) & 0xff) + ((b >>> shift) & 0xff)
+								+ ((d >>> shift) & 0xff) + ((e >>> shift) & 0xff);
+						value |= ((sum + 2) >> 2) << shift;
+					}
+					p[dst + x] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the pixels of a tile, loading them from the tile file when
+	 * needed, or null when there is no such tile.  The returned array must
+	 * not be modified.
+	 */
+	private synchronized Object getPixels(Point3D idx) {
+		Object pixels = memoryTiles_.get(idx);
+		if (pixels != null || tileFile_ == null || !tileFile_.contains(idx)) {
+			return pixels;
+		}
+		pixels = newPixels();
+		try {
+			tileFile_.read(idx, pixels);
+		} catch (IOException e) {
+			ReportingUtils.logError(e, "SlideExplorer: failed to read tile");
+			return null;
+		}
+		memoryTiles_.put(idx, pixels);
+		memoryBytes_ += tileBytes();
+		evict();
+		return pixels;
+	}
+
+	/**
+	 * Stores a tile.  Tiles are never modified in place, so that arrays
+	 * handed out by getPixels() stay valid.
+	 */
+	private void putTile(Point3D idx, Object pixels) {
+		if (memoryTiles_.put(idx, pixels) == null) {
+			memoryBytes_ += tileBytes();
+		}
+		dirtyTiles_.add(idx);
+		allTiles_.add(idx);
+		evict();
+	}
+
+	/**
+	 * Moves least recently used tiles to the tile file until the tiles in
+	 * memory fit the budget.  The most recently used tile always stays.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Point3D, Object>> it = memoryTiles_.entrySet().iterator();
+		while (memoryBytes_ > memoryBudget_ && memoryTiles_.size() > 1) {
+			Map.Entry<Point3D, Object> eldest = it.next();
+			if (dirtyTiles_.remove(eldest.getKey())) {
+				try {
+					if (tileFile_ == null) {
+						tileFile_ = new TileFile(tileBytes());
+					}
+					tileFile_.write(eldest.getKey(), eldest.getValue());
+				} catch (IOException e) {
+					// Keep the tile in memory rather than losing it
+					ReportingUtils.logError(e, "SlideExplorer: failed to write tile");
+					dirtyTiles_.add(eldest.getKey());
+					return;
+				}
 			}
+			it.remove();
+			memoryBytes_ -= tileBytes();
+		}
+	}
+
+	private int tileBytes() {
+		return width_ * height_ * (type_ == ImagePlus.GRAY8 ? 1
+				: type_ == ImagePlus.GRAY16 ? 2 : 4);
+	}
+
+	private Object newPixels() {
+		switch (type_) {
+			case ImagePlus.GRAY8:
+				return new byte[width_ * height_];
+			case ImagePlus.GRAY16:
+				return new short[width_ * height_];
+			default:
+				return new int[width_ * height_];
+		}
+	}
+
+	private ImageProcessor makeProcessor(Object pixels) {
+		if (pixels == null) {
+			pixels = newPixels();
+		}
+		switch (type_) {
+			case ImagePlus.GRAY8:
+				return new ByteProcessor(width_, height_, (byte[]) pixels, null);
+			case ImagePlus.GRAY16:
+				return new ShortProcessor(width_, height_, (short[]) pixels, null);
+			default:
+				return new ColorProcessor(width_, height_, (int[]) pixels);
 		}
+	}
 
-		currentTiles_.put(idx.k, idx);
-		if (! allTiles_.containsKey(idx)) {
-			MultiTile tile = new MultiTile(type_, width_, height_);
-			allTiles_.put(idx, tile);
-			return tile;
-		} else {
-			return allTiles_.get(idx);
+	private static int getType(ImageProcessor proc) {
+		if (proc instanceof ByteProcessor) {
+			return ImagePlus.GRAY8;
+		}
+		if (proc instanceof ShortProcessor) {
+			return ImagePlus.GRAY16;
 		}
+		if (proc instanceof ColorProcessor) {
+			return ImagePlus.COLOR_RGB;
+		}
+		throw new IllegalArgumentException("Unsupported image type " + proc);
 	}
-		
+
+	private static Object copyOf(Object pixels) {
+		if (pixels instanceof byte[]) {
+			return ((byte[]) pixels).clone();
+		}
+		if (pixels instanceof short[]) {
+			return ((short[]) pixels).clone();
+		}
+		return ((int[]) pixels).clone();
+	}
+
 	protected Point3D getParentIndex(Point3D idx) {
 		return new Point3D(idx.i>>1, idx.j>>1, idx.k-1);
 	}
-	
+
 	protected Point getParentQuadrant(Point3D idx) {
 		return new Point(idx.i & 1, idx.j & 1);
 	}
-	
+
 	protected Point3D newPoint3D(int i, int j, int k) {
 		return new Point3D(i,j,k);
 	}
 
-	public void clear() {
-		for (MultiTile multiTile:allTiles_.values()) {
-			multiTile.wipeFromDisk();
+	public synchronized void clear() {
+		generation_++;
+		pendingParents_.clear();
+		memoryTiles_.clear();
+		dirtyTiles_.clear();
+		allTiles_.clear();
+		memoryBytes_ = 0;
+		if (tileFile_ != null) {
+			tileFile_.close();
+			tileFile_ = null;
+		}
+	}
+
+	/**
+	 * Stops the downsampling thread and deletes the tile file.  Call when the
+	 * cache is no longer needed; tiles added afterwards are ignored.
+	 */
+	public void dispose() {
+		synchronized (this) {
+			disposed_ = true;
+			clear();
 		}
-        currentTiles_.clear();
-        allTiles_.clear();
+		downsampler_.shutdownNow();
 	}
-	
-	
 
 }
@@ -0,0 +1,131 @@
+package org.micromanager.slideexplorer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Disk tier of the tile cache: a single memory-mapped temporary file that
+ * holds tiles in fixed-size slots.  Each tile is assigned a slot the first
+ * time it is written, and keeps it, so that rewriting a tile does not grow
+ * the file.  The file is mapped in chunks of whole slots, so that it can
+ * grow beyond 2 GB.
+ *
+ * Tiles are byte[] (8-bit), short[] (16-bit) or int[] (RGB) arrays of
+ * width * height pixels.  Not thread-safe.
+ */
+final class TileFile {
+   private static final long CHUNK_BYTES = 64L << 20;
+
+   private final int slotBytes_;
+   private final int slotsPerChunk_;
+   private final File file_;
+   private final RandomAccessFile randomAccessFile_;
+   private final FileChannel channel_;
+   private final ArrayList<MappedByteBuffer> chunks_ = new ArrayList<MappedByteBuffer>();
+   private final HashMap<Point3D, Integer> slots_ = new HashMap<Point3D, Integer>();
+
+   /**
+    * @param tileBytes size of a single tile in bytes
+    * @throws IOException when the temporary file can not be created
+    */
+   TileFile(int tileBytes) throws IOException {
+      slotBytes_ = tileBytes;
+      slotsPerChunk_ = (int) Math.max(1, CHUNK_BYTES / tileBytes);
+      file_ = File.createTempFile("SlideExplorer", ".tiles");
+      file_.deleteOnExit();
+      randomAccessFile_ = new RandomAccessFile(file_, "rw");
+      channel_ = randomAccessFile_.getChannel();
+   }
+
+   boolean contains(Point3D index) {
+      return slots_.containsKey(index);
+   }
+
+   int getNumTiles() {
+      return slots_.size();
+   }
+
+   /**
+    * Returns a buffer positioned at the start of the slot, and limited to
+    * its end.
+    */
+   private ByteBuffer slot(int slot) throws IOException {
+      int chunkIndex = slot / slotsPerChunk_;
+      while (chunks_.size() <= chunkIndex) {
+         long chunkBytes = (long) slotsPerChunk_ * slotBytes_;
+         MappedByteBuffer chunk = channel_.map(FileChannel.MapMode.READ_WRITE,
+               chunks_.size() * chunkBytes, chunkBytes);
+         chunks_.add(chunk);
+      }
+      ByteBuffer buffer = chunks_.get(chunkIndex).duplicate();
+      int offset = (slot % slotsPerChunk_) * slotBytes_;
+      buffer.position(offset);
+      buffer.limit(offset + slotBytes_);
+      return buffer.slice().order(ByteOrder.nativeOrder());
+   }
+
+   void write(Point3D index, Object pixels) throws IOException {
+      Integer slot = slots_.get(index);
+      if (slot == null) {
+         slot = slots_.size();
+         slots_.put(index, slot);
+      }
+      ByteBuffer buffer = slot(slot);
+      if (pixels instanceof byte[]) {
+         buffer.put((byte[]) pixels);
+      } else if (pixels instanceof short[]) {
+         buffer.asShortBuffer().put((short[]) pixels);
+      } else if (pixels instanceof int[]) {
+         buffer.asIntBuffer().put((int[]) pixels);
+      } else {
+         throw new IllegalArgumentException("Unsupported tile pixels " + pixels);
+      }
+   }
+
+   /**
+    * Reads a tile into the given array.
+    *
+    * @return false when the tile was never written
+    */
+   boolean read(Point3D index, Object pixels) throws IOException {
+      Integer slot = slots_.get(index);
+      if (slot == null) {
+         return false;
+      }
+      ByteBuffer buffer = slot(slot);
+      if (pixels instanceof byte[]) {
+         buffer.get((byte[]) pixels);
+      } else if (pixels instanceof short[]) {
+         buffer.asShortBuffer().get((short[]) pixels);
+      } else if (pixels instanceof int[]) {
+         buffer.asIntBuffer().get((int[]) pixels);
+      } else {
+         throw new IllegalArgumentException("Unsupported tile pixels " + pixels);
+      }
+      return true;
+   }
+
+   /**
+    * Closes and deletes the file.  Mapped chunks are released once they are
+    * garbage collected; the file is deleted on exit if that has not happened
+    * yet.
+    */
+   void close() {
+      chunks_.clear();
+      slots_.clear();
+      try {
+         channel_.close();
+         randomAccessFile_.close();
+      } catch (IOException e) {
+         // Nothing we can do
+      }
+      file_.delete();
+   }
+}
@@ -0,0 +1,90 @@
+package org.micromanager.slideexplorer;
+
+import ij.process.ShortProcessor;
+import java.awt.Dimension;
+import java.awt.Point;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultiTileCacheTest {
+   private static final int WIDTH = 8;
+   private static final int HEIGHT = 6;
+
+   private static ShortProcessor makeTile(int seed) {
+      short[] pixels = new short[WIDTH * HEIGHT];
+      for (int i = 0; i < pixels.length; i++) {
+         pixels[i] = (short) (seed * 1000 + i * 37);
+      }
+      return new ShortProcessor(WIDTH, HEIGHT, pixels, null);
+   }
+
+   @Test
+   public void testPyramid() {
+      MultiTileCache cache = new MultiTileCache(3, new Dimension(WIDTH, HEIGHT));
+      ShortProcessor tile = makeTile(1);
+      cache.addImage(new Point(3, 2), tile);
+      cache.downsample();
+      Assert.assertTrue(cache.hasImage(new Point(3, 2)));
+      Assert.assertTrue(cache.hasImage(new Point3D(1, 1, -1)));
+      Assert.assertTrue(cache.hasImage(new Point3D(0, 0, -2)));
+      Assert.assertFalse(cache.hasImage(new Point3D(0, 0, -3)));
+
+      // Tile (3, 2) is quadrant (1, 0) of its parent
+      short[] parent = (short[]) cache.getImage(new Point3D(1, 1, -1)).getPixels();
+      short[] pixels = (short[]) tile.getPixels();
+      for (int y = 0; y < HEIGHT / 2; y++) {
+         for (int x = 0; x < WIDTH / 2; x++) {
+            int sum = 0;
+            for (int dy = 0; dy < 2; dy++) {
+               for (int dx = 0; dx < 2; dx++) {
+                  sum += pixels[(2 * y + dy) * WIDTH + 2 * x + dx] & 0xffff;
+               }
+            }
+            Assert.assertEquals((sum + 2) / 4,
+                  parent[y * WIDTH + WIDTH / 2 + x] & 0xffff);
+            // Other quadrants are black
+            Assert.assertEquals(0, parent[y * WIDTH + x]);
+            Assert.assertEquals(0, parent[(y + HEIGHT / 2) * WIDTH + x]);
+         }
+      }
+      cache.clear();
+      Assert.assertFalse(cache.hasImage(new Point(3, 2)));
+   }
+
+   @Test
+   public void testTilesMovedToFile() {
+      // Room for two tiles only
+      MultiTileCache cache = new MultiTileCache(1, new Dimension(WIDTH, HEIGHT),
+            2 * WIDTH * HEIGHT * 2);
+      for (int i = 0; i < 10; i++) {
+         cache.addImage(new Point(i, 0), makeTile(i));
+      }
+      for (int i = 0; i < 10; i++) {
+         Assert.assertArrayEquals((short[]) makeTile(i).getPixels(),
+               (short[]) cache.getImage(new Point3D(i, 0, 0)).getPixels());
+      }
+      // Replacing a tile that is in the file
+      cache.addImage(new Point(0, 0), makeTile(20));
+      cache.getImage(new Point3D(5, 0, 0));
+      cache.getImage(new Point3D(6, 0, 0));
+      Assert.assertArrayEquals((short[]) makeTile(20).getPixels(),
+            (short[]) cache.getImage(new Point3D(0, 0, 0)).getPixels());
+      cache.clear();
+   }
+
+   @Test
+   public void testDispose() {
+      // Room for one tile only, so that the others go to the tile file
+      MultiTileCache cache = new MultiTileCache(2, new Dimension(WIDTH, HEIGHT),
+            WIDTH * HEIGHT * 2);
+      for (int i = 0; i < 4; i++) {
+         cache.addImage(new Point(i, 0), makeTile(i));
+      }
+      cache.dispose();
+      Assert.assertFalse(cache.hasImage(new Point(0, 0)));
+      // Tiles that arrive late are ignored instead of being downsampled
+      cache.addImage(new Point(0, 0), makeTile(0));
+      Assert.assertFalse(cache.hasImage(new Point(0, 0)));
+      cache.dispose();
+   }
+}
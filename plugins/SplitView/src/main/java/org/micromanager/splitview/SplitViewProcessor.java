@@ -23,14 +23,14 @@
 
 package org.micromanager.splitview;
 
-import ij.process.ImageProcessor;
-
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.micromanager.data.Coords;
 import org.micromanager.data.Image;
+import org.micromanager.data.PixelBufferPool;
+import org.micromanager.data.PixelKernels;
 import org.micromanager.data.Processor;
 import org.micromanager.data.ProcessorContext;
 import org.micromanager.data.SummaryMetadata;
@@ -93,10 +93,17 @@ public class SplitViewProcessor implements Processor {
       return summary.copyBuilder().channelNames(newNames).build();
    }
 
+   @Override
+   public boolean isStateless() {
+      return true;
+   }
+
    @Override
    public void processImage(Image image, ProcessorContext context) {
-      ImageProcessor proc = studio_.data().ij().createProcessor(image);
+      PixelBufferPool pool = context.getPixelBufferPool();
+      Object pixels = image.getRawPixels();
 
+      int srcWidth = image.getWidth();
       int width = image.getWidth();
       int height = image.getHeight();
       int xStep = 0;
@@ -112,11 +119,27 @@ public class SplitViewProcessor implements Processor {
 
       int channelIndex = image.getCoords().getChannel();
       for (int i = 0; i < numSplits_; ++i) {
-         proc.setRoi(i * xStep, i * yStep, width, height);
+         Object cropped;
+         if (pixels instanceof byte[]) {
+            int pixelSize = image.getBytesPerPixel();
+            byte[] dst = pool.getBytes(width * height * pixelSize);
+            PixelKernels.crop((byte[]) pixels, srcWidth, pixelSize,
+                  i * xStep, i * yStep, width, height, dst);
+            cropped = dst;
+         }
+         else if (pixels instanceof short[]) {
+            short[] dst = pool.getShorts(width * height);
+            PixelKernels.crop((short[]) pixels, srcWidth,
+                  i * xStep, i * yStep, width, height, dst);
+            cropped = dst;
+         }
+         else {
+            throw new UnsupportedOperationException("Unsupported pixel type");
+         }
 
          Coords coords = image.getCoords().copy()
             .channel(channelIndex * numSplits_ + i).build();
-         Image output = studio_.data().createImage(proc.crop().getPixels(),
+         Image output = studio_.data().wrapImage(cropped,
                width, height, image.getBytesPerPixel(),
                image.getNumComponents(), coords, image.getMetadata());
          context.outputImage(output);
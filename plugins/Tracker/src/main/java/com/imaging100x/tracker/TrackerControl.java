@@ -30,6 +30,7 @@ import ij.gui.Roi;
 import ij.process.ImageProcessor;
 
 import java.awt.Rectangle;
+import java.awt.geom.Point2D;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -37,6 +38,7 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.Insets;
 import java.io.File;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -53,6 +55,7 @@ import org.micromanager.data.Image;
 import org.micromanager.display.DisplayWindow;
 import org.micromanager.Studio;
 import org.micromanager.UserProfile;
+import org.micromanager.imageprocessing.PhaseCorrelator;
 
 // Imports for MMStudio internal packages
 // Plugins should not access internal packages, to ensure modularity and
@@ -91,6 +94,7 @@ public class TrackerControl extends JFrame {
    private int imWidth_ = 0;
    private String stage_ = "XYStage";
    private Roi roi_;
+   private PhaseCorrelator correlator_;
    private ImageStack corrStack_;
    private ImagePlus corrImplus_;
    private boolean mirrorX_ = false;
@@ -541,50 +545,60 @@ public class TrackerControl extends JFrame {
       ImageProcessor corrImproc = new ij.process.FloatProcessor(lCount, kCount);
       corrStack_.addSlice(corrImproc);
 
-      // position of correlation maximum
-      int kMax = 0;
-      int lMax = 0;
-
       Rectangle r = roi_.getBounds();
       display_.getImagePlus().setRoi(roi_, true);
       //IJ.write("ROI pos: " + r.x + "," + r.y);
 
-      int width = r.width, height = r.height;
-      double corScale = width * height;
-
-      double maxCor = 0;
-      for (int k=-offsetPix_; k<offsetPix_; k += resolutionPix_) {
-         for (int l=-offsetPix_; l<offsetPix_; l += resolutionPix_) {
-
-            // calculate correlation
-            double sum = 0.0;
-            double meanPrev = 0.0;
-            double meanCur = 0.0;
-            for (int i = 0; i < height; i++) {
-               for (int j = 0; j < width; j++) {
-                  int row = r.y + i;
-                  int col = r.x + j;
-                  double pixPrev = pixelsPrev_[row * imWidth_ + col];
-                  double pixCur = pixelsCur_[(row + k) * imWidth_ + (col + l)];
-                  sum += pixPrev * pixCur;
-                  meanPrev += pixPrev;
-                  meanCur += pixCur;
-               }
+      // search window: the roi, enlarged by the largest offset to look for
+      int imHeight = pixelsCur_.length / imWidth_;
+      Rectangle window = new Rectangle(r.x - offsetPix_, r.y - offsetPix_,
+            r.width + 2 * offsetPix_, r.height + 2 * offsetPix_).intersection(
+            new Rectangle(0, 0, imWidth_, imHeight));
+      Rectangle roiInWindow = r.intersection(window);
+      if (window.isEmpty() || roiInWindow.isEmpty()) {
+         app_.logs().logError("Tracker: roi is outside of the image");
+         return;
+      }
+      if (correlator_ == null || correlator_.getWidth() != window.width
+            || correlator_.getHeight() != window.height) {
+         correlator_ = new PhaseCorrelator(window.width, window.height);
+      }
+      correlator_.setMaxShift(offsetPix_);
+
+      // the reference is the roi of the previous image, with the rest of
+      // the window set to its mean; it is compared to the whole window of
+      // the current image
+      float[] reference = new float[window.width * window.height];
+      float[] current = new float[window.width * window.height];
+      double roiSum = 0.0;
+      for (int row = roiInWindow.y; row < roiInWindow.y + roiInWindow.height; row++) {
+         for (int col = roiInWindow.x; col < roiInWindow.x + roiInWindow.width; col++) {
+            roiSum += pixelsPrev_[row * imWidth_ + col];
+         }
+      }
+      Arrays.fill(reference, (float) (roiSum / (roiInWindow.width * roiInWindow.height)));
+      for (int i = 0; i < window.height; i++) {
+         int row = window.y + i;
+         for (int j = 0; j < window.width; j++) {
+            int col = window.x + j;
+            current[i * window.width + j] = pixelsCur_[row * imWidth_ + col];
+            if (roiInWindow.contains(col, row)) {
+               reference[i * window.width + j] = pixelsPrev_[row * imWidth_ + col];
             }
-            sum /= corScale;
-            meanPrev /= corScale;
-            meanCur /= corScale;
-            sum /= meanPrev*meanCur;
+         }
+      }
 
+      // position of correlation maximum
+      Point2D.Double shift = correlator_.correlate(reference, current);
+      double lMax = shift.x;
+      double kMax = shift.y;
+
+      for (int k = -offsetPix_; k < offsetPix_; k += resolutionPix_) {
+         for (int l = -offsetPix_; l < offsetPix_; l += resolutionPix_) {
             int x = (l + offsetPix_) / resolutionPix_;
             int y = (k + offsetPix_) / resolutionPix_;
-            corrImproc.setf(x + lCount * y, (float) sum);
-
-            // check for max value
-            if (sum > maxCor) {
-               maxCor = sum;
-               kMax = k;
-               lMax = l;
+            if (x < lCount && y < kCount) {
+               corrImproc.setf(x + lCount * y, (float) correlator_.getCorrelation(l, k));
             }
          }
       }
@@ -663,7 +677,7 @@ public class TrackerControl extends JFrame {
          } // relative motion
       } else {
          // move the roi
-         roi_.setLocation(r.x + lMax, r.y + kMax);
+         roi_.setLocation(r.x + (int) Math.round(lMax), r.y + (int) Math.round(kMax));
 
          display_.getImagePlus().setRoi(roi_, true);
       }
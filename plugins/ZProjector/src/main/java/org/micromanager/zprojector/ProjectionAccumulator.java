@@ -0,0 +1,218 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:          ProjectionAccumulator.java
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     ZProjector plugin
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.zprojector;
+
+import ij.plugin.ZProjector;
+import java.util.concurrent.ForkJoinPool;
+import org.micromanager.internal.utils.ParallelStripes;
+
+/**
+ * Projects planes one at a time into primitive accumulator arrays, so that
+ * a stack never needs to be held in memory.  Supports the ImageJ ZProjector
+ * max, min, average, sum and standard deviation methods for 8 and 16-bit
+ * grayscale images.  The median can not be computed this way.
+ *
+ * Results are converted back to the pixel type of the input the way the
+ * ImageJ based projection does: averages are truncated, sums and standard
+ * deviations are rounded and clipped to the range of the type.
+ * Sums are accumulated in longs, so they can not overflow.
+ *
+ * @author agent
+ */
+final class ProjectionAccumulator {
+
+   // Stripes are at least this large, so that the overhead of forking a
+   // task stays small compared to the work
+   static final int MIN_STRIPE_PIXELS = 1 << 16;
+
+   private final int method_;
+   private final int bytesPerPixel_;
+   private final int numPixels_;
+   private final ForkJoinPool pool_;
+
+   // max and min
+   private int[] extrema_;
+   // average, sum and standard deviation
+   private long[] sums_;
+   // standard deviation
+   private long[] sumsOfSquares_;
+   private int count_;
+
+   /**
+    * @param method Projection method (as an ImageJ ZProjector int)
+    * @param bytesPerPixel 1 or 2
+    * @param numPixels number of pixels of each plane
+    * @param pool pool to run stripes of each plane on; null to run on the
+    * calling thread
+    */
+   ProjectionAccumulator(int method, int bytesPerPixel, int numPixels,
+           ForkJoinPool pool) {
+      if (!isSupported(method, bytesPerPixel, 1)) {
+         throw new IllegalArgumentException("Projection method " + method
+                 + " is not supported for " + bytesPerPixel + " bytes per pixel");
+      }
+      method_ = method;
+      bytesPerPixel_ = bytesPerPixel;
+      numPixels_ = numPixels;
+      pool_ = pool;
+   }
+
+   /**
+    * @param method Projection method (as an ImageJ ZProjector int)
+    * @param bytesPerPixel bytes per pixel of the images
+    * @param numComponents number of components of the images
+    * @return whether images of this type can be projected with this method
+    */
+   static boolean isSupported(int method, int bytesPerPixel, int numComponents) {
+      return (method == ZProjector.MAX_METHOD || method == ZProjector.MIN_METHOD
+              || method == ZProjector.AVG_METHOD || method == ZProjector.SUM_METHOD
+              || method == ZProjector.SD_METHOD)
+              && (bytesPerPixel == 1 || bytesPerPixel == 2) && numComponents == 1;
+   }
+
+   int getBytesPerPixel() {
+      return bytesPerPixel_;
+   }
+
+   int getNumPixels() {
+      return numPixels_;
+   }
+
+   /**
+    * @return the number of planes added since the last call to finish()
+    */
+   int getCount() {
+      return count_;
+   }
+
+   /**
+    * Adds a plane to the projection.
+    *
+    * @param pixels byte[] or short[] (matching bytesPerPixel) of numPixels
+    * pixels
+    */
+   void add(Object pixels) {
+      final byte[] bytes = pixels instanceof byte[] ? (byte[]) pixels : null;
+      final short[] shorts = pixels instanceof short[] ? (short[]) pixels : null;
+      if ((bytesPerPixel_ == 1 ? bytes : shorts) == null) {
+         throw new IllegalArgumentException("Plane does not have "
+                 + bytesPerPixel_ + " bytes per pixel");
+      }
+      int length = bytes != null ? bytes.length : shorts.length;
+      if (length != numPixels_) {
+         throw new IllegalArgumentException("Plane has " + length
+                 + " pixels instead of " + numPixels_);
+      }
+
+      final boolean first = count_ == 0;
+      ParallelStripes.RangeKernel kernel;
+      if (method_ == ZProjector.MAX_METHOD || method_ == ZProjector.MIN_METHOD) {
+         if (extrema_ == null) {
+            extrema_ = new int[numPixels_];
+         }
+         final int[] extrema = extrema_;
+         final boolean max = method_ == ZProjector.MAX_METHOD;
+         kernel = (from, to) -> {
+            for (int i = from; i < to; i++) {
+               int value = bytes != null ? bytes[i] & 0xff : shorts[i] & 0xffff;
+               if (first || (max ? value > extrema[i] : value < extrema[i])) {
+                  extrema[i] = value;
+               }
+            }
+         };
+      } else {
+         if (sums_ == null) {
+            sums_ = new long[numPixels_];
+         }
+         if (method_ == ZProjector.SD_METHOD && sumsOfSquares_ == null) {
+            sumsOfSquares_ = new long[numPixels_];
+         }
+         final long[] sums = sums_;
+         final long[] squares = method_ == ZProjector.SD_METHOD ? sumsOfSquares_ : null;
+         kernel = (from, to) -> {
+            for (int i = from; i < to; i++) {
+               long value = bytes != null ? bytes[i] & 0xff : shorts[i] & 0xffff;
+               sums[i] = (first ? 0 : sums[i]) + value;
+               if (squares != null) {
+                  squares[i] = (first ? 0 : squares[i]) + value * value;
+               }
+            }
+         };
+      }
+      run(kernel);
+      count_++;
+   }
+
+   /**
+    * Returns the projection of all planes added since the last call, and
+    * starts a new projection.  The accumulator arrays are kept for reuse.
+    *
+    * @return a new byte[] or short[] (matching bytesPerPixel) of numPixels
+    * pixels
+    */
+   Object finish() {
+      if (count_ == 0) {
+         throw new IllegalStateException("No planes to project");
+      }
+      final int maxValue = bytesPerPixel_ == 1 ? 0xff : 0xffff;
+      final byte[] bytes = bytesPerPixel_ == 1 ? new byte[numPixels_] : null;
+      final short[] shorts = bytesPerPixel_ == 2 ? new short[numPixels_] : null;
+      final double n = count_;
+      final int method = method_;
+      final int[] extrema = extrema_;
+      final long[] sums = sums_;
+      final long[] squares = sumsOfSquares_;
+      run((from, to) -> {
+         for (int i = from; i < to; i++) {
+            int value;
+            if (method == ZProjector.MAX_METHOD || method == ZProjector.MIN_METHOD) {
+               value = extrema[i];
+            } else if (method == ZProjector.AVG_METHOD) {
+               // ImageJ averages in floats, and truncates into the input type
+               value = (int) (float) (sums[i] / n);
+            } else {
+               double result;
+               if (method == ZProjector.SUM_METHOD) {
+                  result = sums[i];
+               } else {
+                  double sum = sums[i];
+                  double variance = n > 1 ? (n * squares[i] - sum * sum) / n : 0.0;
+                  result = variance > 0 ? Math.sqrt(variance / (n - 1.0)) : 0.0;
+               }
+               // ImageJ projects into a float image
+               value = (int) (Math.min(maxValue, (float) result) + 0.5);
+            }
+            if (bytes != null) {
+               bytes[i] = (byte) value;
+            } else {
+               shorts[i] = (short) value;
+            }
+         }
+      });
+      count_ = 0;
+      return bytes != null ? bytes : shorts;
+   }
+
+   private void run(ParallelStripes.RangeKernel kernel) {
+      ParallelStripes.run(pool_, numPixels_, MIN_STRIPE_PIXELS, kernel);
+   }
+}
@@ -27,8 +27,14 @@ import ij.plugin.ZProjector;
 import ij.process.ImageProcessor;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.swing.SwingWorker;
 import org.micromanager.Studio;
 import org.micromanager.data.Coordinates;
@@ -144,8 +150,24 @@ public class ZProjectorPluginExecutor {
                   progressBar_.setVisible(true);
                }
 
-               findAllProjections(newStore, axes, cb, projectionAxis,
-                       firstFrame, lastFrame, projectionMethod);
+               List<Coords> stacks = new ArrayList<>();
+               findAllProjections(stacks, axes, cb);
+               Image tmpImg = oldStore_.getAnyImage();
+               if (tmpImg == null) {
+                  studio_.alerts().postAlert("Projection problem", this.getClass(),
+                          "No images found while projecting");
+               } else if (ProjectionAccumulator.isSupported(projectionMethod,
+                       tmpImg.getBytesPerPixel(), tmpImg.getNumComponents())) {
+                  projectInParallel(newStore, stacks, projectionAxis,
+                          firstFrame, lastFrame, projectionMethod);
+               } else {
+                  for (Coords stack : stacks) {
+                     executeProjection(newStore, stack.copyBuilder(),
+                             projectionAxis, firstFrame, lastFrame,
+                             projectionMethod);
+                     projectionFinished();
+                  }
+               }
                
             } catch (DatastoreFrozenException ex) {
                studio_.logs().showError("Can not add data to frozen datastore");
@@ -185,40 +207,131 @@ public class ZProjectorPluginExecutor {
     * Recursively figures out which projections need to be performed
     * It does so by taking the first remaining axes, cycle through all positions
     * in that axes, and recursively calling this function (omitting that axis).
-    * When no more axes are remining, the actual projection will be exected.
+    * When no more axes are remining, the coordinates of the stack to be
+    * projected are added to the list.
     * 
-    * @param newStore Datastore to put the new projected images into
+    * @param stacks   List to add the coordinates of each stack to
     * @param remainingAxes List with axes to look at
     * @param cbp      Coordinates build set to the correct position
-    * @param projectionAxis   Axis that needs to be projected
-    * @param min       lowest frame number to be included in the projection
-    * @param max        highest frame number to be included in the projection
-    * @param projectionMethod Projection method (as an ImageJ ZProjector int)
-    * @throws IOException Can arise when saving to disk
     */
-   private void findAllProjections(Datastore newStore, List<String> remainingAxes, 
-           Coords.CoordsBuilder cbp, String projectionAxis, int min, int max, 
-           int projectionMethod) throws IOException {
+   private void findAllProjections(List<Coords> stacks, List<String> remainingAxes, 
+           Coords.CoordsBuilder cbp) {
+      if (remainingAxes.isEmpty()) {
+         stacks.add(cbp.build());
+         return;
+      }
       String currentAxis = remainingAxes.get(0);
       List<String> rcAxes = new ArrayList<>(remainingAxes);
       rcAxes.remove(currentAxis);
       for (int i = 0; i < oldStore_.getNextIndex(currentAxis); i++) {
          cbp.index(currentAxis, i);
-         if (rcAxes.isEmpty()) {
-            executeProjection(newStore, cbp, projectionAxis, min, max, projectionMethod);
-            projectionNr_++;
-            if (progressBar_ != null) {
-               progressBar_.setProgress(projectionNr_); 
+         findAllProjections(stacks, rcAxes, cbp);
+      }
+   }
+
+   private void projectionFinished() {
+      projectionNr_++;
+      if (progressBar_ != null) {
+         progressBar_.setProgress(projectionNr_);
+      }
+   }
+
+   /**
+    * Projects the stacks on a pool of threads, and puts the projections into
+    * the new store in the order of the stacks.  Planes of the stacks ahead 
+    * are read from storage and projected while earlier projections are being
+    * written.  The number of stacks in flight is limited, so that memory use
+    * does not depend on the size of the dataset.
+    * 
+    * @param newStore Datastore to put the new projected images into
+    * @param stacks Coordinates of the stacks to project
+    * @param projectionAxis Axis that needs to be projected
+    * @param min lowest frame number to be included in the projection
+    * @param max Highest frame number to be included in the projection
+    * @param projectionMethod Projection method (as an ImageJ ZProjector int)
+    * @throws IOException Can arise when saving to disk
+    */
+   private void projectInParallel(Datastore newStore, List<Coords> stacks,
+           final String projectionAxis, final int min, final int max, 
+           final int projectionMethod) throws IOException {
+      int nrThreads = Runtime.getRuntime().availableProcessors();
+      ExecutorService executor = Executors.newFixedThreadPool(nrThreads, 
+              (Runnable r) -> {
+                 Thread thread = new Thread(r, "ZProjector");
+                 thread.setDaemon(true);
+                 return thread;
+              });
+      ArrayDeque<Future<Image>> pending = new ArrayDeque<>();
+      Iterator<Coords> it = stacks.iterator();
+      try {
+         while (it.hasNext() || !pending.isEmpty()) {
+            while (it.hasNext() && pending.size() < 2 * nrThreads) {
+               final Coords stack = it.next();
+               pending.add(executor.submit(() -> projectStack(stack,
+                       projectionAxis, min, max, projectionMethod)));
+            }
+            Image projection = pending.remove().get();
+            if (projection != null) {
+               newStore.putImage(projection);
+            } else {
+               studio_.alerts().postAlert("Projection problem", this.getClass(),
+                       "No images found while projecting");
             }
-         } else {
-            findAllProjections(newStore, rcAxes, cbp, projectionAxis,
-                    min, max, projectionMethod);
+            projectionFinished();
          }
+      } catch (InterruptedException ie) {
+         Thread.currentThread().interrupt();
+      } catch (ExecutionException ee) {
+         Throwable cause = ee.getCause();
+         studio_.logs().showError(cause instanceof Exception 
+                 ? (Exception) cause : ee, "Projection failed");
+      } finally {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Projects a single stack, one plane at a time.
+    * 
+    * @param stack Coordinates of the stack to project
+    * @param projectionAxis Axis that needs to be projected
+    * @param min lowest frame number to be included in the projection
+    * @param max Highest frame number to be included in the projection
+    * @param projectionMethod Projection method (as an ImageJ ZProjector int)
+    * @return the projection, or null when the stack contains no images
+    * @throws IOException Can arise when reading from disk
+    */
+   private Image projectStack(Coords stack, String projectionAxis, int min, 
+           int max, int projectionMethod) throws IOException {
+      ProjectionAccumulator accumulator = null;
+      Image firstImg = null;
+      for (int i = min; i <= max; i++) {
+         Image img = oldStore_.getImage(
+                 stack.copyBuilder().index(projectionAxis, i).build());
+         if (img == null) {  // null happens when this image was skipped
+            continue;
+         }
+         if (accumulator == null) {
+            firstImg = img;
+            accumulator = new ProjectionAccumulator(projectionMethod,
+                    img.getBytesPerPixel(), img.getWidth() * img.getHeight(),
+                    null);
+         }
+         accumulator.add(img.getRawPixels());
+      }
+      if (accumulator == null) {
+         return null;
       }
+      return studio_.data().wrapImage(accumulator.finish(), 
+              firstImg.getWidth(), firstImg.getHeight(), 
+              firstImg.getBytesPerPixel(), 1,
+              stack.copyBuilder().index(projectionAxis, 0).build(),
+              firstImg.getMetadata().copyBuilderWithNewUUID().build());
    }
    
    /**
-    * Do the actual projection
+    * Do the actual projection using ImageJ.  Used for the methods and image
+    * types that ProjectionAccumulator does not support, such as the median.
     * 
     * @param newStore Datastore to put the new projected images into
     * @param cbp Coordinates build set to the correct position
@@ -0,0 +1,172 @@
+///////////////////////////////////////////////////////////////////////////////
+//FILE:          ZProjectorProcessor.java
+//PROJECT:       Micro-Manager
+//SUBSYSTEM:     ZProjector plugin
+//-----------------------------------------------------------------------------
+//
+// AUTHOR:       agent, 2026
+//
+// COPYRIGHT:    agent, 2026
+//
+// LICENSE:      This file is distributed under the BSD license.
+//               License text is included with the source distribution.
+//
+//               This file is distributed in the hope that it will be useful,
+//               but WITHOUT ANY WARRANTY; without even the implied warranty
+//               of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+//
+//               IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+//               CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT,
+//               INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES.
+
+package org.micromanager.zprojector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.micromanager.Studio;
+import org.micromanager.data.Coords;
+import org.micromanager.data.Image;
+import org.micromanager.data.Metadata;
+import org.micromanager.data.Processor;
+import org.micromanager.data.ProcessorContext;
+import org.micromanager.data.ProcessorFactory;
+import org.micromanager.data.SummaryMetadata;
+
+/**
+ * Processor that projects stacks along an axis (usually Z) while they are
+ * being acquired.  Each image is added to the projection of its stack as
+ * soon as it arrives, and the projection is output once the stack is
+ * complete, so that only one accumulator per stack in progress is kept.
+ *
+ * The size of the stacks is taken from the intended dimensions in the
+ * summary metadata.  Images are passed on unchanged when these are not
+ * known, and when the image type is not supported.
+ *
+ * @author agent
+ */
+public class ZProjectorProcessor implements Processor {
+
+   private final Studio studio_;
+   private final String projectionAxis_;
+   private final int projectionMethod_;
+   private int nrPlanes_ = 0;
+   private boolean warnedUnsupported_ = false;
+   private final Map<Coords, Stack> stacks_ = new HashMap<>();
+
+   /**
+    * Projection in progress of a single stack.
+    */
+   private static class Stack {
+      private final ProjectionAccumulator accumulator_;
+      private final Image firstImage_;
+
+      Stack(ProjectionAccumulator accumulator, Image firstImage) {
+         accumulator_ = accumulator;
+         firstImage_ = firstImage;
+      }
+   }
+
+   /**
+    * @param studio Studio instance
+    * @param projectionAxis Axis that needs to be projected, see Coords
+    * @param projectionMethod Projection method (as an ImageJ ZProjector int),
+    * median is not supported
+    */
+   public ZProjectorProcessor(Studio studio, String projectionAxis,
+           int projectionMethod) {
+      if (!ProjectionAccumulator.isSupported(projectionMethod, 2, 1)) {
+         throw new IllegalArgumentException("Projection method "
+                 + projectionMethod + " can not be used during acquisition");
+      }
+      studio_ = studio;
+      projectionAxis_ = projectionAxis;
+      projectionMethod_ = projectionMethod;
+   }
+
+   /**
+    * @param studio Studio instance
+    * @param projectionAxis Axis that needs to be projected, see Coords
+    * @param projectionMethod Projection method (as an ImageJ ZProjector int),
+    * median is not supported
+    * @return a factory creating ZProjectorProcessors with these settings
+    */
+   public static ProcessorFactory createFactory(final Studio studio,
+           final String projectionAxis, final int projectionMethod) {
+      return () -> new ZProjectorProcessor(studio, projectionAxis,
+              projectionMethod);
+   }
+
+   @Override
+   public SummaryMetadata processSummaryMetadata(SummaryMetadata summary) {
+      Coords intended = summary.getIntendedDimensions();
+      if (intended == null) {
+         return summary;
+      }
+      nrPlanes_ = intended.getIndex(projectionAxis_);
+      if (nrPlanes_ <= 1) {
+         return summary;
+      }
+      return summary.copyBuilder().intendedDimensions(
+              intended.copyBuilder().index(projectionAxis_, 1).build()).build();
+   }
+
+   @Override
+   public void processImage(Image image, ProcessorContext context) {
+      if (nrPlanes_ <= 1) {
+         context.outputImage(image);
+         return;
+      }
+      if (!ProjectionAccumulator.isSupported(projectionMethod_,
+              image.getBytesPerPixel(), image.getNumComponents())) {
+         if (!warnedUnsupported_) {
+            studio_.logs().logError("ZProjector can not project images with "
+                    + image.getBytesPerPixel() + " bytes per pixel and "
+                    + image.getNumComponents() + " components");
+            warnedUnsupported_ = true;
+         }
+         context.outputImage(image);
+         return;
+      }
+      Coords stackCoords = image.getCoords().copyBuilder()
+              .index(projectionAxis_, 0).build();
+      Stack stack = stacks_.get(stackCoords);
+      if (stack == null) {
+         stack = new Stack(new ProjectionAccumulator(projectionMethod_,
+                 image.getBytesPerPixel(), image.getWidth() * image.getHeight(),
+                 ForkJoinPool.commonPool()), image);
+         stacks_.put(stackCoords, stack);
+      }
+      try {
+         stack.accumulator_.add(image.getRawPixels());
+      } catch (IllegalArgumentException e) {
+         studio_.logs().logError(e, "ZProjector skipped image");
+         return;
+      }
+      if (stack.accumulator_.getCount() >= nrPlanes_) {
+         stacks_.remove(stackCoords);
+         outputProjection(stackCoords, stack, context);
+      }
+   }
+
+   private void outputProjection(Coords stackCoords, Stack stack,
+           ProcessorContext context) {
+      Image first = stack.firstImage_;
+      Metadata metadata = first.getMetadata().copyBuilderWithNewUUID().build();
+      context.outputImage(studio_.data().wrapImage(stack.accumulator_.finish(),
+              first.getWidth(), first.getHeight(), first.getBytesPerPixel(), 1,
+              stackCoords, metadata));
+   }
+
+   /**
+    * Outputs the projections of stacks that were not completed, for instance
+    * because the acquisition was stopped.
+    */
+   @Override
+   public void cleanup(ProcessorContext context) {
+      for (Map.Entry<Coords, Stack> entry : stacks_.entrySet()) {
+         outputProjection(entry.getKey(), entry.getValue(), context);
+      }
+      stacks_.clear();
+   }
+}
@@ -0,0 +1,112 @@
+package org.micromanager.zprojector;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.plugin.ZProjector;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the streaming projection with the ImageJ based one.
+ */
+public class ProjectionAccumulatorTest {
+   private static final int WIDTH = 300;
+   // Large enough to be split into stripes
+   private static final int HEIGHT = 5 * ProjectionAccumulator.MIN_STRIPE_PIXELS / WIDTH;
+   private static final int[] METHODS = {ZProjector.MAX_METHOD,
+         ZProjector.MIN_METHOD, ZProjector.AVG_METHOD, ZProjector.SUM_METHOD,
+         ZProjector.SD_METHOD};
+
+   private static Object[] randomPlanes(int bytesPerPixel, int numPlanes) {
+      Random random = new Random(bytesPerPixel * 100 + numPlanes);
+      Object[] planes = new Object[numPlanes];
+      for (int p = 0; p < numPlanes; p++) {
+         if (bytesPerPixel == 1) {
+            byte[] plane = new byte[WIDTH * HEIGHT];
+            random.nextBytes(plane);
+            planes[p] = plane;
+         } else {
+            short[] plane = new short[WIDTH * HEIGHT];
+            for (int i = 0; i < plane.length; i++) {
+               // Keep sums of a few planes within range now and then
+               plane[i] = (short) random.nextInt(i % 2 == 0 ? 65536 : 1000);
+            }
+            planes[p] = plane;
+         }
+      }
+      return planes;
+   }
+
+   // As ZProjectorPluginExecutor did for all projections
+   private static Object imageJProjection(Object[] planes, int method) {
+      ImageStack stack = new ImageStack(WIDTH, HEIGHT);
+      for (Object plane : planes) {
+         stack.addSlice(plane instanceof byte[]
+               ? new ByteProcessor(WIDTH, HEIGHT, (byte[]) plane)
+               : new ShortProcessor(WIDTH, HEIGHT, (short[]) plane, null));
+      }
+      ImagePlus tmp = new ImagePlus("tmp", stack);
+      ZProjector zp = new ZProjector(tmp);
+      zp.setMethod(method);
+      zp.doProjection();
+      ImageProcessor projection = zp.getProjection().getProcessor();
+      if (projection.getBitDepth() > 16) {
+         projection = tmp.getBytesPerPixel() == 1
+               ? projection.convertToByte(false) : projection.convertToShort(false);
+      }
+      return projection.getPixels();
+   }
+
+   private static void compare(int bytesPerPixel, int numPlanes,
+                               ForkJoinPool pool) {
+      Object[] planes = randomPlanes(bytesPerPixel, numPlanes);
+      for (int method : METHODS) {
+         ProjectionAccumulator accumulator = new ProjectionAccumulator(method,
+               bytesPerPixel, WIDTH * HEIGHT, pool);
+         // Run twice, to check that the accumulator starts afresh
+         for (int run = 0; run < 2; run++) {
+            for (Object plane : planes) {
+               accumulator.add(plane);
+            }
+            Object result = accumulator.finish();
+            Object expected = imageJProjection(planes, method);
+            String message = "method " + method + ", " + numPlanes + " planes";
+            if (bytesPerPixel == 1) {
+               Assert.assertArrayEquals(message, (byte[]) expected, (byte[]) result);
+            } else {
+               Assert.assertArrayEquals(message, (short[]) expected, (short[]) result);
+            }
+         }
+      }
+   }
+
+   @Test
+   public void testShorts() {
+      compare(2, 4, ForkJoinPool.commonPool());
+      compare(2, 1, null);
+   }
+
+   @Test
+   public void testBytes() {
+      compare(1, 5, null);
+   }
+
+   @Test
+   public void testUnsupported() {
+      Assert.assertFalse(ProjectionAccumulator.isSupported(
+            ZProjector.MEDIAN_METHOD, 2, 1));
+      Assert.assertFalse(ProjectionAccumulator.isSupported(
+            ZProjector.MAX_METHOD, 4, 3));
+      try {
+         new ProjectionAccumulator(ZProjector.MAX_METHOD, 2, 4, null)
+               .add(new short[3]);
+         Assert.fail("Accepted plane of wrong size");
+      } catch (IllegalArgumentException expected) {
+      }
+   }
+}